@@ -0,0 +1,53 @@
+package net.yapbam.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.BudgetView;
+import net.yapbam.data.FilteredData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the BudgetView build.
+ * <br>Each invocation toggles the value date option of the view, which triggers a complete build of the budget.
+ * A single view is used, because each view registers a listener on the filtered data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BudgetViewBenchmark {
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+	@Param({"false", "true"})
+	private boolean year;
+	@Param({"false", "true"})
+	private boolean groupedSubCategories;
+
+	private BudgetView view;
+	private boolean valueDate;
+
+	@Setup
+	public void setup() {
+		view = new BudgetView(new FilteredData(new DataGenerator(0).generate(size)), year);
+		view.setGroupedSubCategories(groupedSubCategories);
+	}
+
+	@Benchmark
+	public Double build() {
+		valueDate = !valueDate;
+		view.setValueDate(valueDate);
+		return view.getSum();
+	}
+}
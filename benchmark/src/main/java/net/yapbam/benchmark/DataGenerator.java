@@ -0,0 +1,163 @@
+package net.yapbam.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.PeriodicalTransaction;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.date.helpers.DateStepper;
+import net.yapbam.date.helpers.DayDateStepper;
+import net.yapbam.date.helpers.DeferredValueDateComputer;
+import net.yapbam.date.helpers.MonthDateStepper;
+import net.yapbam.util.DateUtils;
+
+/** A deterministic generator of synthetic Yapbam data.
+ * <br>Two generators built with the same seed produce the same accounts, modes, categories, periodical transactions
+ * and transactions (except the transactions ids, that depend on how many transactions were created before in the JVM).
+ * <br>The generated data looks like a real user's data: a few accounts, a few modes per account, a two levels categories tree,
+ * a vocabulary of descriptions shared by many transactions, some subtransactions and some checked transactions.
+ * The period covered by the transactions grows with their number (about 500 transactions per month), so the budget
+ * and balance history sizes grow with the data set, as they would in real life.
+ */
+public class DataGenerator {
+	/** The first date of the generated transactions. */
+	public static final int START_DATE = 20000101;
+
+	private static final int ACCOUNTS = 5;
+	private static final int ROOT_CATEGORIES = 12;
+	private static final int SUB_CATEGORIES = 4;
+	private static final int DESCRIPTIONS = 500;
+	private static final int TRANSACTIONS_PER_MONTH = 500;
+	private static final String[] DESCRIPTION_VOCABULARY = new String[DESCRIPTIONS];
+	static {
+		for (int i = 0; i < DESCRIPTIONS; i++) {
+			DESCRIPTION_VOCABULARY[i] = "Description "+i; //$NON-NLS-1$
+		}
+	}
+
+	private final long seed;
+
+	/** Constructor.
+	 * @param seed The seed of the random generator
+	 */
+	public DataGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/** Generates a data set.
+	 * @param transactionsNumber The number of transactions (1000 to 1000000 are typical values)
+	 * @return A new GlobalData instance that contains the accounts, categories, modes, periodical transactions and transactions.
+	 */
+	public GlobalData generate(int transactionsNumber) {
+		GlobalData data = generateStructure();
+		data.add(generatePeriodicals(data, Math.max(1, transactionsNumber/1000)));
+		data.add(generateTransactions(data, transactionsNumber));
+		data.setChanged(false);
+		return data;
+	}
+
+	/** Generates a data set that contains accounts, modes and categories, but no transaction.
+	 * @return a new GlobalData instance
+	 */
+	public GlobalData generateStructure() {
+		GlobalData data = new GlobalData();
+		for (int i = 0; i < ROOT_CATEGORIES; i++) {
+			String name = "Category "+i; //$NON-NLS-1$
+			data.add(new Category(name));
+			for (int j = 0; j < SUB_CATEGORIES; j++) {
+				data.add(new Category(name+data.getSubCategorySeparator()+"Sub "+j)); //$NON-NLS-1$
+			}
+		}
+		for (int i = 0; i < ACCOUNTS; i++) {
+			Account account = new Account("Account "+i, i*1000.0); //$NON-NLS-1$
+			data.add(account);
+			data.add(account, new Mode("Card", null, new DeferredValueDateComputer(25, 5), false)); //$NON-NLS-1$
+			data.add(account, new Mode("Cheque", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false)); //$NON-NLS-1$
+			data.add(account, new Mode("Transfer", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false)); //$NON-NLS-1$
+		}
+		return data;
+	}
+
+	/** Generates transactions.
+	 * <br>The transactions are not added to the data.
+	 * @param data The data that contains the accounts, modes and categories to use.
+	 * @param number The number of transactions to generate
+	 * @return the transactions
+	 */
+	public Transaction[] generateTransactions(GlobalData data, int number) {
+		Random rnd = new Random(seed);
+		int months = Math.max(12, number/TRANSACTIONS_PER_MONTH);
+		int days = months*30;
+		int checkedLimit = DateUtils.addDays(START_DATE, days*9/10);
+		Transaction[] result = new Transaction[number];
+		for (int i = 0; i < number; i++) {
+			int date = DateUtils.addDays(START_DATE, rnd.nextInt(days));
+			Account account = data.getAccount(rnd.nextInt(data.getAccountsNumber()));
+			boolean receipt = rnd.nextInt(5)==0;
+			double amount = (receipt ? 1 : -1) * (1+rnd.nextInt(receipt ? 300000 : 20000))/100.0;
+			Mode mode = getMode(rnd, account, receipt);
+			DateStepper vdc = receipt ? mode.getReceiptVdc() : mode.getExpenseVdc();
+			int valueDate = vdc.getNextStep(date);
+			String chequeNumber = "Cheque".equals(mode.getName()) ? Integer.toString(1000000+i) : null; //$NON-NLS-1$
+			String description = getDescription(rnd.nextInt(DESCRIPTIONS));
+			String comment = rnd.nextInt(10)==0 ? "Comment "+rnd.nextInt(50) : null; //$NON-NLS-1$
+			String statement = valueDate<checkedLimit ? Integer.toString(valueDate/100) : null;
+			List<SubTransaction> subTransactions = null;
+			if (rnd.nextInt(10)==0) {
+				subTransactions = new ArrayList<SubTransaction>();
+				int nb = 1+rnd.nextInt(3);
+				for (int j = 0; j < nb; j++) {
+					subTransactions.add(new SubTransaction(amount/(nb+1), getDescription(rnd.nextInt(DESCRIPTIONS)), getCategory(rnd, data)));
+				}
+			}
+			result[i] = new Transaction(date, chequeNumber, description, comment, amount, account, mode, getCategory(rnd, data),
+					valueDate, statement, subTransactions);
+		}
+		return result;
+	}
+
+	/** Generates periodical transactions.
+	 * <br>The periodical transactions are not added to the data.
+	 * @param data The data that contains the accounts, modes and categories to use.
+	 * @param number The number of periodical transactions to generate
+	 * @return the periodical transactions
+	 */
+	public PeriodicalTransaction[] generatePeriodicals(GlobalData data, int number) {
+		Random rnd = new Random(seed+1);
+		PeriodicalTransaction[] result = new PeriodicalTransaction[number];
+		for (int i = 0; i < number; i++) {
+			Account account = data.getAccount(rnd.nextInt(data.getAccountsNumber()));
+			boolean receipt = rnd.nextInt(5)==0;
+			double amount = (receipt ? 1 : -1) * (1+rnd.nextInt(100000))/100.0;
+			DateStepper stepper = rnd.nextInt(4)==0 ? new DayDateStepper(7*(1+rnd.nextInt(2)), null) :
+				new MonthDateStepper(1+rnd.nextInt(3), 1+rnd.nextInt(31));
+			int nextDate = DateUtils.addDays(START_DATE, rnd.nextInt(60));
+			result[i] = new PeriodicalTransaction("Periodical "+i, null, amount, account, getMode(rnd, account, receipt), //$NON-NLS-1$
+					getCategory(rnd, data), null, DateUtils.integerToDate(nextDate), true, stepper);
+		}
+		return result;
+	}
+
+	private static Mode getMode(Random rnd, Account account, boolean receipt) {
+		// The first mode is Mode.UNDEFINED
+		Mode mode = account.getMode(1+rnd.nextInt(account.getModesNumber()-1));
+		if (receipt && !mode.isUsableForReceipt()) {
+			mode = account.getMode(account.getModesNumber()-1);
+		}
+		return mode;
+	}
+
+	private static Category getCategory(Random rnd, GlobalData data) {
+		return data.getCategory(rnd.nextInt(data.getCategoriesNumber()));
+	}
+
+	private static String getDescription(int index) {
+		return DESCRIPTION_VOCABULARY[index];
+	}
+}
@@ -0,0 +1,198 @@
+package net.yapbam.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.xml.Serializer;
+import net.yapbam.data.xml.task.DecrypterTask;
+import net.yapbam.data.xml.task.DeflaterTask;
+import net.yapbam.data.xml.task.EncrypterTask;
+import net.yapbam.data.xml.task.InflaterTask;
+import net.yapbam.data.xml.task.PipeTask;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Compares the streaming password encoded serialization with the previous implementation based on piped threads.
+ * <br>Besides the throughput, the benchmark reports the CPU time used by the whole process per second (the cpuNanos counter).
+ * The CPU time used per operation is cpuNanos divided by the throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncryptedSerializationBenchmark {
+	private static final String PASSWORD = "benchmark"; //$NON-NLS-1$
+	private static final byte[] HEADER = "<Yapbam password encoded file 2.0>".getBytes(StandardCharsets.UTF_8); //$NON-NLS-1$
+
+	/** The CPU time counter. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class CpuCounter {
+		private static final com.sun.management.OperatingSystemMXBean OS = getOperatingSystem();
+
+		/** The CPU time used by the process, in nanoseconds. */
+		public long cpuNanos;
+		private long start;
+
+		private static com.sun.management.OperatingSystemMXBean getOperatingSystem() {
+			OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+			return os instanceof com.sun.management.OperatingSystemMXBean ? (com.sun.management.OperatingSystemMXBean) os : null;
+		}
+
+		@Setup(Level.Iteration)
+		public void start() {
+			cpuNanos = 0;
+			start = OS==null ? 0 : OS.getProcessCpuTime();
+		}
+
+		@TearDown(Level.Iteration)
+		public void stop() {
+			cpuNanos = OS==null ? 0 : OS.getProcessCpuTime()-start;
+		}
+	}
+
+	@Param({"1000", "100000"})
+	private int size;
+
+	private Serializer serializer;
+	private GlobalData data;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		serializer = new Serializer();
+		data = new DataGenerator(0).generate(size);
+		data.setPassword(PASSWORD);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.write(data, out, null);
+		bytes = out.toByteArray();
+		if (!Arrays.equals(bytes, pipedWrite())) {
+			throw new IllegalStateException("Streaming and piped implementations produce different bytes"); //$NON-NLS-1$
+		}
+	}
+
+	@Benchmark
+	public byte[] streamingWrite(CpuCounter counter) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+		serializer.write(data, out, null);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] pipedWrite(CpuCounter counter) throws IOException {
+		return pipedWrite();
+	}
+
+	@Benchmark
+	public GlobalData streamingRead(CpuCounter counter) throws IOException {
+		return serializer.read(PASSWORD, new ByteArrayInputStream(bytes), null);
+	}
+
+	@Benchmark
+	public GlobalData pipedRead(CpuCounter counter) throws IOException {
+		InputStream in = new ByteArrayInputStream(bytes);
+		// Pass the header
+		in.skip(HEADER.length);
+		PipedOutputStream decoderOutput = new PipedOutputStream();
+		PipedInputStream deflaterInput = new PipedInputStream(decoderOutput);
+		PipedOutputStream deflaterOutput = new PipedOutputStream();
+		final PipedInputStream readerInput = new PipedInputStream(deflaterOutput);
+		ExecutorService service = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		futures.add(service.submit(new DecrypterTask(in, decoderOutput, PASSWORD, false)));
+		futures.add(service.submit(new InflaterTask(deflaterInput, deflaterOutput)));
+		Future<GlobalData> reader = service.submit(new Callable<GlobalData>() {
+			@Override
+			public GlobalData call() throws Exception {
+				try {
+					return serializer.directRead(PASSWORD, readerInput, null);
+				} finally {
+					readerInput.close();
+				}
+			}
+		});
+		futures.add(reader);
+		waitFor(futures);
+		return get(reader);
+	}
+
+	/** The previous implementation of AbstractSerializer.write. */
+	private byte[] pipedWrite() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+		out.write(HEADER);
+		final PipedOutputStream xmlOutput = new PipedOutputStream();
+		PipedInputStream compressorInput = new PipedInputStream(xmlOutput);
+		PipedOutputStream compressorOutput = new PipedOutputStream();
+		PipedInputStream encoderInput = new PipedInputStream(compressorOutput);
+		PipedOutputStream encrypterOutput = new PipedOutputStream();
+		PipedInputStream entryWriterInput = new PipedInputStream(encrypterOutput);
+		ExecutorService service = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		futures.add(service.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					serializer.directWrite(data, xmlOutput, null);
+					return null;
+				} finally {
+					xmlOutput.close();
+				}
+			}
+		}));
+		futures.add(service.submit(new DeflaterTask(compressorInput, compressorOutput)));
+		futures.add(service.submit(new EncrypterTask(encoderInput, encrypterOutput, PASSWORD, false)));
+		futures.add(service.submit(new PipeTask(entryWriterInput, out)));
+		waitFor(futures);
+		return out.toByteArray();
+	}
+
+	private static void waitFor(List<Future<?>> futures) throws IOException {
+		for (Future<?> future : futures) {
+			get(future);
+		}
+	}
+
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+	}
+}
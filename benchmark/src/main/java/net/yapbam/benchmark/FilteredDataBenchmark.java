@@ -0,0 +1,72 @@
+package net.yapbam.benchmark;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.Filter;
+import net.yapbam.data.FilteredData;
+import net.yapbam.util.DateUtils;
+import net.yapbam.util.TextMatcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the FilteredData re-filtering.
+ * <br>Each invocation toggles a filter criterion, which triggers a complete re-filtering of the data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilteredDataBenchmark {
+	/** The toggled criteria. */
+	public enum Criterion {
+		/** The valid accounts. */
+		ACCOUNT,
+		/** The date limits. */
+		DATE,
+		/** The description text. */
+		DESCRIPTION
+	}
+
+	@Param({"1000", "100000", "1000000"})
+	private int size;
+	@Param
+	private Criterion criterion;
+	@Param({"true", "false"})
+	private boolean parallel;
+
+	private FilteredData data;
+	private boolean set;
+
+	@Setup
+	public void setup() {
+		data = new FilteredData(new DataGenerator(0).generate(size));
+		data.setParallelThreshold(parallel ? FilteredData.DEFAULT_PARALLEL_THRESHOLD : Integer.MAX_VALUE);
+	}
+
+	@Benchmark
+	public int refilter() {
+		set = !set;
+		Filter filter = data.getFilter();
+		if (criterion==Criterion.ACCOUNT) {
+			filter.setValidAccounts(set ? Collections.singletonList(data.getGlobalData().getAccount(0)) : null);
+		} else if (criterion==Criterion.DATE) {
+			filter.setDateFilter(set ? DateUtils.integerToDate(DateUtils.addMonths(DataGenerator.START_DATE, 6)) : null, null);
+		} else {
+			filter.setDescriptionMatcher(set ? new TextMatcher(TextMatcher.Kind.CONTAINS, "1", false, false) : null); //$NON-NLS-1$
+		}
+		return data.getTransactionsNumber();
+	}
+}
@@ -0,0 +1,49 @@
+package net.yapbam.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Transaction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of GlobalData.add(Transaction[]).
+ * <br>Each measure adds a batch of transactions to a data that already contains the same number of transactions.
+ * As the data is modified by the benchmark, it is rebuilt before each measure, that's why the single shot mode is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class GlobalDataAddBenchmark {
+	@Param({"1000", "10000", "100000", "1000000"})
+	private int size;
+
+	private GlobalData data;
+	private Transaction[] transactions;
+
+	@Setup(Level.Iteration)
+	public void setup() {
+		data = new DataGenerator(0).generate(size);
+		transactions = new DataGenerator(1).generateTransactions(data, size);
+	}
+
+	@Benchmark
+	public GlobalData add() {
+		data.add(transactions);
+		return data;
+	}
+}
@@ -0,0 +1,61 @@
+package net.yapbam.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.PeriodicalTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.util.DateUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of PeriodicalTransaction.generate.
+ * <br>Each invocation generates the transactions of all the periodical transactions until a date some years after their next date.
+ * The periodical transactions are not modified by the generation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PeriodicalTransactionBenchmark {
+	@Param({"10", "100", "1000"})
+	private int periodicals;
+	@Param({"1", "10"})
+	private int years;
+
+	private PeriodicalTransaction[] transactions;
+	private int date;
+	private List<Transaction> result;
+
+	@Setup
+	public void setup() {
+		DataGenerator generator = new DataGenerator(0);
+		GlobalData data = generator.generateStructure();
+		transactions = generator.generatePeriodicals(data, periodicals);
+		date = DateUtils.addMonths(DataGenerator.START_DATE, 12*years);
+		result = new ArrayList<Transaction>();
+	}
+
+	@Benchmark
+	public int generate() {
+		result.clear();
+		for (PeriodicalTransaction transaction : transactions) {
+			transaction.generate(date, result);
+		}
+		return result.size();
+	}
+}
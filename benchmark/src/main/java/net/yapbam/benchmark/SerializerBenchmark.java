@@ -0,0 +1,109 @@
+package net.yapbam.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipOutputStream;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.xml.BinarySerializer;
+import net.yapbam.data.xml.Serializer;
+import net.yapbam.data.xml.XMLSerializer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Serializer.read and Serializer.write (and of their BinarySerializer and XMLSerializer versions).
+ * <br>The data is written to (and read from) memory, so the file system doesn't disturb the measures.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializerBenchmark {
+	/** The serialization formats. */
+	public enum Format {
+		/** Plain xml. */
+		PLAIN,
+		/** Xml in a zip entry. */
+		ZIP,
+		/** Password encoded xml. */
+		PASSWORD,
+		/** The compact binary format. */
+		BINARY,
+		/** Xml without indentation, written and read directly by XMLSerializer. */
+		XML_COMPACT
+	}
+
+	private static final String PASSWORD = "benchmark"; //$NON-NLS-1$
+	private static final String ENTRY_NAME = "data.xml"; //$NON-NLS-1$
+
+	@Param({"1000", "10000", "100000"})
+	private int size;
+	@Param
+	private Format format;
+	/** The number of threads that build the transactions while the xml is parsed (-1 for the default: the number of processors minus one).
+	 * <br>It is passed to XMLSerializer through the xml.read.workers system property, which is read once per JVM. Each combination of
+	 * parameters runs in its own JVM, so compare several values with, for instance, -p readWorkers=0,1,3
+	 */
+	@Param({"-1"})
+	private int readWorkers;
+
+	private Serializer serializer;
+	private GlobalData data;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		if (readWorkers>=0) {
+			System.setProperty("xml.read.workers", Integer.toString(readWorkers)); //$NON-NLS-1$
+		}
+		serializer = format==Format.BINARY ? new BinarySerializer() : new Serializer();
+		data = new DataGenerator(0).generate(size);
+		if (format==Format.PASSWORD) {
+			data.setPassword(PASSWORD);
+		}
+		bytes = toBytes();
+	}
+
+	private byte[] toBytes() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes==null ? 1024 : bytes.length);
+		if (format==Format.XML_COMPACT) {
+			XMLSerializer xml = new XMLSerializer(out, false);
+			xml.serialize(data, null);
+			xml.closeDocument();
+		} else if (format==Format.ZIP) {
+			ZipOutputStream zip = new ZipOutputStream(out);
+			serializer.writeToZip(data, zip, ENTRY_NAME, null);
+			zip.close();
+		} else {
+			serializer.write(data, out, null);
+		}
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] write() throws IOException {
+		return toBytes();
+	}
+
+	@Benchmark
+	public GlobalData read() throws IOException {
+		if (format==Format.XML_COMPACT) {
+			return XMLSerializer.read(new ByteArrayInputStream(bytes), null);
+		}
+		return serializer.read(format==Format.PASSWORD ? PASSWORD : null, new ByteArrayInputStream(bytes), null);
+	}
+}
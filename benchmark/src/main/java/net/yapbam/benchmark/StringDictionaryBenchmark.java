@@ -0,0 +1,113 @@
+package net.yapbam.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.data.xml.XMLSerializer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the memory saved by the strings dictionary used while loading xml data.
+ * <br>Each invocation reads the data from memory (equal strings are then shared), then copies its transactions with a distinct
+ * instance of every string. The heap used by both versions is reported in the sharedHeapKB and distinctHeapKB secondary results.
+ * <br>The heap is measured after forcing garbage collections, so the invocations are single shots and the time results are not meaningful.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class StringDictionaryBenchmark {
+	/** The heap used by the data, reported as secondary results. */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Heap {
+		/** The heap used by the data read from xml, in kB. */
+		public long sharedHeapKB;
+		/** The heap used by the transactions copied with distinct strings, in kB. */
+		public long distinctHeapKB;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			sharedHeapKB = 0;
+			distinctHeapKB = 0;
+		}
+	}
+
+	@Param({"200000"})
+	private int size;
+
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLSerializer serializer = new XMLSerializer(out);
+		serializer.serialize(new DataGenerator(0).generate(size), null);
+		serializer.closeDocument();
+		bytes = out.toByteArray();
+	}
+
+	@Benchmark
+	public int measure(Heap heap) throws IOException {
+		long before = getUsedHeap();
+		GlobalData loaded = XMLSerializer.read(new ByteArrayInputStream(bytes), null);
+		heap.sharedHeapKB = (getUsedHeap()-before)/1024;
+
+		before = getUsedHeap();
+		Transaction[] copy = copyWithDistinctStrings(loaded);
+		heap.distinctHeapKB = (getUsedHeap()-before)/1024;
+		// Using both versions here keeps them reachable until the end of the measures
+		return loaded.getTransactionsNumber()+copy.length;
+	}
+
+	private static Transaction[] copyWithDistinctStrings(GlobalData data) {
+		Transaction[] result = new Transaction[data.getTransactionsNumber()];
+		for (int i = 0; i < result.length; i++) {
+			Transaction t = data.getTransaction(i);
+			List<SubTransaction> subTransactions = null;
+			if (t.getSubTransactionSize()>0) {
+				subTransactions = new ArrayList<SubTransaction>(t.getSubTransactionSize());
+				for (int j = 0; j < t.getSubTransactionSize(); j++) {
+					SubTransaction sub = t.getSubTransaction(j);
+					subTransactions.add(new SubTransaction(sub.getAmount(), copy(sub.getDescription()), sub.getCategory()));
+				}
+			}
+			result[i] = new Transaction(t.getDateAsInteger(), copy(t.getNumber()), copy(t.getDescription()), copy(t.getComment()),
+					t.getAmount(), t.getAccount(), t.getMode(), t.getCategory(), t.getValueDateAsInteger(), copy(t.getStatement()), subTransactions);
+		}
+		return result;
+	}
+
+	private static String copy(String string) {
+		return string==null ? null : new String(string.toCharArray());
+	}
+
+	private static long getUsedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+}
@@ -0,0 +1,49 @@
+package net.yapbam.data;
+
+import java.util.concurrent.TimeUnit;
+
+import net.yapbam.benchmark.DataGenerator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of BalanceHistory random inserts.
+ * <br>Each invocation inserts, one by one, transactions with random value dates in an empty balance history.
+ * <br>This class is in the net.yapbam.data package because BalanceHistory.add(Transaction) is not public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BalanceHistoryBenchmark {
+	@Param({"1000", "10000", "100000", "1000000"})
+	private int size;
+
+	private Transaction[] transactions;
+
+	@Setup
+	public void setup() {
+		DataGenerator generator = new DataGenerator(0);
+		transactions = generator.generateTransactions(generator.generateStructure(), size);
+	}
+
+	@Benchmark
+	public BalanceHistory insert() {
+		BalanceHistory history = new BalanceHistory(0.0);
+		for (Transaction transaction : transactions) {
+			history.add(transaction);
+		}
+		return history;
+	}
+}
@@ -170,12 +170,21 @@ public abstract class AbstractTransaction implements Cloneable {
 	/** Gets the transaction's id.
 	 * Each transaction has an unique id created in the constructor. It is guaranteed that two
 	 * transactions always have different id
+	 * <br>The only exception is a transaction modified in place by GlobalData: Its new version takes the id of the
+	 * old one, that is no more in the data.
 	 * @return a long that identifies the transaction
 	 */
 	public long getId() {
 		return id;
 	}
 
+	/** Gives this transaction the id of another one.
+	 * @param transaction The transaction this is a new version of
+	 */
+	void copyId(AbstractTransaction transaction) {
+		this.id = transaction.id;
+	}
+
 	/** Gets the complement of the subtransactions of this transaction.
 	 * Transactions may have subtransactions. The complement is the transactions's amount minus the
 	 * sum of all of its subtransactions. 
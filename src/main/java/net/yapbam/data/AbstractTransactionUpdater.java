@@ -1,6 +1,7 @@
 package net.yapbam.data;
 
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This utility class is use to make mass modification on transactions and PeriodicalTransactions.
@@ -21,15 +22,26 @@ public abstract class AbstractTransactionUpdater {
 		// For performance concerns, we will remove all transactions that needed to be updated and then
 		// add all their modified instantiations
 		// First we build list of removed transactions and added ones.
+		// The modifications that can't change the balances (a category or a mode change, for instance) are
+		// made in place, without removing and adding the transactions.
 		ArrayList<Transaction> newTransactions = new ArrayList<Transaction>();
 		ArrayList<Transaction> removedTransactions = new ArrayList<Transaction>();
-		for (int i=0 ; i<data.getTransactionsNumber() ; i++) {
-			Transaction t = change(data.getTransaction(i));
+		ArrayList<Transaction> modifiedTransactions = new ArrayList<Transaction>();
+		ArrayList<Transaction> replacements = new ArrayList<Transaction>();
+		for (Transaction transaction : getTransactions()) {
+			Transaction t = change(transaction);
 			if (t!=null) {
-				removedTransactions.add(data.getTransaction(i));
-				newTransactions.add(t);
+				if (GlobalData.isReplaceable(transaction, t)) {
+					modifiedTransactions.add(transaction);
+					replacements.add(t);
+				} else {
+					removedTransactions.add(transaction);
+					newTransactions.add(t);
+				}
 			}
 		}
+		data.replace(modifiedTransactions.toArray(new Transaction[modifiedTransactions.size()]),
+				replacements.toArray(new Transaction[replacements.size()]));
 		// Then, we can remove the old transactions and add the new ones
 		data.remove(removedTransactions.toArray(new Transaction[removedTransactions.size()]));
 		data.add(newTransactions.toArray(new Transaction[newTransactions.size()]));
@@ -47,6 +59,16 @@ public abstract class AbstractTransactionUpdater {
 		data.add(newPTransactions.toArray(new PeriodicalTransaction[newPTransactions.size()]));
 	}
 	
+	/** Gets the transactions that may be changed.
+	 * <br>By default, this method returns all the transactions of the data. Subclasses that know which transactions they change
+	 * may override it in order to return only these transactions (usually from one of the data indexes, like
+	 * {@link GlobalData#getTransactions(Category)}). The returned list should not be modified until doIt has examined it.
+	 * @return a list of transactions. change(Transaction) is called for each of them.
+	 */
+	protected List<Transaction> getTransactions() {
+		return data.getTransactionStore();
+	}
+
 	/** Gets the changed view of a transaction.
 	 * <br>By default, this method returns null. 
 	 * @param transaction The transaction to be modified.
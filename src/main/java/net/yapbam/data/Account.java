@@ -10,6 +10,7 @@ public class Account {
 	private String name;
 	private double initialBalance;
 	private List<Mode> modes;
+	private NameIndex<Mode> modesByName;
 	private List<Checkbook> checkbooks;
 	private int transactionNumber;
 	private int unCheckedTransactionNumber;
@@ -45,6 +46,7 @@ public class Account {
 		this.initialBalance = initialBalance;
 		this.alertThreshold = alerts;
 		this.modes = new ArrayList<Mode>();
+		this.modesByName = new NameIndex<Mode>();
 		this.checkbooks = new ArrayList<Checkbook>();
 		this.checkNumberAlertThreshold = -1;
 		this.balanceData = new BalanceData();
@@ -72,12 +74,7 @@ public class Account {
 	 * @return The payment mode, or null, if no payment mode with that name exists
 	 */
 	public Mode getMode(String name) {
-		for (int i = 0; i < this.modes.size(); i++) {
-			if (this.modes.get(i).getName().equalsIgnoreCase(name)) {
-				return this.modes.get(i);
-			}
-		}
-		return null;
+		return this.modesByName.get(name);
 	}
 	
 	/** Gets the account's number of checkbooks.
@@ -154,21 +151,36 @@ public class Account {
 		this.balanceData.updateBalance(transactions, false);
 	}
 
+	/** Replaces transactions of this account by modified versions that can't change the balances.
+	 * @param oldTransactions the transactions to be replaced.
+	 * @param newTransactions the new versions of the transactions (newTransactions[i] replaces oldTransactions[i])
+	 * @see BalanceData#replace(Transaction[], Transaction[])
+	 */
+	void replace(Transaction[] oldTransactions, Transaction[] newTransactions) {
+		this.balanceData.replace(oldTransactions, newTransactions);
+	}
+
 	void add(Mode newMode) {
 		if (this.getMode(newMode.getName())!=null) {
 			throw new IllegalArgumentException("This account already contains the mode "+newMode.getName()); //$NON-NLS-1$
 		}
 		this.modes.add(newMode);
+		this.modesByName.put(newMode.getName(), newMode);
 	}
 
 	void remove(Mode mode) {
-		this.modes.remove(mode);
+		int index = this.modes.indexOf(mode);
+		if (index>=0) {
+			this.modesByName.remove(mode.getName(), this.modes.remove(index));
+		}
 	}
 	
 
 	void replace(Mode oldMode, Mode newMode) {
+		this.modesByName.remove(oldMode.getName(), oldMode);
 		// Be aware not to really replace the mode, but update it (transactions have a pointer to their mode).
 		oldMode.updateTo(newMode);
+		this.modesByName.put(oldMode.getName(), oldMode);
 	}
 
 	@Override
@@ -69,20 +69,22 @@ public abstract class Archiver {
 			throw new IllegalArgumentException();
 		}
 		GlobalData target = toArchive?archive:data;
-		target.setEventsEnabled(false);
-		copy (target,transactions, toArchive);
-		if (!toArchive) {
-			// If we recover transactions from archive, we have to update the initial balances of the destination data
-			Map<Account, Double> accountToAmount = getAmounts(transactions);
-			target.setEventsEnabled(false);
-			for (Entry<Account, Double> entry : accountToAmount.entrySet()) {
-				// Warning entry points to src data, not target one 
-				Account account = target.getAccount(entry.getKey().getName());
-				double initialBalance = account.getInitialBalance() - entry.getValue();
-				target.setInitialBalance(account, initialBalance);
+		target.beginBatch();
+		try {
+			copy (target,transactions, toArchive);
+			if (!toArchive) {
+				// If we recover transactions from archive, we have to update the initial balances of the destination data
+				Map<Account, Double> accountToAmount = getAmounts(transactions);
+				for (Entry<Account, Double> entry : accountToAmount.entrySet()) {
+					// Warning entry points to src data, not target one 
+					Account account = target.getAccount(entry.getKey().getName());
+					double initialBalance = account.getInitialBalance() - entry.getValue();
+					target.setInitialBalance(account, initialBalance);
+				}
 			}
+		} finally {
+			target.commit();
 		}
-		target.setEventsEnabled(true);
 	}
 	
 	
@@ -94,26 +96,29 @@ public abstract class Archiver {
 	 */
 	private static void remove(GlobalData data, GlobalData archive, Transaction[] transactions, boolean toArchive) {
 		GlobalData source = toArchive?data:archive;
-		source.setEventsEnabled(false);
-		source.remove(transactions);
-		if (toArchive) {
-			// Compute the initial balance of accounts after transactions deletion
-			Map<Account, Double> accountToAmount = getAmounts(transactions);
-			for (Entry<Account, Double> entry : accountToAmount.entrySet()) {
-				Account account = entry.getKey();
-				Double initialBalance = entry.getValue() + account.getInitialBalance();
-				source.setInitialBalance(account, initialBalance);
-			}
-		} else {
-			// Remove empty accounts from archive
-			for (int i=archive.getAccountsNumber()-1;i>=0;i--) {
-				Account account = archive.getAccount(i);
-				if (account.getTransactionsNumber()==0) {
-					archive.remove(account);
+		source.beginBatch();
+		try {
+			source.remove(transactions);
+			if (toArchive) {
+				// Compute the initial balance of accounts after transactions deletion
+				Map<Account, Double> accountToAmount = getAmounts(transactions);
+				for (Entry<Account, Double> entry : accountToAmount.entrySet()) {
+					Account account = entry.getKey();
+					Double initialBalance = entry.getValue() + account.getInitialBalance();
+					source.setInitialBalance(account, initialBalance);
+				}
+			} else {
+				// Remove empty accounts from archive
+				for (int i=archive.getAccountsNumber()-1;i>=0;i--) {
+					Account account = archive.getAccount(i);
+					if (account.getTransactionsNumber()==0) {
+						archive.remove(account);
+					}
 				}
 			}
+		} finally {
+			source.commit();
 		}
-		source.setEventsEnabled(true);
 	}
 
 	private static void copy(GlobalData data, Transaction[] transactions, boolean toArchive) {
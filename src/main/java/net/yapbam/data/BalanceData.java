@@ -48,12 +48,12 @@ public class BalanceData extends DefaultListenable {
 		if (transactions.length==0) {
 			return;
 		}
+		if (add) {
+			this.balanceHistory.add(transactions);
+		} else {
+			this.balanceHistory.remove(transactions);
+		}
 		for (Transaction transaction : transactions) {
-			if (add) {
-				this.balanceHistory.add(transaction);
-			} else {
-				this.balanceHistory.remove(transaction);
-			}
 			double amount = transaction.getAmount();
 			if (GlobalData.AMOUNT_COMPARATOR.compare(amount, 0.0)!=0) {
 				if (!add) {
@@ -71,6 +71,16 @@ public class BalanceData extends DefaultListenable {
 		this.fireEvent(new EverythingChangedEvent(this));
 	}
 
+	/** Replaces transactions by modified versions that can't change the balances.
+	 * <br>As the balances are unchanged, no event is fired.
+	 * @param oldTransactions the transactions to be replaced
+	 * @param newTransactions the new versions of the transactions (newTransactions[i] replaces oldTransactions[i])
+	 * @see BalanceHistory#replace(Transaction[], Transaction[])
+	 */
+	void replace(Transaction[] oldTransactions, Transaction[] newTransactions) {
+		this.balanceHistory.replace(oldTransactions, newTransactions);
+	}
+
 	void updateBalance(double amount, boolean add) {
 		if (amount==0) {
 			return;
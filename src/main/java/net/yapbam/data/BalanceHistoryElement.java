@@ -73,12 +73,4 @@ public class BalanceHistoryElement {
 //		System.out.println(MessageFormat.format("{0}.relativePosition({1,date,short})={2}", this,date,result));//CU
 		return result;
 	}
-
-	void add(double amount) {
-		this.balance += amount;
-	}
-
-	void setTo(Date date) {
-		this.to = date;
-	}
 }
@@ -0,0 +1,601 @@
+package net.yapbam.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.yapbam.util.ArrayUtils;
+
+/** An indexed prefix-sum tree keyed by value date.
+ * <br>This class is the engine behind {@link BalanceHistory}. Each node holds the sum of the amounts
+ * added at one value date and the transactions with that value date. Every node is augmented with
+ * aggregates on its subtree (amounts sum, number of balance changes, number of transactions and the
+ * minimum/maximum of the prefix sums), so inserts, removes and all the balance history queries run in logarithmic time.
+ * <br>The tree is a treap whose priorities are derived from the keys, so its shape is deterministic.
+ * <br>A node is a <i>boundary</i> when the balance changes at its date (its amount sum is not null according
+ * to the {@link GlobalData#AMOUNT_COMPARATOR}). Boundaries are the starts of the balance history elements.
+ * @see BalanceHistory
+ */
+final class BalanceTree {
+	/** When a batch of transactions is at least 1/REBUILD_RATIO of the tree size, the tree is rebuilt instead of updated. */
+	private static final int REBUILD_RATIO = 8;
+
+	static final class Node {
+		private final int date;
+		private final int priority;
+		private double delta;
+		private boolean boundary;
+		private List<Transaction> transactions;
+		private Node left;
+		private Node right;
+		// Subtree aggregates
+		private double sum;
+		private double min;
+		private double max;
+		private int boundaries;
+		private int count;
+
+		private Node(int date) {
+			this.date = date;
+			this.priority = priority(date);
+			this.min = Double.POSITIVE_INFINITY;
+			this.max = Double.NEGATIVE_INFINITY;
+		}
+
+		/** Gets the node's date.
+		 * @return the date in its integer representation
+		 */
+		int getDate() {
+			return date;
+		}
+
+		private int size() {
+			return transactions==null?0:transactions.size();
+		}
+
+		private boolean isEmpty() {
+			return !boundary && size()==0;
+		}
+	}
+
+	private Node root;
+
+	/** Gets the number of boundaries (dates where the balance changes) in the tree.
+	 * @return a positive or null integer
+	 */
+	int getBoundaries() {
+		return boundaries(root);
+	}
+
+	/** Gets the number of transactions in the tree.
+	 * @return a positive or null integer
+	 */
+	int getTransactionsNumber() {
+		return count(root);
+	}
+
+	/** Adds an amount at a date.
+	 * @param date The date in its integer representation
+	 * @param amount The amount to add
+	 * @param transaction A transaction to add at that date or null to add the amount only
+	 */
+	void add(int date, double amount, Transaction transaction) {
+		root = update(root, date, amount, transaction, true);
+	}
+
+	/** Adds transactions.
+	 * <br>If the batch is big compared to the tree, the tree is rebuilt once in linear time (after the batch is sorted),
+	 * instead of inserting the transactions one by one.
+	 * @param transactions The transactions to add
+	 */
+	void add(Transaction[] transactions) {
+		if (transactions.length*REBUILD_RATIO<getTransactionsNumber()) {
+			for (Transaction transaction : transactions) {
+				add(transaction.getValueDateAsInteger(), transaction.getAmount(), transaction);
+			}
+			return;
+		}
+		Transaction[] sorted = transactions.clone();
+		Arrays.sort(sorted, TransactionComparator.VALUE_DATE_COMPARATOR);
+		List<Node> nodes = new ArrayList<Node>();
+		flatten(root, nodes);
+		List<Node> result = new ArrayList<Node>(nodes.size()+sorted.length);
+		int i = 0;
+		int j = 0;
+		while (j<sorted.length) {
+			int date = sorted[j].getValueDateAsInteger();
+			while ((i<nodes.size()) && (nodes.get(i).date<date)) {
+				result.add(nodes.get(i++));
+			}
+			Node node;
+			if ((i<nodes.size()) && (nodes.get(i).date==date)) {
+				node = nodes.get(i++);
+			} else {
+				node = new Node(date);
+			}
+			// Find the transactions with the same date
+			int end = j+1;
+			while ((end<sorted.length) && (sorted[end].getValueDateAsInteger()==date)) {
+				end++;
+			}
+			List<Transaction> added = Arrays.asList(sorted).subList(j, end);
+			if (node.transactions==null) {
+				node.transactions = new ArrayList<Transaction>(added);
+			} else {
+				ArrayUtils.merge(node.transactions, added.toArray(new Transaction[added.size()]), TransactionComparator.VALUE_DATE_COMPARATOR);
+			}
+			for (Transaction transaction : added) {
+				node.delta += transaction.getAmount();
+			}
+			node.boundary = GlobalData.AMOUNT_COMPARATOR.compare(node.delta, 0.0)!=0;
+			result.add(node);
+			j = end;
+		}
+		while (i<nodes.size()) {
+			result.add(nodes.get(i++));
+		}
+		root = build(result);
+	}
+
+	/** Removes an amount at a date.
+	 * @param date The date in its integer representation
+	 * @param amount The amount to remove
+	 * @param transaction A transaction to remove at that date or null to remove the amount only.
+	 * If the transaction is not in the tree, only the amount is removed.
+	 */
+	void remove(int date, double amount, Transaction transaction) {
+		root = update(root, date, -amount, transaction, false);
+	}
+
+	/** Removes transactions.
+	 * <br>If the batch is big compared to the tree, the transactions are removed from the nodes in one pass (after the batch is sorted),
+	 * then the tree is rebuilt once in linear time, instead of removing the transactions one by one.
+	 * <br>As with remove(int, double, Transaction), the amount of a transaction that is not in the tree is removed anyway.
+	 * @param transactions The transactions to remove
+	 */
+	void remove(Transaction[] transactions) {
+		if (transactions.length*REBUILD_RATIO<getTransactionsNumber()) {
+			for (Transaction transaction : transactions) {
+				remove(transaction.getValueDateAsInteger(), transaction.getAmount(), transaction);
+			}
+			return;
+		}
+		Transaction[] sorted = transactions.clone();
+		Arrays.sort(sorted, TransactionComparator.VALUE_DATE_COMPARATOR);
+		List<Node> nodes = new ArrayList<Node>();
+		flatten(root, nodes);
+		List<Node> result = new ArrayList<Node>(nodes.size());
+		int i = 0;
+		int j = 0;
+		while (j<sorted.length) {
+			int date = sorted[j].getValueDateAsInteger();
+			while ((i<nodes.size()) && (nodes.get(i).date<date)) {
+				result.add(nodes.get(i++));
+			}
+			Node node;
+			if ((i<nodes.size()) && (nodes.get(i).date==date)) {
+				node = nodes.get(i++);
+			} else {
+				node = new Node(date);
+			}
+			// Find the transactions with the same date
+			int end = j+1;
+			while ((end<sorted.length) && (sorted[end].getValueDateAsInteger()==date)) {
+				end++;
+			}
+			List<Transaction> removed = Arrays.asList(sorted).subList(j, end);
+			if (node.transactions!=null) {
+				ArrayUtils.removeAll(node.transactions, removed, TransactionComparator.VALUE_DATE_COMPARATOR);
+			}
+			for (Transaction transaction : removed) {
+				node.delta -= transaction.getAmount();
+			}
+			node.boundary = GlobalData.AMOUNT_COMPARATOR.compare(node.delta, 0.0)!=0;
+			if (!node.isEmpty()) {
+				result.add(node);
+			}
+			j = end;
+		}
+		while (i<nodes.size()) {
+			result.add(nodes.get(i++));
+		}
+		root = build(result);
+	}
+
+	/** Replaces a transaction by another one, at the same place.
+	 * @param oldTransaction The transaction to replace
+	 * @param newTransaction The new transaction. TransactionComparator.VALUE_DATE_COMPARATOR should find it equal to the old one,
+	 * so it has the same place in the tree.
+	 * @return false if the old transaction is not in the tree (then, nothing is changed)
+	 */
+	boolean replace(Transaction oldTransaction, Transaction newTransaction) {
+		int date = oldTransaction.getValueDateAsInteger();
+		Node node = root;
+		while ((node!=null) && (node.date!=date)) {
+			node = date<node.date ? node.left : node.right;
+		}
+		if ((node==null) || (node.size()==0)) {
+			return false;
+		}
+		int index = Collections.binarySearch(node.transactions, oldTransaction, TransactionComparator.VALUE_DATE_COMPARATOR);
+		if (index<0) {
+			return false;
+		}
+		node.transactions.set(index, newTransaction);
+		return true;
+	}
+
+	/** Gets the sum of the amounts at dates lower or equal to a date.
+	 * @param date The date in its integer representation
+	 * @return a double
+	 */
+	double getPrefixSum(int date) {
+		double result = 0.0;
+		Node node = root;
+		while (node!=null) {
+			if (node.date<=date) {
+				result += sum(node.left)+node.delta;
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	/** Gets the number of boundaries at dates lower or equal to a date.
+	 * @param date The date in its integer representation
+	 * @return a positive or null integer
+	 */
+	int getBoundaries(int date) {
+		int result = 0;
+		Node node = root;
+		while (node!=null) {
+			if (node.date<=date) {
+				result += boundaries(node.left)+(node.boundary?1:0);
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	/** Gets a boundary by its rank.
+	 * @param index The boundary rank (0 is the first boundary).
+	 * @return a node
+	 * @throws IndexOutOfBoundsException if there is no boundary with that index
+	 */
+	Node getBoundary(int index) {
+		if (index<0 || index>=getBoundaries()) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		Node node = root;
+		while (true) {
+			int leftBoundaries = boundaries(node.left);
+			if (index<leftBoundaries) {
+				node = node.left;
+			} else if (node.boundary && index==leftBoundaries) {
+				return node;
+			} else {
+				index -= leftBoundaries+(node.boundary?1:0);
+				node = node.right;
+			}
+		}
+	}
+
+	/** Gets the minimum of the prefix sums at the boundaries lower or equal to a date.
+	 * @param date The date in its integer representation
+	 * @return a double, Double.POSITIVE_INFINITY if there is no such boundary.
+	 */
+	double getMinPrefixSum(int date) {
+		double result = Double.POSITIVE_INFINITY;
+		double offset = 0.0;
+		Node node = root;
+		while (node!=null) {
+			if (node.date<=date) {
+				if (node.left!=null) {
+					result = Math.min(result, offset+node.left.min);
+				}
+				offset += sum(node.left)+node.delta;
+				if (node.boundary) {
+					result = Math.min(result, offset);
+				}
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	/** Gets the maximum of the prefix sums at the boundaries lower or equal to a date.
+	 * @param date The date in its integer representation
+	 * @return a double, Double.NEGATIVE_INFINITY if there is no such boundary.
+	 */
+	double getMaxPrefixSum(int date) {
+		double result = Double.NEGATIVE_INFINITY;
+		double offset = 0.0;
+		Node node = root;
+		while (node!=null) {
+			if (node.date<=date) {
+				if (node.left!=null) {
+					result = Math.max(result, offset+node.left.max);
+				}
+				offset += sum(node.left)+node.delta;
+				if (node.boundary) {
+					result = Math.max(result, offset);
+				}
+				node = node.right;
+			} else {
+				node = node.left;
+			}
+		}
+		return result;
+	}
+
+	/** Finds the first boundary, in a date range, where the balance triggers an alert.
+	 * @param from The date range start (excluded) in its integer representation
+	 * @param to The date range end (included) in its integer representation
+	 * @param initialBalance The balance before the first node
+	 * @param alert The alert threshold
+	 * @return a node or null if no boundary in the range triggers the alert
+	 */
+	Node getFirstAlert(int from, int to, double initialBalance, AlertThreshold alert) {
+		return getFirstAlert(root, initialBalance, from, to, alert);
+	}
+
+	private Node getFirstAlert(Node node, double offset, int from, int to, AlertThreshold alert) {
+		if ((node==null) || ((offset+node.min>=alert.getLessThreshold()) && (offset+node.max<=alert.getMoreThreshold()))) {
+			// Subtree aggregates show that no balance of this subtree can trigger the alert
+			return null;
+		}
+		if (node.date>from) {
+			Node result = getFirstAlert(node.left, offset, from, to, alert);
+			if (result!=null) {
+				return result;
+			}
+		}
+		double balance = offset+sum(node.left)+node.delta;
+		if (node.boundary && (node.date>from) && (node.date<=to) && (alert.getTrigger(balance)!=0)) {
+			return node;
+		}
+		return node.date<to ? getFirstAlert(node.right, balance, from, to, alert) : null;
+	}
+
+	/** Gets a transaction by its rank.
+	 * @param index The transaction's rank in the value date order.
+	 * @return a transaction
+	 * @throws IndexOutOfBoundsException if there is no transaction with that index
+	 */
+	Transaction getTransaction(int index) {
+		if (index<0 || index>=getTransactionsNumber()) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+		Node node = root;
+		while (true) {
+			int leftCount = count(node.left);
+			if (index<leftCount) {
+				node = node.left;
+			} else if (index<leftCount+node.size()) {
+				return node.transactions.get(index-leftCount);
+			} else {
+				index -= leftCount+node.size();
+				node = node.right;
+			}
+		}
+	}
+
+	/** Gets the rank of a transaction.
+	 * @param transaction The transaction to search for
+	 * @return the transaction's rank in the value date order, or a negative number if the transaction is not in the tree.
+	 */
+	int indexOf(Transaction transaction) {
+		int date = transaction.getValueDateAsInteger();
+		int result = 0;
+		Node node = root;
+		while (node!=null) {
+			if (node.date<date) {
+				result += count(node.left)+node.size();
+				node = node.right;
+			} else if (node.date>date) {
+				node = node.left;
+			} else {
+				int index = node.size()==0 ? -1 : Collections.binarySearch(node.transactions, transaction, TransactionComparator.VALUE_DATE_COMPARATOR);
+				return index<0 ? -1 : result+count(node.left)+index;
+			}
+		}
+		return -1;
+	}
+
+	/** Gets the transactions with a value date in a range.
+	 * @param from The range start (included) in its integer representation
+	 * @param to The range end (excluded) in its integer representation
+	 * @param result The list where to add the transactions (in the value date order)
+	 */
+	void getTransactions(int from, int to, List<Transaction> result) {
+		getTransactions(root, from, to, result);
+	}
+
+	private static void getTransactions(Node node, int from, int to, List<Transaction> result) {
+		if (node==null) {
+			return;
+		}
+		if (node.date>from) {
+			getTransactions(node.left, from, to, result);
+		}
+		if ((node.date>=from) && (node.date<to) && (node.transactions!=null)) {
+			result.addAll(node.transactions);
+		}
+		if (node.date<to) {
+			getTransactions(node.right, from, to, result);
+		}
+	}
+
+	private static void flatten(Node node, List<Node> result) {
+		if (node!=null) {
+			flatten(node.left, result);
+			result.add(node);
+			flatten(node.right, result);
+		}
+	}
+
+	/** Builds a treap from nodes sorted by date, in linear time.
+	 * @param nodes The nodes sorted by date
+	 * @return the root of the tree
+	 */
+	private static Node build(List<Node> nodes) {
+		// The nodes are sorted by date, so the tree is the Cartesian tree of the priorities.
+		// It is built using a stack that contains the right spine of the tree built so far.
+		Node[] stack = new Node[nodes.size()];
+		int top = -1;
+		for (Node node : nodes) {
+			Node last = null;
+			while ((top>=0) && (stack[top].priority<node.priority)) {
+				last = stack[top--];
+			}
+			node.left = last;
+			node.right = null;
+			if (top>=0) {
+				stack[top].right = node;
+			}
+			stack[++top] = node;
+		}
+		Node result = top>=0 ? stack[0] : null;
+		pullAll(result);
+		return result;
+	}
+
+	private static void pullAll(Node node) {
+		if (node!=null) {
+			pullAll(node.left);
+			pullAll(node.right);
+			pull(node);
+		}
+	}
+
+	private static Node update(Node node, int date, double amount, Transaction transaction, boolean add) {
+		if (node==null) {
+			node = new Node(date);
+			apply(node, amount, transaction, add);
+			pull(node);
+			return node.isEmpty() ? null : node;
+		}
+		if (date<node.date) {
+			node.left = update(node.left, date, amount, transaction, add);
+			if ((node.left!=null) && (node.left.priority>node.priority)) {
+				node = rotateRight(node);
+			}
+		} else if (date>node.date) {
+			node.right = update(node.right, date, amount, transaction, add);
+			if ((node.right!=null) && (node.right.priority>node.priority)) {
+				node = rotateLeft(node);
+			}
+		} else {
+			apply(node, amount, transaction, add);
+			if (node.isEmpty()) {
+				return merge(node.left, node.right);
+			}
+		}
+		pull(node);
+		return node;
+	}
+
+	private static void apply(Node node, double amount, Transaction transaction, boolean add) {
+		node.delta += amount;
+		// WARNING : a simple test like "delta==0" is wrong because of the lack of precision
+		// of double representation. We have to test that the difference is less than the currency precision
+		node.boundary = GlobalData.AMOUNT_COMPARATOR.compare(node.delta, 0.0)!=0;
+		if (transaction!=null) {
+			if (add) {
+				if (node.transactions==null) {
+					node.transactions = new ArrayList<Transaction>(1);
+				}
+				int index = -Collections.binarySearch(node.transactions, transaction, TransactionComparator.VALUE_DATE_COMPARATOR)-1;
+				node.transactions.add(index, transaction);
+			} else if (node.transactions!=null) {
+				int index = Collections.binarySearch(node.transactions, transaction, TransactionComparator.VALUE_DATE_COMPARATOR);
+				if (index>=0) {
+					node.transactions.remove(index);
+				}
+			}
+		}
+	}
+
+	private static Node rotateRight(Node node) {
+		Node result = node.left;
+		node.left = result.right;
+		result.right = node;
+		pull(node);
+		pull(result);
+		return result;
+	}
+
+	private static Node rotateLeft(Node node) {
+		Node result = node.right;
+		node.right = result.left;
+		result.left = node;
+		pull(node);
+		pull(result);
+		return result;
+	}
+
+	private static Node merge(Node left, Node right) {
+		if (left==null) {
+			return right;
+		} else if (right==null) {
+			return left;
+		} else if (left.priority>right.priority) {
+			left.right = merge(left.right, right);
+			pull(left);
+			return left;
+		} else {
+			right.left = merge(left, right.left);
+			pull(right);
+			return right;
+		}
+	}
+
+	/** Recomputes the aggregates of a node from its children. */
+	private static void pull(Node node) {
+		double leftSum = sum(node.left);
+		double value = leftSum+node.delta;
+		node.sum = value+sum(node.right);
+		node.count = count(node.left)+node.size()+count(node.right);
+		node.boundaries = boundaries(node.left)+(node.boundary?1:0)+boundaries(node.right);
+		double min = node.boundary?value:Double.POSITIVE_INFINITY;
+		double max = node.boundary?value:Double.NEGATIVE_INFINITY;
+		if (node.left!=null) {
+			min = Math.min(min, node.left.min);
+			max = Math.max(max, node.left.max);
+		}
+		if (node.right!=null) {
+			min = Math.min(min, value+node.right.min);
+			max = Math.max(max, value+node.right.max);
+		}
+		node.min = min;
+		node.max = max;
+	}
+
+	private static double sum(Node node) {
+		return node==null?0.0:node.sum;
+	}
+
+	private static int count(Node node) {
+		return node==null?0:node.count;
+	}
+
+	private static int boundaries(Node node) {
+		return node==null?0:node.boundaries;
+	}
+
+	/** Computes a pseudo random, but deterministic, priority from a date. */
+	private static int priority(int date) {
+		int h = date*0x9E3779B9;
+		h ^= h>>>16;
+		h *= 0x85EBCA6B;
+		h ^= h>>>13;
+		return h;
+	}
+}
@@ -1,11 +1,9 @@
 package net.yapbam.data;
 
-import java.util.Calendar;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -14,42 +12,35 @@ import net.yapbam.util.DateUtils;
 
 /** A budget based on the filtered data.
  *  <br>This budget can be built on a "per month" or a "per year" basis.
+ *  <br>Added or removed transactions are applied to the budget as deltas, the budget is completely rebuilt only when
+ *  the filter or the categories change.
  *  @see FilteredData
  */
 public class BudgetView extends DefaultListenable {
 	private FilteredData data;
+	private DataListener listener;
 	private boolean year;
 	private boolean valueDate;
-	private Map<Key, Double> values;
-	private Calendar firstDate;
-	private Calendar lastDate;
-	private List<Category> categories;
-	private Map<Category, Double> categoryToSum;
-	private Map<Date, Double> dateToSum;
 	private double sum;
 	private boolean groupSubCategories;
-	
-	private static final class Key {
-		Date date;
-		Category category;
-		Key(Date date, Category category) {
-			super();
-			this.date = date;
-			this.category = category;
-		}
-		@Override
-		public boolean equals(Object obj) {
-			if (!(obj instanceof Key)) {
-				return false;
-			}
-			Key key = (Key) obj;
-			return this.date.equals(key.date) && this.category.equals(key.category);
-		}
-		@Override
-		public int hashCode() {
-			return category.hashCode()+date.hashCode();
-		}
-	}
+	// The budget category of each global data category (categories are merged when sub-categories are grouped) 
+	private Map<Category, Category> catMap;
+	// The sorted categories that have at least one amount in the budget
+	private List<Category> categories;
+	// The ordinal of each category in the cells matrix
+	private Map<Category, Integer> ordinals;
+	// The period (see getPeriod) of the first row of the cells matrix
+	private int origin;
+	// The amounts and the number of amounts of each cell, indexed by period offset and category ordinal
+	private double[][] amounts;
+	private int[][] counts;
+	private double[] dateSums;
+	private int[] dateCounts;
+	private double[] categorySums;
+	private int[] categoryCounts;
+	// The first and last rows that contain amounts (firstRow>lastRow if the budget is empty)
+	private int firstRow;
+	private int lastRow;
 	
 	/** Constructor.
 	 * @param data The filtered data on which to build the budget
@@ -57,30 +48,49 @@ public class BudgetView extends DefaultListenable {
 	 */
 	public BudgetView(FilteredData data, boolean year) {
 		this.data = data;
-		this.data.addListener(new DataListener() {
+		this.listener = new DataListener() {
 			@Override
 			public void processEvent(DataEvent event) {
-				if (! isNeutral(event)) {
+				if (event instanceof TransactionsAddedEvent) {
+					update(((TransactionsAddedEvent)event).getTransactions(), true);
+				} else if (event instanceof TransactionsRemovedEvent) {
+					update(((TransactionsRemovedEvent)event).getTransactions(), false);
+				} else if (event instanceof TransactionsModifiedEvent) {
+					TransactionsModifiedEvent modified = (TransactionsModifiedEvent) event;
+					update(modified.getOldTransactions(), modified.getNewTransactions());
+				} else if (event instanceof BatchCommittedEvent) {
+					update((BatchCommittedEvent)event);
+				} else {
 					update();
 				}
 			}
-		});
+		};
+		this.data.addWeakListener(this.listener, TransactionsAddedEvent.class, TransactionsRemovedEvent.class, TransactionsModifiedEvent.class, BatchCommittedEvent.class,
+				EverythingChangedEvent.class, CategoryAddedEvent.class, CategoryRemovedEvent.class, CategoryPropertyChangedEvent.class,
+				SubCategorySeparatorChangedEvent.class);
 		this.year = year;
 		this.groupSubCategories = false;
 		build();
 	}
 	
-	/** Tests whether an event may have any impact on the budget view.
-	 * <br>For instance, NeedToBeSavedChangedEvent has no effect on the budgetView, but TransactionsAddedEvent has.
+	/** Detaches this from the filtered data.
+	 * <br>After this call, this no longer reflects the changes of the filtered data.
+	 * <br>Calling this method is not mandatory, this is registered as a weak listener and will be garbage collected when not used anymore,
+	 * but it stops the events processing immediately, without waiting for the garbage collector.
+	 */
+	public void dispose() {
+		this.data.removeListener(this.listener);
+	}
+
+	/** Tests whether an event of a batch may have any impact on the budget view.
+	 * <br>Only the events, other than the transactions ones, this view subscribes to have an impact.
+	 * For instance, NeedToBeSavedChangedEvent has no effect on the budgetView, but CategoryAddedEvent has.
 	 * @param event The event to test
 	 * @return true if the event has no effect on this view
 	 */
 	private boolean isNeutral(DataEvent event) {
-		return (event instanceof NeedToBeSavedChangedEvent) || (event instanceof PasswordChangedEvent) || (event instanceof URIChangedEvent) 
-			|| (event instanceof AccountAddedEvent) || (event instanceof AccountRemovedEvent) || (event instanceof AccountPropertyChangedEvent)
-			|| (event instanceof ModeAddedEvent) || (event instanceof ModeRemovedEvent) || (event instanceof ModePropertyChangedEvent)
-			|| (event instanceof CheckbookPropertyChangedEvent) || (event instanceof CheckbookAddedEvent) || (event instanceof CheckbookRemovedEvent)
-			|| (event instanceof PeriodicalTransactionsAddedEvent) || (event instanceof PeriodicalTransactionsRemovedEvent);
+		return !((event instanceof EverythingChangedEvent) || (event instanceof CategoryAddedEvent) || (event instanceof CategoryRemovedEvent)
+			|| (event instanceof CategoryPropertyChangedEvent) || (event instanceof SubCategorySeparatorChangedEvent));
 	}
 	
 	/** Sets the sub-categories grouped attribute.
@@ -143,10 +153,7 @@ public class BudgetView extends DefaultListenable {
 	 * @return an integer. 0 if the budget is empty.
 	 */
 	public int getDatesSize() {
-		if (this.firstDate==null) {
-			return 0;
-		}
-		return 1+(this.year?this.lastDate.get(Calendar.YEAR)-this.firstDate.get(Calendar.YEAR):DateUtils.getMonthlyDistance(this.firstDate, this.lastDate));
+		return Math.max(0, this.lastRow-this.firstRow+1);
 	}
 	
 	/** Gets the beginning date of a time period in the budget.
@@ -160,13 +167,7 @@ public class BudgetView extends DefaultListenable {
 		if (index>=getDatesSize()) {
 			throw new ArrayIndexOutOfBoundsException(index);
 		}
-		Calendar c = (Calendar) this.firstDate.clone();
-		if (year) {
-			c.set(c.get(Calendar.YEAR)+index, 0, 1);
-		} else {
-			c.add(Calendar.MONTH, index);
-		}
-		return c.getTime();
+		return DateUtils.integerToDate(getFirstDay(this.origin+this.firstRow+index));
 	}
 
 
@@ -181,14 +182,8 @@ public class BudgetView extends DefaultListenable {
 		if (index>=getDatesSize()) {
 			throw new ArrayIndexOutOfBoundsException(index);
 		}
-		Calendar c = (Calendar) this.firstDate.clone();
-		if (year) {
-			c.set(c.get(Calendar.YEAR)+index, 11, 31);
-		} else {
-			c.add(Calendar.MONTH, index);
-			c.set(Calendar.DATE, c.getActualMaximum(Calendar.DATE));
-		}
-		return c.getTime();
+		int first = getFirstDay(this.origin+this.firstRow+index);
+		return DateUtils.integerToDate(DateUtils.getMonthDate(first, year?11:0, 31));
 	}
 	
 	/** Gets the amount for a date and a category.
@@ -199,7 +194,12 @@ public class BudgetView extends DefaultListenable {
 	 * @see #getCategory(int)
 	 */
 	public Double getAmount(Date date, Category category) {
-		return values.get(new Key(date, category));
+		int row = getRow(date);
+		Integer column = this.ordinals.get(category);
+		if ((row<0) || (column==null) || (this.counts[row][column]==0)) {
+			return null;
+		}
+		return this.amounts[row][column];
 	}
 	
 	/** Gets the sum of amounts of all categories for a date.
@@ -208,8 +208,17 @@ public class BudgetView extends DefaultListenable {
 	 * @see #getDate(int)
 	 */
 	public double getSum(Date date) {
-		Double result = this.dateToSum.get(date);
-		return result==null?0.0:result;
+		int row = getRow(date);
+		return row<0?0.0:this.dateSums[row];
+	}
+	
+	/** Gets the row of a date in the cells matrix.
+	 * @param date a date
+	 * @return the row index or a negative number if the date is outside the matrix
+	 */
+	private int getRow(Date date) {
+		int row = getPeriod(DateUtils.dateToInteger(date))-this.origin;
+		return (row<0) || (row>=this.dateSums.length)?-1:row;
 	}
 	
 	/** Gets the sum of amounts of all dates for a category.
@@ -218,8 +227,8 @@ public class BudgetView extends DefaultListenable {
 	 * @see #getCategory(int)
 	 */
 	public double getSum(Category category) {
-		Double result = this.categoryToSum.get(category);
-		return result==null?0.0:result;
+		Integer column = this.ordinals.get(category);
+		return column==null?0.0:this.categorySums[column];
 	}
 	
 	/** Gets the amount average of all dates for a category.
@@ -240,91 +249,229 @@ public class BudgetView extends DefaultListenable {
 		this.fireEvent(new EverythingChangedEvent(this));
 	}
 
+	/** Applies added or removed transactions to the budget and send related events.
+	 * @param transactions The transactions added to or removed from the filtered data.
+	 * @param add true if the transactions were added, false if they were removed
+	 */
+	private void update(Transaction[] transactions, boolean add) {
+		for (Transaction transaction : transactions) {
+			add(transaction, add?1:-1);
+		}
+		this.fireEvent(new EverythingChangedEvent(this));
+	}
+
+	/** Replaces the amounts of transactions by the ones of their new versions.
+	 * @param oldTransactions The replaced transactions
+	 * @param newTransactions The new versions of the transactions
+	 */
+	private void update(Transaction[] oldTransactions, Transaction[] newTransactions) {
+		for (int i = 0; i < oldTransactions.length; i++) {
+			add(oldTransactions[i], -1);
+			add(newTransactions[i], 1);
+		}
+		this.fireEvent(new EverythingChangedEvent(this));
+	}
+
+	/** Applies a batch of changes to the budget and send related events.
+	 * <br>The budget is computed again only if one of the batch events, other than the transactions ones, may have an impact on it.
+	 * @param batch The batch event
+	 */
+	private void update(BatchCommittedEvent batch) {
+		for (DataEvent event : batch.getEvents()) {
+			if (!isNeutral(event)) {
+				update();
+				return;
+			}
+		}
+		for (Transaction transaction : batch.getRemovedTransactions()) {
+			add(transaction, -1);
+		}
+		Transaction[] oldTransactions = batch.getOldTransactions();
+		Transaction[] newTransactions = batch.getNewTransactions();
+		for (int i = 0; i < oldTransactions.length; i++) {
+			add(oldTransactions[i], -1);
+			add(newTransactions[i], 1);
+		}
+		for (Transaction transaction : batch.getAddedTransactions()) {
+			add(transaction, 1);
+		}
+		this.fireEvent(new EverythingChangedEvent(this));
+	}
+
 	/** Computes the budget. */
 	private void build() {
-		this.values = new HashMap<Key, Double>();
-		this.categoryToSum = new HashMap<Category, Double>();
-		this.dateToSum = new HashMap<Date, Double>();
-		this.firstDate = null;
-		this.lastDate = null;
-		this.categories = new LinkedList<Category>();
-		this.sum = 0.0;
-		
-		HashMap<Category, Category> catMap = new HashMap<Category, Category>();
+		this.catMap = new HashMap<Category, Category>();
 		for (int i = 0; i < data.getGlobalData().getCategoriesNumber(); i++) {
 			Category cat = data.getGlobalData().getCategory(i);
 			catMap.put(cat, groupSubCategories?cat.getSuperCategory(data.getGlobalData().getSubCategorySeparator()):cat);
 		}
+		this.categories = new ArrayList<Category>();
+		this.ordinals = new HashMap<Category, Integer>();
+		this.origin = 0;
+		this.amounts = new double[0][];
+		this.counts = new int[0][];
+		this.dateSums = new double[0];
+		this.dateCounts = new int[0];
+		this.categorySums = new double[0];
+		this.categoryCounts = new int[0];
+		this.firstRow = 0;
+		this.lastRow = -1;
+		this.sum = 0.0;
 		
 		for (int i = 0; i < data.getTransactionsNumber(); i++) {
-			Transaction transaction = data.getTransaction(i);
-			Date date = getNormalizedDate(this.valueDate?transaction.getValueDate():transaction.getDate());
-			for (int j = 0; j < transaction.getSubTransactionSize(); j++) {
-				SubTransaction subTransaction = transaction.getSubTransaction(j);
-				if (this.data.getFilter().isOk(subTransaction)) {
-					add (new Key(date, catMap.get(subTransaction.getCategory())), subTransaction.getAmount());
-					this.sum = this.sum + subTransaction.getAmount();
-				}
-			}
-			if (this.data.getFilter().isComplementOk(transaction)) {
-				add (new Key(date, catMap.get(transaction.getCategory())), transaction.getComplement());
-				this.sum = this.sum + transaction.getComplement();
+			add(data.getTransaction(i), 1);
+		}
+	}
+
+	/** Adds or removes the amounts of a transaction that match the filter.
+	 * @param transaction The transaction
+	 * @param sign 1 to add the transaction, -1 to remove it
+	 */
+	private void add(Transaction transaction, int sign) {
+		int period = getPeriod(this.valueDate?transaction.getValueDateAsInteger():transaction.getDateAsInteger());
+		Filter filter = this.data.getFilter();
+		for (int j = 0; j < transaction.getSubTransactionSize(); j++) {
+			SubTransaction subTransaction = transaction.getSubTransaction(j);
+			if (filter.isOk(subTransaction)) {
+				add(period, getBudgetCategory(subTransaction.getCategory()), subTransaction.getAmount(), sign);
 			}
 		}
+		if (filter.isComplementOk(transaction)) {
+			add(period, getBudgetCategory(transaction.getCategory()), transaction.getComplement(), sign);
+		}
+	}
+
+	private Category getBudgetCategory(Category category) {
+		Category result = catMap.get(category);
+		if (result==null) {
+			result = groupSubCategories?category.getSuperCategory(data.getGlobalData().getSubCategorySeparator()):category;
+			catMap.put(category, result);
+		}
+		return result;
 	}
 	
-	private void add(Key key, double amount) {
-		if (amount!=0) {
-			// Insert the date in the budget (refresh first and last date)
-			Calendar c = new GregorianCalendar();
-			c.setTime(key.date);
-			if (firstDate==null) { // There's currently no date in the budget
-				this.firstDate = c;
-				this.lastDate = this.firstDate;
+	private void add(int period, Category category, double amount, int sign) {
+		if (amount==0) {
+			return;
+		}
+		int row = getRow(period);
+		int column = getColumn(category);
+		amount = sign*amount;
+		this.sum += amount;
+		this.counts[row][column] += sign;
+		this.amounts[row][column] = this.counts[row][column]==0 ? 0.0 : this.amounts[row][column]+amount;
+		this.dateCounts[row] += sign;
+		this.dateSums[row] = this.dateCounts[row]==0 ? 0.0 : this.dateSums[row]+amount;
+		this.categoryCounts[column] += sign;
+		this.categorySums[column] = this.categoryCounts[column]==0 ? 0.0 : this.categorySums[column]+amount;
+		// Update the categories and dates of the budget
+		if ((sign>0) && (this.categoryCounts[column]==1)) {
+			categories.add(-Collections.binarySearch(categories, category)-1, category);
+		} else if ((sign<0) && (this.categoryCounts[column]==0)) {
+			categories.remove(Collections.binarySearch(categories, category));
+		}
+		if (sign>0) {
+			if (this.firstRow>this.lastRow) {
+				this.firstRow = row;
+				this.lastRow = row;
 			} else {
-				if (DateUtils.getMonthlyDistance(firstDate, c)<0) {
-					this.firstDate = c;
-				} else if (DateUtils.getMonthlyDistance(lastDate, c)>0) {
-					this.lastDate = c;
-				}
-			}
-			// Insert the category in the budget
-			int index = Collections.binarySearch(categories, key.category);
-			if (index<0) {
-				categories.add(-index-1, key.category);
+				this.firstRow = Math.min(this.firstRow, row);
+				this.lastRow = Math.max(this.lastRow, row);
 			}
-			// Add the amount to that category/date item
-			Double value = this.values.get(key);
-			if (value==null) {
-				value = 0.0;
+		} else {
+			while ((this.firstRow<=this.lastRow) && (this.dateCounts[this.firstRow]==0)) {
+				this.firstRow++;
 			}
-			value += amount;
-			this.values.put (key, value);
-			// Add the amount to that category sum
-			value = this.categoryToSum.get(key.category);
-			if (value==null) {
-				value = 0.0;
+			while ((this.firstRow<=this.lastRow) && (this.dateCounts[this.lastRow]==0)) {
+				this.lastRow--;
 			}
-			value += amount;
-			this.categoryToSum.put (key.category, value);
-			// Add the amount to that date sum
-			value = this.dateToSum.get(key.date);
-			if (value==null) {
-				value = 0.0;
+		}
+	}
+
+	/** Gets the row of a period in the cells matrix, growing the matrix if needed.
+	 * @param period a period
+	 * @return the row index
+	 */
+	private int getRow(int period) {
+		int rows = this.dateSums.length;
+		if (rows==0) {
+			this.origin = period;
+		}
+		int before = Math.max(0, this.origin-period);
+		int after = Math.max(0, period-this.origin-rows+1);
+		if ((before!=0) || (after!=0)) {
+			// Grow the matrix
+			int columns = this.categorySums.length;
+			double[][] newAmounts = new double[before+rows+after][];
+			int[][] newCounts = new int[newAmounts.length][];
+			System.arraycopy(this.amounts, 0, newAmounts, before, rows);
+			System.arraycopy(this.counts, 0, newCounts, before, rows);
+			for (int i = 0; i < newAmounts.length; i++) {
+				if (newAmounts[i]==null) {
+					newAmounts[i] = new double[columns];
+					newCounts[i] = new int[columns];
+				}
 			}
-			value += amount;
-			this.dateToSum.put (key.date, value);
+			this.amounts = newAmounts;
+			this.counts = newCounts;
+			this.dateSums = grow(this.dateSums, before, after);
+			this.dateCounts = grow(this.dateCounts, before, after);
+			this.origin -= before;
+			this.firstRow += before;
+			this.lastRow += before;
 		}
+		return period-this.origin;
 	}
 
-	private Date getNormalizedDate(Date date) {
-		Calendar c = new GregorianCalendar();
-		c.setTime(date);
-		c.set(Calendar.DAY_OF_MONTH, 1);
-		if (year) {
-			c.set(Calendar.MONTH, 0);
+	/** Gets the column of a category in the cells matrix, growing the matrix if needed.
+	 * @param category a category
+	 * @return the column index
+	 */
+	private int getColumn(Category category) {
+		Integer result = this.ordinals.get(category);
+		if (result==null) {
+			result = this.ordinals.size();
+			this.ordinals.put(category, result);
+			if (result>=this.categorySums.length) {
+				int after = Math.max(8, this.categorySums.length);
+				for (int i = 0; i < this.amounts.length; i++) {
+					this.amounts[i] = grow(this.amounts[i], 0, after);
+					this.counts[i] = grow(this.counts[i], 0, after);
+				}
+				this.categorySums = grow(this.categorySums, 0, after);
+				this.categoryCounts = grow(this.categoryCounts, 0, after);
+			}
 		}
-		return c.getTime();
+		return result;
+	}
+
+	private static double[] grow(double[] array, int before, int after) {
+		double[] result = new double[before+array.length+after];
+		System.arraycopy(array, 0, result, before, array.length);
+		return result;
+	}
+
+	private static int[] grow(int[] array, int before, int after) {
+		int[] result = new int[before+array.length+after];
+		System.arraycopy(array, 0, result, before, array.length);
+		return result;
+	}
+
+	/** Gets the time period that contains a date.
+	 * @param date a date in the DateUtils.dateToInteger format
+	 * @return the year if the budget is per year, the number of months since year 0 if it is per month
+	 */
+	private int getPeriod(int date) {
+		return year ? DateUtils.getYear(date) : DateUtils.getYear(date)*12+DateUtils.getMonth(date)-1;
+	}
+
+	/** Gets the first day of a time period.
+	 * @param period a time period
+	 * @return the first day of the period in the DateUtils.dateToInteger format
+	 * @see #getPeriod(int)
+	 */
+	private int getFirstDay(int period) {
+		return year ? DateUtils.dateToInteger(period, 1, 1) : DateUtils.dateToInteger(period/12, period%12+1, 1);
 	}
 	
 	/** Gets the sum of all amounts contained in this view.
@@ -0,0 +1,192 @@
+package net.yapbam.data;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import net.yapbam.util.TextMatcher;
+
+/** An immutable snapshot of a filter's state, optimized to test transactions.
+ * <br>Clauses that filter nothing are dropped when the instance is built, date limits are compared as integers and
+ * accounts are tested by identity.
+ * <br>Instances are built by the filter itself and rebuilt only when the filter changes.
+ * @see Filter#isOk(Transaction)
+ */
+final class CompiledFilter {
+	/** A Mode.UNDEFINED is identified by an empty name in the filter's valid modes. */
+	private static final String UNDEFINED_MODE_NAME = ""; //$NON-NLS-1$
+
+	private final Set<Account> accounts;
+	private final Set<String> modes;
+	private final Set<Category> categories;
+	private final boolean checkDates;
+	private final int dateFrom;
+	private final int dateTo;
+	private final int valueDateFrom;
+	private final int valueDateTo;
+	private final boolean checkAmount;
+	private final boolean expensesOk;
+	private final boolean receiptsOk;
+	private final double minAmount;
+	private final double maxAmount;
+	private final boolean checkStatement;
+	private final boolean checkedOk;
+	private final boolean notCheckedOk;
+	private final TextMatcher statementMatcher;
+	private final TextMatcher descriptionMatcher;
+	private final TextMatcher commentMatcher;
+	private final TextMatcher numberMatcher;
+
+	/** Constructor.
+	 * @param filter The filter to compile
+	 */
+	CompiledFilter(Filter filter) {
+		List<Account> validAccounts = filter.getValidAccounts();
+		if (validAccounts==null) {
+			this.accounts = null;
+		} else {
+			// Accounts have no equals method, so an identity set is equivalent to a hash set, but faster
+			this.accounts = Collections.newSetFromMap(new IdentityHashMap<Account, Boolean>(validAccounts.size()));
+			this.accounts.addAll(validAccounts);
+		}
+		List<String> validModes = filter.getValidModes();
+		this.modes = validModes==null?null:new HashSet<String>(validModes);
+		List<Category> validCategories = filter.getValidCategories();
+		this.categories = validCategories==null?null:new HashSet<Category>(validCategories);
+		this.dateFrom = filter.getDateFromAsInteger();
+		this.dateTo = filter.getDateToAsInteger();
+		this.valueDateFrom = filter.getValueDateFromAsInteger();
+		this.valueDateTo = filter.getValueDateToAsInteger();
+		this.checkDates = (dateFrom!=Integer.MIN_VALUE) || (dateTo!=Integer.MAX_VALUE) ||
+				(valueDateFrom!=Integer.MIN_VALUE) || (valueDateTo!=Integer.MAX_VALUE);
+		this.expensesOk = filter.isOk(Filter.EXPENSES);
+		this.receiptsOk = filter.isOk(Filter.RECEIPTS);
+		this.minAmount = filter.getMinAmount();
+		this.maxAmount = filter.getMaxAmount();
+		this.checkAmount = !expensesOk || !receiptsOk || (minAmount!=0.0) || (maxAmount!=Double.POSITIVE_INFINITY);
+		this.checkedOk = filter.isOk(Filter.CHECKED);
+		this.notCheckedOk = filter.isOk(Filter.NOT_CHECKED);
+		this.statementMatcher = filter.getStatementMatcher();
+		this.checkStatement = !checkedOk || !notCheckedOk || (statementMatcher!=null);
+		this.descriptionMatcher = filter.getDescriptionMatcher();
+		this.commentMatcher = filter.getCommentMatcher();
+		this.numberMatcher = filter.getNumberMatcher();
+	}
+
+	boolean isOk(Account account) {
+		return (accounts==null) || accounts.contains(account);
+	}
+
+	private boolean isOk(Mode mode) {
+		return (modes==null) || modes.contains(mode.equals(Mode.UNDEFINED)?UNDEFINED_MODE_NAME:mode.getName());
+	}
+
+	private boolean isOk(Category category) {
+		return (categories==null) || categories.contains(category);
+	}
+
+	private boolean isAmountOk(double amount) {
+		if (!checkAmount) {
+			return true;
+		}
+		// We use the currency comparator to implement amount filtering because double are very tricky to compare.
+		int sign = GlobalData.AMOUNT_COMPARATOR.compare(amount, 0.0);
+		if (((sign<0) && !expensesOk) || ((sign>0) && !receiptsOk)) {
+			return false;
+		}
+		amount = Math.abs(amount);
+		return (GlobalData.AMOUNT_COMPARATOR.compare(amount, minAmount)>=0) && (GlobalData.AMOUNT_COMPARATOR.compare(amount, maxAmount)<=0);
+	}
+
+	private boolean isStatementOk(String statement) {
+		if (!checkStatement) {
+			return true;
+		}
+		if (statement==null) {
+			return notCheckedOk;
+		}
+		return checkedOk && ((statementMatcher==null) || statementMatcher.matches(statement));
+	}
+
+	private static boolean isOk(TextMatcher matcher, String text) {
+		return (matcher==null) || matcher.matches(text);
+	}
+
+	/** Gets a transaction's validity.
+	 * @param transaction The transaction to test.
+	 * @return true if the transaction is valid.
+	 * @see Filter#isOk(Transaction)
+	 */
+	boolean isOk(Transaction transaction) {
+		if (!isOk(transaction.getAccount()) || !isOk(transaction.getMode()) ||
+				!isStatementOk(transaction.getStatement()) || !isOk(numberMatcher, transaction.getNumber()) ||
+				!isOk(commentMatcher, transaction.getComment())) {
+			return false;
+		}
+		if (checkDates) {
+			int date = transaction.getDateAsInteger();
+			if ((date<dateFrom) || (date>dateTo)) {
+				return false;
+			}
+			int valueDate = transaction.getValueDateAsInteger();
+			if ((valueDate<valueDateFrom) || (valueDate>valueDateTo)) {
+				return false;
+			}
+		}
+		return isContentOk(transaction);
+	}
+
+	/** Gets a periodical transaction's validity.
+	 * @param transaction The periodical transaction to test.
+	 * @return true if the transaction is valid.
+	 * @see Filter#isOk(PeriodicalTransaction)
+	 */
+	boolean isOk(PeriodicalTransaction transaction) {
+		if (!isOk(transaction.getAccount()) || !isOk(transaction.getMode()) || !isOk(commentMatcher, transaction.getComment())) {
+			return false;
+		}
+		return isContentOk(transaction);
+	}
+
+	/** Tests the category, amount and description of a transaction, of its subtransactions and of its complement. */
+	private boolean isContentOk(AbstractTransaction transaction) {
+		if (isOk(transaction.getCategory()) && isAmountOk(transaction.getAmount()) &&
+				isOk(descriptionMatcher, transaction.getDescription())) {
+			return true;
+		}
+		// The transaction may also be valid if one of its subtransactions is valid
+		for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
+			if (isOk(transaction.getSubTransaction(i))) {
+				return true;
+			}
+		}
+		// The transaction may also be valid if its subtransactions complement is valid
+		return isComplementOk(transaction);
+	}
+
+	/** Gets a subtransaction validity.
+	 * @param subtransaction the subtransaction to test
+	 * @return true if the subtransaction is valid.
+	 * @see Filter#isOk(SubTransaction)
+	 */
+	boolean isOk(SubTransaction subtransaction) {
+		return isOk(subtransaction.getCategory()) && isAmountOk(subtransaction.getAmount()) &&
+				isOk(descriptionMatcher, subtransaction.getDescription());
+	}
+
+	/** Gets a transaction complement validity.
+	 * @param transaction the transaction to test
+	 * @return true if the transaction complement is valid.
+	 * @see Filter#isComplementOk(AbstractTransaction)
+	 */
+	boolean isComplementOk(AbstractTransaction transaction) {
+		double amount = transaction.getComplement();
+		if ((transaction.getSubTransactionSize()!=0) && (GlobalData.AMOUNT_COMPARATOR.compare(amount,0.0)==0)) {
+			return false;
+		}
+		return isOk(transaction.getCategory()) && isAmountOk(amount) && isOk(descriptionMatcher, transaction.getDescription()) &&
+				isOk(commentMatcher, transaction.getComment());
+	}
+}
@@ -0,0 +1,220 @@
+package net.yapbam.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An immutable view of a GlobalData content at a given time.
+ * <br>A snapshot is not affected by the further modifications of the data, and, as it is never modified, it can be read
+ * by any thread, for instance to save the data in a background thread while the user goes on editing it.
+ * <br>The transactions and periodical transactions are immutable, so they are shared with the data. The transactions
+ * list itself is shared by chunks with the previous snapshot (see TransactionStore#snapshot()).
+ * <br>Accounts, categories and filters can be modified in place, so the snapshot contains copies of them.
+ * As the transactions still refer to the live accounts, modes and categories, their names at the time of the snapshot
+ * should be obtained through the getName methods.
+ * @see GlobalData#snapshot()
+ */
+public final class DataSnapshot {
+	private final List<Account> accounts;
+	private final List<Category> categories;
+	private final List<Filter> filters;
+	private final List<PeriodicalTransaction> periodicals;
+	private final List<Transaction> transactions;
+	// The live accounts, modes and categories -> their names at the time of the snapshot
+	private final Map<Object, String> names;
+	private final char subCategorySeparator;
+	private final boolean locked;
+	private final boolean archive;
+	private final String password;
+
+	/** Constructor.
+	 * @param data The data
+	 * @param transactions The snapshot of the data transactions
+	 */
+	DataSnapshot(GlobalData data, List<Transaction> transactions) {
+		this.names = new IdentityHashMap<Object, String>();
+		List<Account> accountsCopy = new ArrayList<Account>(data.getAccountsNumber());
+		for (int i = 0; i < data.getAccountsNumber(); i++) {
+			Account account = data.getAccount(i);
+			accountsCopy.add(copy(account));
+			this.names.put(account, account.getName());
+			for (int j = 0; j < account.getModesNumber(); j++) {
+				Mode mode = account.getMode(j);
+				this.names.put(mode, mode.getName());
+			}
+		}
+		this.accounts = Collections.unmodifiableList(accountsCopy);
+		List<Category> categoriesCopy = new ArrayList<Category>(data.getCategoriesNumber());
+		for (int i = 0; i < data.getCategoriesNumber(); i++) {
+			Category category = data.getCategory(i);
+			categoriesCopy.add(category.equals(Category.UNDEFINED)?Category.UNDEFINED:new Category(category.getName()));
+			this.names.put(category, category.getName());
+		}
+		this.categories = Collections.unmodifiableList(categoriesCopy);
+		List<Filter> filtersCopy = new ArrayList<Filter>(data.getFiltersNumber());
+		for (int i = 0; i < data.getFiltersNumber(); i++) {
+			Filter copy = new Filter();
+			copy.copy(data.getFilter(i));
+			filtersCopy.add(copy);
+		}
+		this.filters = Collections.unmodifiableList(filtersCopy);
+		List<PeriodicalTransaction> periodicalsCopy = new ArrayList<PeriodicalTransaction>(data.getPeriodicalTransactionsNumber());
+		for (int i = 0; i < data.getPeriodicalTransactionsNumber(); i++) {
+			periodicalsCopy.add(data.getPeriodicalTransaction(i));
+		}
+		this.periodicals = Collections.unmodifiableList(periodicalsCopy);
+		this.transactions = transactions;
+		this.subCategorySeparator = data.getSubCategorySeparator();
+		this.locked = data.isLocked();
+		this.archive = data.isArchive();
+		this.password = data.getPassword();
+	}
+
+	private static Account copy(Account account) {
+		Account result = new Account(account.getName(), account.getInitialBalance(), account.getAlertThreshold(), account.getComment());
+		result.setCheckNumberAlertThreshold(account.getCheckNumberAlertThreshold());
+		for (int i = 0; i < account.getModesNumber(); i++) {
+			Mode mode = account.getMode(i);
+			if (!mode.equals(Mode.UNDEFINED)) {
+				result.add(new Mode(mode.getName(), mode.getReceiptVdc(), mode.getExpenseVdc(), mode.isUseCheckBook()));
+			}
+		}
+		for (int i = 0; i < account.getCheckbooksNumber(); i++) {
+			Checkbook book = account.getCheckbook(i);
+			result.add(new Checkbook(book.getPrefix(), book.getFirst(), book.size(), book.getNext()));
+		}
+		return result;
+	}
+
+	/** Gets the name an account had when this snapshot was taken.
+	 * @param account An account of the data (the transactions refer to these accounts, not to the copies returned by getAccount).
+	 * @return The account's name. If the account was not in the data, its current name is returned.
+	 */
+	public String getName(Account account) {
+		String name = names.get(account);
+		return name==null?account.getName():name;
+	}
+
+	/** Gets the name a mode had when this snapshot was taken.
+	 * @param mode A mode of the data.
+	 * @return The mode's name. If the mode was not in the data, its current name is returned.
+	 */
+	public String getName(Mode mode) {
+		String name = names.get(mode);
+		return name==null?mode.getName():name;
+	}
+
+	/** Gets the name a category had when this snapshot was taken.
+	 * @param category A category of the data.
+	 * @return The category's name. If the category was not in the data, its current name is returned.
+	 */
+	public String getName(Category category) {
+		String name = names.get(category);
+		return name==null?category.getName():name;
+	}
+
+	/** Gets the number of accounts.
+	 * @return a positive or null integer
+	 */
+	public int getAccountsNumber() {
+		return accounts.size();
+	}
+
+	/** Gets an account.
+	 * @param index The account's index
+	 * @return a copy of the account as it was when this snapshot was taken
+	 */
+	public Account getAccount(int index) {
+		return accounts.get(index);
+	}
+
+	/** Gets the number of categories.
+	 * @return a positive integer (Category.UNDEFINED is always there)
+	 */
+	public int getCategoriesNumber() {
+		return categories.size();
+	}
+
+	/** Gets a category.
+	 * @param index The category's index
+	 * @return a copy of the category as it was when this snapshot was taken
+	 */
+	public Category getCategory(int index) {
+		return categories.get(index);
+	}
+
+	/** Gets the number of filters.
+	 * @return a positive or null integer
+	 */
+	public int getFiltersNumber() {
+		return filters.size();
+	}
+
+	/** Gets a filter.
+	 * @param index The filter's index
+	 * @return a copy of the filter as it was when this snapshot was taken
+	 */
+	public Filter getFilter(int index) {
+		return filters.get(index);
+	}
+
+	/** Gets the number of periodical transactions.
+	 * @return a positive or null integer
+	 */
+	public int getPeriodicalTransactionsNumber() {
+		return periodicals.size();
+	}
+
+	/** Gets a periodical transaction.
+	 * @param index The periodical transaction's index
+	 * @return a periodical transaction
+	 */
+	public PeriodicalTransaction getPeriodicalTransaction(int index) {
+		return periodicals.get(index);
+	}
+
+	/** Gets the number of transactions.
+	 * @return a positive or null integer
+	 */
+	public int getTransactionsNumber() {
+		return transactions.size();
+	}
+
+	/** Gets a transaction.
+	 * @param index The transaction's index (transactions are sorted by id)
+	 * @return a transaction
+	 */
+	public Transaction getTransaction(int index) {
+		return transactions.get(index);
+	}
+
+	/** Gets the sub-category separator.
+	 * @return a char
+	 */
+	public char getSubCategorySeparator() {
+		return subCategorySeparator;
+	}
+
+	/** Tests whether the data was locked.
+	 * @return true if the data was locked
+	 */
+	public boolean isLocked() {
+		return locked;
+	}
+
+	/** Tests whether the data was an archive.
+	 * @return true if the data was an archive
+	 */
+	public boolean isArchive() {
+		return archive;
+	}
+
+	/** Gets the password that protected the data.
+	 * @return a string or null if the data was not password protected
+	 */
+	public String getPassword() {
+		return password;
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import net.yapbam.util.DateUtils;
 import net.yapbam.util.NullUtils;
 import net.yapbam.util.TextMatcher;
 
@@ -33,6 +34,11 @@ public class Filter extends Observable {
 	private Date dateTo;
 	private Date valueDateFrom;
 	private Date valueDateTo;
+	// Integer representations of the date limits, used to test transactions without any date allocation
+	private int dateFromInteger = Integer.MIN_VALUE;
+	private int dateToInteger = Integer.MAX_VALUE;
+	private int valueDateFromInteger = Integer.MIN_VALUE;
+	private int valueDateToInteger = Integer.MAX_VALUE;
 	private double minAmount;
 	private double maxAmount;
 	private TextMatcher descriptionMatcher;
@@ -41,6 +47,7 @@ public class Filter extends Observable {
 	private TextMatcher statementMatcher;
 	
 	private boolean suspended;
+	private volatile CompiledFilter compiled;
 	private static final Logger LOGGER = LoggerFactory.getLogger(Filter.class);
 
 	/** Constructor. */
@@ -60,6 +67,7 @@ public class Filter extends Observable {
 	
 	@Override
 	protected void setChanged() {
+		this.compiled = null;
 		super.setChanged();
 		if (!suspended) {
 			this.notifyObservers();
@@ -229,6 +237,22 @@ public class Filter extends Observable {
 		return dateTo;
 	}
 
+	/** Gets the transaction date before which all transactions are rejected as an integer.
+	 * @return a transaction date in the DateUtils.dateToInteger format, or Integer.MIN_VALUE if there's no time limit.
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getDateFromAsInteger() {
+		return dateFromInteger;
+	}
+
+	/** Gets the transaction date after which all transactions are rejected as an integer.
+	 * @return a transaction date in the DateUtils.dateToInteger format, or Integer.MAX_VALUE if there's no time limit.
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getDateToAsInteger() {
+		return dateToInteger;
+	}
+
 	/** Sets the filter on transaction date.
 	 * @param from transactions strictly before <i>from</i> are rejected. A null date means "beginning of times".
 	 * @param to transactions strictly after <i>to</i> are rejected. A null date means "end of times". 
@@ -237,6 +261,8 @@ public class Filter extends Observable {
 		if (!NullUtils.areEquals(from, this.dateFrom) || !NullUtils.areEquals(to, this.dateTo)) {
 			this.dateFrom = from;
 			this.dateTo = to;
+			this.dateFromInteger = from==null?Integer.MIN_VALUE:DateUtils.dateToInteger(from);
+			this.dateToInteger = to==null?Integer.MAX_VALUE:DateUtils.dateToInteger(to);
 			this.setChanged();
 		}
 	}
@@ -255,6 +281,22 @@ public class Filter extends Observable {
 		return valueDateTo;
 	}
 
+	/** Gets the transaction value date before which all transactions are rejected as an integer.
+	 * @return a transaction value date in the DateUtils.dateToInteger format, or Integer.MIN_VALUE if there's no time limit.
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getValueDateFromAsInteger() {
+		return valueDateFromInteger;
+	}
+
+	/** Gets the transaction value date after which all transactions are rejected as an integer.
+	 * @return a transaction value date in the DateUtils.dateToInteger format, or Integer.MAX_VALUE if there's no time limit.
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getValueDateToAsInteger() {
+		return valueDateToInteger;
+	}
+
 	/** Sets the filter on transaction value date.
 	 * @param from transactions with value date strictly before <i>from</i> are rejected. A null date means "beginning of times".
 	 * @param to transactions with value date strictly after <i>to</i> are rejected. A null date means "end of times". 
@@ -263,6 +305,8 @@ public class Filter extends Observable {
 		if (!NullUtils.areEquals(from, this.valueDateFrom) || !NullUtils.areEquals(to, this.valueDateTo)) {
 			this.valueDateFrom = from;
 			this.valueDateTo = to;
+			this.valueDateFromInteger = from==null?Integer.MIN_VALUE:DateUtils.dateToInteger(from);
+			this.valueDateToInteger = to==null?Integer.MAX_VALUE:DateUtils.dateToInteger(to);
 			this.setChanged();
 		}
 	}
@@ -465,35 +509,7 @@ public class Filter extends Observable {
 	 * @return true if the transaction is valid.
 	 */
 	public boolean isOk(Transaction transaction) {
-		if (!isOk(transaction.getAccount()) || !isOk(transaction.getMode()) ||
-				!isStatementOk(transaction.getStatement()) || !isNumberOk(transaction.getNumber()) ||
-				!isCommentOk(transaction.getComment())) {
-			return false;
-		}
-		if ((getDateFrom()!=null) && (transaction.getDate().compareTo(getDateFrom())<0)) {
-			return false;
-		}
-		if ((getDateTo()!=null) && (transaction.getDate().compareTo(getDateTo())>0)) {
-			return false;
-		}
-		if ((getValueDateFrom()!=null) && (transaction.getValueDate().compareTo(getValueDateFrom())<0)) {
-			return false;
-		}
-		if ((getValueDateTo()!=null) && (transaction.getValueDate().compareTo(getValueDateTo())>0)) {
-			return false;
-		}
-		if (isOk(transaction.getCategory()) && isAmountOk(transaction.getAmount()) &&
-				isDescriptionOk(transaction.getDescription())) {
-			return true;
-		}
-		// The transaction may also be valid if one of its subtransactions is valid 
-		for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
-			if (isOk(transaction.getSubTransaction(i))) {
-				return true;
-			}
-		}
-		// The transaction may also be valid if its subtransactions complement is valid 
-		return isComplementOk(transaction);
+		return getCompiled().isOk(transaction);
 	}
 
 	/** Gets a periodical transaction's validity.
@@ -503,21 +519,7 @@ public class Filter extends Observable {
 	 * @return true if the transaction is valid.
 	 */
 	public boolean isOk(PeriodicalTransaction transaction) {
-		if (!isOk(transaction.getAccount()) || !isOk(transaction.getMode()) || !isCommentOk(transaction.getComment())) {
-			return false;
-		}
-		if (isOk(transaction.getCategory()) && isAmountOk(transaction.getAmount()) &&
-				isDescriptionOk(transaction.getDescription())) {
-			return true;
-		}
-		// The transaction may also be valid if one of its subtransactions is valid 
-		for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
-			if (isOk(transaction.getSubTransaction(i))) {
-				return true;
-			}
-		}
-		// The transaction may also be valid if its subtransactions complement is valid 
-		return isComplementOk(transaction);
+		return getCompiled().isOk(transaction);
 	}
 
 	/** Gets a subtransaction validity.
@@ -529,8 +531,7 @@ public class Filter extends Observable {
 	 * @see #isOk(Transaction)
 	 */
 	public boolean isOk(SubTransaction subtransaction) {
-		return isOk(subtransaction.getCategory()) && isAmountOk(subtransaction.getAmount()) &&
-				isDescriptionOk(subtransaction.getDescription());
+		return getCompiled().isOk(subtransaction);
 	}
 	
 	/** Gets a transaction complement validity.
@@ -543,11 +544,20 @@ public class Filter extends Observable {
 	 * @see #isOk(Transaction)
 	 */
 	public boolean isComplementOk(AbstractTransaction transaction) {
-		double amount = transaction.getComplement();
-		if ((transaction.getSubTransactionSize()!=0) && (GlobalData.AMOUNT_COMPARATOR.compare(amount,0.0)==0)) {
-			return false;
+		return getCompiled().isComplementOk(transaction);
+	}
+
+	/** Gets the compiled form of this filter.
+	 * <br>The compiled filter is built at the first call following a filter change.
+	 * @return a CompiledFilter
+	 */
+	CompiledFilter getCompiled() {
+		CompiledFilter result = this.compiled;
+		if (result==null) {
+			result = new CompiledFilter(this);
+			this.compiled = result;
 		}
-		return isOk(transaction.getCategory()) && isAmountOk(amount) && isDescriptionOk(transaction.getDescription()) && isCommentOk(transaction.getComment());
+		return result;
 	}
 
 	/** Copies a filter in this filter.
@@ -1,12 +1,19 @@
 package net.yapbam.data;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.yapbam.data.event.*;
-import net.yapbam.util.NullUtils;
+import net.yapbam.util.ArrayUtils;
 
 /** The filtered Data (the global data viewed through a filter).
  * <BR>A filter is based on all the attributes of a transaction (amount, category, account, ...).
@@ -18,12 +25,142 @@ import net.yapbam.util.NullUtils;
  * @see GlobalData
  */
 public class FilteredData extends DefaultListenable {
+	/** The default number of transactions under which the transactions are always filtered in the current thread.
+	 * @see #setParallelThreshold(int)
+	 */
+	public static final int DEFAULT_PARALLEL_THRESHOLD = 50000;
+	private static final int PROCESSORS = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService executor;
+
+	/** A handler of the global data events of one class.
+	 * @param <T> The class of the handled events
+	 */
+	private abstract static class Handler<T extends DataEvent> {
+		private final Class<? extends T> eventClass;
+
+		Handler(Class<? extends T> eventClass) {
+			this.eventClass = eventClass;
+		}
+
+		void handle(FilteredData fData, DataEvent event) {
+			process(fData, eventClass.cast(event));
+		}
+
+		abstract void process(FilteredData fData, T event);
+	}
+
+	/** A handler that sends the event, unchanged, to the filtered data listeners. */
+	private static final class Forwarder extends Handler<DataEvent> {
+		Forwarder(Class<? extends DataEvent> eventClass) {
+			super(eventClass);
+		}
+
+		@Override
+		void process(FilteredData fData, DataEvent event) {
+			fData.fireEvent(event);
+		}
+	}
+
+	// The handlers of the global data events, by event class. The global data listener only subscribes to these classes.
+	private static final Map<Class<?>, Handler<?>> HANDLERS = new HashMap<Class<?>, Handler<?>>();
+	static {
+		register(new Handler<BatchCommittedEvent>(BatchCommittedEvent.class) {
+			@Override
+			void process(FilteredData fData, BatchCommittedEvent event) {
+				fData.processBatch(event);
+			}
+		});
+		register(new Handler<EverythingChangedEvent>(EverythingChangedEvent.class) {
+			@Override
+			void process(FilteredData fData, EverythingChangedEvent event) {
+				fData.processEverythingChanged();
+			}
+		});
+		register(new Handler<AccountRemovedEvent>(AccountRemovedEvent.class) {
+			@Override
+			void process(FilteredData fData, AccountRemovedEvent event) {
+				fData.processAccountRemoved(event);
+			}
+		});
+		register(new Handler<CategoryRemovedEvent>(CategoryRemovedEvent.class) {
+			@Override
+			void process(FilteredData fData, CategoryRemovedEvent event) {
+				fData.processCategoryRemoved(event);
+			}
+		});
+		register(new Handler<TransactionsAddedEvent>(TransactionsAddedEvent.class) {
+			@Override
+			void process(FilteredData fData, TransactionsAddedEvent event) {
+				fData.processTransactionsAdded(event);
+			}
+		});
+		register(new Handler<TransactionsRemovedEvent>(TransactionsRemovedEvent.class) {
+			@Override
+			void process(FilteredData fData, TransactionsRemovedEvent event) {
+				fData.processTransactionsRemoved(event);
+			}
+		});
+		register(new Handler<TransactionsModifiedEvent>(TransactionsModifiedEvent.class) {
+			@Override
+			void process(FilteredData fData, TransactionsModifiedEvent event) {
+				fData.processTransactionsModified(event);
+			}
+		});
+		register(new Handler<AccountAddedEvent>(AccountAddedEvent.class) {
+			@Override
+			void process(FilteredData fData, AccountAddedEvent event) {
+				fData.processAccountAdded(event);
+			}
+		});
+		register(new Handler<CategoryAddedEvent>(CategoryAddedEvent.class) {
+			@Override
+			void process(FilteredData fData, CategoryAddedEvent event) {
+				fData.processCategoryAdded(event);
+			}
+		});
+		register(new Handler<AccountPropertyChangedEvent>(AccountPropertyChangedEvent.class) {
+			@Override
+			void process(FilteredData fData, AccountPropertyChangedEvent event) {
+				fData.processAccountPropertyChanged(event);
+			}
+		});
+		register(new Handler<CategoryPropertyChangedEvent>(CategoryPropertyChangedEvent.class) {
+			@Override
+			void process(FilteredData fData, CategoryPropertyChangedEvent event) {
+				fData.processCategoryPropertyChanged(event);
+			}
+		});
+		register(new Handler<ModePropertyChangedEvent>(ModePropertyChangedEvent.class) {
+			@Override
+			void process(FilteredData fData, ModePropertyChangedEvent event) {
+				fData.processModePropertyChanged(event);
+			}
+		});
+		register(new Handler<ModeRemovedEvent>(ModeRemovedEvent.class) {
+			@Override
+			void process(FilteredData fData, ModeRemovedEvent event) {
+				fData.processModeRemoved(event);
+			}
+		});
+		register(new Forwarder(NeedToBeSavedChangedEvent.class));
+		register(new Forwarder(IsLockedChangedEvent.class));
+		register(new Forwarder(IsArchivedChangedEvent.class));
+	}
+
+	private static void register(Handler<?> handler) {
+		HANDLERS.put(handler.eventClass, handler);
+	}
+
 	private GlobalData data;
 	private List<Transaction> transactions;
 	private Comparator<Transaction> comparator = TransactionComparator.INSTANCE;
 	private BalanceData balanceData;
 	private Filter filter;
 	private Logger logger;
+	private int parallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+	private int parallelism = PROCESSORS;
+	private int filterCount;
+	private DataListener listener;
 	
 	/** Constructor.
 	 * @param data The data that is filtered
@@ -37,148 +174,27 @@ public class FilteredData extends DefaultListenable {
 				filter();
 			}
 		});
-		this.data.addListener(new DataListener() {
+		this.listener = new DataListener() {
 			@Override
 			public void processEvent(DataEvent event) {
-				if (eventImplySorting(event)) {
-					Collections.sort(transactions, comparator);
-				}
-				if (event instanceof EverythingChangedEvent) {
-					// If everything changed, reset the filter
-					filter.clear();
-					filter();
-				} else if (event instanceof AccountRemovedEvent) {
-					Account account = ((AccountRemovedEvent)event).getRemoved();
-					List<Account> validAccounts = filter.getValidAccounts();
-					if ((validAccounts==null) || validAccounts.remove(account)) {
-						double initialBalance = account.getInitialBalance();
-						balanceData.updateBalance(initialBalance, false);
-						int index = validAccounts==null?((AccountRemovedEvent) event).getIndex():filter.getValidAccounts().indexOf(account);
-						filter.setValidAccounts((validAccounts==null) || validAccounts.isEmpty()?null:validAccounts);
-						fireEvent(new AccountRemovedEvent(FilteredData.this, index, account));
-					}
-				} else if (event instanceof CategoryRemovedEvent) {
-					Category category = ((CategoryRemovedEvent)event).getRemoved();
-					List<Category> validCategories = filter.getValidCategories();
-					if ((validCategories==null) || validCategories.remove(category)) {
-						int index = validCategories==null?((CategoryRemovedEvent) event).getIndex():filter.getValidCategories().indexOf(category);
-						filter.setValidCategories((validCategories==null) || validCategories.isEmpty()?null:validCategories);
-						fireEvent(new CategoryRemovedEvent(FilteredData.this, index, category));
-					}
-				} else if (event instanceof TransactionsAddedEvent) {
-					Transaction[] ts = ((TransactionsAddedEvent)event).getTransactions();
-					Collection<Transaction> accountOkTransactions = new ArrayList<Transaction>(ts.length);
-					Collection<Transaction> okTransactions = new ArrayList<Transaction>(ts.length);
-					double addedAmount = 0.0;
-					for (Transaction transaction : ts) {
-						if (filter.isOk(transaction.getAccount())) {
-							// If the added transaction match with the account filter
-							Date valueDate = transaction.getValueDate();
-							if (NullUtils.compareTo(valueDate, filter.getValueDateFrom(),true)<0) {
-								addedAmount += transaction.getAmount();
-							} else {
-								accountOkTransactions.add(transaction);
-								if (filter.isOk(transaction)) {
-									// If the added transaction matches with the whole filter
-									okTransactions.add(transaction);
-									int index = -Collections.binarySearch(transactions, transaction, comparator)-1;
-									transactions.add(index, transaction);
-								}
-							}
-						}
-					}
-					balanceData.updateBalance(addedAmount, true);
-					// If some transactions in a valid account were removed, update the balance data
-					if (!accountOkTransactions.isEmpty()) {
-						balanceData.updateBalance(accountOkTransactions.toArray(new Transaction[accountOkTransactions.size()]), true);
-					}
-					// If some valid transactions were removed, fire an event.
-					if (!okTransactions.isEmpty()) {
-						fireEvent(new TransactionsAddedEvent(FilteredData.this, okTransactions.toArray(new Transaction[okTransactions.size()])));
-					}
-				} else if (event instanceof TransactionsRemovedEvent) {
-					Transaction[] ts = ((TransactionsRemovedEvent)event).getTransactions();
-					Collection<Transaction> accountOkTransactions = new ArrayList<Transaction>(ts.length);
-					Collection<Transaction> okTransactions = new ArrayList<Transaction>(ts.length);
-					double addedAmount = 0.0;
-					for (Transaction transaction : ts) {
-						if (filter.isOk(transaction.getAccount())) {
-							Date valueDate = transaction.getValueDate();
-							if (NullUtils.compareTo(valueDate, filter.getValueDateFrom(),true)<0) {
-								addedAmount -= transaction.getAmount();
-							} else {
-								accountOkTransactions.add(transaction);
-								if (filter.isOk(transaction)) { // If the added transaction matches with the whole filter
-									okTransactions.add(transaction);
-									int index = Collections.binarySearch(transactions, transaction, comparator);
-									transactions.remove(index);
-								}
-							}
-						}
-					}
-					balanceData.updateBalance(addedAmount, true);
-					// If some transactions in a valid account were removed, update the balance data
-					if (!accountOkTransactions.isEmpty()) {
-						balanceData.updateBalance(accountOkTransactions.toArray(new Transaction[accountOkTransactions.size()]), false);
-					}
-					// If some valid transactions were removed, fire an event.
-					if (!okTransactions.isEmpty()) {
-						fireEvent(new TransactionsRemovedEvent(FilteredData.this, okTransactions.toArray(new Transaction[okTransactions.size()])));
-					}
-				} else if (event instanceof AccountAddedEvent) {
-					Account account = ((AccountAddedEvent)event).getAccount();
-					if (filter.isOk(account)) {
-						balanceData.updateBalance(account.getInitialBalance(), true);
-						if (filter.isOk(Filter.CHECKED)) {
-							fireEvent(new AccountAddedEvent(FilteredData.this, account));
-						}
-					}
-				} else if (event instanceof CategoryAddedEvent) {
-					Category category = ((CategoryAddedEvent)event).getCategory();
-					if (filter.isOk(category)) {
-						fireEvent(new CategoryAddedEvent(FilteredData.this, category));
-					}
-				} else if (event instanceof AccountPropertyChangedEvent) {
-					AccountPropertyChangedEvent evt = (AccountPropertyChangedEvent) event;
-					if (filter.isOk(evt.getAccount())) {
-						if (evt.getProperty().equals(AccountPropertyChangedEvent.INITIAL_BALANCE)) {
-							double amount = ((Double)evt.getNewValue())-((Double)evt.getOldValue());
-							balanceData.updateBalance(amount, true);
-						}
-						fireEvent(event);
-					}
-				} else if (event instanceof CategoryPropertyChangedEvent) {
-					CategoryPropertyChangedEvent evt = (CategoryPropertyChangedEvent) event;
-					if (filter.isOk(evt.getCategory())) {
-						fireEvent(event);
-					}
-				} else if (event instanceof ModePropertyChangedEvent) {
-					ModePropertyChangedEvent evt = (ModePropertyChangedEvent) event;
-					FilteredData.this.data.updateFilter(evt, filter);
-					if (filter.isOk(evt.getNewMode())) {
-						fireEvent(event);
-					}
-				} else if (event instanceof ModeRemovedEvent) {
-					ModeRemovedEvent evt = (ModeRemovedEvent) event;
-					List<String> validModes = filter.getValidModes();
-					String removedModeName = evt.getMode().getName();
-					// If the suppressed mode belongs to the filter modes list
-					// We have to remove it if it is no more a mode of the one of the valid accounts of the filter.
-					if (validModes!=null && validModes.remove(removedModeName) && !FilteredData.this.data.isUsedByFilteredAccounts(filter, evt.getMode())) {
-							filter.setValidModes(validModes.isEmpty()?null:validModes);
-							fireEvent (event);
-					}
-				} else if ((event instanceof NeedToBeSavedChangedEvent) || (event instanceof IsLockedChangedEvent) || (event instanceof IsArchivedChangedEvent)) {
-					fireEvent(event);
-				} else {
-					getLogger().debug("Be aware {} is not propagated by the fileredData", event);  //$NON-NLS-1$
-				}
+				dispatch(event);
 			}
-		});
+		};
+		// This is referenced only by its listener, so it can be garbage collected as soon as it is not used anymore
+		this.data.addWeakListener(this.listener, HANDLERS.keySet().toArray(new Class<?>[HANDLERS.size()]));
 		this.balanceData = new BalanceData();
 		this.filter();
 	}
 	
+	/** Detaches this from the global data.
+	 * <br>After this call, this no longer reflects the changes of the global data.
+	 * <br>Calling this method is not mandatory, this is registered as a weak listener of the global data and will be garbage
+	 * collected when not used anymore, but it stops the events processing immediately, without waiting for the garbage collector.
+	 */
+	public void dispose() {
+		this.data.removeListener(this.listener);
+	}
+
 	private Logger getLogger() {
 		if (this.logger==null) {
 			this.logger = LoggerFactory.getLogger(getClass());
@@ -194,18 +210,262 @@ public class FilteredData extends DefaultListenable {
 		return this.balanceData;
 	}
 	
-	private boolean eventImplySorting (DataEvent event) {
-		boolean accountRenamed = (event instanceof AccountPropertyChangedEvent) &&
-				((AccountPropertyChangedEvent)event).getProperty().equals(AccountPropertyChangedEvent.NAME) &&
-				filter.isOk(((AccountPropertyChangedEvent)event).getAccount());
-		boolean categoryRenamed = (event instanceof CategoryPropertyChangedEvent) &&
-		filter.isOk(((CategoryPropertyChangedEvent)event).getCategory());
-		boolean modeRenamed = (event instanceof ModePropertyChangedEvent) &&
-		((((ModePropertyChangedEvent)event).getChanges() & ModePropertyChangedEvent.NAME)!=0) &&
-		filter.isOk(((ModePropertyChangedEvent)event).getNewMode());
-		return accountRenamed || categoryRenamed || modeRenamed;
+	/** Processes an event of the global data.
+	 * @param event The event
+	 */
+	private void dispatch(DataEvent event) {
+		Handler<?> handler = HANDLERS.get(event.getClass());
+		if (handler==null) {
+			getLogger().debug("Be aware {} is not propagated by the fileredData", event);  //$NON-NLS-1$
+		} else {
+			handler.handle(this, event);
+		}
 	}
-	
+
+	/** Processes a batch of changes of the global data.
+	 * <br>The events that occurred during the batch are sent to our own listeners as a single BatchCommittedEvent.
+	 * @param batch The batch event
+	 */
+	private void processBatch(BatchCommittedEvent batch) {
+		beginBatch();
+		try {
+			int count = filterCount;
+			for (DataEvent event : batch.getEvents()) {
+				dispatch(event);
+			}
+			// If the transactions were filtered again, the transactions list is already up to date
+			if (filterCount==count) {
+				if (batch.getRemovedTransactions().length!=0) {
+					dispatch(new TransactionsRemovedEvent(this.data, batch.getRemovedTransactions()));
+				}
+				if (batch.getOldTransactions().length!=0) {
+					dispatch(new TransactionsModifiedEvent(this.data, batch.getOldTransactions(), batch.getNewTransactions()));
+				}
+				if (batch.getAddedTransactions().length!=0) {
+					dispatch(new TransactionsAddedEvent(this.data, batch.getAddedTransactions()));
+				}
+			}
+		} finally {
+			commit();
+		}
+	}
+
+	private void processEverythingChanged() {
+		// If everything changed, reset the filter
+		filter.clear();
+		filter();
+	}
+
+	private void processAccountRemoved(AccountRemovedEvent event) {
+		Account account = event.getRemoved();
+		List<Account> validAccounts = filter.getValidAccounts();
+		if ((validAccounts==null) || validAccounts.remove(account)) {
+			double initialBalance = account.getInitialBalance();
+			balanceData.updateBalance(initialBalance, false);
+			int index = validAccounts==null?event.getIndex():filter.getValidAccounts().indexOf(account);
+			filter.setValidAccounts((validAccounts==null) || validAccounts.isEmpty()?null:validAccounts);
+			fireEvent(new AccountRemovedEvent(this, index, account));
+		}
+	}
+
+	private void processCategoryRemoved(CategoryRemovedEvent event) {
+		Category category = event.getRemoved();
+		List<Category> validCategories = filter.getValidCategories();
+		if ((validCategories==null) || validCategories.remove(category)) {
+			int index = validCategories==null?event.getIndex():filter.getValidCategories().indexOf(category);
+			filter.setValidCategories((validCategories==null) || validCategories.isEmpty()?null:validCategories);
+			fireEvent(new CategoryRemovedEvent(this, index, category));
+		}
+	}
+
+	private void processTransactionsAdded(TransactionsAddedEvent event) {
+		Transaction[] ts = event.getTransactions();
+		Collection<Transaction> accountOkTransactions = new ArrayList<Transaction>(ts.length);
+		Collection<Transaction> okTransactions = new ArrayList<Transaction>(ts.length);
+		double addedAmount = 0.0;
+		for (Transaction transaction : ts) {
+			if (filter.isOk(transaction.getAccount())) {
+				// If the added transaction match with the account filter
+				if (transaction.getValueDateAsInteger()<filter.getValueDateFromAsInteger()) {
+					addedAmount += transaction.getAmount();
+				} else {
+					accountOkTransactions.add(transaction);
+					if (filter.isOk(transaction)) {
+						// If the added transaction matches with the whole filter
+						okTransactions.add(transaction);
+					}
+				}
+			}
+		}
+		if (!okTransactions.isEmpty()) {
+			Transaction[] sorted = okTransactions.toArray(new Transaction[okTransactions.size()]);
+			Arrays.sort(sorted, comparator);
+			ArrayUtils.merge(transactions, sorted, comparator);
+		}
+		balanceData.updateBalance(addedAmount, true);
+		// If some transactions in a valid account were removed, update the balance data
+		if (!accountOkTransactions.isEmpty()) {
+			balanceData.updateBalance(accountOkTransactions.toArray(new Transaction[accountOkTransactions.size()]), true);
+		}
+		// If some valid transactions were removed, fire an event.
+		if (!okTransactions.isEmpty()) {
+			fireEvent(new TransactionsAddedEvent(this, okTransactions.toArray(new Transaction[okTransactions.size()])));
+		}
+	}
+
+	private void processTransactionsRemoved(TransactionsRemovedEvent event) {
+		Transaction[] ts = event.getTransactions();
+		Collection<Transaction> accountOkTransactions = new ArrayList<Transaction>(ts.length);
+		Collection<Transaction> okTransactions = new ArrayList<Transaction>(ts.length);
+		double addedAmount = 0.0;
+		for (Transaction transaction : ts) {
+			if (filter.isOk(transaction.getAccount())) {
+				if (transaction.getValueDateAsInteger()<filter.getValueDateFromAsInteger()) {
+					addedAmount -= transaction.getAmount();
+				} else {
+					accountOkTransactions.add(transaction);
+					if (filter.isOk(transaction)) { // If the added transaction matches with the whole filter
+						okTransactions.add(transaction);
+					}
+				}
+			}
+		}
+		balanceData.updateBalance(addedAmount, true);
+		// If some transactions in a valid account were removed, update the balance data
+		if (!accountOkTransactions.isEmpty()) {
+			balanceData.updateBalance(accountOkTransactions.toArray(new Transaction[accountOkTransactions.size()]), false);
+		}
+		// If some valid transactions were removed, remove them in one pass and fire an event.
+		if (!okTransactions.isEmpty()) {
+			Transaction[] sorted = okTransactions.toArray(new Transaction[okTransactions.size()]);
+			Arrays.sort(sorted, comparator);
+			ArrayUtils.removeAll(transactions, Arrays.asList(sorted), comparator);
+			fireEvent(new TransactionsRemovedEvent(this, okTransactions.toArray(new Transaction[okTransactions.size()])));
+		}
+	}
+
+	private void processTransactionsModified(TransactionsModifiedEvent event) {
+		Transaction[] oldTs = event.getOldTransactions();
+		Transaction[] newTs = event.getNewTransactions();
+		// The account, the amount and the value date of the transactions are unchanged, so are the balances
+		List<Transaction> accountOkOld = new ArrayList<Transaction>(oldTs.length);
+		List<Transaction> accountOkNew = new ArrayList<Transaction>(oldTs.length);
+		List<Transaction> removed = new ArrayList<Transaction>();
+		List<Transaction> added = new ArrayList<Transaction>();
+		List<Transaction> noMoreOk = new ArrayList<Transaction>();
+		List<Transaction> nowOk = new ArrayList<Transaction>();
+		List<Transaction> modifiedOld = new ArrayList<Transaction>();
+		List<Transaction> modifiedNew = new ArrayList<Transaction>();
+		for (int i = 0; i < oldTs.length; i++) {
+			if (filter.isOk(oldTs[i].getAccount()) && (oldTs[i].getValueDateAsInteger()>=filter.getValueDateFromAsInteger())) {
+				accountOkOld.add(oldTs[i]);
+				accountOkNew.add(newTs[i]);
+				boolean wasOk = filter.isOk(oldTs[i]);
+				boolean isOk = filter.isOk(newTs[i]);
+				if (wasOk) {
+					removed.add(oldTs[i]);
+				}
+				if (isOk) {
+					added.add(newTs[i]);
+				}
+				if (wasOk && isOk) {
+					modifiedOld.add(oldTs[i]);
+					modifiedNew.add(newTs[i]);
+				} else if (wasOk) {
+					noMoreOk.add(oldTs[i]);
+				} else if (isOk) {
+					nowOk.add(newTs[i]);
+				}
+			}
+		}
+		if (!accountOkOld.isEmpty()) {
+			balanceData.replace(accountOkOld.toArray(new Transaction[accountOkOld.size()]), accountOkNew.toArray(new Transaction[accountOkNew.size()]));
+		}
+		// The new versions may not be at the same place in the list (if it is sorted by category, for instance)
+		if (!removed.isEmpty()) {
+			Transaction[] sorted = removed.toArray(new Transaction[removed.size()]);
+			Arrays.sort(sorted, comparator);
+			ArrayUtils.removeAll(transactions, Arrays.asList(sorted), comparator);
+		}
+		if (!added.isEmpty()) {
+			Transaction[] sorted = added.toArray(new Transaction[added.size()]);
+			Arrays.sort(sorted, comparator);
+			ArrayUtils.merge(transactions, sorted, comparator);
+		}
+		// Then fire the events: modified transactions that still match the filter, transactions that no longer match it
+		// and transactions that now match it.
+		if (!modifiedOld.isEmpty()) {
+			fireEvent(new TransactionsModifiedEvent(this, modifiedOld.toArray(new Transaction[modifiedOld.size()]),
+					modifiedNew.toArray(new Transaction[modifiedNew.size()])));
+		}
+		if (!noMoreOk.isEmpty()) {
+			fireEvent(new TransactionsRemovedEvent(this, noMoreOk.toArray(new Transaction[noMoreOk.size()])));
+		}
+		if (!nowOk.isEmpty()) {
+			fireEvent(new TransactionsAddedEvent(this, nowOk.toArray(new Transaction[nowOk.size()])));
+		}
+	}
+
+	private void processAccountAdded(AccountAddedEvent event) {
+		Account account = event.getAccount();
+		if (filter.isOk(account)) {
+			balanceData.updateBalance(account.getInitialBalance(), true);
+			if (filter.isOk(Filter.CHECKED)) {
+				fireEvent(new AccountAddedEvent(this, account));
+			}
+		}
+	}
+
+	private void processCategoryAdded(CategoryAddedEvent event) {
+		Category category = event.getCategory();
+		if (filter.isOk(category)) {
+			fireEvent(new CategoryAddedEvent(this, category));
+		}
+	}
+
+	private void processAccountPropertyChanged(AccountPropertyChangedEvent event) {
+		if (filter.isOk(event.getAccount())) {
+			if (event.getProperty().equals(AccountPropertyChangedEvent.NAME)) {
+				// A renamed account may change the transactions order
+				Collections.sort(transactions, comparator);
+			} else if (event.getProperty().equals(AccountPropertyChangedEvent.INITIAL_BALANCE)) {
+				double amount = ((Double)event.getNewValue())-((Double)event.getOldValue());
+				balanceData.updateBalance(amount, true);
+			}
+			fireEvent(event);
+		}
+	}
+
+	private void processCategoryPropertyChanged(CategoryPropertyChangedEvent event) {
+		if (filter.isOk(event.getCategory())) {
+			// A renamed category may change the transactions order
+			Collections.sort(transactions, comparator);
+			fireEvent(event);
+		}
+	}
+
+	private void processModePropertyChanged(ModePropertyChangedEvent event) {
+		// A renamed mode may change the transactions order
+		if (((event.getChanges() & ModePropertyChangedEvent.NAME)!=0) && filter.isOk(event.getNewMode())) {
+			Collections.sort(transactions, comparator);
+		}
+		this.data.updateFilter(event, filter);
+		if (filter.isOk(event.getNewMode())) {
+			fireEvent(event);
+		}
+	}
+
+	private void processModeRemoved(ModeRemovedEvent event) {
+		List<String> validModes = filter.getValidModes();
+		String removedModeName = event.getMode().getName();
+		// If the suppressed mode belongs to the filter modes list
+		// We have to remove it if it is no more a mode of the one of the valid accounts of the filter.
+		if (validModes!=null && validModes.remove(removedModeName) && !this.data.isUsedByFilteredAccounts(filter, event.getMode())) {
+				filter.setValidModes(validModes.isEmpty()?null:validModes);
+				fireEvent (event);
+		}
+	}
+
 	/** Gets the filter used in this filtered data.
 	 * @return a Filter
 	 */
@@ -214,6 +474,7 @@ public class FilteredData extends DefaultListenable {
 	}
 	
 	private void filter() {
+		filterCount++;
 		double initialBalance = 0;
 		for (int i = 0; i < this.getGlobalData().getAccountsNumber(); i++) {
 			Account account = this.getGlobalData().getAccount(i);
@@ -224,35 +485,159 @@ public class FilteredData extends DefaultListenable {
 		balanceData.enableEvents(false);
 		balanceData.clear(initialBalance);
 		this.transactions = new ArrayList<Transaction>();
+		List<Chunk> chunks = getChunks();
 		Collection<Transaction> balanceTransactions = new ArrayList<Transaction>(data.getTransactionsNumber());
 		double addedAmount = 0.0;
-		for (int i = 0; i < data.getTransactionsNumber(); i++) {
-			Transaction transaction = data.getTransaction(i);
-			if (filter.isOk(transaction.getAccount())) {
-				Date valueDate = transaction.getValueDate();
-				if (NullUtils.compareTo(valueDate, filter.getValueDateFrom(),true)<0) {
-					addedAmount += transaction.getAmount();
-				} else {
-					// Here we have a hard choice to make: 
-					// Ignore the transactions with a value date after the upper limit of the filter or not.
-					// In the first case, users may be surprised that transactions excluded by the filter are taken into account
-					// In the second one, the balance history after the filter upper limit is WRONG, and its probably dangerous !!!
-					// Especially, if the end date is before today, the current balance will be false and be displayed false in the transactions panel. 
-					// Uncomment the test to implement the second one.
-					/*if (NullUtils.compareTo(valueDate, getValueDateTo(), false)<=0)*/ balanceTransactions.add(transaction);
-					if (filter.isOk(transaction)) {
-						int index = -Collections.binarySearch(transactions, transaction, comparator)-1;
-						transactions.add(index, transaction);
-					}
-				}
+		// Merge the chunks in the global data order, so that the result (including the rounding of the added amount)
+		// is exactly the same as if the transactions were filtered sequentially
+		for (Chunk chunk : chunks) {
+			for (Transaction transaction : chunk.earlyTransactions) {
+				addedAmount += transaction.getAmount();
 			}
+			balanceTransactions.addAll(chunk.balanceTransactions);
+			transactions.addAll(chunk.transactions);
 		}
+		// Sorting once is far faster than inserting each transaction at its place
+		Collections.sort(transactions, comparator);
 		balanceData.updateBalance(addedAmount, true);
 		balanceData.updateBalance(balanceTransactions.toArray(new Transaction[balanceTransactions.size()]), true);
 		balanceData.enableEvents(true);
 		fireEvent(new EverythingChangedEvent(this));
 	}
 
+	/** Filters the global data transactions.
+	 * <br>The transactions are split in chunks that are filtered concurrently if there are more than
+	 * the parallel threshold transactions and a parallelism greater than one.
+	 * @return the filtered chunks in the global data order
+	 */
+	private List<Chunk> getChunks() {
+		CompiledFilter predicate = filter.getCompiled();
+		int valueDateFrom = filter.getValueDateFromAsInteger();
+		int size = data.getTransactionsNumber();
+		if ((parallelism>1) && (size>=parallelThreshold)) {
+			int chunkSize = (size+parallelism*4-1)/(parallelism*4);
+			List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+			for (int from = 0; from < size; from+=chunkSize) {
+				futures.add(getExecutor().submit(new Chunk(data.getTransactionStore(), predicate, valueDateFrom, from, Math.min(size, from+chunkSize))));
+			}
+			try {
+				List<Chunk> result = new ArrayList<Chunk>(futures.size());
+				for (Future<Chunk> future : futures) {
+					result.add(future.get());
+				}
+				return result;
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} catch (InterruptedException e) {
+				// Filter the transactions in the current thread
+				getLogger().debug("Parallel filtering was interrupted", e); //$NON-NLS-1$
+				for (Future<Chunk> future : futures) {
+					future.cancel(true);
+				}
+				Thread.currentThread().interrupt();
+			}
+		}
+		return Collections.singletonList(new Chunk(data.getTransactionStore(), predicate, valueDateFrom, 0, size).call());
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor==null) {
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool(PROCESSORS, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "FilteredData-"+count.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/** A range of the global data transactions filtered by a compiled filter. */
+	private static final class Chunk implements Callable<Chunk> {
+		private final TransactionStore store;
+		private final CompiledFilter predicate;
+		private final int valueDateFrom;
+		private final int from;
+		private final int to;
+		/** The transactions of valid accounts with a value date before the filter's start value date. */
+		final List<Transaction> earlyTransactions = new ArrayList<Transaction>();
+		/** The transactions of valid accounts that have to be added to the balance history. */
+		final List<Transaction> balanceTransactions = new ArrayList<Transaction>();
+		/** The transactions that match the filter. */
+		final List<Transaction> transactions = new ArrayList<Transaction>();
+
+		Chunk(TransactionStore store, CompiledFilter predicate, int valueDateFrom, int from, int to) {
+			this.store = store;
+			this.predicate = predicate;
+			this.valueDateFrom = valueDateFrom;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public Chunk call() {
+			for (int i = from; i < to; i++) {
+				Transaction transaction = store.get(i);
+				if (predicate.isOk(transaction.getAccount())) {
+					if (transaction.getValueDateAsInteger()<valueDateFrom) {
+						earlyTransactions.add(transaction);
+					} else {
+						// Here we have a hard choice to make: 
+						// Ignore the transactions with a value date after the upper limit of the filter or not.
+						// In the first case, users may be surprised that transactions excluded by the filter are taken into account
+						// In the second one, the balance history after the filter upper limit is WRONG, and its probably dangerous !!!
+						// Especially, if the end date is before today, the current balance will be false and be displayed false in the transactions panel. 
+						// Uncomment the test to implement the second one.
+						/*if (transaction.getValueDateAsInteger()<=filter.getValueDateToAsInteger())*/ balanceTransactions.add(transaction);
+						if (predicate.isOk(transaction)) {
+							transactions.add(transaction);
+						}
+					}
+				}
+			}
+			return this;
+		}
+	}
+
+	/** Gets the number of transactions above which the transactions are filtered concurrently.
+	 * @return an integer
+	 * @see #DEFAULT_PARALLEL_THRESHOLD
+	 */
+	public int getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/** Sets the number of transactions above which the transactions are filtered concurrently.
+	 * <br>The concurrent filtering produces exactly the same result as the sequential one, but it has a cost, which is not
+	 * worth paying for small data.
+	 * <br>This method doesn't refresh the filtered data.
+	 * @param parallelThreshold a positive integer (Integer.MAX_VALUE to always filter the transactions in the current thread).
+	 * @throws IllegalArgumentException if parallelThreshold is negative.
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		if (parallelThreshold<0) {
+			throw new IllegalArgumentException();
+		}
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/** Sets the number of concurrent tasks the transactions are split in (times 4) when they are filtered concurrently.
+	 * <br>The default value is the number of available processors, so, on a single processor computer, the transactions
+	 * are never filtered concurrently. Tests use this method to force the concurrent filtering.
+	 * <br>This method doesn't refresh the filtered data.
+	 * @param parallelism a positive integer (1 to always filter the transactions in the current thread).
+	 * @throws IllegalArgumentException if parallelism is less than 1.
+	 */
+	void setParallelism(int parallelism) {
+		if (parallelism<1) {
+			throw new IllegalArgumentException();
+		}
+		this.parallelism = parallelism;
+	}
+
 	/** Gets the number of transactions that match the filter. 
 	 * @return number of transactions that match the filter
 	 */
@@ -9,8 +9,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Currency;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -18,6 +20,8 @@ import org.slf4j.LoggerFactory;
 
 import net.yapbam.data.event.*;
 import net.yapbam.date.helpers.DateStepper;
+import net.yapbam.util.ArrayUtils;
+import net.yapbam.util.DateUtils;
 import net.yapbam.util.NullUtils;
 
 /** The whole Yapbam data.
@@ -28,10 +32,15 @@ public class GlobalData extends DefaultListenable {
 	private static final char DEFAULT_CATEGORY_SEPARATOR = '.';
 	
 	private List<Account> accounts;
+	private NameIndex<Account> accountsByName;
 	private List<Category> categories;
 	private List<PeriodicalTransaction> periodicals;
-	private List<Transaction> transactions;
+	private TransactionStore transactions;
+	private ReverseIndex<Account> transactionsByAccount;
+	private ReverseIndex<String> transactionsByCategory;
+	private ReverseIndex<ReverseIndex.ModeKey> transactionsByMode;
 	private List<Filter> filters;
+	private Map<String, Filter> filtersByName;
 	private boolean archive;
 	private boolean locked;
 	private URI uri;
@@ -40,6 +49,10 @@ public class GlobalData extends DefaultListenable {
 
 	private boolean somethingChanged;
 	private boolean eventsPending;
+	// Incremented each time an event is fired, it allows to know if the last snapshot is still valid
+	private long version;
+	private DataSnapshot snapshot;
+	private long snapshotVersion;
 
 	private static Currency defaultCurrency;
 	private static double defaultPrecision;
@@ -86,6 +99,8 @@ public class GlobalData extends DefaultListenable {
 	private final Observer FILTER_OBSERVER = new Observer() {
 		@Override
 		public void update(Observable o, Object arg) {
+			// The filter's name may have changed
+			filtersByName = null;
 			GlobalData.this.fireEvent(new FilterPropertyChangedEvent(GlobalData.this, (Filter)o));
 			GlobalData.this.setChanged();
 		}
@@ -169,6 +184,22 @@ public class GlobalData extends DefaultListenable {
 	public boolean somethingHasChanged() {
 		return this.somethingChanged;
 	}
+
+	/** Gets an immutable snapshot of this data.
+	 * <br>The snapshot is not affected by the further modifications of this data and can be read by any thread.
+	 * For instance, it can be saved in a background thread while this data is edited.
+	 * <br>This method should be called by the thread that modifies the data. If nothing changed since the last call,
+	 * the same snapshot is returned. If not, the transactions unchanged since the last snapshot are shared with it.
+	 * @return a snapshot
+	 * @see DataSnapshot
+	 */
+	public DataSnapshot snapshot() {
+		if ((snapshot==null) || (snapshotVersion!=version)) {
+			snapshot = new DataSnapshot(this, transactions.snapshot());
+			snapshotVersion = version;
+		}
+		return snapshot;
+	}
 	
 	/** Gets the URI where the data is saved.
 	 * @return an URI or null the data isn't attach to any location.
@@ -240,8 +271,31 @@ public class GlobalData extends DefaultListenable {
 		return super.isEventsEnabled();
 	}
 
+	/** Starts a batch of modifications.
+	 * <br>This is an alternative to disabling the events: The events are recorded until the batch is committed,
+	 * then a single {@link BatchCommittedEvent} containing the net changes is sent. Unlike the {@link EverythingChangedEvent}
+	 * sent when events are enabled again, it allows the listeners to update incrementally.
+	 * <br>Batches can be nested. Always commit a batch (for instance in a finally clause).
+	 * @see #commit()
+	 */
+	@Override
+	public void beginBatch() {
+		super.beginBatch();
+	}
+
+	/** Commits a batch of modifications.
+	 * @throws IllegalStateException if no batch was started.
+	 * @see #beginBatch()
+	 */
+	@Override
+	public void commit() {
+		super.commit();
+	}
+
 	@Override
 	protected void fireEvent(DataEvent event) {
+		// Every modification fires an event, even if events are disabled. So, this invalidates the last snapshot
+		version++;
 		if (isEventsEnabled()) {
 			super.fireEvent(event);
 		} else {
@@ -254,12 +308,7 @@ public class GlobalData extends DefaultListenable {
 	 * @return an Account or null if no account with this name exists
 	 */
 	public Account getAccount(String name) {
-		for (Account account : this.accounts) {
-			if (account.getName().equalsIgnoreCase(name)) {
-				return account;
-			}
-		}
-		return null;
+		return this.accountsByName.get(name);
 	}
 	
 	/** Gets an account by its index.
@@ -295,6 +344,7 @@ public class GlobalData extends DefaultListenable {
 			throw new IllegalArgumentException("Duplicate account name : "+account); //$NON-NLS-1$
 		}
 		this.accounts.add(account);
+		this.accountsByName.put(account.getName(), account);
 		fireEvent(new AccountAddedEvent(this, account));
 		this.setChanged();
 	}
@@ -315,6 +365,41 @@ public class GlobalData extends DefaultListenable {
 		return this.transactions.get(index);
 	}
 
+	/** Gets the store of the transactions.
+	 * <br>The store is sorted as the transactions returned by getTransaction(int), and should not be modified.
+	 * @return a TransactionStore
+	 */
+	TransactionStore getTransactionStore() {
+		return this.transactions;
+	}
+
+	/** Gets the transactions of an account.
+	 * @param account The account
+	 * @return a new list of transactions, sorted as the transactions returned by getTransaction(int).
+	 */
+	public List<Transaction> getTransactions(Account account) {
+		return new ArrayList<Transaction>(this.transactionsByAccount.get(account));
+	}
+
+	/** Gets the transactions of a category.
+	 * @param category The category
+	 * @return a new list of the transactions whose category, or the category of one of their subtransactions, is <b>category</b>.
+	 * It is sorted as the transactions returned by getTransaction(int).
+	 * @see Transaction#hasCategory(Category)
+	 */
+	public List<Transaction> getTransactions(Category category) {
+		return new ArrayList<Transaction>(this.transactionsByCategory.get(category.getName()));
+	}
+
+	/** Gets the transactions of an account that use a payment mode.
+	 * @param account The account
+	 * @param mode The payment mode
+	 * @return a new list of transactions, sorted as the transactions returned by getTransaction(int).
+	 */
+	public List<Transaction> getTransactions(Account account, Mode mode) {
+		return new ArrayList<Transaction>(this.transactionsByMode.get(new ReverseIndex.ModeKey(account, mode.getName())));
+	}
+
 	/** Adds some transactions.
 	 * @param transactions The transactions to add
 	 * @throws IllegalArgumentException if one of the transactions already exists or its account is unknown.
@@ -339,19 +424,23 @@ public class GlobalData extends DefaultListenable {
 			}
 			accountTransactions.get(accountIndex).add(transaction);
 		}
-		for (int i=0;i<transactions.length;i++) {
-			Transaction transaction = transactions[i];
-			int index = -indexOf(transaction)-1;
+		if (transactions.length==1) {
+			int index = -indexOf(transactions[0])-1;
 			if (index<0) {
-				// Transaction already exists
-				// Remove previously added transactions
-				for (int j = i-1; j >= 0; j--) {
-					this.transactions.remove(indexOf(transaction));
-				}
 				throw new IllegalArgumentException("Duplicated transaction");
 			}
-			this.transactions.add(index, transaction);
+			this.transactions.add(index, transactions[0]);
+		} else {
+			// Inserting the transactions one by one would cost O(n) array shifting per transaction.
+			// So, we sort the batch once, then merge it into the (sorted) transactions list in one linear pass.
+			Transaction[] sorted = transactions.clone();
+			Arrays.sort(sorted, COMPARATOR);
+			checkNoDuplicates(sorted);
+			ArrayUtils.merge(this.transactions, sorted, COMPARATOR);
 		}
+		this.transactionsByAccount.add(transactions);
+		this.transactionsByCategory.add(transactions);
+		this.transactionsByMode.add(transactions);
 		LoggerFactory.getLogger(getClass()).trace("start adding transactions to accounts");
 		for (Collection<Transaction> collection : accountTransactions) {
 			// For each account (there's one collection per account)
@@ -392,6 +481,30 @@ public class GlobalData extends DefaultListenable {
 		LoggerFactory.getLogger(getClass()).trace("End adding transactions");
 	}
 
+	/** Verifies that a sorted transactions batch contains no duplicated transaction and no transaction already in this.
+	 * @param sorted The transactions sorted by id.
+	 * @throws IllegalArgumentException if a transaction is duplicated.
+	 */
+	private void checkNoDuplicates(Transaction[] sorted) {
+		int size = this.transactions.size();
+		if ((size>0) && (COMPARATOR.compare(this.transactions.get(size-1), sorted[0])<0)) {
+			// Every transaction is after the existing ones (typically when a file is loading)
+			size = 0;
+		}
+		int i = 0;
+		for (int j = 0; j < sorted.length; j++) {
+			if ((j>0) && (COMPARATOR.compare(sorted[j-1], sorted[j])==0)) {
+				throw new IllegalArgumentException("Duplicated transaction");
+			}
+			while ((i<size) && (COMPARATOR.compare(this.transactions.get(i), sorted[j])<0)) {
+				i++;
+			}
+			if ((i<size) && (COMPARATOR.compare(this.transactions.get(i), sorted[j])==0)) {
+				throw new IllegalArgumentException("Duplicated transaction");
+			}
+		}
+	}
+
 	/** Adds a transaction.
 	 * @param transaction The transaction to add.
 	 * @see TransactionsAddedEvent
@@ -408,7 +521,27 @@ public class GlobalData extends DefaultListenable {
 	 * @see TransactionsRemovedEvent
 	 */
 	public void remove(Transaction[] transactions) {
-		Collection<Transaction> removed = new ArrayList<Transaction>(transactions.length);
+		// Removing the transactions one by one would cost O(n) array shifting per transaction.
+		// So, we mark the removed transactions with a binary search each, then compact the store in one linear pass.
+		int[] indexes = new int[transactions.length];
+		int nb = 0;
+		for (Transaction transaction: transactions) {
+			int index = indexOf(transaction);
+			if (index>=0) {
+				indexes[nb++] = index;
+			}
+		}
+		if (nb==0) {
+			return;
+		}
+		Arrays.sort(indexes, 0, nb);
+		// A transaction passed twice is removed once
+		int distinct = 1;
+		for (int i = 1; i < nb; i++) {
+			if (indexes[i]!=indexes[distinct-1]) {
+				indexes[distinct++] = indexes[i];
+			}
+		}
 		// In order to optimize the number of events fired, we will group transactions by account before
 		// removing them from their accounts (so, we will generate a maximum of one event per account).
 		// Initialize the lists of transactions per account.
@@ -416,25 +549,95 @@ public class GlobalData extends DefaultListenable {
 		for (int i = 0; i < this.getAccountsNumber(); i++) {
 			accountTransactions.add(new ArrayList<Transaction>());
 		}
-		for (Transaction transaction: transactions) {
-			int index = indexOf(transaction);
-			if (index>=0) {
-				Transaction removedTransaction = this.transactions.remove(index);
-				removed.add(removedTransaction);
-				accountTransactions.get(indexOf(transaction.getAccount())).add(removedTransaction);
+		Transaction[] removed = new Transaction[distinct];
+		for (int i = 0; i < distinct; i++) {
+			removed[i] = this.transactions.get(indexes[i]);
+			accountTransactions.get(indexOf(removed[i].getAccount())).add(removed[i]);
+		}
+		this.transactions.remove(distinct==indexes.length ? indexes : Arrays.copyOf(indexes, distinct));
+		List<Transaction> removedList = Arrays.asList(removed);
+		this.transactionsByAccount.remove(removedList);
+		this.transactionsByCategory.remove(removedList);
+		this.transactionsByMode.remove(removedList);
+		for (Collection<Transaction> collection : accountTransactions) { // For each account (there's one collection per account)
+			if (!collection.isEmpty()) {
+				// If this account has some transactions removed
+				Transaction[] removedAccountTransactions = collection.toArray(new Transaction[collection.size()]);
+				removedAccountTransactions[0].getAccount().remove(removedAccountTransactions);
 			}
 		}
-		if (!removed.isEmpty()) {
-			for (Collection<Transaction> collection : accountTransactions) { // For each account (there's one collection per account)
-				if (!collection.isEmpty()) {
-					// If this account has some transactions removed
-					Transaction[] removedAccountTransactions = collection.toArray(new Transaction[collection.size()]);
-					removedAccountTransactions[0].getAccount().remove(removedAccountTransactions);
-				}
+		this.fireEvent(new TransactionsRemovedEvent(this, removed));
+		setChanged();
+	}
+
+	/** Tests whether a transaction can be replaced in place by a modified version.
+	 * <br>It is the case if the modification can't change the balances or the checkbooks: The account, the amount, the date,
+	 * the value date, the statement, the number and the use of a checkbook by the mode are unchanged.
+	 * @param oldTransaction The transaction to be replaced
+	 * @param newTransaction Its modified version
+	 * @return true if the transaction can be replaced in place
+	 * @see #replace(Transaction[], Transaction[])
+	 */
+	static boolean isReplaceable(Transaction oldTransaction, Transaction newTransaction) {
+		return (oldTransaction.getAccount()==newTransaction.getAccount()) && (oldTransaction.getAmount()==newTransaction.getAmount())
+				&& (oldTransaction.getDateAsInteger()==newTransaction.getDateAsInteger())
+				&& (oldTransaction.getValueDateAsInteger()==newTransaction.getValueDateAsInteger())
+				&& NullUtils.areEquals(oldTransaction.getStatement(), newTransaction.getStatement())
+				&& NullUtils.areEquals(oldTransaction.getNumber(), newTransaction.getNumber())
+				&& (oldTransaction.getMode().isUseCheckBook()==newTransaction.getMode().isUseCheckBook());
+	}
+
+	/** Replaces transactions by modified versions, in place.
+	 * <br>Each new transaction takes the id, and the place, of the transaction it replaces. As the modifications can't change the
+	 * balances, the accounts' balance histories are patched instead of being updated, and a single TransactionsModifiedEvent is fired.
+	 * @param oldTransactions The transactions to replace
+	 * @param newTransactions Their modified versions (newTransactions[i] replaces oldTransactions[i]).
+	 * @throws IllegalArgumentException if a transaction is not in this or can't be replaced in place by its new version.
+	 * @see #isReplaceable(Transaction, Transaction)
+	 * @see TransactionsModifiedEvent
+	 */
+	void replace(Transaction[] oldTransactions, Transaction[] newTransactions) {
+		if (oldTransactions.length==0) {
+			return;
+		}
+		int[] indexes = new int[oldTransactions.length];
+		for (int i = 0; i < oldTransactions.length; i++) {
+			indexes[i] = indexOf(oldTransactions[i]);
+			if ((indexes[i]<0) || !isReplaceable(oldTransactions[i], newTransactions[i])) {
+				throw new IllegalArgumentException("Transaction can't be replaced in place"); //$NON-NLS-1$
 			}
-			this.fireEvent(new TransactionsRemovedEvent(this, removed.toArray(new Transaction[removed.size()])));
-			setChanged();
 		}
+		// Group the transactions by account, in order to patch each account once
+		Map<Account, List<Integer>> byAccount = new HashMap<Account, List<Integer>>();
+		for (int i = 0; i < oldTransactions.length; i++) {
+			newTransactions[i].copyId(oldTransactions[i]);
+			this.transactions.set(indexes[i], newTransactions[i]);
+			List<Integer> accountIndexes = byAccount.get(oldTransactions[i].getAccount());
+			if (accountIndexes==null) {
+				accountIndexes = new ArrayList<Integer>();
+				byAccount.put(oldTransactions[i].getAccount(), accountIndexes);
+			}
+			accountIndexes.add(i);
+		}
+		List<Transaction> oldList = Arrays.asList(oldTransactions);
+		this.transactionsByAccount.remove(oldList);
+		this.transactionsByCategory.remove(oldList);
+		this.transactionsByMode.remove(oldList);
+		this.transactionsByAccount.add(newTransactions);
+		this.transactionsByCategory.add(newTransactions);
+		this.transactionsByMode.add(newTransactions);
+		for (Map.Entry<Account, List<Integer>> entry : byAccount.entrySet()) {
+			List<Integer> accountIndexes = entry.getValue();
+			Transaction[] accountOld = new Transaction[accountIndexes.size()];
+			Transaction[] accountNew = new Transaction[accountIndexes.size()];
+			for (int i = 0; i < accountOld.length; i++) {
+				accountOld[i] = oldTransactions[accountIndexes.get(i)];
+				accountNew[i] = newTransactions[accountIndexes.get(i)];
+			}
+			entry.getKey().replace(accountOld, accountNew);
+		}
+		this.fireEvent(new TransactionsModifiedEvent(this, oldTransactions, newTransactions));
+		setChanged();
 	}
 
 	/** Removes a transaction from this.
@@ -451,7 +654,7 @@ public class GlobalData extends DefaultListenable {
 	 * @return 0 or more if the transaction is found, a negative integer if the transaction is unknown
 	 */
 	public int indexOf(Transaction transaction) {
-		return Collections.binarySearch(this.transactions, transaction, COMPARATOR);
+		return this.transactions.indexOf(transaction.getId());
 	}
 
 	/** Gets the number of categories.
@@ -478,12 +681,22 @@ public class GlobalData extends DefaultListenable {
 		if (categoryName==null) {
 			return Category.UNDEFINED;
 		}
-		int index = Collections.binarySearch(categories, new Category(categoryName));
-		if (index<0) {
-			return null;
-		} else {
-			return this.categories.get(index);
+		// This method is called for every transaction read from a file, so the search doesn't build a Category key
+		int low = 0;
+		int high = categories.size()-1;
+		while (low<=high) {
+			int middle = (low+high) >>> 1;
+			Category category = categories.get(middle);
+			int comparison = category.getName().compareTo(categoryName);
+			if (comparison<0) {
+				low = middle+1;
+			} else if (comparison>0) {
+				high = middle-1;
+			} else {
+				return category;
+			}
 		}
+		return null;
 	}
 	
 	/** Gets the index of a category.
@@ -539,9 +752,14 @@ public class GlobalData extends DefaultListenable {
 		this.categories.add(Category.UNDEFINED);
 		this.subCategorySeparator = DEFAULT_CATEGORY_SEPARATOR;
 		this.accounts = new ArrayList<Account>();
+		this.accountsByName = new NameIndex<Account>();
 		this.periodicals = new ArrayList<PeriodicalTransaction>();
-		this.transactions = new ArrayList<Transaction>();
+		this.transactions = new TransactionStore();
+		this.transactionsByAccount = ReverseIndex.byAccount();
+		this.transactionsByCategory = ReverseIndex.byCategory();
+		this.transactionsByMode = ReverseIndex.byMode();
 		this.filters = new ArrayList<Filter>();
+		this.filtersByName = null;
 		this.uri = null;
 		this.password = null;
 		this.somethingChanged = false;
@@ -651,20 +869,20 @@ public class GlobalData extends DefaultListenable {
 		Collection<PeriodicalTransaction> updated = new ArrayList<PeriodicalTransaction>(transactions.length);
 		for (int i = 0; i < dates.length; i++) {
 			PeriodicalTransaction pt = transactions[i];
-			Date date = dates[i];
-			Date nextDate = pt.getNextDate();
-			if (nextDate!=null) {
+			int date = DateUtils.dateToInteger(dates[i]);
+			int nextDate = pt.getNextDateAsInteger();
+			if (nextDate>=0) {
 				DateStepper ds = pt.getNextDateBuilder();
 				if (ds == null) {
 					nextDate = date;
 				} else {
-					while ((nextDate!=null) && (nextDate.compareTo(date)<=0)) {
+					while ((nextDate>=0) && (nextDate<=date)) {
 						nextDate = ds.getNextStep(nextDate);
 					}
 				}
 				removed.add(pt);
 				updated.add(new PeriodicalTransaction(pt.getDescription(), pt.getComment(), pt.getAmount(), pt.getAccount(), pt.getMode(),
-						pt.getCategory(), Arrays.asList(pt.getSubTransactions()), nextDate, pt.isEnabled() && (nextDate!=null), ds));
+						pt.getCategory(), Arrays.asList(pt.getSubTransactions()), DateUtils.integerToDate(nextDate), pt.isEnabled() && (nextDate>=0), ds));
 			}
 		}
 		this.remove(removed.toArray(new PeriodicalTransaction[removed.size()]));
@@ -691,12 +909,7 @@ public class GlobalData extends DefaultListenable {
 		int index = this.accounts.indexOf(account);
 		if (index>=0){
 			if (account.getTransactionsNumber()!=0) {
-				List<Transaction> removed = new ArrayList<Transaction>(account.getTransactionsNumber());
-				for (Transaction transaction : this.transactions) {
-					if (transaction.getAccount()==account) {
-						removed.add(transaction);
-					}
-				}
+				List<Transaction> removed = this.transactionsByAccount.get(account);
 				this.remove(removed.toArray(new Transaction[removed.size()]));
 			}
 			List<PeriodicalTransaction> removed = new ArrayList<PeriodicalTransaction>();
@@ -713,6 +926,7 @@ public class GlobalData extends DefaultListenable {
 				}
 			}
 			this.accounts.remove(index);
+			this.accountsByName.remove(account.getName(), account);
 			this.fireEvent(new AccountRemovedEvent(this, index, account));
 			this.setChanged();
 		}
@@ -732,7 +946,9 @@ public class GlobalData extends DefaultListenable {
 			if ((accountByName != null) && (accountByName!=account)) {
 				throw new IllegalArgumentException("Account name already exists"); //$NON-NLS-1$
 			}
+			this.accountsByName.remove(old, account);
 			account.setName(value);
+			this.accountsByName.put(value, account);
 			this.fireEvent(new AccountPropertyChangedEvent(this, AccountPropertyChangedEvent.NAME, account, old,value));
 			this.setChanged();
 		}
@@ -805,6 +1021,11 @@ public class GlobalData extends DefaultListenable {
 			this.newCategory = newMode;
 		}
 		
+		@Override
+		protected List<Transaction> getTransactions() {
+			return transactionsByCategory.get(oldCategory.getName());
+		}
+
 		@Override
 		protected Transaction change(Transaction t) {
 			return t.change(oldCategory, newCategory);
@@ -852,6 +1073,7 @@ public class GlobalData extends DefaultListenable {
 			// Category list is sorted by name => we have to change the category position
 			this.categories.remove(indexOf(category));
 			category.setName(name);
+			this.transactionsByCategory.rename(old, name);
 			int index = -Collections.binarySearch(categories, category)-1;
 			this.categories.add(index, category);
 			this.fireEvent(new CategoryPropertyChangedEvent(this, CategoryPropertyChangedEvent.NAME, category, old,name));
@@ -877,6 +1099,11 @@ public class GlobalData extends DefaultListenable {
 			this.newMode = newMode;
 		}
 		
+		@Override
+		protected List<Transaction> getTransactions() {
+			return transactionsByMode.get(new ReverseIndex.ModeKey(account, oldMode.getName()));
+		}
+
 		@Override
 		protected Transaction change(Transaction t) {
 			return t.change(account, oldMode, newMode);
@@ -935,6 +1162,7 @@ public class GlobalData extends DefaultListenable {
 			// So, we'll store it in a new fresh mode object : oldVanished.
 			Mode oldVanished = new Mode(oldMode.getName(), oldMode.getReceiptVdc(), oldMode.getExpenseVdc(), oldMode.isUseCheckBook());
 			account.replace(oldMode, newMode);
+			this.transactionsByMode.rename(new ReverseIndex.ModeKey(account, oldVanished.getName()), new ReverseIndex.ModeKey(account, oldMode.getName()));
 			event = new ModePropertyChangedEvent(this, account, oldVanished, oldMode);
 			for (Filter filter : filters) {
 				updateFilter(event, filter);
@@ -1018,8 +1246,10 @@ public class GlobalData extends DefaultListenable {
 		archive = src.archive;
 		locked = src.isLocked();
 		accounts = src.accounts;
+		accountsByName = src.accountsByName;
 		categories = src.categories;
 		filters = new ArrayList<Filter>();
+		filtersByName = null;
 		for (Filter filter : src.filters) {
 			Filter copy = new Filter();
 			copy.copy(filter);
@@ -1029,6 +1259,9 @@ public class GlobalData extends DefaultListenable {
 		subCategorySeparator = src.subCategorySeparator;
 		periodicals = src.periodicals;
 		transactions = src.transactions;
+		transactionsByAccount = src.transactionsByAccount;
+		transactionsByCategory = src.transactionsByCategory;
+		transactionsByMode = src.transactionsByMode;
 		password = src.password;
 		uri = src.uri;
 		this.fireEvent(new EverythingChangedEvent(this));
@@ -1059,6 +1292,7 @@ public class GlobalData extends DefaultListenable {
 			throw new IllegalArgumentException("Filter "+filter.getName()+" already exists");
 		}
 		this.filters.add(filter);
+		this.filtersByName = null;
 		filter.addObserver(FILTER_OBSERVER);
 		this.fireEvent(new FiltersAddedEvent(this, new Filter[]{filter}));
 		this.setChanged();
@@ -1069,6 +1303,7 @@ public class GlobalData extends DefaultListenable {
 	 */
 	public void remove(Filter filter) {
 		if (this.filters.remove(filter)) {
+			this.filtersByName = null;
 			filter.deleteObserver(FILTER_OBSERVER);
 			this.fireEvent(new FiltersRemovedEvent(this, new Filter[]{filter}));
 			this.setChanged();
@@ -1098,11 +1333,15 @@ public class GlobalData extends DefaultListenable {
 		if (name==null) {
 			return null;
 		}
-		for (Filter filter : filters) {
-			if (name.equals(filter.getName())) {
-				return filter;
+		if (filtersByName==null) {
+			// The index is built lazily, as it is invalidated by every filter change
+			filtersByName = new HashMap<String, Filter>();
+			for (Filter filter : filters) {
+				if ((filter.getName()!=null) && !filtersByName.containsKey(filter.getName())) {
+					filtersByName.put(filter.getName(), filter);
+				}
 			}
 		}
-		return null;
+		return filtersByName.get(name);
 	}
 }
\ No newline at end of file
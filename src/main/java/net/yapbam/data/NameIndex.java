@@ -0,0 +1,72 @@
+package net.yapbam.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** A hash index of elements by their names, where the names are compared ignoring case.
+ * <br>Two names have the same key if and only if String.equalsIgnoreCase returns true for them.
+ * So, this index returns exactly what a linear search with equalsIgnoreCase would return, and the result does not
+ * depend on the default locale (unlike with String.toLowerCase()).
+ * <br>The index does not know when the names of its elements change, its owner should update it.
+ * @param <T> The type of the indexed elements
+ */
+final class NameIndex<T> {
+	private final Map<String, T> map;
+
+	/** Constructor.
+	 * <br>Builds an empty index.
+	 */
+	NameIndex() {
+		this.map = new HashMap<String, T>();
+	}
+
+	/** Gets the element with a name.
+	 * @param name The name (null returns null)
+	 * @return the element or null if no element has this name
+	 */
+	T get(String name) {
+		return name==null ? null : map.get(getKey(name));
+	}
+
+	/** Adds an element to the index.
+	 * @param name The element's name
+	 * @param element The element
+	 */
+	void put(String name, T element) {
+		map.put(getKey(name), element);
+	}
+
+	/** Removes an element from the index.
+	 * @param name The element's name
+	 * @param element The element. Nothing is removed if another element is indexed with this name.
+	 */
+	void remove(String name, T element) {
+		String key = getKey(name);
+		if (map.get(key)==element) {
+			map.remove(key);
+		}
+	}
+
+	/** Gets the key of a name.
+	 * <br>Each char is folded the same way String.equalsIgnoreCase compares chars.
+	 * @param name a name
+	 * @return The name's key (the name itself if it is already folded, which is the case of the most lower case names)
+	 */
+	static String getKey(String name) {
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			if (fold(c)!=c) {
+				char[] chars = name.toCharArray();
+				for (int j = i; j < chars.length; j++) {
+					chars[j] = fold(chars[j]);
+				}
+				return new String(chars);
+			}
+		}
+		return name;
+	}
+
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
@@ -66,6 +66,15 @@ public class PeriodicalTransaction extends AbstractTransaction {
 		return DateUtils.integerToDate(nextDate);
 	}
 
+	/** Gets the date of the next transaction to be generated in its integer format.
+	 * @return a date in the DateUtils.dateToInteger format or a negative integer if no transaction is forecasted
+	 * @see #getNextDate()
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getNextDateAsInteger() {
+		return nextDate;
+	}
+
 	/** Gets a builder able to compute the date of next transaction to be generated.
 	 * @return a date builder
 	 */
@@ -104,6 +113,17 @@ public class PeriodicalTransaction extends AbstractTransaction {
 	 * @return a transaction list (the one passed as second argument if it is not null).
 	 */
 	public List<Transaction> generate(Date date, List<Transaction> result) {
+		return generate(DateUtils.dateToInteger(date), result);
+	}
+
+	/** Generate transactions from the periodical transactions until a date.
+	 * <br>This method is the same as {@link #generate(Date, List)} except the date is in its integer format.
+	 * @param date Date until the transactions had to be generated (inclusive) in the DateUtils.dateToInteger format
+	 * @param result a list where to put the transactions or null to return a new list
+	 * @return a transaction list (the one passed as second argument if it is not null).
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public List<Transaction> generate(int date, List<Transaction> result) {
 		if (result==null) {
 			result = new ArrayList<Transaction>();
 		}
@@ -115,8 +135,8 @@ public class PeriodicalTransaction extends AbstractTransaction {
 			if (vdStepper==null) {
 				vdStepper = DateStepper.IMMEDIATE;
 			}
-			//Be aware, when the transaction has an "end date", and the date is after this "end date", tDate become null
-			for (Date tDate = getNextDate();(tDate!=null)&&(tDate.compareTo(date)<=0);tDate=getNextDateBuilder().getNextStep(tDate)) {
+			//Be aware, when the transaction has an "end date", and the date is after this "end date", tDate become negative
+			for (int tDate = this.nextDate;(tDate>=0)&&(tDate<=date);tDate=getNextDateBuilder().getNextStep(tDate)) {
 				result.add(new Transaction(tDate, null, getDescription(), getComment(), amount, getAccount(), mode, getCategory(),
 						vdStepper.getNextStep(tDate), null, Arrays.asList(getSubTransactions())));
 			}
@@ -130,6 +150,15 @@ public class PeriodicalTransaction extends AbstractTransaction {
 	 * @return true if there is pending transactions
 	 */
 	public boolean hasPendingTransactions(Date date) {
-		return isEnabled() && (DateUtils.dateToInteger(date)>=this.nextDate);
+		return hasPendingTransactions(DateUtils.dateToInteger(date));
+	}
+
+	/** Tests whether this periodical transaction has transactions pending with dates before a fixed date.
+	 * @param date The date to consider in the DateUtils.dateToInteger format.
+	 * @return true if there is pending transactions
+	 * @see #hasPendingTransactions(Date)
+	 */
+	public boolean hasPendingTransactions(int date) {
+		return isEnabled() && (date>=this.nextDate);
 	}
 }
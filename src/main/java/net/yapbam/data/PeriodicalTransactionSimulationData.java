@@ -5,21 +5,23 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Observable;
-import java.util.Observer;
 
-import net.yapbam.data.event.AccountAddedEvent;
-import net.yapbam.data.event.CategoryAddedEvent;
-import net.yapbam.data.event.CheckbookAddedEvent;
-import net.yapbam.data.event.CheckbookPropertyChangedEvent;
-import net.yapbam.data.event.CheckbookRemovedEvent;
+import net.yapbam.data.event.AccountPropertyChangedEvent;
+import net.yapbam.data.event.AccountRemovedEvent;
+import net.yapbam.data.event.BatchCommittedEvent;
+import net.yapbam.data.event.CategoryPropertyChangedEvent;
+import net.yapbam.data.event.CategoryRemovedEvent;
 import net.yapbam.data.event.DataEvent;
 import net.yapbam.data.event.DataListener;
-import net.yapbam.data.event.IsArchivedChangedEvent;
-import net.yapbam.data.event.IsLockedChangedEvent;
-import net.yapbam.data.event.ModeAddedEvent;
-import net.yapbam.data.event.NeedToBeSavedChangedEvent;
-import net.yapbam.data.event.PasswordChangedEvent;
-import net.yapbam.data.event.URIChangedEvent;
+import net.yapbam.data.event.EverythingChangedEvent;
+import net.yapbam.data.event.FilterPropertyChangedEvent;
+import net.yapbam.data.event.FiltersAddedEvent;
+import net.yapbam.data.event.FiltersRemovedEvent;
+import net.yapbam.data.event.ModePropertyChangedEvent;
+import net.yapbam.data.event.ModeRemovedEvent;
+import net.yapbam.data.event.PeriodicalTransactionsAddedEvent;
+import net.yapbam.data.event.PeriodicalTransactionsRemovedEvent;
+import net.yapbam.data.event.SubCategorySeparatorChangedEvent;
 
 public class PeriodicalTransactionSimulationData extends Observable {
 	public enum Unit {MONTH(GregorianCalendar.MONTH), YEAR(GregorianCalendar.YEAR);
@@ -34,6 +36,13 @@ public class PeriodicalTransactionSimulationData extends Observable {
 		}
 	}
 	
+	/** The events that may have an impact on the simulation (with the batches that contain some of them). */
+	private static final Class<?>[] IMPACTING_EVENTS = new Class<?>[] {EverythingChangedEvent.class,
+		PeriodicalTransactionsAddedEvent.class, PeriodicalTransactionsRemovedEvent.class,
+		AccountPropertyChangedEvent.class, AccountRemovedEvent.class, CategoryPropertyChangedEvent.class, CategoryRemovedEvent.class,
+		ModePropertyChangedEvent.class, ModeRemovedEvent.class, SubCategorySeparatorChangedEvent.class,
+		FilterPropertyChangedEvent.class, FiltersAddedEvent.class, FiltersRemovedEvent.class, BatchCommittedEvent.class};
+
 	private FilteredData data;
 	private Date endDate;
 	private boolean ignoreFilter;
@@ -41,35 +50,57 @@ public class PeriodicalTransactionSimulationData extends Observable {
 	private double totalExpenses;
 	private double totalReceipts;
 	private int nbTransactions;
+	private DataListener listener;
+	private DataListener filterListener;
 	
 	public PeriodicalTransactionSimulationData(FilteredData data) {
 		this.data = data;
 		this.ignoreFilter = true;
 		setEndDate(Unit.YEAR, 1);
-		data.getGlobalData().addListener(new DataListener() {
+		this.listener = new DataListener() {
 			@Override
 			public void processEvent(DataEvent event) {
-				if (hasImpact(event)) {
+				if (!(event instanceof BatchCommittedEvent) || hasImpact(((BatchCommittedEvent)event).getEvents())) {
 					invalidate();
 				}
 			}
-		});
-		data.getFilter().addObserver(new Observer() {
+		};
+		data.getGlobalData().addWeakListener(this.listener, IMPACTING_EVENTS);
+		this.filterListener = new DataListener() {
 			@Override
-			public void update(Observable o, Object arg) {
+			public void processEvent(DataEvent event) {
 				if (!ignoreFilter) {
 					invalidate();
 				}
 			}
-		});
+		};
+		// The filtered data sends an EverythingChangedEvent each time its filter changes.
+		// Observing the filter itself would make it reference this, until dispose is called.
+		data.addWeakListener(this.filterListener, EverythingChangedEvent.class);
+	}
+
+	/** Detaches this from the global data and from the filtered data.
+	 * <br>After this call, this no longer reflects their changes.
+	 */
+	public void dispose() {
+		data.getGlobalData().removeListener(this.listener);
+		data.removeListener(this.filterListener);
 	}
 	
-	private boolean hasImpact(DataEvent event) {
-		return !(event instanceof AccountAddedEvent) && !(event instanceof CategoryAddedEvent) && !(event instanceof CheckbookAddedEvent) &&
-				!(event instanceof CheckbookPropertyChangedEvent) && !(event instanceof CheckbookRemovedEvent) &&
-				!(event instanceof IsArchivedChangedEvent) && !(event instanceof IsLockedChangedEvent) &&
-				!(event instanceof ModeAddedEvent) && !(event instanceof NeedToBeSavedChangedEvent) &&
-				!(event instanceof PasswordChangedEvent) && !(event instanceof URIChangedEvent);
+	/** Tests whether some events of a batch have an impact on the simulation.
+	 * <br>The simulation only depends on the periodical transactions, the transactions delta of the batch has no impact on it.
+	 * @param events The events of the batch (other than transactions ones)
+	 * @return true if one of the events is one of the events that have an impact
+	 */
+	private static boolean hasImpact(List<DataEvent> events) {
+		for (DataEvent event : events) {
+			for (Class<?> eventClass : IMPACTING_EVENTS) {
+				if (eventClass.isInstance(event)) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 
 	public void setEndDate(Unit unit, int amount) {
@@ -0,0 +1,198 @@
+package net.yapbam.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.yapbam.util.ArrayUtils;
+import net.yapbam.util.NullUtils;
+
+/** An index of transactions by one of their attributes (their account, their categories or their mode).
+ * <br>Each key is mapped to the list of the transactions that have this key, sorted by id (so, in the same order as in GlobalData).
+ * <br>The keys are computed with the same equality rules than the linear searches they replace
+ * (Transaction.change(...) for instance): accounts are compared by identity, categories by name and modes by account and name.
+ * <br>The index does not know when the names of categories or modes change, its owner should rename the keys.
+ * @param <K> The type of the keys
+ */
+abstract class ReverseIndex<K> {
+	private static final Comparator<Transaction> COMPARATOR = new Comparator<Transaction>() {
+		@Override
+		public int compare(Transaction o1, Transaction o2) {
+			return Long.signum(o1.getId()-o2.getId());
+		}
+	};
+
+	private final Map<K, List<Transaction>> map;
+	private final List<K> keys;
+
+	/** Constructor.
+	 * <br>Builds an empty index.
+	 */
+	ReverseIndex() {
+		this.map = new HashMap<K, List<Transaction>>();
+		this.keys = new ArrayList<K>();
+	}
+
+	/** Gets the keys of a transaction.
+	 * @param transaction The transaction
+	 * @param keys A collection where to add the transaction's keys. A key should be added only once.
+	 */
+	abstract void getKeys(Transaction transaction, Collection<K> keys);
+
+	/** Gets an index of transactions by account.
+	 * @return a new empty index
+	 */
+	static ReverseIndex<Account> byAccount() {
+		return new ReverseIndex<Account>() {
+			@Override
+			void getKeys(Transaction transaction, Collection<Account> keys) {
+				keys.add(transaction.getAccount());
+			}
+		};
+	}
+
+	/** Gets an index of transactions by category name.
+	 * <br>A transaction is indexed with its category and the categories of its subtransactions.
+	 * @return a new empty index
+	 */
+	static ReverseIndex<String> byCategory() {
+		return new ReverseIndex<String>() {
+			@Override
+			void getKeys(Transaction transaction, Collection<String> keys) {
+				keys.add(transaction.getCategory().getName());
+				for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
+					String name = transaction.getSubTransaction(i).getCategory().getName();
+					if (!keys.contains(name)) {
+						keys.add(name);
+					}
+				}
+			}
+		};
+	}
+
+	/** Gets an index of transactions by mode.
+	 * @return a new empty index
+	 */
+	static ReverseIndex<ModeKey> byMode() {
+		return new ReverseIndex<ModeKey>() {
+			@Override
+			void getKeys(Transaction transaction, Collection<ModeKey> keys) {
+				keys.add(new ModeKey(transaction.getAccount(), transaction.getMode().getName()));
+			}
+		};
+	}
+
+	/** Adds transactions to the index.
+	 * @param transactions The transactions to add
+	 */
+	void add(Transaction[] transactions) {
+		for (Transaction transaction : transactions) {
+			keys.clear();
+			getKeys(transaction, keys);
+			for (K key : keys) {
+				List<Transaction> list = map.get(key);
+				if (list==null) {
+					list = new ArrayList<Transaction>();
+					map.put(key, list);
+				}
+				int size = list.size();
+				if ((size==0) || (COMPARATOR.compare(list.get(size-1), transaction)<0)) {
+					// Most of the time, transactions are added in their creation order
+					list.add(transaction);
+				} else {
+					list.add(-Collections.binarySearch(list, transaction, COMPARATOR)-1, transaction);
+				}
+			}
+		}
+	}
+
+	/** Removes transactions from the index.
+	 * <br>Each key list is compacted in one pass, whatever is the number of transactions removed from it.
+	 * @param transactions The transactions to remove
+	 */
+	void remove(Collection<Transaction> transactions) {
+		Map<K, List<Transaction>> removedByKey = new HashMap<K, List<Transaction>>();
+		for (Transaction transaction : transactions) {
+			keys.clear();
+			getKeys(transaction, keys);
+			for (K key : keys) {
+				List<Transaction> removed = removedByKey.get(key);
+				if (removed==null) {
+					removed = new ArrayList<Transaction>();
+					removedByKey.put(key, removed);
+				}
+				removed.add(transaction);
+			}
+		}
+		for (Map.Entry<K, List<Transaction>> entry : removedByKey.entrySet()) {
+			List<Transaction> list = map.get(entry.getKey());
+			if (list!=null) {
+				List<Transaction> removed = entry.getValue();
+				Collections.sort(removed, COMPARATOR);
+				ArrayUtils.removeAll(list, removed, COMPARATOR);
+				if (list.isEmpty()) {
+					map.remove(entry.getKey());
+				}
+			}
+		}
+	}
+
+	/** Changes a key.
+	 * <br>The transactions indexed with the old key are moved to the new one.
+	 * @param oldKey The old key
+	 * @param newKey The new key
+	 */
+	void rename(K oldKey, K newKey) {
+		List<Transaction> list = map.remove(oldKey);
+		if (list!=null) {
+			List<Transaction> existing = map.get(newKey);
+			if (existing!=null) {
+				list.addAll(existing);
+				Collections.sort(list, COMPARATOR);
+			}
+			map.put(newKey, list);
+		}
+	}
+
+	/** Gets the transactions indexed with a key.
+	 * @param key The key
+	 * @return an unmodifiable list sorted by id, it reflects the further changes of the index.
+	 */
+	List<Transaction> get(K key) {
+		List<Transaction> list = map.get(key);
+		return list==null ? Collections.<Transaction>emptyList() : Collections.unmodifiableList(list);
+	}
+
+	/** The key of a mode in a mode index. */
+	static final class ModeKey {
+		private final Account account;
+		private final String name;
+
+		/** Constructor.
+		 * @param account The account of the mode
+		 * @param name The mode's name
+		 */
+		ModeKey(Account account, String name) {
+			this.account = account;
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ModeKey)) {
+				return false;
+			}
+			ModeKey other = (ModeKey) obj;
+			return (other.account==account) && NullUtils.areEquals(other.name, name);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(account)*31 + (name==null ? 0 : name.hashCode());
+		}
+	}
+}
@@ -1,29 +1,18 @@
 package net.yapbam.data;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Observable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.yapbam.data.event.AccountAddedEvent;
-import net.yapbam.data.event.AccountPropertyChangedEvent;
-import net.yapbam.data.event.AccountRemovedEvent;
-import net.yapbam.data.event.CheckbookAddedEvent;
-import net.yapbam.data.event.CheckbookPropertyChangedEvent;
-import net.yapbam.data.event.CheckbookRemovedEvent;
+import net.yapbam.data.event.BatchCommittedEvent;
 import net.yapbam.data.event.DataEvent;
 import net.yapbam.data.event.DataListener;
-import net.yapbam.data.event.ModeAddedEvent;
-import net.yapbam.data.event.ModePropertyChangedEvent;
-import net.yapbam.data.event.ModeRemovedEvent;
-import net.yapbam.data.event.NeedToBeSavedChangedEvent;
-import net.yapbam.data.event.PasswordChangedEvent;
-import net.yapbam.data.event.PeriodicalTransactionsAddedEvent;
-import net.yapbam.data.event.PeriodicalTransactionsRemovedEvent;
+import net.yapbam.data.event.EverythingChangedEvent;
 import net.yapbam.data.event.TransactionsAddedEvent;
 import net.yapbam.data.event.TransactionsRemovedEvent;
-import net.yapbam.data.event.URIChangedEvent;
 
 /** Some statistics about FilteredData.
  * @see FilteredData
@@ -37,6 +26,7 @@ public class StatData extends Observable {
 	private double expenses;
 	private FilteredData data;
 	private boolean needRefresh;
+	private DataListener listener;
 	
 	/** Constructor
 	 * @param data The data to which the created instance will be linked.
@@ -48,38 +38,54 @@ public class StatData extends Observable {
 		this.receipts = 0;
 		this.expenses = 0;
 		this.needRefresh = false;
-		data.addListener(new DataListener() {
+		// The amounts of modified transactions are unchanged, so TransactionsModifiedEvent has no effect on the statistics
+		this.listener = new DataListener() {
 			@Override
 			public void processEvent(DataEvent event) {
-				if (!isNeutral(event)) {
-					if (!needRefresh && event instanceof TransactionsAddedEvent) {
-						Transaction[] transactions = ((TransactionsAddedEvent)event).getTransactions();
-						refresh(Arrays.asList(transactions), true);
-						LOGGER.trace("Partial update done on {} transactions", transactions.length);
-					} else if (!needRefresh && event instanceof TransactionsRemovedEvent) {
-						Transaction[] transactions = ((TransactionsRemovedEvent)event).getTransactions();
-						refresh(Arrays.asList(transactions), false);
-						LOGGER.trace("Partial update done on {} transactions", transactions.length);
-					} else {
-						needRefresh = true;
-					}
-					fireChanged();
+				if (!needRefresh && event instanceof TransactionsAddedEvent) {
+					Transaction[] transactions = ((TransactionsAddedEvent)event).getTransactions();
+					refresh(Arrays.asList(transactions), true);
+					LOGGER.trace("Partial update done on {} transactions", transactions.length);
+				} else if (!needRefresh && event instanceof TransactionsRemovedEvent) {
+					Transaction[] transactions = ((TransactionsRemovedEvent)event).getTransactions();
+					refresh(Arrays.asList(transactions), false);
+					LOGGER.trace("Partial update done on {} transactions", transactions.length);
+				} else if (!needRefresh && event instanceof BatchCommittedEvent && isNeutral(((BatchCommittedEvent)event).getEvents())) {
+					// The amounts of modified transactions are unchanged, only the added and removed ones matter
+					BatchCommittedEvent batch = (BatchCommittedEvent)event;
+					refresh(Arrays.asList(batch.getRemovedTransactions()), false);
+					refresh(Arrays.asList(batch.getAddedTransactions()), true);
+					LOGGER.trace("Partial update done on {} transactions", batch.getRemovedTransactions().length+batch.getAddedTransactions().length);
+				} else {
+					needRefresh = true;
 				}
+				fireChanged();
 			}
-		});
+		};
+		data.addWeakListener(this.listener, TransactionsAddedEvent.class, TransactionsRemovedEvent.class, BatchCommittedEvent.class, EverythingChangedEvent.class);
+	}
+
+	/** Detaches this from the filtered data.
+	 * <br>After this call, this no longer reflects the changes of the filtered data.
+	 * <br>Calling this method is not mandatory, this is registered as a weak listener and will be garbage collected when not used anymore,
+	 * but it stops the events processing immediately, without waiting for the garbage collector.
+	 */
+	public void dispose() {
+		this.data.removeListener(this.listener);
 	}
 	
-	/** Tests whether an event may have any impact on the statistics.
-	 * <br>For instance, NeedToBeSavedChangedEvent has no effect, but TransactionsAddedEvent has.
-	 * @param event The event to test
-	 * @return true if the event has no effect on this view
+	/** Tests whether the events of a batch may have any impact on the statistics.
+	 * <br>Except the transactions ones, only EverythingChangedEvent has an effect on the statistics.
+	 * @param events The events to test
+	 * @return true if the events have no effect on this view
 	 */
-	private boolean isNeutral(DataEvent event) {
-		return (event instanceof NeedToBeSavedChangedEvent) || (event instanceof PasswordChangedEvent) || (event instanceof URIChangedEvent) 
-			|| (event instanceof AccountAddedEvent) || (event instanceof AccountRemovedEvent) || (event instanceof AccountPropertyChangedEvent)
-			|| (event instanceof ModeAddedEvent) || (event instanceof ModeRemovedEvent) || (event instanceof ModePropertyChangedEvent)
-			|| (event instanceof CheckbookPropertyChangedEvent) || (event instanceof CheckbookAddedEvent) || (event instanceof CheckbookRemovedEvent)
-			|| (event instanceof PeriodicalTransactionsAddedEvent) || (event instanceof PeriodicalTransactionsRemovedEvent);
+	private boolean isNeutral(List<DataEvent> events) {
+		for (DataEvent event : events) {
+			if (event instanceof EverythingChangedEvent) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	private void ensureIsUpdated() {
@@ -0,0 +1,190 @@
+package net.yapbam.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+
+/** The list of transactions of a GlobalData, sorted by id.
+ * <br>Besides the usual list operations, it searches a transaction by id, removes several transactions in one pass (see {@link #remove(int[])})
+ * and builds immutable snapshots of its content (see {@link #snapshot()}). A snapshot is made of chunks of transactions, and the chunks that were not
+ * modified since the previous snapshot are shared with it.
+ * @see GlobalData#getTransactionStore()
+ */
+final class TransactionStore extends AbstractList<Transaction> implements RandomAccess {
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	private Transaction[] transactions;
+	private int size;
+	// The chunks of the last snapshot (null if no snapshot was taken)
+	private Transaction[][] chunks;
+	// The index of the first transaction that was moved (added, removed or shifted) since the last snapshot
+	private int firstMoved;
+	// The chunks of the last snapshot that contain transactions replaced since this snapshot
+	private BitSet replacedChunks;
+
+	/** Constructor.
+	 * <br>Builds an empty store.
+	 */
+	TransactionStore() {
+		clear();
+	}
+
+	@Override
+	public Transaction get(int index) {
+		checkIndex(index, size);
+		return transactions[index];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Transaction set(int index, Transaction transaction) {
+		checkIndex(index, size);
+		Transaction old = transactions[index];
+		transactions[index] = transaction;
+		replacedChunks.set(index >> CHUNK_SHIFT);
+		return old;
+	}
+
+	@Override
+	public void add(int index, Transaction transaction) {
+		checkIndex(index, size+1);
+		if (size==transactions.length) {
+			transactions = Arrays.copyOf(transactions, Math.max(DEFAULT_CAPACITY, size+(size>>1)));
+		}
+		shift(index, index+1, size-index);
+		firstMoved = Math.min(firstMoved, index);
+		size++;
+		modCount++;
+		transactions[index] = transaction;
+	}
+
+	@Override
+	public Transaction remove(int index) {
+		checkIndex(index, size);
+		Transaction old = transactions[index];
+		shift(index+1, index, size-index-1);
+		firstMoved = Math.min(firstMoved, index);
+		size--;
+		transactions[size] = null;
+		modCount++;
+		return old;
+	}
+
+	/** Removes transactions by their indexes.
+	 * <br>The remaining transactions are compacted in one pass, so removing k transactions costs O(n) instead of O(k*n).
+	 * @param indexes The indexes of the transactions to remove, sorted in ascending order, without duplicates.
+	 * @throws IndexOutOfBoundsException if an index is out of bounds.
+	 */
+	void remove(int[] indexes) {
+		if (indexes.length==0) {
+			return;
+		}
+		checkIndex(indexes[0], size);
+		checkIndex(indexes[indexes.length-1], size);
+		int to = indexes[0];
+		for (int i = 0; i < indexes.length; i++) {
+			int from = indexes[i]+1;
+			int length = (i+1<indexes.length ? indexes[i+1] : size)-from;
+			shift(from, to, length);
+			to += length;
+		}
+		Arrays.fill(transactions, to, size, null);
+		firstMoved = Math.min(firstMoved, indexes[0]);
+		size = to;
+		modCount++;
+	}
+
+	@Override
+	public void clear() {
+		transactions = new Transaction[0];
+		size = 0;
+		chunks = null;
+		firstMoved = 0;
+		replacedChunks = new BitSet();
+		modCount++;
+	}
+
+	/** Gets an immutable snapshot of this store.
+	 * <br>The chunks of the previous snapshot that contain only transactions that were neither moved nor replaced are shared.
+	 * So, the cost of a snapshot is proportional to the number of transactions after the first added or removed one,
+	 * and to the number of replaced transactions (transactions are usually added at the end of the store).
+	 * @return an unmodifiable list that is not affected by the further modifications of this store.
+	 */
+	List<Transaction> snapshot() {
+		Transaction[][] result = new Transaction[(size+CHUNK_SIZE-1) >> CHUNK_SHIFT][];
+		for (int i = 0; i < result.length; i++) {
+			int from = i << CHUNK_SHIFT;
+			if ((chunks!=null) && (i<chunks.length) && (from+CHUNK_SIZE<=firstMoved) && !replacedChunks.get(i)) {
+				result[i] = chunks[i];
+			} else {
+				result[i] = Arrays.copyOfRange(transactions, from, Math.min(from+CHUNK_SIZE, size));
+			}
+		}
+		chunks = result;
+		firstMoved = size;
+		replacedChunks.clear();
+		return new Snapshot(result, size);
+	}
+
+	private void shift(int from, int to, int length) {
+		System.arraycopy(transactions, from, transactions, to, length);
+	}
+
+	private static void checkIndex(int index, int size) {
+		if ((index<0) || (index>=size)) {
+			throw new IndexOutOfBoundsException(Integer.toString(index));
+		}
+	}
+
+	/** Searches a transaction id in this store.
+	 * <br>The transactions have to be sorted by id.
+	 * @param id The searched id
+	 * @return the index of the transaction with this id, or (-(insertion point)-1) if there's no such transaction.
+	 */
+	int indexOf(long id) {
+		int low = 0;
+		int high = size-1;
+		while (low<=high) {
+			int middle = (low+high) >>> 1;
+			long middleId = transactions[middle].getId();
+			if (middleId<id) {
+				low = middle+1;
+			} else if (middleId>id) {
+				high = middle-1;
+			} else {
+				return middle;
+			}
+		}
+		return -(low+1);
+	}
+
+	/** An immutable list of transactions stored in chunks. */
+	private static final class Snapshot extends AbstractList<Transaction> implements RandomAccess {
+		private final Transaction[][] chunks;
+		private final int size;
+
+		Snapshot(Transaction[][] chunks, int size) {
+			this.chunks = chunks;
+			this.size = size;
+		}
+
+		@Override
+		public Transaction get(int index) {
+			checkIndex(index, size);
+			return chunks[index >> CHUNK_SHIFT][index & (CHUNK_SIZE-1)];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
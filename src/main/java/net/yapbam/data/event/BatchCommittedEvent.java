@@ -0,0 +1,87 @@
+package net.yapbam.data.event;
+
+import java.util.List;
+
+import net.yapbam.data.Transaction;
+
+/** This event is sent when a batch of modifications is committed.
+ * <br>It replaces all the events that occurred during the batch. The transactions events are coalesced in a delta
+ * between the state before the batch and the state after it:<ul>
+ * <li>the net added transactions (added during the batch and not removed since),</li>
+ * <li>the net removed transactions (that were there before the batch and are no more),</li>
+ * <li>the modified transactions (that were there before the batch and were replaced in place by a new version).</li>
+ * </ul>
+ * The other events (accounts, categories, modes, periodical transactions, etc...) are available in the order they occurred.
+ * <br>When this event is received, the source is already in its final state. So, a listener should process the other events first,
+ * then the transactions delta, or simply recompute everything if one of the other events requires it.
+ * @see DefaultListenable#beginBatch()
+ */
+public class BatchCommittedEvent extends DataEvent {
+	private Transaction[] added;
+	private Transaction[] removed;
+	private Transaction[] oldTransactions;
+	private Transaction[] newTransactions;
+	private List<DataEvent> events;
+
+	/** Constructor.
+	 * @param source The object that thrown the event
+	 * @param added The net added transactions
+	 * @param removed The net removed transactions
+	 * @param oldTransactions The transactions that were modified in place
+	 * @param newTransactions The last versions of these transactions (newTransactions[i] replaces oldTransactions[i])
+	 * @param events The other events, in the order they occurred
+	 */
+	public BatchCommittedEvent(Object source, Transaction[] added, Transaction[] removed, Transaction[] oldTransactions,
+			Transaction[] newTransactions, List<DataEvent> events) {
+		super(source);
+		this.added = added;
+		this.removed = removed;
+		this.oldTransactions = oldTransactions;
+		this.newTransactions = newTransactions;
+		this.events = events;
+	}
+
+	/** Gets the net added transactions.
+	 * @return a transaction array (empty if no transaction was added).
+	 */
+	public Transaction[] getAddedTransactions() {
+		return added;
+	}
+
+	/** Gets the net removed transactions.
+	 * @return a transaction array (empty if no transaction was removed).
+	 */
+	public Transaction[] getRemovedTransactions() {
+		return removed;
+	}
+
+	/** Gets the transactions that were modified in place.
+	 * @return a transaction array (empty if no transaction was modified).
+	 * @see TransactionsModifiedEvent
+	 */
+	public Transaction[] getOldTransactions() {
+		return oldTransactions;
+	}
+
+	/** Gets the new versions of the transactions that were modified in place.
+	 * @return a transaction array, in the same order as the modified transactions.
+	 * @see TransactionsModifiedEvent
+	 */
+	public Transaction[] getNewTransactions() {
+		return newTransactions;
+	}
+
+	/** Gets the events, other than transactions events, that occurred during the batch.
+	 * @return an unmodifiable list of events, in the order they occurred.
+	 */
+	public List<DataEvent> getEvents() {
+		return events;
+	}
+
+	/** Tests whether this event contains no change.
+	 * @return true if no event occurred during the batch, or if the transactions events cancelled each other.
+	 */
+	public boolean isEmpty() {
+		return (added.length==0) && (removed.length==0) && (oldTransactions.length==0) && events.isEmpty();
+	}
+}
@@ -0,0 +1,81 @@
+package net.yapbam.data.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.yapbam.data.Transaction;
+
+/** The events recorded during a batch.
+ * <br>The transactions events are coalesced as they are recorded. Transactions are compared by identity (the different versions
+ * of a transaction modified in place have the same id).
+ * @see BatchCommittedEvent
+ */
+final class ChangeSet {
+	private static final Transaction[] EMPTY = new Transaction[0];
+
+	private final Object source;
+	// The maps keys are the transactions, Transaction does not override equals, so they are compared by identity
+	private final Map<Transaction, Transaction> added;
+	private final Map<Transaction, Transaction> removed;
+	// The last version of each modified transaction -> the version before the batch
+	private final Map<Transaction, Transaction> modified;
+	private final List<DataEvent> events;
+
+	/** Constructor.
+	 * @param source The source of the batch.
+	 */
+	ChangeSet(Object source) {
+		this.source = source;
+		this.added = new LinkedHashMap<Transaction, Transaction>();
+		this.removed = new LinkedHashMap<Transaction, Transaction>();
+		this.modified = new LinkedHashMap<Transaction, Transaction>();
+		this.events = new ArrayList<DataEvent>();
+	}
+
+	/** Records an event.
+	 * @param event The event
+	 */
+	void add(DataEvent event) {
+		if (event instanceof TransactionsAddedEvent) {
+			for (Transaction transaction : ((TransactionsAddedEvent)event).getTransactions()) {
+				if (removed.remove(transaction)==null) {
+					added.put(transaction, transaction);
+				}
+			}
+		} else if (event instanceof TransactionsRemovedEvent) {
+			for (Transaction transaction : ((TransactionsRemovedEvent)event).getTransactions()) {
+				if (added.remove(transaction)==null) {
+					Transaction original = modified.remove(transaction);
+					removed.put(original==null?transaction:original, transaction);
+				}
+			}
+		} else if (event instanceof TransactionsModifiedEvent) {
+			Transaction[] oldTransactions = ((TransactionsModifiedEvent)event).getOldTransactions();
+			Transaction[] newTransactions = ((TransactionsModifiedEvent)event).getNewTransactions();
+			for (int i = 0; i < oldTransactions.length; i++) {
+				if (added.remove(oldTransactions[i])!=null) {
+					// The transaction was not there before the batch
+					added.put(newTransactions[i], newTransactions[i]);
+				} else {
+					Transaction original = modified.remove(oldTransactions[i]);
+					modified.put(newTransactions[i], original==null?oldTransactions[i]:original);
+				}
+			}
+		} else {
+			events.add(event);
+		}
+	}
+
+	/** Builds the event that replaces the recorded ones.
+	 * @return a new event
+	 */
+	BatchCommittedEvent getEvent() {
+		Transaction[] newTransactions = modified.keySet().toArray(EMPTY);
+		Transaction[] oldTransactions = modified.values().toArray(EMPTY);
+		return new BatchCommittedEvent(source, added.keySet().toArray(EMPTY), removed.keySet().toArray(EMPTY),
+				oldTransactions, newTransactions, Collections.unmodifiableList(events));
+	}
+}
@@ -1,8 +1,12 @@
 package net.yapbam.data.event;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import org.slf4j.LoggerFactory;
 
@@ -13,22 +17,44 @@ import org.slf4j.LoggerFactory;
  *		<li>if the traceEventListeners system property is set to true, the modifications in the listeners list are logged with level debug.</li>
  *	</ul>
  *	Logs are written with <a href="http://www.slf4j.org/">slf4j</a> on the logger returned by LoggerFactory.getLogger(DefaultListenable.class)
+ *	<br>A listener can subscribe to some event classes only (see {@link #addListener(DataListener, Class...)}). Then, it is only invoked
+ *	with the events of these classes (or of their subclasses). The listeners interested in a class of events are computed once per event class,
+ *	and updated when a listener is added, so firing an event does not test every listener.
+ *	<br>The number of events fired and of listener invocations are counted per event class (see {@link #getFiredCount(Class)}
+ *	and {@link #getDeliveredCount(Class)}), in order to measure the cost of the events fan-out.
+ *	<br>A listener can be registered with a weak reference (see {@link #addWeakListener(DataListener, Class...)}). Then, it does not prevent
+ *	its owner from being garbage collected. {@link #getListenersReport()} can help to find the listeners that accumulate on a listenable.
+ *	<br>A listener can also be registered as an asynchronous listener (see {@link #addAsyncListener(DataListener, Executor, Class...)}). Then,
+ *	the thread that fires the events does not wait for this listener to process them.
  */
 public abstract class DefaultListenable {
 	private static final boolean TRACE_LISTENERS = Boolean.getBoolean("traceEventListeners"); //$NON-NLS-1$
 	private static final boolean TRACE_EVENTS = Boolean.getBoolean("traceEvents"); //$NON-NLS-1$
 	private static final boolean TRACE_ALL = Boolean.getBoolean("traceAll"); //$NON-NLS-1$
-	private static int indent = 0;
+	// The nesting level of the events traces, per thread as the events may be fired by several threads
+	private static final ThreadLocal<int[]> INDENT = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[1];
+		}
+	};
 	
-	private Collection<DataListener> listeners;
+	private static final Subscription[] EMPTY = new Subscription[0];
+
+	private List<Subscription> subscriptions;
+	// The dispatch table, from the event classes already fired to the listeners interested in them
+	private Map<Class<?>, Dispatch> dispatchTable;
 	private boolean eventsDisabled;
+	private int batchDepth;
+	private ChangeSet changes;
 	
 	/** Constructor.
 	 * <br>Events throwing is enabled.
 	 * @see #setEventsEnabled(boolean)
 	 */
 	protected DefaultListenable() {
-		this.listeners = new ArrayList<DataListener>();
+		this.subscriptions = new ArrayList<Subscription>();
+		this.dispatchTable = new HashMap<Class<?>, Dispatch>();
 		this.setEventsEnabled(true);
 	}
 	
@@ -47,55 +73,289 @@ public abstract class DefaultListenable {
 		return !this.eventsDisabled;
 	}
     
+	/** Starts a batch of modifications.
+	 * <br>Until the batch is committed, the events are not sent to the listeners, they are recorded.
+	 * Then, the commit sends a single BatchCommittedEvent that contains the net changes of the whole batch.
+	 * <br>Batches can be nested, only the commit of the outer batch sends the event.
+	 * @see #commit()
+	 * @see BatchCommittedEvent
+	 */
+	protected void beginBatch() {
+		if (batchDepth==0) {
+			changes = new ChangeSet(this);
+		}
+		batchDepth++;
+	}
+
+	/** Commits a batch of modifications.
+	 * <br>If this is the outer batch and something changed during the batch, a BatchCommittedEvent is sent.
+	 * @throws IllegalStateException if no batch was started.
+	 * @see #beginBatch()
+	 */
+	protected void commit() {
+		if (batchDepth==0) {
+			throw new IllegalStateException("No batch started"); //$NON-NLS-1$
+		}
+		batchDepth--;
+		if (batchDepth==0) {
+			BatchCommittedEvent event = changes.getEvent();
+			changes = null;
+			if (!event.isEmpty()) {
+				fireEvent(event);
+			}
+		}
+	}
+
+	/** Tests whether a batch of modifications is started.
+	 * @return true if a batch is started and not yet committed.
+	 */
+	protected boolean isInBatch() {
+		return batchDepth>0;
+	}
+
 	/** Sends an event to every listeners.
+	 * <br>If a batch is started, the event is recorded and will be sent when the batch will be committed.
 	 * @param event The event to send.
+	 * @see #beginBatch()
 	 */
 	@SuppressWarnings("nls")
 	protected void fireEvent(DataEvent event) {
 		if (eventsDisabled) {
 			return;
 		}
+		if (batchDepth>0) {
+			changes.add(event);
+			return;
+		}
 		if (TRACE_EVENTS && !TRACE_ALL) {
 			trace("Event "+event+" occurs on "+this); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		Iterator<DataListener> iterator = listeners.iterator();
-		if (TRACE_ALL && listeners.isEmpty()) {
+		Dispatch dispatch = getDispatch(event.getClass());
+		dispatch.fired++;
+		// The listeners added while the event is dispatched will not receive it
+		Subscription[] listeners = dispatch.subscriptions;
+		if (TRACE_ALL && (listeners.length==0)) {
 			trace("Event "+event+" occurs on "+this+" but nobody is listening"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 		}
-		while (iterator.hasNext()) {
-			DataListener listener = iterator.next();
+		boolean dead = false;
+		int[] indent = (TRACE_EVENTS || TRACE_ALL) ? INDENT.get() : null;
+		for (Subscription subscription : listeners) {
+			DataListener listener = subscription.get();
+			if (listener==null) {
+				// The listener was garbage collected
+				dead = true;
+				continue;
+			}
+			dispatch.delivered++;
 			if (TRACE_ALL) {
 				trace("Send event "+event+" on "+this+" to "+listener); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 			}
-			indent += 2;
-			try {
+			if (indent==null) {
 				listener.processEvent(event);
-			} finally {
-				indent -= 2;
+			} else {
+				indent[0] += 2;
+				try {
+					listener.processEvent(event);
+				} finally {
+					indent[0] -= 2;
+				}
 			}
 		}
+		if (dead) {
+			purgeListeners();
+		}
 	}
 	
 	private void trace (String message) {
+		int indent = INDENT.get()[0];
 		StringBuilder builder = new StringBuilder(indent+message.length());
 		for (int i = 0; i < indent; i++) {
 			builder.append(' ');
 		}
 		builder.append(message);
-		LoggerFactory.getLogger(getClass()).debug(message);
+		LoggerFactory.getLogger(getClass()).debug(builder.toString());
+	}
+
+	private Dispatch getDispatch(Class<?> eventClass) {
+		Dispatch dispatch = dispatchTable.get(eventClass);
+		if (dispatch==null) {
+			List<Subscription> listeners = new ArrayList<Subscription>();
+			for (Subscription subscription : subscriptions) {
+				if (subscription.accepts(eventClass)) {
+					listeners.add(subscription);
+				}
+			}
+			dispatch = new Dispatch(listeners.toArray(new Subscription[listeners.size()]));
+			dispatchTable.put(eventClass, dispatch);
+		}
+		return dispatch;
 	}
 
 	/** Adds a new listener on this.
+	 * <br>The listener will receive all the events.
 	 * @param listener The listener to add.
 	 */
 	public void addListener(DataListener listener) {
-		if (listeners==null) {
-			this.listeners = new ArrayList<DataListener>();
+		addListener(listener, DataEvent.class);
+	}
+
+	/** Adds a new listener interested in some event classes only.
+	 * <br>The listener will receive only the events that are instances of one of these classes.
+	 * <br>Please note that, if a batch of modifications is committed, the events are grouped in a BatchCommittedEvent.
+	 * The listeners that should be notified of these changes have to subscribe to BatchCommittedEvent too.
+	 * @param listener The listener to add.
+	 * @param eventClasses The classes of the events the listener is interested in.
+	 * @throws IllegalArgumentException if no class is passed or one of the classes is not a DataEvent class.
+	 * @see BatchCommittedEvent
+	 */
+	public void addListener(DataListener listener, Class<?>... eventClasses) {
+		add(listener, false, eventClasses);
+	}
+
+	/** Adds a new listener, referenced with a weak reference.
+	 * <br>This listenable does not prevent the listener from being garbage collected, then it is automatically removed.
+	 * <br>Please note that the listener should be strongly referenced by its owner (usually an object that listens to this),
+	 * an anonymous listener referenced only by this listenable would be removed at the next garbage collection.
+	 * @param listener The listener to add.
+	 * @param eventClasses The classes of the events the listener is interested in.
+	 * @throws IllegalArgumentException if no class is passed or one of the classes is not a DataEvent class.
+	 * @see #addListener(DataListener, Class...)
+	 */
+	public void addWeakListener(DataListener listener, Class<?>... eventClasses) {
+		add(listener, true, eventClasses);
+	}
+
+	/** Adds a new asynchronous listener.
+	 * <br>The events are put in a queue dedicated to this listener, and the listener processes them in a task run by an executor.
+	 * So, the thread that modifies this listenable does not wait for a slow listener (a view that has to be computed again for instance).
+	 * <br>The consecutive events that are still waiting in the queue are merged when possible (for instance, several TransactionsAddedEvent
+	 * are merged in one TransactionsAddedEvent).
+	 * <br><b>Warning:</b> When the listener processes an event, the source of the event may have been modified since the event was fired.
+	 * This listenable is not thread safe, so the executor should run the listener in the thread that modifies the listenable,
+	 * or the listener should only use the event content (or synchronize the accesses to the listenable by itself).
+	 * A typical executor would run the tasks in the Swing event dispatch thread, with the listenable modified only in this thread
+	 * or with the listener ensuring the modifications are finished.
+	 * @param listener The listener to add.
+	 * @param executor The executor that runs the listener.
+	 * @param eventClasses The classes of the events the listener is interested in.
+	 * @throws IllegalArgumentException if no class is passed or one of the classes is not a DataEvent class.
+	 * @see #removeListener(DataListener)
+	 */
+	public void addAsyncListener(DataListener listener, Executor executor, Class<?>... eventClasses) {
+		add(new QueuedListener(listener, executor), false, eventClasses);
+	}
+
+	private void add(DataListener listener, boolean weak, Class<?>... eventClasses) {
+		if (eventClasses.length==0) {
+			throw new IllegalArgumentException("No event class"); //$NON-NLS-1$
+		}
+		for (Class<?> eventClass : eventClasses) {
+			if (!DataEvent.class.isAssignableFrom(eventClass)) {
+				throw new IllegalArgumentException(eventClass+" is not an event class"); //$NON-NLS-1$
+			}
+		}
+		if (TRACE_ALL || TRACE_LISTENERS) {
+			LoggerFactory.getLogger(getClass()).debug("Add {} listener {} on {} for {}", //$NON-NLS-1$
+					new Object[]{weak?"weak":"strong", listener, this, Arrays.asList(eventClasses)}); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		Subscription subscription = new Subscription(listener, weak, eventClasses.clone(), TRACE_ALL || TRACE_LISTENERS);
+		subscriptions.add(subscription);
+		// Update the dispatch table now, instead of when the next events will be fired
+		for (Map.Entry<Class<?>, Dispatch> entry : dispatchTable.entrySet()) {
+			if (subscription.accepts(entry.getKey())) {
+				Dispatch dispatch = entry.getValue();
+				Subscription[] listeners = Arrays.copyOf(dispatch.subscriptions, dispatch.subscriptions.length+1);
+				listeners[listeners.length-1] = subscription;
+				dispatch.subscriptions = listeners;
+			}
+		}
+	}
+
+	/** Removes a listener.
+	 * <br>If the listener is removed while an event is dispatched, it may still receive this event.
+	 * If it is an asynchronous listener, the events that are waiting in its queue are discarded.
+	 * @param listener The listener to remove.
+	 * @return true if the listener was registered on this.
+	 */
+	public boolean removeListener(DataListener listener) {
+		List<Subscription> removed = new ArrayList<Subscription>();
+		for (Subscription subscription : subscriptions) {
+			DataListener registered = subscription.get();
+			if ((registered==listener) || ((registered instanceof QueuedListener) && ((QueuedListener)registered).getListener()==listener)) {
+				removed.add(subscription);
+			}
 		}
 		if (TRACE_ALL || TRACE_LISTENERS) {
-			LoggerFactory.getLogger(getClass()).debug("Add listener {} on {}",listener,this); //$NON-NLS-1$
+			LoggerFactory.getLogger(getClass()).debug("Remove listener {} on {}", listener, this); //$NON-NLS-1$
 		}
-		listeners.add(listener);
+		remove(removed);
+		return !removed.isEmpty();
+	}
+
+	/** Removes the weak listeners that were garbage collected.
+	 * <br>They are also removed when an event they subscribed to is fired.
+	 * @return The number of removed listeners.
+	 */
+	public int purgeListeners() {
+		List<Subscription> dead = new ArrayList<Subscription>();
+		for (Subscription subscription : subscriptions) {
+			if (subscription.get()==null) {
+				dead.add(subscription);
+			}
+		}
+		if (!dead.isEmpty() && (TRACE_ALL || TRACE_LISTENERS)) {
+			LoggerFactory.getLogger(getClass()).debug("{} garbage collected listeners are removed from {}", dead.size(), this); //$NON-NLS-1$
+		}
+		remove(dead);
+		return dead.size();
+	}
+
+	private void remove(List<Subscription> removed) {
+		if (removed.isEmpty()) {
+			return;
+		}
+		for (Subscription subscription : removed) {
+			subscription.cancel();
+		}
+		subscriptions.removeAll(removed);
+		for (Dispatch dispatch : dispatchTable.values()) {
+			List<Subscription> listeners = new ArrayList<Subscription>(Arrays.asList(dispatch.subscriptions));
+			if (listeners.removeAll(removed)) {
+				dispatch.subscriptions = listeners.toArray(new Subscription[listeners.size()]);
+			}
+		}
+	}
+
+	/** Gets a report about the listeners registered on this.
+	 * <br>The garbage collected weak listeners are removed first, the number of removed listeners is the first line of the report.
+	 * Then, each registered listener is described by a line, with its reference type and the events it subscribed to.
+	 * <br>If the traceEventListeners or traceAll system property is set to true, the line also contains the place in the code where the
+	 * listener was added. A listener that is still there while its owner is not used anymore is leaked, this place usually tells who should have
+	 * removed it.
+	 * @return a list of strings
+	 */
+	@SuppressWarnings("nls")
+	public List<String> getListenersReport() {
+		int dead = purgeListeners();
+		List<String> result = new ArrayList<String>(subscriptions.size()+1);
+		result.add(dead+" garbage collected listeners removed");
+		for (Subscription subscription : subscriptions) {
+			StringBuilder builder = new StringBuilder();
+			builder.append(subscription.reference!=null?"weak":"strong").append(" listener ").append(subscription.get());
+			builder.append(" subscribed to ").append(Arrays.toString(subscription.eventClasses));
+			if (subscription.origin!=null) {
+				StackTraceElement[] stack = subscription.origin.getStackTrace();
+				builder.append(" added at ");
+				// Skip the frames of this class
+				int i = 0;
+				while ((i<stack.length-1) && stack[i].getClassName().startsWith(DefaultListenable.class.getName())) {
+					i++;
+				}
+				builder.append(stack[i]);
+			}
+			result.add(builder.toString());
+		}
+		return result;
 	}
 	
 	/** Removes all the previously registered listeners.
@@ -104,13 +364,100 @@ public abstract class DefaultListenable {
 		if (TRACE_ALL || TRACE_LISTENERS) {
 			LoggerFactory.getLogger(getClass()).debug("All listeners are cleared on {}", this); //$NON-NLS-1$
 		}
-		this.listeners.clear();
+		for (Subscription subscription : subscriptions) {
+			subscription.cancel();
+		}
+		this.subscriptions.clear();
+		for (Dispatch dispatch : dispatchTable.values()) {
+			dispatch.subscriptions = EMPTY;
+		}
 	}
 	
 	/** Gets the number of listeners.
+	 * <br>The weak listeners that were garbage collected and not yet removed are counted.
 	 * @return a positive or null integer
+	 * @see #purgeListeners()
 	 */
 	public int getNumberOfListeners() {
-		return this.listeners.size();
+		return this.subscriptions.size();
+	}
+
+	/** Gets the number of events of a class fired by this.
+	 * <br>The events fired while events were disabled, or recorded during a batch, are not counted.
+	 * @param eventClass The event class (the events of its subclasses are counted too, so DataEvent.class returns the total number of events).
+	 * @return a positive or null long
+	 */
+	public long getFiredCount(Class<? extends DataEvent> eventClass) {
+		long result = 0;
+		for (Map.Entry<Class<?>, Dispatch> entry : dispatchTable.entrySet()) {
+			if (eventClass.isAssignableFrom(entry.getKey())) {
+				result += entry.getValue().fired;
+			}
+		}
+		return result;
+	}
+
+	/** Gets the number of times the listeners of this were invoked with the events of a class.
+	 * <br>This is the fan-out cost of these events.
+	 * @param eventClass The event class (the events of its subclasses are counted too).
+	 * @return a positive or null long
+	 */
+	public long getDeliveredCount(Class<? extends DataEvent> eventClass) {
+		long result = 0;
+		for (Map.Entry<Class<?>, Dispatch> entry : dispatchTable.entrySet()) {
+			if (eventClass.isAssignableFrom(entry.getKey())) {
+				result += entry.getValue().delivered;
+			}
+		}
+		return result;
+	}
+
+	/** A listener and the event classes it is interested in. */
+	private static final class Subscription {
+		private final DataListener listener;
+		private final WeakReference<DataListener> reference;
+		private final Class<?>[] eventClasses;
+		private final Throwable origin;
+
+		Subscription(DataListener listener, boolean weak, Class<?>[] eventClasses, boolean traceOrigin) {
+			this.listener = weak ? null : listener;
+			this.reference = weak ? new WeakReference<DataListener>(listener) : null;
+			this.eventClasses = eventClasses;
+			this.origin = traceOrigin ? new Throwable() : null;
+		}
+
+		/** Gets the listener.
+		 * @return the listener or null if it was a weak listener and it was garbage collected.
+		 */
+		DataListener get() {
+			return reference==null ? listener : reference.get();
+		}
+
+		/** Stops the delivery of the events that are waiting in the queue of an asynchronous listener. */
+		void cancel() {
+			if (listener instanceof QueuedListener) {
+				((QueuedListener)listener).cancel();
+			}
+		}
+
+		boolean accepts(Class<?> eventClass) {
+			for (Class<?> accepted : eventClasses) {
+				if (accepted.isAssignableFrom(eventClass)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/** The listeners of an event class and the counters of this class. */
+	private static final class Dispatch {
+		private Subscription[] subscriptions;
+		private long fired;
+		private long delivered;
+
+		Dispatch(Subscription[] subscriptions) {
+			this.subscriptions = subscriptions;
+		}
 	}
 }
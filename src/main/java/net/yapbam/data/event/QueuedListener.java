@@ -0,0 +1,143 @@
+package net.yapbam.data.event;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
+import net.yapbam.data.Transaction;
+
+/** A listener that receives the events of a listenable through a queue, in a task executed by an executor.
+ * <br>The thread that fires the events only puts them in the queue, it does not wait for the listener to process them.
+ * <br>The events are delivered in the order they were fired, but consecutive events of the same kind are merged
+ * while they are waiting in the queue:<ul>
+ * <li>consecutive TransactionsAddedEvent (or TransactionsRemovedEvent) are merged in one event that contains all their transactions.</li>
+ * <li>consecutive EverythingChangedEvent (or NeedToBeSavedChangedEvent) are replaced by the last one.</li>
+ * </ul>
+ * @see DefaultListenable#addAsyncListener(DataListener, Executor, Class...)
+ */
+final class QueuedListener implements DataListener {
+	private final DataListener listener;
+	private final Executor executor;
+	private final LinkedList<DataEvent> queue;
+	private final Runnable task;
+	private boolean scheduled;
+	private boolean cancelled;
+
+	/** Constructor.
+	 * @param listener The listener that will process the events.
+	 * @param executor The executor that runs the listener.
+	 */
+	QueuedListener(DataListener listener, Executor executor) {
+		this.listener = listener;
+		this.executor = executor;
+		this.queue = new LinkedList<DataEvent>();
+		this.task = new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+	}
+
+	/** Gets the listener that processes the events.
+	 * @return a listener
+	 */
+	DataListener getListener() {
+		return listener;
+	}
+
+	@Override
+	public void processEvent(DataEvent event) {
+		synchronized (queue) {
+			if (cancelled) {
+				return;
+			}
+			DataEvent merged = queue.isEmpty() ? null : merge(queue.getLast(), event);
+			if (merged==null) {
+				queue.addLast(event);
+			} else {
+				queue.removeLast();
+				queue.addLast(merged);
+			}
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+		}
+		executor.execute(task);
+	}
+
+	/** Stops delivering the events.
+	 * <br>The events waiting in the queue are discarded. An event that is currently processed is not interrupted.
+	 */
+	void cancel() {
+		synchronized (queue) {
+			cancelled = true;
+			queue.clear();
+		}
+	}
+
+	private DataEvent next() {
+		synchronized (queue) {
+			DataEvent event = queue.poll();
+			if (event==null) {
+				scheduled = false;
+			}
+			return event;
+		}
+	}
+
+	private void drain() {
+		boolean done = false;
+		try {
+			for (DataEvent event = next(); event!=null; event = next()) {
+				listener.processEvent(event);
+			}
+			done = true;
+		} finally {
+			if (!done) {
+				// The listener failed, the remaining events are sent in a new task
+				boolean reschedule;
+				synchronized (queue) {
+					reschedule = !queue.isEmpty();
+					scheduled = reschedule;
+				}
+				if (reschedule) {
+					executor.execute(task);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "async "+listener; //$NON-NLS-1$
+	}
+
+	/** Merges two consecutive events.
+	 * @param first The first event
+	 * @param second The event fired after the first one
+	 * @return The event that replaces both events, or null if they can't be merged
+	 */
+	static DataEvent merge(DataEvent first, DataEvent second) {
+		if ((first.getClass()!=second.getClass()) || (first.getSource()!=second.getSource())) {
+			return null;
+		}
+		if (first.getClass()==TransactionsAddedEvent.class) {
+			return new TransactionsAddedEvent(first.getSource(),
+					concat(((TransactionsAddedEvent)first).getTransactions(), ((TransactionsAddedEvent)second).getTransactions()));
+		} else if (first.getClass()==TransactionsRemovedEvent.class) {
+			return new TransactionsRemovedEvent(first.getSource(),
+					concat(((TransactionsRemovedEvent)first).getTransactions(), ((TransactionsRemovedEvent)second).getTransactions()));
+		} else if ((first.getClass()==EverythingChangedEvent.class) || (first.getClass()==NeedToBeSavedChangedEvent.class)) {
+			return second;
+		}
+		return null;
+	}
+
+	private static Transaction[] concat(Transaction[] first, Transaction[] second) {
+		Transaction[] result = new Transaction[first.length+second.length];
+		System.arraycopy(first, 0, result, 0, first.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+}
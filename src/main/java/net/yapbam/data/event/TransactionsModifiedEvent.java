@@ -0,0 +1,40 @@
+package net.yapbam.data.event;
+
+import net.yapbam.data.Transaction;
+
+/** This event is sent when one or more transactions are replaced, in place, by a modified version.
+ * <br>These modifications can't change any balance: The new version of a transaction has the same id, account, amount,
+ * date, value date, statement and number as the old one. Only its description, comment, payment mode, category or
+ * subtransactions may differ.
+ * <br>So, listeners can patch what depends on these attributes instead of processing a TransactionsRemovedEvent
+ * followed by a TransactionsAddedEvent.
+ */
+public class TransactionsModifiedEvent extends DataEvent {
+	private Transaction[] oldTransactions;
+	private Transaction[] newTransactions;
+
+	/** Constructor.
+	 * @param source The object that thrown the event
+	 * @param oldTransactions The replaced transactions
+	 * @param newTransactions The new versions of the transactions (newTransactions[i] replaces oldTransactions[i])
+	 */
+	public TransactionsModifiedEvent(Object source, Transaction[] oldTransactions, Transaction[] newTransactions) {
+		super(source);
+		this.oldTransactions = oldTransactions;
+		this.newTransactions = newTransactions;
+	}
+
+	/** Gets the replaced transactions.
+	 * @return a transaction array.
+	 */
+	public Transaction[] getOldTransactions() {
+		return oldTransactions;
+	}
+
+	/** Gets the new versions of the transactions.
+	 * @return a transaction array, in the same order as the replaced transactions.
+	 */
+	public Transaction[] getNewTransactions() {
+		return newTransactions;
+	}
+}
@@ -2,22 +2,10 @@ package net.yapbam.data.xml;
 
 import java.io.*;
 import java.security.AccessControlException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import net.yapbam.data.*;
 import net.yapbam.data.xml.task.DecrypterTask;
-import net.yapbam.data.xml.task.DeflaterTask;
-import net.yapbam.data.xml.task.EncrypterTask;
-import net.yapbam.data.xml.task.InflaterTask;
-import net.yapbam.data.xml.task.PipeTask;
+import net.yapbam.data.xml.task.EncryptedStreams;
 import net.yapbam.util.Crypto;
 
 /** The class implements xml yapbam data serialization and deserialization to (or from) an URL.
@@ -72,60 +60,47 @@ public abstract class AbstractSerializer<T> {
 	 * @throws IOException if something goes wrong while writing
 	 */
 	public void write(final T data, OutputStream out, String password, final ProgressReport report) throws IOException {
+		write(new WriteTask() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				directWrite(data, out, report);
+			}
+		}, out, password);
+	}
+
+	/** A task that writes some data to a stream, without any protection.
+	 * @see AbstractSerializer#write(WriteTask, OutputStream, String)
+	 */
+	protected interface WriteTask {
+		/** Writes the data.
+		 * @param out The stream where to write the data (it should not be closed by this method).
+		 * @throws IOException if something goes wrong while writing
+		 */
+		void write(OutputStream out) throws IOException;
+	}
+
+	/** Saves some data to a stream, protecting it with a password.
+	 * <br>This method allows subclasses to save something else than T instances (a snapshot of the data, for instance)
+	 * in the same format.
+	 * @param task The task that writes the data
+	 * @param out The outputStream (Note that this stream is not closed by this method).
+	 * @param password the password used to protect written data
+	 * @throws IOException if something goes wrong while writing
+	 */
+	protected void write(WriteTask task, OutputStream out, String password) throws IOException {
 		if (password!=null) {
 			// If the file has to be protected by a password
 			// outputs the magic bytes that will allow Yapbam to recognize the file is crypted.
 			out.write(getHeader(NEW_ENCODER_ON?V2:V1));
-			final PipedOutputStream xmlOutput = new PipedOutputStream();
-			PipedInputStream compressorInput = new PipedInputStream(xmlOutput);
-			
-			PipedOutputStream compressorOutput = new PipedOutputStream();
-			PipedInputStream encoderInput = new PipedInputStream(compressorOutput);
-			
-			ExecutorService service = new ThreadPoolExecutor(0, Integer.MAX_VALUE,0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
-
-			List<Future<? extends Object>> futures = new ArrayList<Future<? extends Object>>(3);
-			Callable<Void> c = new Callable<Void>() {
-				@Override
-				public Void call() throws Exception {
-					try {
-						directWrite(data, xmlOutput, report);
-						return null;
-					} finally {
-						xmlOutput.close();
-					}
-				}
-			};
-			futures.add(service.submit(c));
-			futures.add(service.submit(new DeflaterTask(compressorInput, compressorOutput)));
-      
-			// As encryterTask closes its output stream (required to process the doFinal of the encryption cipher),
-			// We can't pass it directly the out stream. So we will add an intermediate stream
-			PipedOutputStream encrypterOutput = new PipedOutputStream();
-			PipedInputStream entryWriterInput = new PipedInputStream(encrypterOutput);
-			futures.add(service.submit(new EncrypterTask(encoderInput, encrypterOutput, password, !NEW_ENCODER_ON)));
-			futures.add(service.submit(new PipeTask(entryWriterInput, out)));
-
+			// The xml is compressed and encrypted in this thread, while it is written
+			OutputStream encoder = EncryptedStreams.getOutputStream(out, password, !NEW_ENCODER_ON);
 			try {
-				// Wait encoding is ended and gets the errors
-				for (Future<? extends Object> future : futures) {
-					future.get();
-				}
-			} catch (ExecutionException e) {
-				Throwable cause = e.getCause();
-				if (cause instanceof IOException) {
-					throw (IOException)cause;
-				} else {
-					throw new RuntimeException(cause);
-				}
-			} catch (InterruptedException e) {
-				for (Future<? extends Object> future : futures) {
-					future.cancel(true);
-				}
-				Thread.currentThread().interrupt();
+				task.write(encoder);
+			} finally {
+				encoder.close();
 			}
 		} else {
-			directWrite(data, out, report);
+			task.write(out);
 		}
 	}
 
@@ -155,7 +130,7 @@ public abstract class AbstractSerializer<T> {
 	 * @throws AccessControlException If the password is wrong. Note that if data is not password protected, password argument is ignored
 	 * @throws UnsupportedFormatException If the format of data in the input stream is not supported
 	 */
-	public T read(final String password, InputStream in, final ProgressReport report) throws IOException, AccessControlException {
+	public T read(String password, InputStream in, ProgressReport report) throws IOException, AccessControlException {
 		SerializationData serializationData = getSerializationData(in);
 		boolean encoded = serializationData.isPasswordRequired;
 		if (encoded) {
@@ -172,44 +147,12 @@ public abstract class AbstractSerializer<T> {
 				throw new UnsupportedFileVersionException("encoded "+serializationData.version);
 			}
 			
-			PipedOutputStream decoderOutput = new PipedOutputStream();
-			PipedInputStream deflaterInput = new PipedInputStream(decoderOutput);
-			PipedOutputStream deflaterOutput = new PipedOutputStream();
-			final PipedInputStream readerInput = new PipedInputStream(deflaterOutput);
-			
-			ExecutorService service = new ThreadPoolExecutor(0, Integer.MAX_VALUE,0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
-			
+			// The data is decrypted and uncompressed in this thread, while it is read
+			InputStream decoder = EncryptedStreams.getInputStream(in, password, serializationData.version.equals(V1));
 			try {
-				Future<Void> decrypter = service.submit(new DecrypterTask(in, decoderOutput, password, serializationData.version.equals(V1)));
-				Future<Void> inflater = service.submit(new InflaterTask(deflaterInput, deflaterOutput));
-				Callable<T> c = new Callable<T>() {
-					@Override
-					public T call() throws Exception {
-						try {
-							return directRead(password, readerInput, report);
-						} finally {
-							readerInput.close();
-						}
-					}
-				};
-				Future<T> reader = service.submit(c);
-	
-				decrypter.get(); // Wait encoding is ended
-				inflater.get(); // Wait encoding is ended
-				
-				return reader.get();
-			} catch (ExecutionException e) {
-				Throwable cause = e.getCause();
-				if (cause instanceof IOException) {
-					throw (IOException)cause;
-				} else if (cause instanceof AccessControlException) {
-					throw (AccessControlException)cause;
-				} else {
-					throw new RuntimeException(cause);
-				}
-			} catch (InterruptedException e) {
-				Thread.currentThread().interrupt();
-				return null;
+				return directRead(password, decoder, report);
+			} finally {
+				decoder.close();
 			}
 		} else {
 			// Stream is not encoded
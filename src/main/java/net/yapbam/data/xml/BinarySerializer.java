@@ -0,0 +1,446 @@
+package net.yapbam.data.xml;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.DataSnapshot;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.ProgressReport;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.util.DateUtils;
+
+/** A serializer that writes the data in a compact binary format.
+ * <br>The data is protected by its password and can be zipped exactly as with the xml format (see Serializer).
+ * Serializer.read recognizes this format, so the data written by this class can be read by any Serializer.
+ * <br>The format is:<ul>
+ * <li>The magic bytes "YBIN" followed by the format version.</li>
+ * <li>The xml serialization of everything but the transactions (accounts, categories, filters, periodical transactions).</li>
+ * <li>The names of the accounts, of their modes and of the categories. The transactions refer to them by their indexes.</li>
+ * <li>The transactions. Dates are stored as the number of days since the previous transaction's date, amounts as
+ * a number of cents (when they have no more than two decimals), strings through a dictionary (a string that was
+ * already written is replaced by its index).</li>
+ * </ul>
+ * All the integers are written as variable length integers (7 bits per byte), negative values are zigzag encoded.
+ * <br>The reader does not trust the counts, lengths and indexes it reads: a value that is out of range results in an UnsupportedFormatException,
+ * and the memory allocated while reading grows with the bytes actually read, not with the counts and lengths.
+ */
+public class BinarySerializer extends Serializer {
+	private static final byte[] MAGIC = new byte[]{'Y', 'B', 'I', 'N'};
+	private static final int VERSION = 1;
+
+	private static final int NUMBER = 1;
+	private static final int COMMENT = 2;
+	private static final int STATEMENT = 4;
+	private static final int SUBTRANSACTIONS = 8;
+	private static final int RAW_AMOUNT = 16;
+	private static final int DESCRIPTION = 32;
+	private static final int TRANSACTION_FLAGS = NUMBER | COMMENT | STATEMENT | SUBTRANSACTIONS | RAW_AMOUNT | DESCRIPTION;
+	private static final int SUBTRANSACTION_FLAGS = RAW_AMOUNT | DESCRIPTION;
+	// The maximum initial capacity of the lists whose size is read from the stream
+	private static final int MAX_INITIAL_CAPACITY = 1024;
+
+	@Override
+	protected void directWrite(DataSnapshot data, OutputStream out, ProgressReport report) throws IOException {
+		Writer writer = new Writer(out);
+		writer.write(data, report);
+	}
+
+	/** Tests whether a stream contains data in the binary format.
+	 * @param in The stream to test.<br>This stream should support mark and reset.
+	 * @return true if the stream contains binary data.<br>The stream position is unchanged.
+	 * @throws IOException if the stream can't be read
+	 */
+	static boolean isBinary(InputStream in) throws IOException {
+		in.mark(MAGIC.length);
+		try {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (in.read()!=MAGIC[i]) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/** Reads binary data.
+	 * @param in The stream containing the data, starting with the magic bytes
+	 * @param report A progress report to observe the progress, or null
+	 * @return The read data or null if reading was cancelled (using report.cancel()).
+	 * @throws IOException If something goes wrong while reading
+	 * @throws UnsupportedFormatException If the format of data in the input stream is not supported
+	 */
+	static GlobalData read(InputStream in, ProgressReport report) throws IOException {
+		return new Reader(in).read(report);
+	}
+
+	private static class Writer {
+		private final DataOutputStream out;
+		private final Map<String, Integer> strings;
+
+		Writer(OutputStream out) {
+			// The stream is not closed at the end, so the buffer has to be flushed
+			this.out = new DataOutputStream(new BufferedOutputStream(out));
+			this.strings = new HashMap<String, Integer>();
+		}
+
+		void write(DataSnapshot data, ProgressReport report) throws IOException {
+			out.write(MAGIC);
+			writeInt(VERSION);
+			ByteArrayOutputStream xml = new ByteArrayOutputStream();
+			XMLSerializer serializer = new XMLSerializer(xml, false);
+			serializer.serialize(data, false, null);
+			serializer.closeDocument();
+			writeInt(xml.size());
+			xml.writeTo(out);
+
+			// The transactions refer to the live accounts, modes and categories, they are found by their names in the snapshot
+			Map<String, Integer> accountIndexes = new HashMap<String, Integer>();
+			List<Map<String, Integer>> modeIndexes = new ArrayList<Map<String,Integer>>(data.getAccountsNumber());
+			writeInt(data.getAccountsNumber());
+			for (int i = 0; i < data.getAccountsNumber(); i++) {
+				Account account = data.getAccount(i);
+				accountIndexes.put(account.getName(), i);
+				writeString(account.getName());
+				Map<String, Integer> indexes = new HashMap<String, Integer>();
+				writeInt(account.getModesNumber());
+				for (int j = 0; j < account.getModesNumber(); j++) {
+					indexes.put(account.getMode(j).getName(), j);
+					writeString(account.getMode(j).getName());
+				}
+				modeIndexes.add(indexes);
+			}
+			Map<String, Integer> categoryIndexes = new HashMap<String, Integer>();
+			writeInt(data.getCategoriesNumber());
+			for (int i = 0; i < data.getCategoriesNumber(); i++) {
+				String name = data.getCategory(i).getName();
+				categoryIndexes.put(name, i);
+				writeString(name);
+			}
+
+			int nbTransactions = data.getTransactionsNumber();
+			if (report!=null) {
+				report.setMax(nbTransactions);
+			}
+			writeInt(nbTransactions);
+			int previousDays = 0;
+			for (int i = 0; i < nbTransactions; i++) {
+				Transaction transaction = data.getTransaction(i);
+				int flags = getAmountFlag(transaction.getAmount()) | DESCRIPTION;
+				if (transaction.getNumber()!=null) {
+					flags |= NUMBER;
+				}
+				if (transaction.getComment()!=null) {
+					flags |= COMMENT;
+				}
+				if (transaction.getStatement()!=null) {
+					flags |= STATEMENT;
+				}
+				if (transaction.getSubTransactionSize()>0) {
+					flags |= SUBTRANSACTIONS;
+				}
+				out.write(flags);
+				int accountIndex = getIndex(accountIndexes, data.getName(transaction.getAccount()));
+				writeInt(accountIndex);
+				writeInt(getIndex(modeIndexes.get(accountIndex), data.getName(transaction.getMode())));
+				writeInt(getIndex(categoryIndexes, data.getName(transaction.getCategory())));
+				int days = (int) DateUtils.toEpochDay(transaction.getDateAsInteger());
+				writeSignedInt(days-previousDays);
+				writeSignedInt((int) DateUtils.toEpochDay(transaction.getValueDateAsInteger())-days);
+				previousDays = days;
+				writeAmount(flags, transaction.getAmount());
+				writeString(transaction.getDescription());
+				if (transaction.getNumber()!=null) {
+					writeString(transaction.getNumber());
+				}
+				if (transaction.getComment()!=null) {
+					writeString(transaction.getComment());
+				}
+				if (transaction.getStatement()!=null) {
+					writeString(transaction.getStatement());
+				}
+				if (transaction.getSubTransactionSize()>0) {
+					writeInt(transaction.getSubTransactionSize());
+					for (int j = 0; j < transaction.getSubTransactionSize(); j++) {
+						SubTransaction subTransaction = transaction.getSubTransaction(j);
+						flags = getAmountFlag(subTransaction.getAmount());
+						if (subTransaction.getDescription()!=null) {
+							flags |= DESCRIPTION;
+						}
+						out.write(flags);
+						writeAmount(flags, subTransaction.getAmount());
+						if (subTransaction.getDescription()!=null) {
+							writeString(subTransaction.getDescription());
+						}
+						writeInt(getIndex(categoryIndexes, data.getName(subTransaction.getCategory())));
+					}
+				}
+				if (report!=null) {
+					report.reportProgress(i+1);
+				}
+			}
+			out.flush();
+		}
+
+		private static int getIndex(Map<String, Integer> indexes, String name) {
+			Integer index = indexes.get(name);
+			if (index==null) {
+				throw new IllegalArgumentException("Unknown name "+name); //$NON-NLS-1$
+			}
+			return index;
+		}
+
+		private static int getAmountFlag(double amount) {
+			long cents = Math.round(amount*100);
+			return Double.doubleToLongBits(cents/100.0)==Double.doubleToLongBits(amount) ? 0 : RAW_AMOUNT;
+		}
+
+		private void writeAmount(int flags, double amount) throws IOException {
+			if ((flags & RAW_AMOUNT)!=0) {
+				out.writeDouble(amount);
+			} else {
+				writeSignedLong(Math.round(amount*100));
+			}
+		}
+
+		private void writeString(String string) throws IOException {
+			Integer index = strings.get(string);
+			if (index!=null) {
+				writeInt(index+1);
+			} else {
+				// 0 means that a new string follows
+				strings.put(string, strings.size());
+				byte[] bytes = string.getBytes(XMLSerializer.UTF8);
+				writeInt(0);
+				writeInt(bytes.length);
+				out.write(bytes);
+			}
+		}
+
+		private void writeSignedInt(int value) throws IOException {
+			writeInt((value<<1)^(value>>31));
+		}
+
+		private void writeSignedLong(long value) throws IOException {
+			writeLong((value<<1)^(value>>63));
+		}
+
+		private void writeInt(int value) throws IOException {
+			writeLong(value & 0xFFFFFFFFL);
+		}
+
+		private void writeLong(long value) throws IOException {
+			while ((value & ~0x7FL)!=0) {
+				out.write((int)(value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write((int)value);
+		}
+	}
+
+	private static class Reader {
+		private final DataInputStream in;
+		private final List<String> strings;
+		private byte[] buffer;
+
+		Reader(InputStream in) {
+			this.in = new DataInputStream(in);
+			this.strings = new ArrayList<String>();
+			this.buffer = new byte[64];
+		}
+
+		GlobalData read(ProgressReport report) throws IOException {
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (in.read()!=MAGIC[i]) {
+					throw new UnsupportedFormatException("Not a binary file"); //$NON-NLS-1$
+				}
+			}
+			int version = readInt();
+			if (version!=VERSION) {
+				throw new UnsupportedFileVersionException("binary "+version); //$NON-NLS-1$
+			}
+			int xmlLength = readCount(Integer.MAX_VALUE);
+			readBytes(xmlLength);
+			GlobalData data = XMLSerializer.read(new ByteArrayInputStream(buffer, 0, xmlLength), null);
+
+			// The names written are the ones of the xml data, so there can't be more names than in the xml data
+			Account[] accounts = new Account[readCount(data.getAccountsNumber())];
+			Mode[][] modes = new Mode[accounts.length][];
+			for (int i = 0; i < accounts.length; i++) {
+				accounts[i] = data.getAccount(readString());
+				if (accounts[i]==null) {
+					throw new UnsupportedFormatException("Unknown account"); //$NON-NLS-1$
+				}
+				modes[i] = new Mode[readCount(accounts[i].getModesNumber())];
+				for (int j = 0; j < modes[i].length; j++) {
+					modes[i][j] = accounts[i].getMode(readString());
+					if (modes[i][j]==null) {
+						throw new UnsupportedFormatException("Unknown mode"); //$NON-NLS-1$
+					}
+				}
+			}
+			Category[] categories = new Category[readCount(data.getCategoriesNumber())];
+			for (int i = 0; i < categories.length; i++) {
+				categories[i] = data.getCategory(readString());
+				if (categories[i]==null) {
+					throw new UnsupportedFormatException("Unknown category"); //$NON-NLS-1$
+				}
+			}
+
+			int nbTransactions = readCount(Integer.MAX_VALUE);
+			List<Transaction> transactions = new ArrayList<Transaction>(Math.min(nbTransactions, MAX_INITIAL_CAPACITY));
+			if (report!=null) {
+				report.setMax(nbTransactions);
+			}
+			int previousDays = 0;
+			for (int i = 0; i < nbTransactions; i++) {
+				int flags = readFlags(TRANSACTION_FLAGS);
+				int accountIndex = readIndex(accounts.length);
+				Account account = accounts[accountIndex];
+				Mode mode = modes[accountIndex][readIndex(modes[accountIndex].length)];
+				Category category = categories[readIndex(categories.length)];
+				int days = previousDays+readSignedInt();
+				int valueDays = days+readSignedInt();
+				previousDays = days;
+				double amount = readAmount(flags);
+				String description = readString();
+				String number = (flags & NUMBER)!=0 ? readString() : null;
+				String comment = (flags & COMMENT)!=0 ? readString() : null;
+				String statement = (flags & STATEMENT)!=0 ? readString() : null;
+				List<SubTransaction> subTransactions = null;
+				if ((flags & SUBTRANSACTIONS)!=0) {
+					int nb = readCount(Integer.MAX_VALUE);
+					subTransactions = new ArrayList<SubTransaction>(Math.min(nb, MAX_INITIAL_CAPACITY));
+					for (int j = 0; j < nb; j++) {
+						int subFlags = readFlags(SUBTRANSACTION_FLAGS);
+						double subAmount = readAmount(subFlags);
+						String subDescription = (subFlags & DESCRIPTION)!=0 ? readString() : null;
+						subTransactions.add(new SubTransaction(subAmount, subDescription, categories[readIndex(categories.length)]));
+					}
+				}
+				transactions.add(new Transaction(DateUtils.fromEpochDay(days), number, description, comment, amount, account, mode, category,
+						DateUtils.fromEpochDay(valueDays), statement, subTransactions));
+				if (report!=null) {
+					if (report.isCancelled()) {
+						return null;
+					}
+					report.reportProgress(i+1);
+				}
+			}
+			data.add(transactions.toArray(new Transaction[transactions.size()]));
+			return data;
+		}
+
+		/** Reads a count.
+		 * @param max The maximum valid count
+		 * @return a count between 0 and max
+		 * @throws IOException if the count is out of range or if the stream can't be read
+		 */
+		private int readCount(int max) throws IOException {
+			long count = readLong();
+			if ((count<0) || (count>max)) {
+				throw new UnsupportedFormatException("Invalid count "+count); //$NON-NLS-1$
+			}
+			return (int) count;
+		}
+
+		/** Reads an index.
+		 * @param length The length of the indexed array
+		 * @return an index between 0 and length-1
+		 * @throws IOException if the index is out of range or if the stream can't be read
+		 */
+		private int readIndex(int length) throws IOException {
+			long index = readLong();
+			if ((index<0) || (index>=length)) {
+				throw new UnsupportedFormatException("Invalid index "+index); //$NON-NLS-1$
+			}
+			return (int) index;
+		}
+
+		private int readFlags(int validFlags) throws IOException {
+			int flags = in.readUnsignedByte();
+			if ((flags & ~validFlags)!=0) {
+				throw new UnsupportedFormatException("Invalid flags "+flags); //$NON-NLS-1$
+			}
+			return flags;
+		}
+
+		/** Reads bytes in the buffer.
+		 * <br>The buffer grows as the bytes are read, so an invalid length results in an EOFException, not in a huge allocation.
+		 * @param length The number of bytes to read
+		 * @throws IOException if the stream can't be read or if it ends before length bytes were read
+		 */
+		private void readBytes(int length) throws IOException {
+			int read = 0;
+			while (read<length) {
+				if (read==buffer.length) {
+					buffer = Arrays.copyOf(buffer, (int) Math.min(length, 2L*buffer.length));
+				}
+				int nb = in.read(buffer, read, Math.min(length, buffer.length)-read);
+				if (nb<0) {
+					throw new EOFException();
+				}
+				read += nb;
+			}
+		}
+
+		private double readAmount(int flags) throws IOException {
+			return (flags & RAW_AMOUNT)!=0 ? in.readDouble() : readSignedLong()/100.0;
+		}
+
+		private String readString() throws IOException {
+			int index = readIndex(strings.size()+1);
+			if (index!=0) {
+				return strings.get(index-1);
+			}
+			int length = readCount(Integer.MAX_VALUE);
+			readBytes(length);
+			String result = new String(buffer, 0, length, XMLSerializer.UTF8);
+			strings.add(result);
+			return result;
+		}
+
+		private int readSignedInt() throws IOException {
+			int value = readInt();
+			return (value>>>1)^-(value & 1);
+		}
+
+		private long readSignedLong() throws IOException {
+			long value = readLong();
+			return (value>>>1)^-(value & 1);
+		}
+
+		private int readInt() throws IOException {
+			return (int) readLong();
+		}
+
+		private long readLong() throws IOException {
+			long result = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				int b = in.readUnsignedByte();
+				result |= (long)(b & 0x7F) << shift;
+				if ((b & 0x80)==0) {
+					return result;
+				}
+			}
+			throw new UnsupportedFormatException("Invalid variable length integer"); //$NON-NLS-1$
+		}
+	}
+}
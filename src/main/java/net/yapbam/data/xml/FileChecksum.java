@@ -0,0 +1,70 @@
+package net.yapbam.data.xml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/** The length and the CRC32 checksum of a file.
+ * <br>The sidecar files written next to a data file (journal, binary snapshot) contain the checksum of the data file they apply to.
+ * So, they are ignored if the data file was modified without them.
+ * @see Journal
+ * @see SnapshotCache
+ */
+final class FileChecksum {
+	private final long length;
+	private final long value;
+
+	/** Constructor.
+	 * @param length The file's length
+	 * @param value The file's CRC32 checksum
+	 */
+	FileChecksum(long length, long value) {
+		this.length = length;
+		this.value = value;
+	}
+
+	/** Computes the checksum of a file.
+	 * @param file The file
+	 * @return the file's checksum
+	 * @throws IOException if the file can't be read
+	 */
+	static FileChecksum of(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		InputStream in = new FileInputStream(file);
+		try {
+			for (int nb = in.read(buffer); nb>=0; nb = in.read(buffer)) {
+				crc.update(buffer, 0, nb);
+			}
+		} finally {
+			in.close();
+		}
+		return new FileChecksum(file.length(), crc.getValue());
+	}
+
+	/** Gets the file's length.
+	 * @return a number of bytes
+	 */
+	long getLength() {
+		return length;
+	}
+
+	/** Gets the file's CRC32 checksum.
+	 * @return a long
+	 */
+	long getValue() {
+		return value;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return (obj instanceof FileChecksum) && (((FileChecksum)obj).length==length) && (((FileChecksum)obj).value==value);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (value ^ length);
+	}
+}
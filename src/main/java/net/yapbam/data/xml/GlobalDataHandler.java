@@ -2,12 +2,12 @@ package net.yapbam.data.xml;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.yapbam.data.*;
 import net.yapbam.date.helpers.DateStepper;
@@ -34,7 +34,13 @@ class GlobalDataHandler extends DefaultHandler {
 	private Stack<Object> tempData;
 	private int currentProgress;
 	
-	private Collection<Transaction> transactions;
+	private TransactionsBuilder transactions;
+	// true while a transaction is read (false while a periodical transaction is read)
+	private boolean inTransaction;
+	// Load scoped dictionary used to share equal strings between transactions (discarded at the end of the load)
+	private Map<String, String> strings;
+	// The attributes of the periodical transaction being read
+	private PartialTransaction partial;
 	private Map<String,String> tagToCData;
 	private String currentTag;
 	private Locator locator;
@@ -53,27 +59,28 @@ class GlobalDataHandler extends DefaultHandler {
 		throw e;
 	}
 
-	GlobalDataHandler(boolean schemaValidation, ProgressReport report) {
+	/** Constructor.
+	 * @param schemaValidation true if the parser validates the document against the schema
+	 * @param report A progress report to observe the progress, or null
+	 * @param nbWorkers The number of threads that build the transactions (0 to build them in the parsing thread)
+	 * @see #close()
+	 */
+	GlobalDataHandler(boolean schemaValidation, ProgressReport report, int nbWorkers) {
 		super();
 		this.schemaValidation = schemaValidation;
 		this.report = report;
 		this.data = new GlobalData();
 		this.tempData = new Stack<Object>();
-		this.transactions = new ArrayList<Transaction>();
+		// The dictionary is used by the threads that build the transactions
+		this.strings = new ConcurrentHashMap<String, String>();
+		this.transactions = new TransactionsBuilder(data, strings, nbWorkers);
+		this.partial = new PartialTransaction();
 		this.tagToCData = new HashMap<String, String>();
 		if (report!=null) {
 			report.setMax(-1);
 		}
 	}
 	
-	private Map<String, String> buildMap(Attributes attributes) {
-		Map<String, String> result = new HashMap<String, String>();
-		for (int i=0;i<attributes.getLength();i++) {
-			result.put(attributes.getLocalName(i), attributes.getValue(i));
-		}
-		return result;
-	}
-
 	@Override
 	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
 		if ((report!=null) && report.isCancelled()) {
@@ -95,6 +102,11 @@ class GlobalDataHandler extends DefaultHandler {
 			}
 		}
 		this.currentTag = qName;
+		if (!qName.equals(XMLSerializer.TRANSACTION_TAG) && !qName.equals(XMLSerializer.SUBTRANSACTION_TAG)) {
+			// The data may be modified by this element, it should not be read by the threads that build the transactions
+			// (in Yapbam files, the transactions are the last elements, so this costs nothing).
+			this.transactions.flush();
+		}
 		if (XMLSerializer.GLOBAL_DATA_TAG.equals(qName)) {
 			try {
 				if (SLOW_READING) {
@@ -109,10 +121,13 @@ class GlobalDataHandler extends DefaultHandler {
 			if (version>XMLSerializer.CURRENT_VERSION) {
 				throw new SaxUnsupportedFileVersionException(locator, version);
 			}
+			String nbTransactions = attributes.getValue(XMLSerializer.NB_TRANSACTIONS_ATTRIBUTE);
+			if (nbTransactions!=null) {
+				this.transactions.ensureCapacity(Integer.parseInt(nbTransactions));
+			}
 			if (report!=null) {
-				String attr = attributes.getValue(XMLSerializer.NB_TRANSACTIONS_ATTRIBUTE);
-				if (attr!=null) {
-					report.setMax(Integer.parseInt(attr));
+				if (nbTransactions!=null) {
+					report.setMax(Integer.parseInt(nbTransactions));
 					this.currentProgress = 0;
 					report.reportProgress(this.currentProgress);
 				} else {
@@ -199,30 +214,19 @@ class GlobalDataHandler extends DefaultHandler {
 			delegateHandler = new FilterHandler(data);
 			delegateHandler.startElement(uri, localName, qName, attributes);
 		} else if (qName.equals(XMLSerializer.TRANSACTION_TAG)) {
-			//We can't directly push the attributes because SAX may reuse the same instance to store next element's attributes.
-			this.tempData.push(buildMap(attributes));
-			// Put a null in the stack. This place will contains a list of subtransactions, if any exists, or null.
-			this.tempData.push(null);
+			this.transactions.add(attributes);
+			this.inTransaction = true;
 		} else if (qName.equals(XMLSerializer.SUBTRANSACTION_TAG)) {
-			double amount = Double.parseDouble(attributes.getValue(XMLSerializer.AMOUNT_ATTRIBUTE));
-			String description = attributes.getValue(XMLSerializer.DESCRIPTION_ATTRIBUTE);
-			String categoryId = attributes.getValue(XMLSerializer.CATEGORY_ATTRIBUTE);
-			if (categoryId!=null) {
-				categoryId = categoryId.trim();
-			}
-			Category category = this.data.getCategory(categoryId);
-			SubTransaction sub = new SubTransaction(amount, description, category);
-			List<SubTransaction> lst = (ArrayList<SubTransaction>) this.tempData.peek();
-			if (lst==null) {
-				// If no subtransactions were already found, create the subtransactions list
-				lst = new ArrayList<SubTransaction>();
-				this.tempData.pop();
-				this.tempData.push(lst);
+			if (inTransaction) {
+				this.transactions.addSubTransaction(attributes);
+			} else {
+				List<SubTransaction> lst = (List<SubTransaction>) this.tempData.peek();
+				lst.add(PartialTransaction.toSubTransaction(data, strings, attributes.getValue(XMLSerializer.AMOUNT_ATTRIBUTE),
+						attributes.getValue(XMLSerializer.DESCRIPTION_ATTRIBUTE), attributes.getValue(XMLSerializer.CATEGORY_ATTRIBUTE)));
 			}
-			lst.add(sub);
 		} else if (qName.equals(XMLSerializer.PERIODICAL_TAG)) {
 			//We can't directly push the attributes because SAX may reuse the same instance to store next element's attributes.
-			this.tempData.push(buildMap(attributes));
+			this.partial.setAttributes(attributes);
 			// Reserve a place in the stack to store the date stepper
 			this.tempData.push(null);
 			this.tempData.push(new ArrayList<SubTransaction>());
@@ -293,7 +297,9 @@ class GlobalDataHandler extends DefaultHandler {
 			// This was a problem because this extra time occurred at parsing end and was not reported to the ProgressReport
 			// So, on slow devices, the parsing seemed to pause some seconds after the end of parsing :-(
 			// Be aware that further modifications in the following method wause make the prblem to occur again.
-			this.data.add(this.transactions.toArray(new Transaction[this.transactions.size()]));
+			this.data.add(this.transactions.getTransactions());
+			this.transactions.close();
+			this.strings = null;
 		} else if (qName.equals(XMLSerializer.ACCOUNT_TAG)) {
 			// remove the tag we added in the stack
 			Account account = (Account) this.tempData.pop();
@@ -321,14 +327,8 @@ class GlobalDataHandler extends DefaultHandler {
 			Account account = (Account) this.tempData.peek();
 			this.data.add(account, book);
 		} else if (qName.equals(XMLSerializer.TRANSACTION_TAG)) {
-			List<SubTransaction> lst = (List<SubTransaction>) this.tempData.pop();
-			Map<String, String> attributes = (Map<String, String>) this.tempData.pop();
-			PartialTransaction p = new PartialTransaction(this.data, attributes);		
-			int date = XMLSerializer.toDate(attributes.get(XMLSerializer.DATE_ATTRIBUTE));
-			String number = attributes.get(XMLSerializer.NUMBER_ATTRIBUTE);
-			int valueDate = XMLSerializer.toDate(attributes.get(XMLSerializer.VALUE_DATE_ATTRIBUTE));
-			String statement = attributes.get(XMLSerializer.STATEMENT_ATTRIBUTE);
-			this.transactions.add(new Transaction(date, number, p.description, p.comment, p.amount, p.account, p.mode, p.category, valueDate, statement, lst));
+			// The transaction is built later (see TransactionsBuilder)
+			this.inTransaction = false;
 			if (report!=null) {
 				if (this.currentProgress>=0) {
 					this.currentProgress++;
@@ -346,11 +346,11 @@ class GlobalDataHandler extends DefaultHandler {
 		} else if (qName.equals(XMLSerializer.PERIODICAL_TAG)) {
 			ArrayList<SubTransaction> lst = (ArrayList<SubTransaction>) this.tempData.pop();
 			DateStepper stepper = (DateStepper) this.tempData.pop();
-			Map<String, String> attributes = (Map<String, String>) this.tempData.pop();
-			PartialTransaction p = new PartialTransaction(this.data, attributes);
-			String attribute = attributes.get(XMLSerializer.NEXT_DATE_ATTRIBUTE);
+			PartialTransaction p = this.partial;
+			p.resolve(this.data, strings);
+			String attribute = p.get(PartialTransaction.NEXT_DATE);
 			Date nextDate = attribute==null?null:DateUtils.integerToDate(XMLSerializer.toDate(attribute));
-			boolean enabled = Boolean.parseBoolean(attributes.get(XMLSerializer.ENABLED_ATTRIBUTE));
+			boolean enabled = Boolean.parseBoolean(p.get(PartialTransaction.ENABLED));
 			// In previous Yapbam versions, next date could be after end date. Now, it would launch an IllegalArgumentException
 			if (nextDate!=null && stepper!=null && stepper.getLastDate()!=null && stepper.getLastDate().compareTo(nextDate)<0) {
 				// If next date is after end
@@ -375,9 +375,16 @@ class GlobalDataHandler extends DefaultHandler {
 
 	@Override
 	public void characters(char[] ch, int start, int length) throws SAXException {
-		String str = new String(ch, start, length).trim();
-		if (str.length()>0) {
-			this.tagToCData.put(currentTag, str);
+		// Trim the characters before building a string, the blanks between the tags should not cost anything
+		int end = start+length;
+		while ((start<end) && (ch[start]<=' ')) {
+			start++;
+		}
+		while ((start<end) && (ch[end-1]<=' ')) {
+			end--;
+		}
+		if (start<end) {
+			this.tagToCData.put(currentTag, new String(ch, start, end-start));
 		}
 	}
 
@@ -390,4 +397,11 @@ class GlobalDataHandler extends DefaultHandler {
 	public GlobalData getData() {
 		return this.data;
 	}
+
+	/** Stops the threads used by this handler.
+	 * <br>This method should always be called at the end of the parsing, even if it fails or is cancelled.
+	 */
+	void close() {
+		this.transactions.close();
+	}
 }
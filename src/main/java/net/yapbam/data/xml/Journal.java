@@ -0,0 +1,814 @@
+package net.yapbam.data.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.LoggerFactory;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.DataSnapshot;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.ProgressReport;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.data.event.BatchCommittedEvent;
+import net.yapbam.data.event.DataEvent;
+import net.yapbam.data.event.DataListener;
+import net.yapbam.data.event.NeedToBeSavedChangedEvent;
+import net.yapbam.data.event.TransactionsAddedEvent;
+import net.yapbam.data.event.TransactionsModifiedEvent;
+import net.yapbam.data.event.TransactionsRemovedEvent;
+import net.yapbam.data.event.URIChangedEvent;
+import net.yapbam.data.xml.task.EncryptedStreams;
+
+/** An append-only journal of the changes made to the transactions of data saved in a file.
+ * <br>Saving a large file after a small change costs a full rewrite of the file (and its compression and encryption if it
+ * is password protected). With a journal, the changes made to the transactions since the file was written are appended,
+ * as compact records, to a sidecar file (the data file path followed by ".journal"). Reading the data file through the journal
+ * replays these records on top of it.
+ * <br>The other changes (accounts, categories, periodical transactions, filters, password, etc...) are rare, they result in
+ * a full rewrite of the data file.
+ * <br>When the journal grows past a threshold, the data file is rewritten (compacted) in the background from a snapshot of the data,
+ * and a new journal is started.
+ * <br>The journal header contains the length and the checksum of the data file it applies to. A journal that doesn't match the data
+ * file (for instance because the file was saved without the journal) is ignored.
+ * <br>The files are replaced by renaming a new file over them. If the rename fails, the replaced file is first renamed with a ".bak"
+ * extension, which is deleted once the new file is in place. So, a crash never leaves no file at all, and reading restores these backups.
+ * Similarly, a crash during a compaction, after the data file was replaced but before the new journal was promoted, is recovered by
+ * the next read.
+ * <br>Each save appends a block of records, preceded by its length and a CRC. A block that is incomplete or whose CRC is wrong (written
+ * by a save interrupted by a crash) ends the journal: it is ignored and cut off the journal by the next read.
+ * <br>When the data is password protected, each block of records is compressed and encrypted with the data's password.
+ * <br>Typical use:<pre>
+ * Journal journal = new Journal(file, executor);
+ * GlobalData data = journal.read(password, report);
+ * ... // edit the data
+ * journal.save(data, report);
+ * ...
+ * journal.close();</pre>
+ * @see GlobalData#snapshot()
+ */
+public class Journal {
+	/** The default journal size (in bytes) that triggers a compaction. */
+	public static final long DEFAULT_COMPACTION_THRESHOLD = 1024*1024;
+
+	private static final String JOURNAL_EXTENSION = ".journal"; //$NON-NLS-1$
+	private static final String NEXT_JOURNAL_EXTENSION = ".journal.next"; //$NON-NLS-1$
+	private static final String BACKUP_EXTENSION = ".bak"; //$NON-NLS-1$
+	private static final int MAGIC = 0x594A4E31; // YJN1
+	private static final int HEADER_LENGTH = 4+8+8;
+	private static final int BLOCK_HEADER_LENGTH = 4+4;
+	private static final byte ADD = 1;
+	private static final byte REMOVE = 2;
+	private static final byte REPLACE = 3;
+	private static final String UNDEFINED_NAME = ""; //$NON-NLS-1$
+	private static final Transaction[] NONE = new Transaction[0];
+
+	private final File dataFile;
+	private final File journalFile;
+	// The journal that receives the records while a compaction is running
+	private final File nextJournalFile;
+	private final Executor executor;
+	private final Serializer serializer;
+	private final DataListener listener;
+	private long compactionThreshold;
+
+	// These fields are only used by the thread that modifies the data
+	private GlobalData data;
+	private boolean fullSaveNeeded;
+	// The records relative to the last written data file
+	private Keys keys;
+	// While a compaction is running, the records relative to the data file that is being replaced
+	private Keys previousKeys;
+
+	// These fields are shared with the compaction thread, they are guarded by this
+	private FileChecksum checksum;
+	private boolean journalStarted;
+	private int generation;
+	private boolean compacting;
+	private boolean compactionFailed;
+
+	/** Constructor.
+	 * @param dataFile The data file. Its journal is stored in the same directory.
+	 * @param executor The executor that runs the compactions, or null to compact in the thread that saves the data.
+	 */
+	public Journal(File dataFile, Executor executor) {
+		this.dataFile = dataFile;
+		this.journalFile = new File(dataFile.getPath()+JOURNAL_EXTENSION);
+		this.nextJournalFile = new File(dataFile.getPath()+NEXT_JOURNAL_EXTENSION);
+		this.executor = executor;
+		this.serializer = new Serializer();
+		this.compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+		this.listener = new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				record(event);
+			}
+		};
+	}
+
+	/** Sets the journal size that triggers a compaction.
+	 * @param threshold a size in bytes
+	 */
+	public void setCompactionThreshold(long threshold) {
+		this.compactionThreshold = threshold;
+	}
+
+	/** Gets the journal file.
+	 * @return a file (that may not exist)
+	 */
+	public File getFile() {
+		return journalFile;
+	}
+
+	/** Reads the data file and replays the journal on top of it.
+	 * <br>After this method is called, the journal records the changes made to the returned data.
+	 * @param password The password of the data (null if the data is not password protected)
+	 * @param report A progress report to observe the progress, or null
+	 * @return The read data or null if reading was cancelled (using report.cancel()).
+	 * @throws IOException If something goes wrong while reading
+	 * @throws AccessControlException If the password is wrong
+	 * @throws UnsupportedFormatException If the format of the data file or of the journal is not supported
+	 * @see Serializer#read(String, InputStream, ProgressReport)
+	 */
+	public GlobalData read(String password, ProgressReport report) throws IOException, AccessControlException {
+		restoreBackup(dataFile);
+		restoreBackup(journalFile);
+		GlobalData result;
+		InputStream in = new BufferedInputStream(new FileInputStream(dataFile));
+		try {
+			result = serializer.read(password, in, report);
+		} finally {
+			in.close();
+		}
+		if (result==null) {
+			return null;
+		}
+		FileChecksum fileChecksum = FileChecksum.of(dataFile);
+		if (!isHeaderOf(journalFile, fileChecksum) && isHeaderOf(nextJournalFile, fileChecksum)) {
+			// A compaction was interrupted after it replaced the data file, but before it promoted its journal.
+			// The current journal applies to the previous data file, the changes saved during the compaction are in the next one.
+			replace(nextJournalFile, journalFile);
+		}
+		synchronized (this) {
+			// A compaction that was started on previous data should be ignored
+			generation++;
+			compacting = false;
+			compactionFailed = false;
+		}
+		detach();
+		keys = new Keys(getIds(result));
+		previousKeys = null;
+		long validLength = replay(result, password, fileChecksum);
+		boolean replayed = validLength>=0;
+		if (replayed) {
+			// The data is the same as the data saved by the file and its journal
+			result.setChanged(false);
+			if (validLength<journalFile.length()) {
+				// The last block was not completely written, the next blocks should not be appended after it
+				LoggerFactory.getLogger(getClass()).warn("Journal {} ends with an invalid block, it is truncated", journalFile); //$NON-NLS-1$
+				truncate(journalFile, validLength);
+			}
+		}
+		synchronized (this) {
+			this.checksum = fileChecksum;
+			this.journalStarted = replayed;
+		}
+		attach(result);
+		return result;
+	}
+
+	/** Saves the data.
+	 * <br>If only transactions were changed since the last save, the changes are appended to the journal. If not, or if the data was
+	 * not read or saved with this journal, the data file is fully rewritten.
+	 * <br>If the journal becomes larger than the compaction threshold, a compaction is started.
+	 * <br>This method should be called by the thread that modifies the data.
+	 * @param data The data to save
+	 * @param report a progress report, or null
+	 * @throws IOException if something goes wrong while writing
+	 */
+	public void save(GlobalData data, ProgressReport report) throws IOException {
+		boolean full;
+		synchronized (this) {
+			full = (data!=this.data) || fullSaveNeeded || !dataFile.exists();
+		}
+		if (full) {
+			fullSave(data, report);
+			return;
+		}
+		byte[] segment = keys.getSegment(data.getPassword());
+		byte[] previousSegment = previousKeys==null ? null : previousKeys.getSegment(data.getPassword());
+		boolean compact;
+		synchronized (this) {
+			if (compacting) {
+				// Until the compaction ends, the current journal is kept up to date
+				append(nextJournalFile, segment);
+				append(journalFile, previousSegment);
+			} else {
+				if (compactionFailed) {
+					// The current journal is still valid
+					keys = previousKeys;
+					segment = previousSegment;
+					compactionFailed = false;
+				}
+				previousKeys = null;
+				append(journalFile, segment);
+			}
+			compact = !compacting && (journalFile.length()>compactionThreshold);
+		}
+		if (compact) {
+			startCompaction(data);
+		}
+	}
+
+	/** Stops recording the changes of the data.
+	 * <br>A running compaction is not interrupted.
+	 */
+	public void close() {
+		detach();
+	}
+
+	private void attach(GlobalData data) {
+		this.data = data;
+		this.fullSaveNeeded = false;
+		data.addListener(listener);
+	}
+
+	private void detach() {
+		if (this.data!=null) {
+			this.data.removeListener(listener);
+			this.data = null;
+		}
+	}
+
+	private void fullSave(GlobalData data, ProgressReport report) throws IOException {
+		DataSnapshot snapshot = data.snapshot();
+		synchronized (this) {
+			// A running compaction is now useless
+			generation++;
+			compacting = false;
+			compactionFailed = false;
+		}
+		File tmpFile = createTempFile();
+		try {
+			FileChecksum fileChecksum = write(snapshot, tmpFile, report);
+			synchronized (this) {
+				replace(tmpFile, dataFile);
+				journalFile.delete();
+				nextJournalFile.delete();
+				this.checksum = fileChecksum;
+				this.journalStarted = false;
+			}
+		} finally {
+			tmpFile.delete();
+		}
+		if (data!=this.data) {
+			detach();
+			attach(data);
+		}
+		fullSaveNeeded = false;
+		keys = new Keys(getIds(snapshot));
+		previousKeys = null;
+	}
+
+	private void startCompaction(GlobalData data) throws IOException {
+		final DataSnapshot snapshot = data.snapshot();
+		// The records made after the snapshot are relative to it, they will be appended to the next journal
+		previousKeys = keys;
+		keys = new Keys(getIds(snapshot));
+		final int compactionGeneration;
+		synchronized (this) {
+			compacting = true;
+			compactionGeneration = generation;
+			nextJournalFile.delete();
+			writeHeader(nextJournalFile, null);
+		}
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				compact(snapshot, compactionGeneration);
+			}
+		};
+		if (executor==null) {
+			task.run();
+		} else {
+			executor.execute(task);
+		}
+	}
+
+	private void compact(DataSnapshot snapshot, int compactionGeneration) {
+		File tmpFile = null;
+		boolean done = false;
+		try {
+			tmpFile = createTempFile();
+			FileChecksum fileChecksum = write(snapshot, tmpFile, null);
+			synchronized (this) {
+				if (compactionGeneration==generation) {
+					writeHeader(nextJournalFile, fileChecksum);
+					replace(tmpFile, dataFile);
+					replace(nextJournalFile, journalFile);
+					this.checksum = fileChecksum;
+					this.journalStarted = true;
+					this.compacting = false;
+				}
+			}
+			done = true;
+		} catch (IOException e) {
+			LoggerFactory.getLogger(getClass()).warn("Journal compaction failed", e); //$NON-NLS-1$
+		} finally {
+			if (!done) {
+				synchronized (this) {
+					if (compactionGeneration==generation) {
+						// The next journal is useless, the current one will go on
+						nextJournalFile.delete();
+						this.compacting = false;
+						this.compactionFailed = true;
+					}
+				}
+			}
+			if (tmpFile!=null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private File createTempFile() throws IOException {
+		return File.createTempFile("yapbam", ".tmp", dataFile.getAbsoluteFile().getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private FileChecksum write(DataSnapshot snapshot, File file, ProgressReport report) throws IOException {
+		CheckedOutputStream out = new CheckedOutputStream(new FileOutputStream(file), new CRC32());
+		try {
+			OutputStream buffered = new BufferedOutputStream(out);
+			serializer.write(snapshot, buffered, report);
+			buffered.flush();
+		} finally {
+			out.close();
+		}
+		return new FileChecksum(file.length(), out.getChecksum().getValue());
+	}
+
+	/** Replaces a file by another one.
+	 * <br>If the source can't be renamed over the target (on Windows, for instance), the target is kept as a backup until the source is renamed.
+	 * @param source The new file
+	 * @param target The replaced file
+	 * @throws IOException if the file can't be replaced. In such a case, the target is unchanged.
+	 * @see #restoreBackup(File)
+	 */
+	private static void replace(File source, File target) throws IOException {
+		if (source.renameTo(target)) {
+			return;
+		}
+		File backup = getBackup(target);
+		backup.delete();
+		if (target.exists() && !target.renameTo(backup)) {
+			throw new IOException("Unable to rename "+target+" to "+backup); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (!source.renameTo(target)) {
+			backup.renameTo(target);
+			throw new IOException("Unable to rename "+source+" to "+target); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		backup.delete();
+	}
+
+	/** Restores the backup of a file left by an interrupted replacement.
+	 * @param file The file
+	 * @throws IOException if the backup can't be restored
+	 * @see #replace(File, File)
+	 */
+	private static void restoreBackup(File file) throws IOException {
+		File backup = getBackup(file);
+		if (backup.exists()) {
+			if (file.exists()) {
+				// The file was replaced, only the backup deletion was interrupted
+				backup.delete();
+			} else if (!backup.renameTo(file)) {
+				throw new IOException("Unable to rename "+backup+" to "+file); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+	}
+
+	private static File getBackup(File file) {
+		return new File(file.getPath()+BACKUP_EXTENSION);
+	}
+
+	/** Appends a block of records to a journal.
+	 * @param file The journal file
+	 * @param segment The records or null if there's no record
+	 * @throws IOException if something goes wrong
+	 */
+	private void append(File file, byte[] segment) throws IOException {
+		if (segment==null) {
+			return;
+		}
+		if ((file==journalFile) && !journalStarted) {
+			journalFile.delete();
+			writeHeader(journalFile, checksum);
+			journalStarted = true;
+		}
+		FileOutputStream stream = new FileOutputStream(file, true);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(segment.length);
+			out.writeInt(getCRC(segment));
+			out.write(segment);
+			out.flush();
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+	}
+
+	/** Computes the CRC of a block of records.
+	 * <br>The CRC covers the block length, so a block filled with zeros is detected as invalid.
+	 * @param segment The records
+	 * @return a CRC
+	 */
+	private static int getCRC(byte[] segment) {
+		CRC32 crc = new CRC32();
+		int length = segment.length;
+		crc.update(new byte[]{(byte)(length>>>24), (byte)(length>>>16), (byte)(length>>>8), (byte)length});
+		crc.update(segment);
+		return (int) crc.getValue();
+	}
+
+	/** Truncates a file.
+	 * @param file The file
+	 * @param length The new length of the file
+	 * @throws IOException if something goes wrong
+	 */
+	private static void truncate(File file, long length) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			out.setLength(length);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** Writes the header of a journal.
+	 * <br>If the journal does not exist, it is created. If it exists, its header is overwritten.
+	 * @param file The journal file
+	 * @param checksum The checksum of the data file the journal applies to, or null if it is not yet known.
+	 * @throws IOException if something goes wrong
+	 */
+	private static void writeHeader(File file, FileChecksum checksum) throws IOException {
+		RandomAccessFile out = new RandomAccessFile(file, "rw"); //$NON-NLS-1$
+		try {
+			out.writeInt(MAGIC);
+			out.writeLong(checksum==null ? -1 : checksum.getLength());
+			out.writeLong(checksum==null ? -1 : checksum.getValue());
+		} finally {
+			out.close();
+		}
+	}
+
+	private void record(DataEvent event) {
+		if (fullSaveNeeded) {
+			return;
+		}
+		if (event instanceof TransactionsAddedEvent) {
+			record(NONE, NONE, NONE, ((TransactionsAddedEvent)event).getTransactions());
+		} else if (event instanceof TransactionsRemovedEvent) {
+			record(((TransactionsRemovedEvent)event).getTransactions(), NONE, NONE, NONE);
+		} else if (event instanceof TransactionsModifiedEvent) {
+			record(NONE, ((TransactionsModifiedEvent)event).getOldTransactions(), ((TransactionsModifiedEvent)event).getNewTransactions(), NONE);
+		} else if (event instanceof BatchCommittedEvent) {
+			BatchCommittedEvent batch = (BatchCommittedEvent) event;
+			for (DataEvent batchEvent : batch.getEvents()) {
+				record(batchEvent);
+			}
+			if (!fullSaveNeeded) {
+				record(batch.getRemovedTransactions(), batch.getOldTransactions(), batch.getNewTransactions(), batch.getAddedTransactions());
+			}
+		} else if (!(event instanceof NeedToBeSavedChangedEvent) && !(event instanceof URIChangedEvent)) {
+			// Something else than the transactions changed
+			fullSaveNeeded = true;
+		}
+	}
+
+	private void record(Transaction[] removed, Transaction[] oldTransactions, Transaction[] newTransactions, Transaction[] added) {
+		keys.record(removed, oldTransactions, newTransactions, added);
+		if (previousKeys!=null) {
+			previousKeys.record(removed, oldTransactions, newTransactions, added);
+		}
+	}
+
+	private static long[] getIds(GlobalData data) {
+		long[] result = new long[data.getTransactionsNumber()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = data.getTransaction(i).getId();
+		}
+		return result;
+	}
+
+	private static long[] getIds(DataSnapshot snapshot) {
+		long[] result = new long[snapshot.getTransactionsNumber()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = snapshot.getTransaction(i).getId();
+		}
+		return result;
+	}
+
+	private static byte[] encode(List<Record> records, String password) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream stream = password==null ? bytes : EncryptedStreams.getOutputStream(bytes, password, false);
+		DataOutputStream out = new DataOutputStream(stream);
+		out.writeInt(records.size());
+		for (Record record : records) {
+			out.writeByte(record.operation);
+			out.writeInt(record.key);
+			if (record.operation!=REMOVE) {
+				write(out, record.transaction);
+			}
+		}
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void write(DataOutputStream out, Transaction transaction) throws IOException {
+		writeString(out, transaction.getAccount().getName());
+		writeString(out, transaction.getMode().equals(Mode.UNDEFINED)?UNDEFINED_NAME:transaction.getMode().getName());
+		writeString(out, transaction.getCategory().equals(Category.UNDEFINED)?UNDEFINED_NAME:transaction.getCategory().getName());
+		out.writeInt(transaction.getDateAsInteger());
+		out.writeInt(transaction.getValueDateAsInteger());
+		out.writeDouble(transaction.getAmount());
+		writeString(out, transaction.getNumber());
+		writeString(out, transaction.getDescription());
+		writeString(out, transaction.getComment());
+		writeString(out, transaction.getStatement());
+		out.writeInt(transaction.getSubTransactionSize());
+		for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
+			SubTransaction sub = transaction.getSubTransaction(i);
+			out.writeDouble(sub.getAmount());
+			writeString(out, sub.getDescription());
+			writeString(out, sub.getCategory().equals(Category.UNDEFINED)?UNDEFINED_NAME:sub.getCategory().getName());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string==null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = string.getBytes(XMLSerializer.UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/** Tests whether a journal applies to a data file.
+	 * @param file The journal file
+	 * @param fileChecksum The checksum of the data file
+	 * @return true if the journal exists and its header contains the data file checksum
+	 * @throws IOException if the journal can't be read
+	 */
+	private static boolean isHeaderOf(File file, FileChecksum fileChecksum) throws IOException {
+		if (file.length()<HEADER_LENGTH) {
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			return (in.readInt()==MAGIC) && fileChecksum.equals(new FileChecksum(in.readLong(), in.readLong()));
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Replays the journal on data.
+	 * @param data The data read from the data file
+	 * @param password The data's password
+	 * @param fileChecksum The checksum of the data file
+	 * @return the length of the valid part of the journal (its header and its valid blocks), or -1 if there's no journal or if it doesn't
+	 * apply to the data file.
+	 * @throws IOException if the journal can't be read
+	 */
+	private long replay(GlobalData data, String password, FileChecksum fileChecksum) throws IOException {
+		if (!isHeaderOf(journalFile, fileChecksum)) {
+			return -1;
+		}
+		long fileLength = journalFile.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+		try {
+			in.skipBytes(HEADER_LENGTH);
+			int baseSize = data.getTransactionsNumber();
+			List<Transaction> transactions = new ArrayList<Transaction>(baseSize);
+			for (int i = 0; i < baseSize; i++) {
+				transactions.add(data.getTransaction(i));
+			}
+			long validLength = HEADER_LENGTH;
+			for (byte[] segment = readSegment(in, fileLength-validLength); segment!=null; segment = readSegment(in, fileLength-validLength)) {
+				validLength += BLOCK_HEADER_LENGTH+segment.length;
+				InputStream stream = new ByteArrayInputStream(segment);
+				DataInputStream records = new DataInputStream(password==null ? stream : EncryptedStreams.getInputStream(stream, password, false));
+				int nb = records.readInt();
+				for (int i = 0; i < nb; i++) {
+					byte operation = records.readByte();
+					int key = records.readInt();
+					if (operation==ADD) {
+						if (key!=transactions.size()) {
+							throw new UnsupportedFormatException("Invalid journal record"); //$NON-NLS-1$
+						}
+						transactions.add(read(records, data));
+					} else if (((operation==REMOVE) || (operation==REPLACE)) && (key>=0) && (key<transactions.size()) && (transactions.get(key)!=null)) {
+						transactions.set(key, operation==REMOVE ? null : read(records, data));
+					} else {
+						throw new UnsupportedFormatException("Invalid journal record"); //$NON-NLS-1$
+					}
+				}
+			}
+			// Apply the net changes to the data
+			List<Transaction> removed = new ArrayList<Transaction>();
+			List<Transaction> added = new ArrayList<Transaction>();
+			for (int key = 0; key < transactions.size(); key++) {
+				Transaction transaction = transactions.get(key);
+				if ((key<baseSize) && (transaction!=data.getTransaction(key))) {
+					removed.add(data.getTransaction(key));
+				}
+				if ((transaction!=null) && ((key>=baseSize) || (transaction!=data.getTransaction(key)))) {
+					added.add(transaction);
+					keys.otherKeys.put(transaction.getId(), key);
+				}
+			}
+			keys.nextKey = transactions.size();
+			if (!removed.isEmpty()) {
+				data.remove(removed.toArray(new Transaction[removed.size()]));
+			}
+			data.add(added.toArray(new Transaction[added.size()]));
+			return validLength;
+		} finally {
+			in.close();
+		}
+	}
+
+	/** Reads a block of records.
+	 * @param in The journal
+	 * @param remaining The number of bytes remaining in the journal
+	 * @return The block or null if the end of the journal is reached or if the block is invalid (an incomplete or corrupted block,
+	 * written by an interrupted save, ends the journal).
+	 * @throws IOException if the journal can't be read
+	 */
+	private static byte[] readSegment(DataInputStream in, long remaining) throws IOException {
+		if (remaining<BLOCK_HEADER_LENGTH) {
+			return null;
+		}
+		int length = in.readInt();
+		int crc = in.readInt();
+		if ((length<0) || (length>remaining-BLOCK_HEADER_LENGTH)) {
+			return null;
+		}
+		byte[] segment = new byte[length];
+		in.readFully(segment);
+		return crc==getCRC(segment) ? segment : null;
+	}
+
+	private static Transaction read(DataInputStream in, GlobalData data) throws IOException {
+		Account account = data.getAccount(readString(in));
+		if (account==null) {
+			throw new UnsupportedFormatException("Unknown account in journal"); //$NON-NLS-1$
+		}
+		Mode mode = getMode(account, readString(in));
+		Category category = getCategory(data, readString(in));
+		int date = in.readInt();
+		int valueDate = in.readInt();
+		double amount = in.readDouble();
+		String number = readString(in);
+		String description = readString(in);
+		String comment = readString(in);
+		String statement = readString(in);
+		int nb = in.readInt();
+		List<SubTransaction> subTransactions = new ArrayList<SubTransaction>(nb);
+		for (int i = 0; i < nb; i++) {
+			double subAmount = in.readDouble();
+			String subDescription = readString(in);
+			subTransactions.add(new SubTransaction(subAmount, subDescription, getCategory(data, readString(in))));
+		}
+		return new Transaction(date, number, description, comment, amount, account, mode, category, valueDate, statement, subTransactions);
+	}
+
+	private static Mode getMode(Account account, String name) throws IOException {
+		Mode mode = UNDEFINED_NAME.equals(name) ? Mode.UNDEFINED : account.getMode(name);
+		if (mode==null) {
+			throw new UnsupportedFormatException("Unknown mode in journal"); //$NON-NLS-1$
+		}
+		return mode;
+	}
+
+	private static Category getCategory(GlobalData data, String name) throws IOException {
+		Category category = UNDEFINED_NAME.equals(name) ? Category.UNDEFINED : data.getCategory(name);
+		if (category==null) {
+			throw new UnsupportedFormatException("Unknown category in journal"); //$NON-NLS-1$
+		}
+		return category;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length<0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, XMLSerializer.UTF8);
+	}
+
+	/** The records of the changes made to the transactions since a data file was written.
+	 * <br>In the records, a transaction is identified by a key: the transactions of the data file are identified by their index
+	 * in the file, the other ones by a number given when they are added.
+	 */
+	private static final class Keys {
+		// The ids of the transactions of the data file (sorted as in the data file)
+		private final long[] baseIds;
+		// The keys of the transactions that are not identified by their index in baseIds
+		private final Map<Long, Integer> otherKeys;
+		private int nextKey;
+		// The records not yet appended to the journal
+		private final List<Record> pending;
+
+		Keys(long[] baseIds) {
+			this.baseIds = baseIds;
+			this.otherKeys = new HashMap<Long, Integer>();
+			this.nextKey = baseIds.length;
+			this.pending = new ArrayList<Record>();
+		}
+
+		void record(Transaction[] removed, Transaction[] oldTransactions, Transaction[] newTransactions, Transaction[] added) {
+			for (Transaction transaction : removed) {
+				pending.add(new Record(REMOVE, removeKey(transaction), null));
+			}
+			for (int i = 0; i < oldTransactions.length; i++) {
+				int key = removeKey(oldTransactions[i]);
+				if ((key>=baseIds.length) || (newTransactions[i].getId()!=baseIds[key])) {
+					otherKeys.put(newTransactions[i].getId(), key);
+				}
+				pending.add(new Record(REPLACE, key, newTransactions[i]));
+			}
+			for (Transaction transaction : added) {
+				int key = nextKey++;
+				otherKeys.put(transaction.getId(), key);
+				pending.add(new Record(ADD, key, transaction));
+			}
+		}
+
+		private int removeKey(Transaction transaction) {
+			Integer key = otherKeys.remove(transaction.getId());
+			if (key!=null) {
+				return key;
+			}
+			int index = Arrays.binarySearch(baseIds, transaction.getId());
+			if (index<0) {
+				throw new IllegalStateException("Unknown transaction "+transaction); //$NON-NLS-1$
+			}
+			return index;
+		}
+
+		/** Gets the pending records as a block of records.
+		 * <br>The pending records are cleared.
+		 * @param password The password of the data
+		 * @return a block of records or null if there's no pending record
+		 * @throws IOException if something goes wrong
+		 */
+		byte[] getSegment(String password) throws IOException {
+			if (pending.isEmpty()) {
+				return null;
+			}
+			byte[] result = encode(pending, password);
+			pending.clear();
+			return result;
+		}
+	}
+
+	/** A change of a transaction. */
+	private static final class Record {
+		private final byte operation;
+		private final int key;
+		private final Transaction transaction;
+
+		Record(byte operation, int key, Transaction transaction) {
+			this.operation = operation;
+			this.key = key;
+			this.transaction = transaction;
+		}
+	}
+}
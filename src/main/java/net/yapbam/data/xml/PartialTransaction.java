@@ -1,32 +1,164 @@
 package net.yapbam.data.xml;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import net.yapbam.data.Account;
 import net.yapbam.data.Category;
 import net.yapbam.data.GlobalData;
 import net.yapbam.data.Mode;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
 
+import org.xml.sax.Attributes;
+
+/** The attributes of a transaction or a periodical transaction being read.
+ * <br>SAX reuses its Attributes instance for the next elements, so the attributes values have to be copied.
+ * They are copied in an array, at indexes (slots) that depend on the attribute name. Instances are reused for all the
+ * transactions of a file.
+ * @see TransactionsBuilder
+ */
 class PartialTransaction {
+	static final int ACCOUNT = 0;
+	static final int AMOUNT = 1;
+	static final int DESCRIPTION = 2;
+	static final int COMMENT = 3;
+	static final int MODE = 4;
+	static final int CATEGORY = 5;
+	static final int DATE = 6;
+	static final int VALUE_DATE = 7;
+	static final int NUMBER = 8;
+	static final int STATEMENT = 9;
+	static final int NEXT_DATE = 10;
+	static final int ENABLED = 11;
+
+	private static final Map<String, Integer> SLOTS = new HashMap<String, Integer>();
+	static {
+		SLOTS.put(XMLSerializer.ACCOUNT_ATTRIBUTE, ACCOUNT);
+		SLOTS.put(XMLSerializer.AMOUNT_ATTRIBUTE, AMOUNT);
+		SLOTS.put(XMLSerializer.DESCRIPTION_ATTRIBUTE, DESCRIPTION);
+		SLOTS.put(XMLSerializer.COMMENT_ATTRIBUTE, COMMENT);
+		SLOTS.put(XMLSerializer.MODE_ATTRIBUTE, MODE);
+		SLOTS.put(XMLSerializer.CATEGORY_ATTRIBUTE, CATEGORY);
+		SLOTS.put(XMLSerializer.DATE_ATTRIBUTE, DATE);
+		SLOTS.put(XMLSerializer.VALUE_DATE_ATTRIBUTE, VALUE_DATE);
+		SLOTS.put(XMLSerializer.NUMBER_ATTRIBUTE, NUMBER);
+		SLOTS.put(XMLSerializer.STATEMENT_ATTRIBUTE, STATEMENT);
+		SLOTS.put(XMLSerializer.NEXT_DATE_ATTRIBUTE, NEXT_DATE);
+		SLOTS.put(XMLSerializer.ENABLED_ATTRIBUTE, ENABLED);
+	}
+
+	private final String[] values = new String[ENABLED+1];
 	Account account;
 	double amount;
 	String description;
 	Mode mode;
 	Category category;
 	String comment;
+	// The fields specific to transactions (see resolveTransaction)
+	int date;
+	int valueDate;
+	String number;
+	String statement;
+	List<SubTransaction> subTransactions;
+
+	/** Copies the attributes of an element.
+	 * <br>The previous attributes are forgotten, unknown attributes are ignored.
+	 * @param attributes The element's attributes
+	 */
+	void setAttributes(Attributes attributes) {
+		Arrays.fill(values, null);
+		for (int i = 0; i < attributes.getLength(); i++) {
+			Integer slot = SLOTS.get(attributes.getQName(i));
+			if (slot!=null) {
+				values[slot] = attributes.getValue(i);
+			}
+		}
+	}
 
-	PartialTransaction(GlobalData data, Map<String, String> attributes) {
-		String accountId = attributes.get(XMLSerializer.ACCOUNT_ATTRIBUTE);
+	/** Gets an attribute value.
+	 * @param slot The attribute's slot (for instance DATE)
+	 * @return the attribute value or null if the element has no such attribute
+	 */
+	String get(int slot) {
+		return values[slot];
+	}
+
+	/** Computes the fields shared by transactions and periodical transactions from the attributes.
+	 * @param data The data being loaded
+	 * @param strings The load scoped dictionary used to share equal strings between transactions
+	 * @see #intern(Map, String)
+	 */
+	void resolve(GlobalData data, Map<String, String> strings) {
+		String accountId = values[ACCOUNT];
 		account = data.getAccount(accountId);
 		if (account == null) {
 			throw new IllegalArgumentException("Unknown account id : "+accountId); //$NON-NLS-1$
 		}
-		amount = Double.parseDouble(attributes.get(XMLSerializer.AMOUNT_ATTRIBUTE));
-		description = attributes.get(XMLSerializer.DESCRIPTION_ATTRIBUTE);
-		comment = attributes.get(XMLSerializer.COMMENT_ATTRIBUTE);
-		String modeId = attributes.get(XMLSerializer.MODE_ATTRIBUTE);
+		amount = XMLSerializer.toDouble(values[AMOUNT]);
+		description = intern(strings, values[DESCRIPTION]);
+		comment = intern(strings, values[COMMENT]);
+		String modeId = values[MODE];
 		mode = modeId==null ? Mode.UNDEFINED : account.getMode(modeId.trim());
-		String categoryId = attributes.get(XMLSerializer.CATEGORY_ATTRIBUTE);
+		String categoryId = values[CATEGORY];
 		category = categoryId==null ? Category.UNDEFINED : data.getCategory(categoryId.trim());
 	}
+
+	/** Computes all the fields of a transaction from the attributes.
+	 * @param data The data being loaded
+	 * @param strings The load scoped dictionary used to share equal strings between transactions
+	 * @see #resolve(GlobalData, Map)
+	 */
+	void resolveTransaction(GlobalData data, Map<String, String> strings) {
+		resolve(data, strings);
+		date = XMLSerializer.toDate(values[DATE]);
+		number = intern(strings, values[NUMBER]);
+		valueDate = XMLSerializer.toDate(values[VALUE_DATE]);
+		statement = intern(strings, values[STATEMENT]);
+	}
+
+	/** Builds the transaction.
+	 * <br>resolveTransaction should have been called before, and the subTransactions field should have been set.
+	 * @return a new transaction
+	 */
+	Transaction toTransaction() {
+		return new Transaction(date, number, description, comment, amount, account, mode, category, valueDate, statement, subTransactions);
+	}
+
+	/** Builds a subtransaction from its attributes.
+	 * @param data The data being loaded
+	 * @param strings The load scoped dictionary used to share equal strings between transactions
+	 * @param amount The amount attribute
+	 * @param description The description attribute
+	 * @param categoryId The category attribute (may be null)
+	 * @return a new subtransaction
+	 */
+	static SubTransaction toSubTransaction(GlobalData data, Map<String, String> strings, String amount, String description, String categoryId) {
+		Category category = data.getCategory(categoryId==null ? null : categoryId.trim());
+		return new SubTransaction(XMLSerializer.toDouble(amount), intern(strings, description), category);
+	}
+
+	/** Gets the instance of a string in a dictionary.
+	 * <br>Descriptions, comments, numbers and statements are very often repeated in a file. Using the same String instance
+	 * for all the occurrences of a value saves a lot of memory.
+	 * <br>Unlike String.intern or a global cache, the dictionary is only used during the load, so it costs nothing once the data is loaded.
+	 * <br>The dictionary is shared by the threads that build the transactions, so it should be thread safe. As two threads may
+	 * add the same value at the same time, two equal strings may remain, which is harmless.
+	 * @param strings The dictionary
+	 * @param value The string to intern (may be null)
+	 * @return the dictionary's instance of the string (null if value is null)
+	 */
+	static String intern(Map<String, String> strings, String value) {
+		if (value==null) {
+			return null;
+		}
+		String result = strings.get(value);
+		if (result==null) {
+			strings.put(value, value);
+			result = value;
+		}
+		return result;
+	}
 }
@@ -35,8 +35,38 @@ public class Serializer extends AbstractSerializer<GlobalData> {
 	}
 
 	public void directWrite(GlobalData data, OutputStream out, ProgressReport report) throws IOException {
+		directWrite(data.snapshot(), out, report);
+	}
+
+	/** Saves a snapshot of the data to a stream.
+	 * <br>The snapshot is immutable, so this method can be called by a background thread while the data is edited.
+	 * @param data The snapshot to save, it is protected by its password
+	 * @param out The outputStream (Note that this stream is not closed by this method).
+	 * @param report a progress report
+	 * @throws IOException if something goes wrong while writing
+	 * @see GlobalData#snapshot()
+	 */
+	public void write(final DataSnapshot data, OutputStream out, final ProgressReport report) throws IOException {
+		write(new WriteTask() {
+			@Override
+			public void write(OutputStream out) throws IOException {
+				directWrite(data, out, report);
+			}
+		}, out, data.getPassword());
+	}
+
+	/** Saves a snapshot of the data to a stream, without any protection.
+	 * <br>This method writes the data in xml. Subclasses may override it in order to use another format, this format
+	 * should then be recognized by directRead.
+	 * @param data The snapshot to save
+	 * @param out The outputStream (Note that this stream is not closed by this method).
+	 * @param report a progress report
+	 * @throws IOException if something goes wrong while writing
+	 * @see BinarySerializer
+	 */
+	protected void directWrite(DataSnapshot data, OutputStream out, ProgressReport report) throws IOException {
 		XMLSerializer xmlSerializer = new XMLSerializer(out);
-		xmlSerializer.serialize((GlobalData) data, report);
+		xmlSerializer.serialize(data, report);
 		xmlSerializer.closeDocument();
 	}
 	
@@ -88,7 +118,11 @@ public class Serializer extends AbstractSerializer<GlobalData> {
 	
  	@Override
 	public GlobalData directRead(String password, InputStream in, ProgressReport report) throws IOException {
-		GlobalData result = XMLSerializer.read(in, report);
+		if (!in.markSupported()) {
+			// The decrypted streams do not support mark/reset
+			in = new BufferedInputStream(in);
+		}
+		GlobalData result = BinarySerializer.isBinary(in) ? BinarySerializer.read(in, report) : XMLSerializer.read(in, report);
 		if (result!=null) {
 			result.setPassword(password);
 		}
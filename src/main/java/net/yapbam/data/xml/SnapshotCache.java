@@ -0,0 +1,375 @@
+package net.yapbam.data.xml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.AccessControlException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.DataSnapshot;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.ProgressReport;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+
+/** A binary copy of a data file, written next to it, that allows to reopen a large file quickly.
+ * <br>The data file remains the reference: The binary snapshot (the data file path followed by ".snapshot") contains the length
+ * and the checksum of the data file it was built from, and it is ignored if they don't match the data file.
+ * <br>The snapshot contains:<ul>
+ * <li>The xml serialization of everything but the transactions (accounts, categories, filters, periodical transactions).</li>
+ * <li>A table of all the strings used by the transactions.</li>
+ * <li>The transactions and the subtransactions, as fixed width records that refer to the strings table.</li>
+ * </ul>
+ * It is read in one block, then decoded without any parsing.
+ * The file is not memory mapped: A mapping can't be released explicitly and, on Windows, it would prevent the snapshot from being
+ * replaced by the next save.
+ * <br>The snapshot is only a cache: A snapshot that can't be written or decoded is deleted, and the data file is read instead.
+ * <br>As it is not encrypted, no snapshot is written for password protected data.
+ * <br>Typical use:<pre>
+ * SnapshotCache cache = new SnapshotCache(file);
+ * GlobalData data = cache.read(password, report); // Reads the snapshot, or reads the file and writes the snapshot
+ * ...
+ * serializer.write(snapshot, out, report); // Saves the data file
+ * cache.write(snapshot);</pre>
+ */
+public class SnapshotCache {
+	private static final String EXTENSION = ".snapshot"; //$NON-NLS-1$
+	private static final int MAGIC = 0x59534E31; // YSN1
+	private static final int HEADER_LENGTH = 4+8+8;
+	private static final int TRANSACTION_LENGTH = 11*4+8;
+	private static final int SUBTRANSACTION_LENGTH = 8+2*4;
+	private static final int NONE = -1;
+
+	private final File dataFile;
+	private final File file;
+
+	/** Constructor.
+	 * @param dataFile The data file. Its binary snapshot is stored in the same directory.
+	 */
+	public SnapshotCache(File dataFile) {
+		this.dataFile = dataFile;
+		this.file = new File(dataFile.getPath()+EXTENSION);
+	}
+
+	/** Gets the binary snapshot file.
+	 * @return a file (that may not exist)
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/** Reads the data.
+	 * <br>If the binary snapshot matches the data file, the data is read from it. If not, the data file is read and,
+	 * if it is not password protected, a new binary snapshot is written.
+	 * @param password The password of the data (null if the data is not password protected)
+	 * @param report A progress report to observe the progress, or null
+	 * @return The read data or null if reading was cancelled (using report.cancel()).
+	 * @throws IOException If something goes wrong while reading
+	 * @throws AccessControlException If the password is wrong
+	 * @throws UnsupportedFormatException If the format of the data file is not supported
+	 * @see Serializer#read(String, InputStream, ProgressReport)
+	 */
+	public GlobalData read(String password, ProgressReport report) throws IOException, AccessControlException {
+		FileChecksum checksum = FileChecksum.of(dataFile);
+		ByteBuffer buffer = load(checksum);
+		if (buffer!=null) {
+			try {
+				return read(buffer, password, report);
+			} catch (RuntimeException e) {
+				// The snapshot is corrupted (its checksum only guarantees it was built from the data file)
+				discard(e);
+			} catch (UnsupportedFormatException e) {
+				discard(e);
+			}
+		}
+		GlobalData data;
+		InputStream in = new BufferedInputStream(new FileInputStream(dataFile));
+		try {
+			data = new Serializer().read(password, in, report);
+		} finally {
+			in.close();
+		}
+		if ((data!=null) && (data.getPassword()==null)) {
+			try {
+				write(data.snapshot(), checksum);
+			} catch (IOException e) {
+				writeFailed(e);
+			}
+		}
+		return data;
+	}
+
+	/** Writes the binary snapshot of the data file.
+	 * <br>This method should be called after the data file was saved.
+	 * <br>A failure is not fatal, the data file is saved. It is logged, and the binary snapshot is deleted.
+	 * @param data The snapshot of the data saved in the data file. If it is password protected, the existing binary snapshot is deleted.
+	 * @return true if the binary snapshot was written, false if the data is password protected or if the snapshot can't be written.
+	 */
+	public boolean write(DataSnapshot data) {
+		try {
+			return write(data, FileChecksum.of(dataFile));
+		} catch (IOException e) {
+			return writeFailed(e);
+		}
+	}
+
+	private boolean writeFailed(IOException e) {
+		LoggerFactory.getLogger(getClass()).warn("Unable to write the binary snapshot", e); //$NON-NLS-1$
+		file.delete();
+		return false;
+	}
+
+	private void discard(Exception e) {
+		LoggerFactory.getLogger(getClass()).warn("Invalid binary snapshot, the data file is read instead", e); //$NON-NLS-1$
+		file.delete();
+	}
+
+	private boolean write(DataSnapshot data, FileChecksum checksum) throws IOException {
+		if (data.getPassword()!=null) {
+			file.delete();
+			return false;
+		}
+		StringTable strings = new StringTable();
+		ByteArrayOutputStream transactionBytes = new ByteArrayOutputStream(data.getTransactionsNumber()*TRANSACTION_LENGTH);
+		DataOutputStream transactions = new DataOutputStream(transactionBytes);
+		ByteArrayOutputStream subTransactionBytes = new ByteArrayOutputStream();
+		DataOutputStream subTransactions = new DataOutputStream(subTransactionBytes);
+		int nbSubTransactions = 0;
+		for (int i = 0; i < data.getTransactionsNumber(); i++) {
+			Transaction transaction = data.getTransaction(i);
+			transactions.writeInt(strings.getId(data.getName(transaction.getAccount())));
+			transactions.writeInt(transaction.getMode().equals(Mode.UNDEFINED) ? NONE : strings.getId(data.getName(transaction.getMode())));
+			transactions.writeInt(getId(strings, data, transaction.getCategory()));
+			transactions.writeInt(transaction.getDateAsInteger());
+			transactions.writeInt(transaction.getValueDateAsInteger());
+			transactions.writeDouble(transaction.getAmount());
+			transactions.writeInt(strings.getId(transaction.getNumber()));
+			transactions.writeInt(strings.getId(transaction.getDescription()));
+			transactions.writeInt(strings.getId(transaction.getComment()));
+			transactions.writeInt(strings.getId(transaction.getStatement()));
+			transactions.writeInt(nbSubTransactions);
+			transactions.writeInt(transaction.getSubTransactionSize());
+			for (int j = 0; j < transaction.getSubTransactionSize(); j++) {
+				SubTransaction subTransaction = transaction.getSubTransaction(j);
+				subTransactions.writeDouble(subTransaction.getAmount());
+				subTransactions.writeInt(strings.getId(subTransaction.getDescription()));
+				subTransactions.writeInt(getId(strings, data, subTransaction.getCategory()));
+				nbSubTransactions++;
+			}
+		}
+		ByteArrayOutputStream xml = new ByteArrayOutputStream();
+		XMLSerializer serializer = new XMLSerializer(xml, false);
+		serializer.serialize(data, false, null);
+		serializer.closeDocument();
+
+		// Write a temporary file, then rename it, in order to never have an incomplete snapshot
+		File tmpFile = File.createTempFile("yapbam", ".tmp", file.getAbsoluteFile().getParentFile()); //$NON-NLS-1$ //$NON-NLS-2$
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeLong(checksum.getLength());
+				out.writeLong(checksum.getValue());
+				out.writeInt(xml.size());
+				xml.writeTo(out);
+				out.writeInt(strings.list.size());
+				for (String string : strings.list) {
+					byte[] bytes = string.getBytes(XMLSerializer.UTF8);
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+				out.writeInt(data.getTransactionsNumber());
+				transactionBytes.writeTo(out);
+				out.writeInt(nbSubTransactions);
+				subTransactionBytes.writeTo(out);
+				// The trailing magic number allows to detect an incomplete file
+				out.writeInt(MAGIC);
+			} finally {
+				out.close();
+			}
+			if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+				throw new IOException("Unable to rename "+tmpFile+" to "+file); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		} finally {
+			tmpFile.delete();
+		}
+		return true;
+	}
+
+	private static int getId(StringTable strings, DataSnapshot data, Category category) {
+		return category.equals(Category.UNDEFINED) ? NONE : strings.getId(data.getName(category));
+	}
+
+	/** Loads the binary snapshot in memory.
+	 * <br>The file is closed when this method returns.
+	 * @param checksum The checksum of the data file
+	 * @return a buffer positioned after the header, or null if there's no valid snapshot of the data file.
+	 * @throws IOException if the snapshot can't be read
+	 */
+	private ByteBuffer load(FileChecksum checksum) throws IOException {
+		long length = file.length();
+		if (!file.isFile() || (length<HEADER_LENGTH+4) || (length>Integer.MAX_VALUE)) {
+			return null;
+		}
+		byte[] bytes = new byte[(int) length];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(bytes);
+		} finally {
+			in.close();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if ((buffer.getInt()!=MAGIC) || !checksum.equals(new FileChecksum(buffer.getLong(), buffer.getLong()))
+				|| (buffer.getInt(buffer.limit()-4)!=MAGIC)) {
+			return null;
+		}
+		return buffer;
+	}
+
+	private static GlobalData read(ByteBuffer buffer, String password, ProgressReport report) throws IOException {
+		byte[] xml = new byte[getCount(buffer, 1)];
+		buffer.get(xml);
+		GlobalData data = XMLSerializer.read(new ByteArrayInputStream(xml), null);
+		String[] strings = new String[getCount(buffer, 4)];
+		byte[] bytes = new byte[0];
+		for (int i = 0; i < strings.length; i++) {
+			int length = buffer.getInt();
+			if (length>bytes.length) {
+				bytes = new byte[Math.max(length, 2*bytes.length)];
+			}
+			buffer.get(bytes, 0, length);
+			strings[i] = new String(bytes, 0, length, XMLSerializer.UTF8);
+		}
+		int nbTransactions = getCount(buffer, TRANSACTION_LENGTH);
+		int transactionsPosition = buffer.position();
+		// Skip the transactions and the number of subtransactions
+		int subTransactionsPosition = transactionsPosition+nbTransactions*TRANSACTION_LENGTH+4;
+		if (report!=null) {
+			report.setMax(nbTransactions);
+		}
+		// The accounts and categories are searched once per string
+		Account[] accounts = new Account[strings.length];
+		Category[] categories = new Category[strings.length];
+		Transaction[] transactions = new Transaction[nbTransactions];
+		for (int i = 0; i < nbTransactions; i++) {
+			int position = transactionsPosition+i*TRANSACTION_LENGTH;
+			Account account = getAccount(data, accounts, strings, buffer.getInt(position));
+			int modeId = buffer.getInt(position+4);
+			Mode mode = modeId==NONE ? Mode.UNDEFINED : account.getMode(strings[modeId]);
+			if (mode==null) {
+				throw new UnsupportedFormatException("Unknown mode in snapshot"); //$NON-NLS-1$
+			}
+			Category category = getCategory(data, categories, strings, buffer.getInt(position+8));
+			int date = buffer.getInt(position+12);
+			int valueDate = buffer.getInt(position+16);
+			double amount = buffer.getDouble(position+20);
+			String number = getString(strings, buffer.getInt(position+28));
+			String description = getString(strings, buffer.getInt(position+32));
+			String comment = getString(strings, buffer.getInt(position+36));
+			String statement = getString(strings, buffer.getInt(position+40));
+			int firstSubTransaction = buffer.getInt(position+44);
+			int nbSubTransactions = buffer.getInt(position+48);
+			List<SubTransaction> subTransactions = null;
+			if (nbSubTransactions>0) {
+				subTransactions = new ArrayList<SubTransaction>(nbSubTransactions);
+				for (int j = 0; j < nbSubTransactions; j++) {
+					int subPosition = subTransactionsPosition+(firstSubTransaction+j)*SUBTRANSACTION_LENGTH;
+					subTransactions.add(new SubTransaction(buffer.getDouble(subPosition), getString(strings, buffer.getInt(subPosition+8)),
+							getCategory(data, categories, strings, buffer.getInt(subPosition+12))));
+				}
+			}
+			transactions[i] = new Transaction(date, number, description, comment, amount, account, mode, category, valueDate, statement, subTransactions);
+			if (report!=null) {
+				if (report.isCancelled()) {
+					return null;
+				}
+				report.reportProgress(i+1);
+			}
+		}
+		data.add(transactions);
+		data.setPassword(password);
+		return data;
+	}
+
+	/** Reads the number of elements of a section of the snapshot.
+	 * <br>The number is checked before anything is allocated, a corrupted snapshot should not exhaust the memory.
+	 * @param buffer The snapshot
+	 * @param elementLength The minimum length of an element
+	 * @return The number of elements
+	 * @throws UnsupportedFormatException if the remaining bytes can't contain this number of elements.
+	 */
+	private static int getCount(ByteBuffer buffer, int elementLength) throws UnsupportedFormatException {
+		int count = buffer.getInt();
+		if ((count<0) || (count>buffer.remaining()/elementLength)) {
+			throw new UnsupportedFormatException("Invalid snapshot"); //$NON-NLS-1$
+		}
+		return count;
+	}
+
+	private static String getString(String[] strings, int id) {
+		return id==NONE ? null : strings[id];
+	}
+
+	private static Account getAccount(GlobalData data, Account[] accounts, String[] strings, int id) throws IOException {
+		if (accounts[id]==null) {
+			accounts[id] = data.getAccount(strings[id]);
+			if (accounts[id]==null) {
+				throw new UnsupportedFormatException("Unknown account in snapshot"); //$NON-NLS-1$
+			}
+		}
+		return accounts[id];
+	}
+
+	private static Category getCategory(GlobalData data, Category[] categories, String[] strings, int id) throws IOException {
+		if (id==NONE) {
+			return Category.UNDEFINED;
+		}
+		if (categories[id]==null) {
+			categories[id] = data.getCategory(strings[id]);
+			if (categories[id]==null) {
+				throw new UnsupportedFormatException("Unknown category in snapshot"); //$NON-NLS-1$
+			}
+		}
+		return categories[id];
+	}
+
+	/** A table of distinct strings. */
+	private static final class StringTable {
+		private final Map<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<String> list = new ArrayList<String>();
+
+		/** Gets the id of a string, adding it to the table if needed.
+		 * @param string a string or null
+		 * @return the string's id, or NONE if the string is null
+		 */
+		int getId(String string) {
+			if (string==null) {
+				return NONE;
+			}
+			Integer id = ids.get(string);
+			if (id==null) {
+				id = list.size();
+				list.add(string);
+				ids.put(string, id);
+			}
+			return id;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package net.yapbam.data.xml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+
+import org.xml.sax.Attributes;
+
+/** Builds the transactions of a file being read.
+ * <br>The parsing thread only copies the attributes of the transactions into batches. The batches are then built (amounts and
+ * dates parsing, accounts, modes and categories resolution, subtransactions creation) by a pool of worker threads,
+ * and merged in the document order.
+ * <br>The Transaction instances are created by the merge, in the parsing thread: A transaction gets its id when it is
+ * created and GlobalData sorts the transactions by id, so ids have to follow the document order.
+ * <br>The workers read the data being loaded (accounts, categories, etc...), so flush has to be called before it is modified.
+ */
+final class TransactionsBuilder {
+	private static final int BATCH_SIZE = 512;
+	// The subtransactions are stored with 3 attributes (amount, description and category)
+	private static final int SUB_ATTRIBUTES = 3;
+
+	private final GlobalData data;
+	private final Map<String, String> strings;
+	private final int nbWorkers;
+	private ExecutorService executor;
+	// The batches being built by the workers, in the document order
+	private final LinkedList<Future<Batch>> pending;
+	// The batches that can be reused
+	private final List<Batch> free;
+	private Batch current;
+	private int nbBatches;
+	private final ArrayList<Transaction> transactions;
+
+	/** A batch of transactions.
+	 * <br>Its arrays are reused for the next batches, only the transactions and their subtransactions lists are allocated.
+	 */
+	private final class Batch implements Callable<Batch> {
+		private final PartialTransaction[] partials = new PartialTransaction[BATCH_SIZE];
+		private int size;
+		// The attributes of the subtransactions of the batch
+		private String[] subAttributes = new String[SUB_ATTRIBUTES*BATCH_SIZE];
+		private int subSize;
+		// For each transaction, the index of its first subtransaction attribute in subAttributes
+		private final int[] subStarts = new int[BATCH_SIZE];
+
+		boolean isFull() {
+			return size==BATCH_SIZE;
+		}
+
+		boolean isEmpty() {
+			return size==0;
+		}
+
+		void add(Attributes attributes) {
+			if (partials[size]==null) {
+				partials[size] = new PartialTransaction();
+			}
+			partials[size].setAttributes(attributes);
+			subStarts[size] = subSize;
+			size++;
+		}
+
+		void addSubTransaction(Attributes attributes) {
+			if (subSize==subAttributes.length) {
+				subAttributes = Arrays.copyOf(subAttributes, 2*subSize);
+			}
+			subAttributes[subSize++] = attributes.getValue(XMLSerializer.AMOUNT_ATTRIBUTE);
+			subAttributes[subSize++] = attributes.getValue(XMLSerializer.DESCRIPTION_ATTRIBUTE);
+			subAttributes[subSize++] = attributes.getValue(XMLSerializer.CATEGORY_ATTRIBUTE);
+		}
+
+		@Override
+		public Batch call() {
+			for (int i = 0; i < size; i++) {
+				PartialTransaction partial = partials[i];
+				partial.resolveTransaction(data, strings);
+				int end = i+1<size ? subStarts[i+1] : subSize;
+				List<SubTransaction> subTransactions = null;
+				if (end>subStarts[i]) {
+					subTransactions = new ArrayList<SubTransaction>((end-subStarts[i])/SUB_ATTRIBUTES);
+					for (int j = subStarts[i]; j < end; j+=SUB_ATTRIBUTES) {
+						subTransactions.add(PartialTransaction.toSubTransaction(data, strings, subAttributes[j], subAttributes[j+1], subAttributes[j+2]));
+					}
+				}
+				partial.subTransactions = subTransactions;
+			}
+			return this;
+		}
+
+		void addTo(List<Transaction> result) {
+			for (int i = 0; i < size; i++) {
+				result.add(partials[i].toTransaction());
+				partials[i].subTransactions = null;
+			}
+			size = 0;
+			Arrays.fill(subAttributes, 0, subSize, null);
+			subSize = 0;
+		}
+	}
+
+	/** Constructor.
+	 * @param data The data being loaded
+	 * @param strings The load scoped dictionary used to share equal strings between transactions. It should be thread safe.
+	 * @param nbWorkers The number of worker threads (0 to build the transactions in the calling thread).
+	 * <br>The workers are started only if the file contains more than one batch of transactions.
+	 */
+	TransactionsBuilder(GlobalData data, Map<String, String> strings, int nbWorkers) {
+		this.data = data;
+		this.strings = strings;
+		this.nbWorkers = nbWorkers;
+		this.pending = new LinkedList<Future<Batch>>();
+		this.free = new ArrayList<Batch>();
+		this.current = new Batch();
+		this.transactions = new ArrayList<Transaction>();
+	}
+
+	/** Prevents the transactions list from growing (and copying itself) while it is filled.
+	 * @param capacity The expected number of transactions
+	 */
+	void ensureCapacity(int capacity) {
+		transactions.ensureCapacity(capacity);
+	}
+
+	/** Adds a transaction.
+	 * @param attributes The transaction's attributes
+	 */
+	void add(Attributes attributes) {
+		if (current.isFull()) {
+			submit();
+		}
+		current.add(attributes);
+	}
+
+	/** Adds a subtransaction to the last added transaction.
+	 * @param attributes The subtransaction's attributes
+	 */
+	void addSubTransaction(Attributes attributes) {
+		current.addSubTransaction(attributes);
+	}
+
+	/** Builds all the transactions added until now.
+	 * <br>When this method returns, no worker is reading the data.
+	 */
+	void flush() {
+		submit();
+		while (!pending.isEmpty()) {
+			merge();
+		}
+	}
+
+	/** Gets all the transactions.
+	 * @return The transactions in the document order
+	 */
+	Transaction[] getTransactions() {
+		flush();
+		return transactions.toArray(new Transaction[transactions.size()]);
+	}
+
+	/** Stops the workers.
+	 * <br>This method should always be called, even if the read fails or is cancelled.
+	 */
+	void close() {
+		if (executor!=null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private void submit() {
+		if (current.isEmpty()) {
+			return;
+		}
+		Batch batch = current;
+		current = free.isEmpty() ? new Batch() : free.remove(free.size()-1);
+		if ((nbWorkers==0) || (nbBatches++==0)) {
+			// The first batch is built by this thread: There's no need to start threads for a small file
+			batch.call();
+			batch.addTo(transactions);
+			free.add(batch);
+		} else {
+			if (executor==null) {
+				executor = Executors.newFixedThreadPool(nbWorkers, new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Transactions builder"); //$NON-NLS-1$
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			pending.add(executor.submit(batch));
+			// Merge the batches that are already built. If too many batches are waiting, wait for the oldest one
+			// (that prevents the parsing thread from filling the memory with batches when the workers are slower).
+			while (!pending.isEmpty() && (pending.getFirst().isDone() || (pending.size()>2*nbWorkers))) {
+				merge();
+			}
+		}
+	}
+
+	private void merge() {
+		Batch batch;
+		try {
+			batch = pending.removeFirst().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+		batch.addTo(transactions);
+		free.add(batch);
+	}
+}
@@ -6,7 +6,6 @@ import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Date;
 import java.util.List;
-import java.util.StringTokenizer;
 
 import net.yapbam.data.*;
 import net.yapbam.date.helpers.DateStepper;
@@ -18,14 +17,10 @@ import net.yapbam.util.DateUtils;
 import net.yapbam.util.TextMatcher;
 
 import org.xml.sax.*;
-import org.xml.sax.helpers.*;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParserFactory;
-import javax.xml.transform.*;
-import javax.xml.transform.stream.*;
-import javax.xml.transform.sax.*;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
@@ -39,10 +34,19 @@ public class XMLSerializer {
 	// Successfully read data and try it with validation. If it fails, silently post a message to a web server. 
 	static boolean SCHEMA_VALIDATION = Boolean.getBoolean("xml.schema.validation"); //$NON-NLS-1$
 	private static final boolean SLOW_WRITING = Boolean.getBoolean("slowDataWriting"); //$NON-NLS-1$
+	// The number of threads that build the transactions while a file is parsed (0 to build them in the parsing thread)
+	private static final int READ_WORKERS = Math.max(0, Integer.getInteger("xml.read.workers", Runtime.getRuntime().availableProcessors()-1)); //$NON-NLS-1$
 
 	private static final String EMPTY = ""; //$NON-NLS-1$
-	private static final String CDATA = "CDATA"; //$NON-NLS-1$
 	private static final String DATE_DELIM = "/"; //$NON-NLS-1$
+	// The powers of ten that are exactly represented by a double
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1.0;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+		}
+	}
 	private static final String TRUE = "true"; //$NON-NLS-1$
 	
 	/** The current Yapbam file format definition version.
@@ -125,8 +129,9 @@ public class XMLSerializer {
 	static final String DIACRITICAL_SENSITIVE_ATTRIBUTE = "diacriticalSensitive"; //$NON-NLS-1$
 	static final String CASE_SENSITIVE_ATTRIBUTE = "caseSensitive"; //$NON-NLS-1$
 
-	private AttributesImpl atts;
-	private TransformerHandler hd; 
+	private final XMLWriter writer;
+	// The snapshot being serialized (null when serializing a filter outside of a snapshot)
+	private DataSnapshot snapshot;
 	
 	/** Creates a new XML Serializer.
 	 * <br>The serializer outputs the xml header. After all elements are output, you should call closedocument in order
@@ -136,29 +141,29 @@ public class XMLSerializer {
 	 * @see #closeDocument()
 	 */
 	public XMLSerializer (OutputStream os) throws IOException {
-		try {
-			StreamResult streamResult = new StreamResult(os);
-			SAXTransformerFactory tf = (SAXTransformerFactory) SAXTransformerFactory.newInstance();
-			hd = tf.newTransformerHandler();
-			Transformer serializer = hd.getTransformer();
-			serializer.setOutputProperty(OutputKeys.ENCODING, UTF8);
-			serializer.setOutputProperty(OutputKeys.INDENT,"yes"); //$NON-NLS-1$
-			hd.setResult(streamResult);
-			this.atts = new AttributesImpl();
-			hd.startDocument();
-		} catch (TransformerConfigurationException e) {
-			throw new IOException(e);
-		} catch (SAXException e) {
-			throw new IOException(e);
-		}
+		this(os, true);
 	}
 	
+	/** Creates a new XML Serializer.
+	 * <br>The serializer outputs the xml header. After all elements are output, you should call closedocument in order
+	 * to close the xml document
+	 * @param os The output stream on which to write the xml document. The serializer buffers its output, so there's no
+	 * need to use a buffered stream.
+	 * @param indent true to start each element on a new line, false to have the most compact document.
+	 * @throws IOException if something wrong happens
+	 * @see #closeDocument()
+	 */
+	public XMLSerializer (OutputStream os, boolean indent) throws IOException {
+		this.writer = new XMLWriter(os, indent);
+		this.writer.startDocument();
+	}
+	
+	/** Closes the xml document.
+	 * <br>The document is not complete (and may not be written to the stream) until this method is called.
+	 * @throws IOException if something wrong happens
+	 */
 	public void closeDocument() throws IOException {
-		try {
-			hd.endDocument();
-		} catch (SAXException e) {
-			throw new IOException(e);
-		}
+		writer.endDocument();
 	}
 	
 	/** Reads global data.
@@ -169,7 +174,20 @@ public class XMLSerializer {
 	 * @throws UnsupportedFormatException If the format of data in the input stream is not supported
 	 */
 	public static GlobalData read(InputStream in, ProgressReport report) throws IOException {
-		GlobalDataHandler dh = new GlobalDataHandler(SCHEMA_VALIDATION, report);
+		return read(in, report, READ_WORKERS);
+	}
+
+	/** Reads global data with a given number of worker threads.
+	 * @param in The input stream containing the data
+	 * @param report A progress report to observe the progress, or null
+	 * @param nbWorkers The number of threads that build the transactions while the data is parsed (0 to build them in the calling thread)
+	 * @return The read data, null if reading was cancelled.
+	 * @throws IOException If something goes wrong while reading
+	 * @throws UnsupportedFormatException If the format of data in the input stream is not supported
+	 * @see #read(InputStream, ProgressReport)
+	 */
+	static GlobalData read(InputStream in, ProgressReport report, int nbWorkers) throws IOException {
+		GlobalDataHandler dh = new GlobalDataHandler(SCHEMA_VALIDATION, report, nbWorkers);
 		try {
 			SAXParserFactory saxFactory = SAXParserFactory.newInstance();
 			if (SCHEMA_VALIDATION) {
@@ -197,26 +215,51 @@ public class XMLSerializer {
 			throw new RuntimeException(e);
 		} catch (SAXException e) {
 			throw new RuntimeException(e);
+		} finally {
+			dh.close();
 		}
 		return dh.getData();
 	}
 
 	public void serialize (GlobalData data, ProgressReport report) throws IOException {
+		serialize(data.snapshot(), report);
+	}
+
+	/** Serializes a snapshot of the data.
+	 * <br>As a snapshot is immutable, this method can be called by any thread, while the data is modified.
+	 * @param data The snapshot to serialize
+	 * @param report A progress report to observe the progress, or null
+	 * @throws IOException if something goes wrong while writing
+	 * @see GlobalData#snapshot()
+	 */
+	public void serialize (DataSnapshot data, ProgressReport report) throws IOException {
+		serialize(data, true, report);
+	}
+
+	/** Serializes a snapshot of the data, with or without its transactions.
+	 * @param data The snapshot to serialize
+	 * @param withTransactions false to serialize everything but the transactions
+	 * @param report A progress report to observe the progress, or null
+	 * @throws IOException if something goes wrong while writing
+	 * @see SnapshotCache
+	 */
+	void serialize (DataSnapshot data, boolean withTransactions, ProgressReport report) throws IOException {
+		int nbTransactions = withTransactions ? data.getTransactionsNumber() : 0;
+		this.snapshot = data;
 		try {
-			atts.clear();
-			atts.addAttribute(EMPTY, EMPTY, VERSION_ATTRIBUTE, CDATA, Integer.toString(CURRENT_VERSION)); //$NON-NLS-1$
-			atts.addAttribute(EMPTY, EMPTY, "nbAccounts", CDATA, Integer.toString(data.getAccountsNumber())); //$NON-NLS-1$
-			atts.addAttribute(EMPTY, EMPTY, "nbCategories", CDATA, Integer.toString(data.getCategoriesNumber())); //$NON-NLS-1$
-			atts.addAttribute(EMPTY, EMPTY, SUBCATEGORY_SEPARATOR_ATTRIBUTE, CDATA, Character.toString(data.getSubCategorySeparator())); //$NON-NLS-1$
-			atts.addAttribute(EMPTY, EMPTY, "nbPeriodicalTransactions", CDATA, Integer.toString(data.getPeriodicalTransactionsNumber())); //$NON-NLS-1$
-			atts.addAttribute(EMPTY, EMPTY, NB_TRANSACTIONS_ATTRIBUTE, CDATA, Integer.toString(data.getTransactionsNumber()));
+			writer.startElement(GLOBAL_DATA_TAG);
+			writer.attribute(VERSION_ATTRIBUTE, CURRENT_VERSION);
+			writer.attribute("nbAccounts", data.getAccountsNumber()); //$NON-NLS-1$
+			writer.attribute("nbCategories", data.getCategoriesNumber()); //$NON-NLS-1$
+			writer.attribute(SUBCATEGORY_SEPARATOR_ATTRIBUTE, Character.toString(data.getSubCategorySeparator()));
+			writer.attribute("nbPeriodicalTransactions", data.getPeriodicalTransactionsNumber()); //$NON-NLS-1$
+			writer.attribute(NB_TRANSACTIONS_ATTRIBUTE, nbTransactions);
 			if (data.isLocked()) {
-				atts.addAttribute(EMPTY, EMPTY, LOCKED_ATTRIBUTE, CDATA, Boolean.toString(true));
+				writer.attribute(LOCKED_ATTRIBUTE, TRUE);
 			}
 			if (data.isArchive()) {
-				atts.addAttribute(EMPTY, EMPTY, ARCHIVE_ATTRIBUTE, CDATA, Boolean.toString(true));
+				writer.attribute(ARCHIVE_ATTRIBUTE, TRUE);
 			}
-			hd.startElement(EMPTY,EMPTY,GLOBAL_DATA_TAG,atts);
 			
 			// Accounts.
 			for (int i=0;i<data.getAccountsNumber();i++) {
@@ -228,17 +271,17 @@ public class XMLSerializer {
 			}
 			// Filters
 			for (int i=0;i<data.getFiltersNumber();i++) {
-				serialize(data.getFilter(i));
+				serializeFilter(data.getFilter(i));
 			}
 			// Periodical transactions
 			for (int i = 0; i < data.getPeriodicalTransactionsNumber(); i++) {
 				serialize(data.getPeriodicalTransaction(i));
 			}
 			if (report!=null) {
-				report.setMax(data.getTransactionsNumber());
+				report.setMax(nbTransactions);
 			}
 			//Transactions
-			for (int i=0;i<data.getTransactionsNumber();i++) {
+			for (int i=0;i<nbTransactions;i++) {
 				if (SLOW_WRITING) {
 					try {
 						Thread.sleep(1);
@@ -252,54 +295,78 @@ public class XMLSerializer {
 					report.reportProgress(i+1);
 				}
 			}
-			hd.endElement(EMPTY,EMPTY,GLOBAL_DATA_TAG);
-		} catch (SAXException e) {
-			throw new IOException(e);
+			writer.endElement(GLOBAL_DATA_TAG);
+		} finally {
+			this.snapshot = null;
 		}
 	}
+
+	private String getName(Account account) {
+		return snapshot==null?account.getName():snapshot.getName(account);
+	}
+
+	private String getName(Mode mode) {
+		return snapshot==null?mode.getName():snapshot.getName(mode);
+	}
+
+	private String getName(Category category) {
+		return snapshot==null?category.getName():snapshot.getName(category);
+	}
 	
+	/** Serializes a filter.
+	 * @param filter The filter to serialize
+	 * @throws SAXException if something goes wrong while writing
+	 */
 	public void serialize(Filter filter) throws SAXException {
-		atts.clear();
+		try {
+			serializeFilter(filter);
+		} catch (IOException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	private void serializeFilter(Filter filter) throws IOException {
+		writer.startElement(FILTER_TAG);
 		if (filter.getName()!=null) {
-			atts.addAttribute(EMPTY,EMPTY,ID_ATTRIBUTE,CDATA,filter.getName());
+			writer.attribute(ID_ATTRIBUTE, filter.getName());
 		}
 		if (filter.getDateFrom()!=null) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_DATE_FROM_ATTRIBUTE,CDATA,toString(filter.getDateFrom()));
+			writer.dateAttribute(FILTER_DATE_FROM_ATTRIBUTE, DateUtils.dateToInteger(filter.getDateFrom()));
 		}
 		if (filter.getDateTo()!=null) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_DATE_TO_ATTRIBUTE,CDATA,toString(filter.getDateTo()));
+			writer.dateAttribute(FILTER_DATE_TO_ATTRIBUTE, DateUtils.dateToInteger(filter.getDateTo()));
 		}
 		if (filter.getValueDateTo()!=null) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_VALUE_DATE_TO_ATTRIBUTE,CDATA,toString(filter.getValueDateTo()));
+			writer.dateAttribute(FILTER_VALUE_DATE_TO_ATTRIBUTE, DateUtils.dateToInteger(filter.getValueDateTo()));
 		}
 		if (filter.getValueDateFrom()!=null) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_VALUE_DATE_FROM_ATTRIBUTE,CDATA,toString(filter.getValueDateFrom()));
+			writer.dateAttribute(FILTER_VALUE_DATE_FROM_ATTRIBUTE, DateUtils.dateToInteger(filter.getValueDateFrom()));
 		}
 		if (filter.getMinAmount()!=0.0) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_AMOUNT_FROM_ATTRIBUTE,CDATA,Double.toString(filter.getMinAmount()));
+			writer.attribute(FILTER_AMOUNT_FROM_ATTRIBUTE, filter.getMinAmount());
 		}
 		if (filter.getMaxAmount()!=Double.POSITIVE_INFINITY) {
-			atts.addAttribute(EMPTY,EMPTY,FILTER_AMOUNT_TO_ATTRIBUTE,CDATA,Double.toString(filter.getMaxAmount()));
+			writer.attribute(FILTER_AMOUNT_TO_ATTRIBUTE, filter.getMaxAmount());
 		}
 		List<Account> accounts = filter.getValidAccounts();
 		if (accounts!=null) {
 			String[] strings = new String[accounts.size()];
 			for (int i = 0; i < strings.length; i++) {
-				strings[i] = accounts.get(i).getName();
+				strings[i] = getName(accounts.get(i));
 			}
-			atts.addAttribute(EMPTY, EMPTY, ACCOUNT_ATTRIBUTE, CDATA, ArrayUtils.toString(strings));
+			writer.attribute(ACCOUNT_ATTRIBUTE, ArrayUtils.toString(strings));
 		}
 		List<String> modes = filter.getValidModes();
 		if (modes!=null) {
-			atts.addAttribute(EMPTY, EMPTY, MODE_ATTRIBUTE, CDATA, ArrayUtils.toString(modes.toArray(new String[modes.size()])));
+			writer.attribute(MODE_ATTRIBUTE, ArrayUtils.toString(modes.toArray(new String[modes.size()])));
 		}
 		List<Category> categories = filter.getValidCategories();
 		if (categories!=null) {
 			String[] strings = new String[categories.size()];
 			for (int i = 0; i < strings.length; i++) {
-				strings[i] = categories.get(i).equals(Category.UNDEFINED)?EMPTY:categories.get(i).getName();
+				strings[i] = categories.get(i).equals(Category.UNDEFINED)?EMPTY:getName(categories.get(i));
 			}
-			atts.addAttribute(EMPTY, EMPTY, CATEGORY_ATTRIBUTE, CDATA, ArrayUtils.toString(strings));
+			writer.attribute(CATEGORY_ATTRIBUTE, ArrayUtils.toString(strings));
 		}
 		int mask = 0;
 		if (filter.isOk(Filter.RECEIPTS)) {
@@ -315,9 +382,8 @@ public class XMLSerializer {
 			mask += Filter.NOT_CHECKED;
 		}
 		if (mask!=(Filter.ALL)) {
-			atts.addAttribute(EMPTY, EMPTY, FILTER_ATTRIBUTE, CDATA, Integer.toString(mask));
+			writer.attribute(FILTER_ATTRIBUTE, mask);
 		}
-		hd.startElement(EMPTY, EMPTY, FILTER_TAG, atts);
 		if (filter.getDescriptionMatcher()!=null) {
 			serialize(filter.getDescriptionMatcher(), FILTER_DESCRIPTION_ID);
 		}
@@ -330,12 +396,12 @@ public class XMLSerializer {
 		if (filter.getStatementMatcher()!=null) {
 			serialize(filter.getStatementMatcher(), FILTER_STATEMENT_ID);
 		}
-		hd.endElement(EMPTY,EMPTY,FILTER_TAG);
+		writer.endElement(FILTER_TAG);
 	}
 
-	private void serialize(TextMatcher matcher, String id) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY, EMPTY, ID_ATTRIBUTE, CDATA, id);
+	private void serialize(TextMatcher matcher, String id) throws IOException {
+		writer.startElement(TEXT_MATCHER_TAG);
+		writer.attribute(ID_ATTRIBUTE, id);
 		String kind = null;
 		if (matcher.getKind().equals(TextMatcher.Kind.CONTAINS)) {
 			kind = CONTAINS;
@@ -346,16 +412,15 @@ public class XMLSerializer {
 		} else {
 			throw new IllegalArgumentException();
 		}
-		atts.addAttribute(EMPTY, EMPTY, KIND_ATTRIBUTE, CDATA, kind);
-		atts.addAttribute(EMPTY, EMPTY, FILTER_ATTRIBUTE, CDATA, encode(matcher.getFilter()));
+		writer.attribute(KIND_ATTRIBUTE, kind);
+		writer.attribute(FILTER_ATTRIBUTE, encode(matcher.getFilter()));
 		if (matcher.isCaseSensitive()) {
-			atts.addAttribute(EMPTY, EMPTY, CASE_SENSITIVE_ATTRIBUTE, CDATA, TRUE);
+			writer.attribute(CASE_SENSITIVE_ATTRIBUTE, TRUE);
 		}
 		if (matcher.isDiacriticalSensitive()) {
-			atts.addAttribute(EMPTY, EMPTY, DIACRITICAL_SENSITIVE_ATTRIBUTE, CDATA, TRUE);
+			writer.attribute(DIACRITICAL_SENSITIVE_ATTRIBUTE, TRUE);
 		}
-		hd.startElement(EMPTY,EMPTY,TEXT_MATCHER_TAG, atts);
-		hd.endElement(EMPTY,EMPTY,TEXT_MATCHER_TAG);
+		writer.endElement(TEXT_MATCHER_TAG);
 	}
 	
 	static String encode(String string) {
@@ -370,7 +435,8 @@ public class XMLSerializer {
 	}
 	
 	static String decode(String string) {
-		if (string==null) {
+		if ((string==null) || ((string.indexOf('%')<0) && (string.indexOf('+')<0))) {
+			// Nothing to decode, URLDecoder would return an equal string
 			return string;
 		}
 		try {
@@ -380,25 +446,21 @@ public class XMLSerializer {
 		}
 	}
 
-	private void serialize(Account account) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY,EMPTY,ID_ATTRIBUTE,CDATA,account.getName());
-		atts.addAttribute(EMPTY,EMPTY,INITIAL_BALANCE_ATTRIBUTE,CDATA,Double.toString(account.getInitialBalance()));
+	private void serialize(Account account) throws IOException {
+		writer.startElement(ACCOUNT_TAG);
+		writer.attribute(ID_ATTRIBUTE, account.getName());
+		writer.attribute(INITIAL_BALANCE_ATTRIBUTE, account.getInitialBalance());
 		AlertThreshold alertThreshold = account.getAlertThreshold();
 		if (!alertThreshold.equals(AlertThreshold.DEFAULT)) {
-			atts.addAttribute(EMPTY, EMPTY, ALERT_THRESHOLD_LESS, CDATA, Double.toString(alertThreshold.getLessThreshold()));
-			atts.addAttribute(EMPTY, EMPTY, ALERT_THRESHOLD_MORE, CDATA, Double.toString(alertThreshold.getMoreThreshold()));
+			writer.attribute(ALERT_THRESHOLD_LESS, alertThreshold.getLessThreshold());
+			writer.attribute(ALERT_THRESHOLD_MORE, alertThreshold.getMoreThreshold());
 		}
 		if (account.getCheckNumberAlertThreshold()>=0) {
-			atts.addAttribute(EMPTY, EMPTY, CHECK_NUMBER_ALERT_THRESHOLD, CDATA, Integer.toString(account.getCheckNumberAlertThreshold()));
+			writer.attribute(CHECK_NUMBER_ALERT_THRESHOLD, account.getCheckNumberAlertThreshold());
 		}
-		
-		hd.startElement(EMPTY,EMPTY,ACCOUNT_TAG,atts);
 		String comment = account.getComment();
 		if (comment!=null) {
-			hd.startCDATA();
-			hd.characters(comment.toCharArray(), 0, comment.length());
-			hd.endCDATA();
+			writer.cdata(comment);
 		}
 		for (int i = 0; i < account.getModesNumber(); i++) {
 			Mode mode = account.getMode(i);
@@ -409,153 +471,147 @@ public class XMLSerializer {
 		for (int i = 0; i < account.getCheckbooksNumber(); i++) {
 			serialize(account.getCheckbook(i));
 		}
-		hd.endElement(EMPTY,EMPTY,ACCOUNT_TAG);
+		writer.endElement(ACCOUNT_TAG);
 	}
 	
 	/** Serialize a mode.
 	 * @param mode The mode to serialize.
-	 * @throws SAXException
+	 * @throws IOException
 	 * @throws IllegalArgumentException if mode is Mode.UNDEFINED
 	 */
-	private void serialize(Mode mode) throws SAXException {
+	private void serialize(Mode mode) throws IOException {
 		if (mode.equals(Mode.UNDEFINED)) {
 			throw new IllegalArgumentException();
 		}
-		atts.clear();
-		atts.addAttribute(EMPTY,EMPTY,ID_ATTRIBUTE,CDATA,mode.getName());
+		writer.startElement(MODE_TAG);
+		writer.attribute(ID_ATTRIBUTE, mode.getName());
 		if (mode.isUseCheckBook()) {
-			atts.addAttribute(EMPTY, EMPTY, CHECKBOOK_ATTRIBUTE, CDATA, TRUE);
+			writer.attribute(CHECKBOOK_ATTRIBUTE, TRUE);
 		}
-		hd.startElement(EMPTY,EMPTY,MODE_TAG,atts);
 		DateStepper expense = mode.getExpenseVdc();
 		if (expense!=null) {
-			setAttributes(expense);
-			hd.startElement(EMPTY, EMPTY, EXPENSE_VDC_TAG, atts);
-			hd.endElement(EMPTY, EMPTY, EXPENSE_VDC_TAG);
+			serialize(EXPENSE_VDC_TAG, expense);
 		}
 		DateStepper receipt = mode.getReceiptVdc();
 		if (receipt!=null) {
-			setAttributes(receipt);
-			hd.startElement(EMPTY, EMPTY, RECEIPT_VDC_TAG, atts);
-			hd.endElement(EMPTY, EMPTY, RECEIPT_VDC_TAG);
+			serialize(RECEIPT_VDC_TAG, receipt);
 		}
-		hd.endElement(EMPTY,EMPTY,MODE_TAG);
+		writer.endElement(MODE_TAG);
 	}
 
-	private void serialize(Checkbook book) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY,EMPTY,PREFIX_ATTRIBUTE,CDATA,book.getPrefix());
-		atts.addAttribute(EMPTY,EMPTY,FIRST_NUMBER_ATTRIBUTE,CDATA,book.getFirst().toString());
-		atts.addAttribute(EMPTY,EMPTY,SIZE_ATTRIBUTE,CDATA,Integer.toString(book.size()));
+	private void serialize(Checkbook book) throws IOException {
+		writer.startElement(CHECKBOOK_TAG);
+		writer.attribute(PREFIX_ATTRIBUTE, book.getPrefix());
+		writer.attribute(FIRST_NUMBER_ATTRIBUTE, book.getFirst().toString());
+		writer.attribute(SIZE_ATTRIBUTE, book.size());
 		if (!book.isEmpty()) {
-			atts.addAttribute(EMPTY, EMPTY, NEXT_NUMBER_ATTRIBUTE, CDATA, book.getFirst().add(BigInteger.valueOf(book.getUsed())).toString());
+			writer.attribute(NEXT_NUMBER_ATTRIBUTE, book.getFirst().add(BigInteger.valueOf(book.getUsed())).toString());
 		}
-		hd.startElement(EMPTY,EMPTY,CHECKBOOK_TAG,atts);
-		hd.endElement(EMPTY,EMPTY,CHECKBOOK_TAG);
+		writer.endElement(CHECKBOOK_TAG);
 	}
 
-	private void setAttributes(DateStepper dateStepper) {
-		atts.clear();
-		String kind;
+	/** Serializes the value date computer of a mode.
+	 * @param tag The element's tag (EXPENSE_VDC_TAG or RECEIPT_VDC_TAG)
+	 * @param dateStepper The value date computer
+	 * @throws IOException
+	 */
+	private void serialize(String tag, DateStepper dateStepper) throws IOException {
+		writer.startElement(tag);
 		if (dateStepper instanceof DayDateStepper) {
-			kind = RELATIVE_DATE_STEPPER_KIND;
-			atts.addAttribute(EMPTY, EMPTY, PERIOD_ATTRIBUTE, CDATA, Integer.toString(((DayDateStepper)dateStepper).getStep()));
+			writer.attribute(PERIOD_ATTRIBUTE, ((DayDateStepper)dateStepper).getStep());
+			writer.attribute(KIND_ATTRIBUTE, RELATIVE_DATE_STEPPER_KIND);
 		} else if (dateStepper instanceof DeferredValueDateComputer) {
-			kind = DEFERRED_DATE_STEPPER_KIND;
-			atts.addAttribute(EMPTY, EMPTY, STOP_DAY_ATTRIBUTE, CDATA, Integer.toString(((DeferredValueDateComputer)dateStepper).getStopDay()));
-			atts.addAttribute(EMPTY, EMPTY, DEBT_DAY_ATTRIBUTE, CDATA, Integer.toString(((DeferredValueDateComputer)dateStepper).getDebtDay()));
+			writer.attribute(STOP_DAY_ATTRIBUTE, ((DeferredValueDateComputer)dateStepper).getStopDay());
+			writer.attribute(DEBT_DAY_ATTRIBUTE, ((DeferredValueDateComputer)dateStepper).getDebtDay());
+			writer.attribute(KIND_ATTRIBUTE, DEFERRED_DATE_STEPPER_KIND);
 		} else if (dateStepper.equals(DateStepper.IMMEDIATE)) {
-			kind = IMMEDIATE_DATE_STEPPER_KIND;
+			writer.attribute(KIND_ATTRIBUTE, IMMEDIATE_DATE_STEPPER_KIND);
 		} else {
 			throw new RuntimeException("Unsupported ValueDateComputer class : "+dateStepper.getClass().getName()); //$NON-NLS-1$
 		}
-		atts.addAttribute(EMPTY, EMPTY, KIND_ATTRIBUTE, CDATA, kind);
+		writer.endElement(tag);
 	}
 
-	private void serialize(Category category) throws SAXException {
+	private void serialize(Category category) throws IOException {
 		if (!category.equals(Category.UNDEFINED)) {
-			atts.clear();
-			atts.addAttribute(EMPTY,EMPTY,ID_ATTRIBUTE,CDATA,category.getName());
-			hd.startElement(EMPTY,EMPTY,CATEGORY_TAG,atts);
-			hd.endElement(EMPTY,EMPTY,CATEGORY_TAG);
+			writer.startElement(CATEGORY_TAG);
+			writer.attribute(ID_ATTRIBUTE, category.getName());
+			writer.endElement(CATEGORY_TAG);
 		}
 	}
 	
-	private void serialize(Transaction transaction) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY,EMPTY,ACCOUNT_ATTRIBUTE,CDATA,transaction.getAccount().getName());
+	private void serialize(Transaction transaction) throws IOException {
+		writer.startElement(TRANSACTION_TAG);
+		writer.attribute(ACCOUNT_ATTRIBUTE, getName(transaction.getAccount()));
 		String description = transaction.getDescription();
 		if (description!=null) {
-			atts.addAttribute(EMPTY,EMPTY,DESCRIPTION_ATTRIBUTE,CDATA,description);
+			writer.attribute(DESCRIPTION_ATTRIBUTE, description);
 		}
 		String comment = transaction.getComment();
 		if (comment!=null) {
-			atts.addAttribute(EMPTY,EMPTY,COMMENT_ATTRIBUTE,CDATA,comment);
+			writer.attribute(COMMENT_ATTRIBUTE, comment);
 		}
-		atts.addAttribute(EMPTY,EMPTY,DATE_ATTRIBUTE,CDATA,toString(transaction.getDate()));
-		atts.addAttribute(EMPTY,EMPTY,AMOUNT_ATTRIBUTE,CDATA,Double.toString(transaction.getAmount()));
+		writer.dateAttribute(DATE_ATTRIBUTE, transaction.getDateAsInteger());
+		writer.attribute(AMOUNT_ATTRIBUTE, transaction.getAmount());
 		Mode mode = transaction.getMode();
 		if (!mode.equals(Mode.UNDEFINED)) {
-			atts.addAttribute(EMPTY,EMPTY,MODE_ATTRIBUTE,CDATA,mode.getName());
+			writer.attribute(MODE_ATTRIBUTE, getName(mode));
 		}
 		String number = transaction.getNumber();
 		if ((number!=null) && (number.length()>0)) {
-			atts.addAttribute(EMPTY,EMPTY,NUMBER_ATTRIBUTE,CDATA,number);
+			writer.attribute(NUMBER_ATTRIBUTE, number);
 		}
 		Category category = transaction.getCategory();
 		if (!category.equals(Category.UNDEFINED)) {
-			atts.addAttribute(EMPTY,EMPTY,CATEGORY_ATTRIBUTE,CDATA,category.getName());
+			writer.attribute(CATEGORY_ATTRIBUTE, getName(category));
 		}
-		atts.addAttribute(EMPTY,EMPTY,VALUE_DATE_ATTRIBUTE,CDATA,toString(transaction.getValueDate()));
+		writer.dateAttribute(VALUE_DATE_ATTRIBUTE, transaction.getValueDateAsInteger());
 		String statement = transaction.getStatement();
 		if (statement!=null) {
-			atts.addAttribute(EMPTY,EMPTY,STATEMENT_ATTRIBUTE,CDATA,statement);
+			writer.attribute(STATEMENT_ATTRIBUTE, statement);
 		}
-		hd.startElement(EMPTY,EMPTY,TRANSACTION_TAG,atts);
 		for (int i = 0; i < transaction.getSubTransactionSize(); i++) {
 			serialize(transaction.getSubTransaction(i));
 		}
-		hd.endElement(EMPTY,EMPTY,TRANSACTION_TAG);
+		writer.endElement(TRANSACTION_TAG);
 	}
 
-	private void serialize(SubTransaction subTransaction) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY, EMPTY, DESCRIPTION_ATTRIBUTE, CDATA, subTransaction.getDescription());
-		atts.addAttribute(EMPTY, EMPTY, AMOUNT_ATTRIBUTE, CDATA, Double.toString(subTransaction.getAmount()));
+	private void serialize(SubTransaction subTransaction) throws IOException {
+		writer.startElement(SUBTRANSACTION_TAG);
+		writer.attribute(DESCRIPTION_ATTRIBUTE, subTransaction.getDescription());
+		writer.attribute(AMOUNT_ATTRIBUTE, subTransaction.getAmount());
 		Category category = subTransaction.getCategory();
 		if (!category.equals(Category.UNDEFINED)) {
-			atts.addAttribute(EMPTY, EMPTY, CATEGORY_ATTRIBUTE, CDATA,category.getName());
+			writer.attribute(CATEGORY_ATTRIBUTE, getName(category));
 		}
-		hd.startElement(EMPTY,EMPTY,SUBTRANSACTION_TAG,atts);
-		hd.endElement(EMPTY,EMPTY,SUBTRANSACTION_TAG);
+		writer.endElement(SUBTRANSACTION_TAG);
 	}
 	
-	private void serialize(PeriodicalTransaction periodicalTransaction) throws SAXException {
-		atts.clear();
-		atts.addAttribute(EMPTY,EMPTY,ACCOUNT_ATTRIBUTE,CDATA,periodicalTransaction.getAccount().getName());
+	private void serialize(PeriodicalTransaction periodicalTransaction) throws IOException {
+		writer.startElement(PERIODICAL_TAG);
+		writer.attribute(ACCOUNT_ATTRIBUTE, getName(periodicalTransaction.getAccount()));
 		String description = periodicalTransaction.getDescription();
 		if (description!=null) {
-			atts.addAttribute(EMPTY,EMPTY,DESCRIPTION_ATTRIBUTE,CDATA,description);
+			writer.attribute(DESCRIPTION_ATTRIBUTE, description);
 		}
 		String comment = periodicalTransaction.getComment();
 		if (comment!=null) {
-			atts.addAttribute(EMPTY,EMPTY,COMMENT_ATTRIBUTE,CDATA,comment);
+			writer.attribute(COMMENT_ATTRIBUTE, comment);
 		}
-		atts.addAttribute(EMPTY,EMPTY,AMOUNT_ATTRIBUTE,CDATA,Double.toString(periodicalTransaction.getAmount()));
+		writer.attribute(AMOUNT_ATTRIBUTE, periodicalTransaction.getAmount());
 		Mode mode = periodicalTransaction.getMode();
 		if (!mode.equals(Mode.UNDEFINED)) {
-			atts.addAttribute(EMPTY,EMPTY,MODE_ATTRIBUTE,CDATA,mode.getName());
+			writer.attribute(MODE_ATTRIBUTE, getName(mode));
 		}
 		Category category = periodicalTransaction.getCategory();
 		if (!category.equals(Category.UNDEFINED)) {
-			atts.addAttribute(EMPTY,EMPTY,CATEGORY_ATTRIBUTE,CDATA,category.getName());
+			writer.attribute(CATEGORY_ATTRIBUTE, getName(category));
 		}
-		atts.addAttribute(EMPTY,EMPTY,ENABLED_ATTRIBUTE,CDATA,Boolean.toString(periodicalTransaction.isEnabled()));
+		writer.attribute(ENABLED_ATTRIBUTE, Boolean.toString(periodicalTransaction.isEnabled()));
 		Date nextDate = periodicalTransaction.getNextDate();
 		if (nextDate!=null) {
-			atts.addAttribute(EMPTY,EMPTY,NEXT_DATE_ATTRIBUTE,CDATA,toString(nextDate));
+			writer.dateAttribute(NEXT_DATE_ATTRIBUTE, DateUtils.dateToInteger(nextDate));
 		}
-		hd.startElement(EMPTY,EMPTY,PERIODICAL_TAG,atts);
 		DateStepper nextDateBuilder = periodicalTransaction.getNextDateBuilder();
 		if (nextDateBuilder!=null) {
 			serialize(nextDateBuilder);
@@ -563,53 +619,113 @@ public class XMLSerializer {
 		for (int i = 0; i < periodicalTransaction.getSubTransactionSize(); i++) {
 			serialize(periodicalTransaction.getSubTransaction(i));
 		}
-		hd.endElement(EMPTY,EMPTY,PERIODICAL_TAG);
+		writer.endElement(PERIODICAL_TAG);
 	}
 
-	private void serialize(DateStepper stepper) throws SAXException {
+	private void serialize(DateStepper stepper) throws IOException {
+		Date last;
 		if (stepper instanceof MonthDateStepper) {
 			MonthDateStepper mds = (MonthDateStepper) stepper;
-			atts.clear();
-			atts.addAttribute(EMPTY, EMPTY, KIND_ATTRIBUTE, CDATA, MONTHLY_DATE_STEPPER_KIND);
-			atts.addAttribute(EMPTY, EMPTY, PERIOD_ATTRIBUTE, CDATA, Integer.toString(mds.getPeriod()));
-			atts.addAttribute(EMPTY, EMPTY, DAY_ATTRIBUTE, CDATA, Integer.toString(mds.getDay()));
-			Date last = mds.getLastDate();
-			if (last!=null) {
-				atts.addAttribute(EMPTY, EMPTY, LAST_DATE_ATTRIBUTE, CDATA, toString(last));
-			}
-			hd.startElement(EMPTY,EMPTY,DATE_STEPPER_TAG, atts);
-			hd.endElement(EMPTY,EMPTY,DATE_STEPPER_TAG);
+			writer.startElement(DATE_STEPPER_TAG);
+			writer.attribute(KIND_ATTRIBUTE, MONTHLY_DATE_STEPPER_KIND);
+			writer.attribute(PERIOD_ATTRIBUTE, mds.getPeriod());
+			writer.attribute(DAY_ATTRIBUTE, mds.getDay());
+			last = mds.getLastDate();
 		} else if (stepper instanceof DayDateStepper) {
 			DayDateStepper dds = (DayDateStepper) stepper;
-			atts.addAttribute(EMPTY, EMPTY, KIND_ATTRIBUTE, CDATA, RELATIVE_DATE_STEPPER_KIND);
-			atts.addAttribute(EMPTY, EMPTY, PERIOD_ATTRIBUTE, CDATA, Integer.toString(dds.getStep()));
-			Date last = dds.getLastDate();
-			if (last!=null) {
-				atts.addAttribute(EMPTY, EMPTY, LAST_DATE_ATTRIBUTE, CDATA, toString(last));
-			}
-			hd.startElement(EMPTY,EMPTY,DATE_STEPPER_TAG, atts);
-			hd.endElement(EMPTY,EMPTY,DATE_STEPPER_TAG);
-			atts.clear();
+			writer.startElement(DATE_STEPPER_TAG);
+			writer.attribute(KIND_ATTRIBUTE, RELATIVE_DATE_STEPPER_KIND);
+			writer.attribute(PERIOD_ATTRIBUTE, dds.getStep());
+			last = dds.getLastDate();
 		} else {
 			throw new IllegalArgumentException("This stepper class is not supported : "+stepper.getClass()); //$NON-NLS-1$
 		}
-	}
-
-	@SuppressWarnings("deprecation")
-	private String toString(Date date) {
-		int month = date.getMonth()+1;
-		int year = date.getYear()+1900;
-		return year + DATE_DELIM + month + DATE_DELIM + date.getDate();
+		if (last!=null) {
+			writer.dateAttribute(LAST_DATE_ATTRIBUTE, DateUtils.dateToInteger(last));
+		}
+		writer.endElement(DATE_STEPPER_TAG);
 	}
 	
+	/** Parses a date written by XMLWriter.dateAttribute.
+	 * <br>This method is called for every transaction, so it parses the string in place, without allocating anything.
+	 * @param value a string (year/month/day), or null
+	 * @return the date as an integer (see DateUtils.dateToInteger), -1 if value is null
+	 * @throws NumberFormatException if the string is not a valid date
+	 */
 	static int toDate(String value) {
 		if (value==null) {
 			return -1;
 		}
-		StringTokenizer tokens = new StringTokenizer(value,DATE_DELIM);
-		int year = Integer.parseInt(tokens.nextToken());
-		int month = Integer.parseInt(tokens.nextToken());
-		int day = Integer.parseInt(tokens.nextToken());
-		return DateUtils.dateToInteger(year, month, day);
+		int year = 0;
+		int month = 0;
+		int field = 0;
+		int number = -1;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if ((c>='0') && (c<='9')) {
+				number = (number<0 ? 0 : number*10) + c - '0';
+			} else if ((c==DATE_DELIM.charAt(0)) && (number>=0) && (field<2)) {
+				if (field==0) {
+					year = number;
+				} else {
+					month = number;
+				}
+				field++;
+				number = -1;
+			} else {
+				throw new NumberFormatException("Invalid date: "+value); //$NON-NLS-1$
+			}
+		}
+		if ((field!=2) || (number<0)) {
+			throw new NumberFormatException("Invalid date: "+value); //$NON-NLS-1$
+		}
+		return DateUtils.dateToInteger(year, month, number);
+	}
+
+	/** Parses a double written by Double.toString.
+	 * <br>Amounts are usually short decimal numbers (like -12.5). This method parses them without allocating anything:
+	 * A number with no more than 15 significant digits and 22 decimals is exactly the quotient of two exact doubles
+	 * (its digits and a power of ten), and the division is correctly rounded.
+	 * <br>Other numbers (with an exponent, Infinity, etc...) are parsed by Double.parseDouble.
+	 * @param value a string
+	 * @return a double
+	 * @throws NumberFormatException if the string is not a valid double
+	 */
+	static double toDouble(String value) {
+		int length = value.length();
+		int i = 0;
+		boolean negative = (length>0) && (value.charAt(0)=='-');
+		if (negative) {
+			i++;
+		}
+		long digits = 0;
+		int significantDigits = 0;
+		int decimals = -1;
+		boolean empty = true;
+		for (; i < length; i++) {
+			char c = value.charAt(i);
+			if ((c>='0') && (c<='9')) {
+				empty = false;
+				digits = digits*10 + c - '0';
+				if (digits!=0) {
+					significantDigits++;
+				}
+				if (decimals>=0) {
+					decimals++;
+				}
+				if ((significantDigits>15) || (decimals>=POWERS_OF_TEN.length)) {
+					return Double.parseDouble(value);
+				}
+			} else if ((c=='.') && (decimals<0)) {
+				decimals = 0;
+			} else {
+				return Double.parseDouble(value);
+			}
+		}
+		if (empty) {
+			return Double.parseDouble(value);
+		}
+		double result = decimals>0 ? digits/POWERS_OF_TEN[decimals] : digits;
+		return negative ? -result : result;
 	}
 }
@@ -0,0 +1,349 @@
+package net.yapbam.data.xml;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A streaming xml writer dedicated to the Yapbam data format.
+ * <br>It writes exactly the bytes the JDK 8 identity transformer (with the indent option and the UTF-8 encoding), which
+ * XMLSerializer used before, writes for the same elements: the xml declaration, immediately followed by the root element,
+ * then each element on its own line without indentation, the supplementary characters of the attributes as character
+ * references and the cdata split around "]]>". Since JDK 9, the transformer indents the elements with 4 spaces, this class
+ * keeps the JDK 8 format.
+ * <br>It does not build any attributes list or intermediate string: Characters are encoded in UTF-8 straight into a buffer,
+ * with a fast path for ASCII, and numbers and dates are formatted in place.
+ * <br>Elements are written with startElement, then the attributes, then the content (elements or cdata), then endElement.
+ */
+final class XMLWriter {
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator"); //$NON-NLS-1$
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"; //$NON-NLS-1$
+	private static final String CDATA_START = "<![CDATA["; //$NON-NLS-1$
+	private static final String CDATA_END = "]]>"; //$NON-NLS-1$
+	// The largest (absolute) value Double.toString writes without an exponent
+	private static final double MAX_PLAIN_DOUBLE = 1e7;
+	// The buffer is flushed when less than this number of bytes remain (enough for any character or number)
+	private static final int MARGIN = 32;
+
+	private final OutputStream out;
+	private final boolean indent;
+	private final byte[] buffer;
+	private int count;
+	private final byte[] digits;
+	// For each open element, true if it contains an element
+	private boolean[] hasChildren;
+	private int depth;
+	private boolean startTagOpen;
+	private boolean firstElement;
+
+	/** Constructor.
+	 * @param out The stream where to write the document (it is not closed by this writer)
+	 * @param indent true to start each element on a new line
+	 */
+	XMLWriter(OutputStream out, boolean indent) {
+		this.out = out;
+		this.indent = indent;
+		this.buffer = new byte[8192];
+		this.digits = new byte[20];
+		this.hasChildren = new boolean[8];
+		this.firstElement = true;
+	}
+
+	/** Writes the xml declaration.
+	 * @throws IOException if something goes wrong
+	 */
+	void startDocument() throws IOException {
+		writeAscii(HEADER);
+	}
+
+	/** Ends the document and flushes the buffer to the underlying stream.
+	 * @throws IOException if something goes wrong
+	 */
+	void endDocument() throws IOException {
+		if (indent) {
+			writeAscii(LINE_SEPARATOR);
+		}
+		flush();
+	}
+
+	/** Starts an element.
+	 * <br>Its attributes should be written just after this call.
+	 * @param tag The element's tag
+	 * @throws IOException if something goes wrong
+	 */
+	void startElement(String tag) throws IOException {
+		closeStartTag();
+		if (depth>0) {
+			hasChildren[depth-1] = true;
+		}
+		if (depth==hasChildren.length) {
+			hasChildren = Arrays.copyOf(hasChildren, 2*depth);
+		}
+		hasChildren[depth++] = false;
+		// Like the JDK transformer, no line separator is written between the xml declaration and the root element
+		if (indent && !firstElement) {
+			writeAscii(LINE_SEPARATOR);
+		}
+		firstElement = false;
+		ensureCapacity();
+		buffer[count++] = '<';
+		writeAscii(tag);
+		startTagOpen = true;
+	}
+
+	/** Ends the last started element.
+	 * @param tag The element's tag
+	 * @throws IOException if something goes wrong
+	 */
+	void endElement(String tag) throws IOException {
+		depth--;
+		if (startTagOpen) {
+			ensureCapacity();
+			buffer[count++] = '/';
+			buffer[count++] = '>';
+			startTagOpen = false;
+		} else {
+			if (indent && hasChildren[depth]) {
+				writeAscii(LINE_SEPARATOR);
+			}
+			ensureCapacity();
+			buffer[count++] = '<';
+			buffer[count++] = '/';
+			writeAscii(tag);
+			buffer[count++] = '>';
+		}
+	}
+
+	/** Writes a string attribute.
+	 * @param name The attribute's name
+	 * @param value The attribute's value
+	 * @throws IOException if something goes wrong or if the value contains an invalid UTF-16 surrogate
+	 */
+	void attribute(String name, String value) throws IOException {
+		startAttribute(name);
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			ensureCapacity();
+			char c = value.charAt(i);
+			if ((c>=0x20) && (c<0x80)) {
+				if (c=='"') {
+					writeAscii("&quot;"); //$NON-NLS-1$
+				} else if (c=='&') {
+					writeAscii("&amp;"); //$NON-NLS-1$
+				} else if (c=='<') {
+					writeAscii("&lt;"); //$NON-NLS-1$
+				} else if (c=='>') {
+					writeAscii("&gt;"); //$NON-NLS-1$
+				} else {
+					buffer[count++] = (byte) c;
+				}
+			} else if (c<0x20) {
+				writeCharacterReference(c);
+			} else if (isSurrogate(c)) {
+				// Characters outside the basic plane are written as character references
+				writeCharacterReference(getCodePoint(value, i));
+				i++;
+			} else {
+				writeUTF8(c);
+			}
+		}
+		buffer[count++] = '"';
+	}
+
+	/** Writes an integer attribute.
+	 * @param name The attribute's name
+	 * @param value The attribute's value
+	 * @throws IOException if something goes wrong
+	 */
+	void attribute(String name, int value) throws IOException {
+		startAttribute(name);
+		writeInt(value);
+		buffer[count++] = '"';
+	}
+
+	/** Writes a double attribute.
+	 * <br>The value is written as Double.toString would write it.
+	 * @param name The attribute's name
+	 * @param value The attribute's value
+	 * @throws IOException if something goes wrong
+	 */
+	void attribute(String name, double value) throws IOException {
+		startAttribute(name);
+		long cents = Math.round(value*100);
+		if ((Math.abs(value)<MAX_PLAIN_DOUBLE) && (Double.doubleToLongBits(cents/100.0)==Double.doubleToLongBits(value))) {
+			// Most of the amounts have no more than two decimals. Double.toString writes them with the minimum number
+			// of decimals (and at least one)
+			if (cents<0) {
+				buffer[count++] = '-';
+				cents = -cents;
+			}
+			writeLong(cents/100);
+			buffer[count++] = '.';
+			int decimals = (int) (cents%100);
+			if (decimals%10==0) {
+				buffer[count++] = (byte) ('0'+decimals/10);
+			} else {
+				buffer[count++] = (byte) ('0'+decimals/10);
+				buffer[count++] = (byte) ('0'+decimals%10);
+			}
+		} else {
+			writeAscii(Double.toString(value));
+		}
+		buffer[count++] = '"';
+	}
+
+	/** Writes a date attribute.
+	 * @param name The attribute's name
+	 * @param date The date in the integer format (yyyymmdd, see DateUtils.dateToInteger). It is written year/month/day.
+	 * @throws IOException if something goes wrong
+	 */
+	void dateAttribute(String name, int date) throws IOException {
+		startAttribute(name);
+		writeInt(date/10000);
+		buffer[count++] = '/';
+		writeInt((date/100)%100);
+		buffer[count++] = '/';
+		writeInt(date%100);
+		buffer[count++] = '"';
+	}
+
+	/** Writes a CDATA section.
+	 * <br>The characters that can't be written in a CDATA section (the "]]>" sequence and the control characters)
+	 * are written outside of the section.
+	 * @param text The section's content. If it is empty, nothing is written.
+	 * @throws IOException if something goes wrong or if the text contains an invalid UTF-16 surrogate
+	 */
+	void cdata(String text) throws IOException {
+		int length = text.length();
+		if (length==0) {
+			return;
+		}
+		closeStartTag();
+		writeAscii(CDATA_START);
+		for (int i = 0; i < length; i++) {
+			ensureCapacity();
+			char c = text.charAt(i);
+			if ((c>=0x20) && (c<0x80)) {
+				if ((c==']') && text.startsWith(CDATA_END, i)) {
+					writeAscii("]]]]><![CDATA[>"); //$NON-NLS-1$
+					i += 2;
+				} else {
+					buffer[count++] = (byte) c;
+				}
+			} else if ((c<0x20) && (c!='\t') && (c!='\n') && (c!='\r')) {
+				writeAscii(CDATA_END);
+				writeCharacterReference(c);
+				writeAscii(CDATA_START);
+			} else if (isSurrogate(c)) {
+				writeUTF8(getCodePoint(text, i));
+				i++;
+			} else {
+				writeUTF8(c);
+			}
+		}
+		writeAscii(CDATA_END);
+	}
+
+	private void startAttribute(String name) throws IOException {
+		ensureCapacity();
+		buffer[count++] = ' ';
+		writeAscii(name);
+		buffer[count++] = '=';
+		buffer[count++] = '"';
+		ensureCapacity();
+	}
+
+	private void closeStartTag() throws IOException {
+		if (startTagOpen) {
+			ensureCapacity();
+			buffer[count++] = '>';
+			startTagOpen = false;
+		}
+	}
+
+	private static boolean isSurrogate(char c) {
+		return Character.isHighSurrogate(c) || Character.isLowSurrogate(c);
+	}
+
+	private static int getCodePoint(String string, int index) throws IOException {
+		char high = string.charAt(index);
+		char low = index+1<string.length() ? string.charAt(index+1) : 0;
+		if (!Character.isHighSurrogate(high) || !Character.isLowSurrogate(low)) {
+			throw new IOException("Invalid UTF-16 surrogate detected: "+Integer.toHexString(high)); //$NON-NLS-1$
+		}
+		return Character.toCodePoint(high, low);
+	}
+
+	private void writeCharacterReference(int codePoint) throws IOException {
+		buffer[count++] = '&';
+		buffer[count++] = '#';
+		writeInt(codePoint);
+		buffer[count++] = ';';
+	}
+
+	private void writeUTF8(int codePoint) {
+		if (codePoint<0x80) {
+			buffer[count++] = (byte) codePoint;
+		} else if (codePoint<0x800) {
+			buffer[count++] = (byte) (0xC0 | (codePoint>>6));
+			buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else if (codePoint<0x10000) {
+			buffer[count++] = (byte) (0xE0 | (codePoint>>12));
+			buffer[count++] = (byte) (0x80 | ((codePoint>>6) & 0x3F));
+			buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else {
+			buffer[count++] = (byte) (0xF0 | (codePoint>>18));
+			buffer[count++] = (byte) (0x80 | ((codePoint>>12) & 0x3F));
+			buffer[count++] = (byte) (0x80 | ((codePoint>>6) & 0x3F));
+			buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		}
+	}
+
+	private void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	private void writeLong(long value) throws IOException {
+		ensureCapacity();
+		if (value<0) {
+			if (value==Long.MIN_VALUE) {
+				writeAscii(Long.toString(value));
+				return;
+			}
+			buffer[count++] = '-';
+			value = -value;
+		}
+		int nb = 0;
+		do {
+			digits[nb++] = (byte) ('0'+value%10);
+			value /= 10;
+		} while (value!=0);
+		while (nb>0) {
+			buffer[count++] = digits[--nb];
+		}
+	}
+
+	/** Writes a string that only contains ASCII characters that don't need to be escaped.
+	 * @param string The string to write
+	 * @throws IOException if something goes wrong
+	 */
+	private void writeAscii(String string) throws IOException {
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			ensureCapacity();
+			buffer[count++] = (byte) string.charAt(i);
+		}
+	}
+
+	private void ensureCapacity() throws IOException {
+		if (count>buffer.length-MARGIN) {
+			out.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	private void flush() throws IOException {
+		out.write(buffer, 0, count);
+		count = 0;
+		out.flush();
+	}
+}
@@ -0,0 +1,107 @@
+package net.yapbam.data.xml.task;
+
+import java.io.BufferedInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.AccessControlException;
+import java.security.GeneralSecurityException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+
+/** Streams that compress and encrypt (or decrypt and uncompress) data in the caller's thread.
+ * <br>They produce (or read) exactly the same bytes as a DeflaterTask followed by an EncrypterTask (or a DecrypterTask followed
+ * by an InflaterTask), but without any thread or pipe between the stages.
+ * @see EncrypterTask
+ * @see DecrypterTask
+ */
+public final class EncryptedStreams {
+	private EncryptedStreams() {
+		// To prevent this class from being instantiated
+	}
+
+	/** Gets a stream that compresses and encrypts the data written to it.
+	 * <br>This method immediately outputs the password digest to <b>out</b>.
+	 * <br>The returned stream has to be closed in order to output the end of the compressed and encrypted data.
+	 * Closing it does not close <b>out</b>.
+	 * @param out The output stream where to output the password digest, then the encrypted data
+	 * @param password The password to use to encrypt the data
+	 * @param compatibilityMode true to use the compatibility mode
+	 * @return a new output stream
+	 * @throws IOException if the password digest can't be written to <b>out</b>
+	 */
+	public static OutputStream getOutputStream(OutputStream out, String password, boolean compatibilityMode) throws IOException {
+		out.write(EncrypterTask.getDigest(password));
+		Cipher cipher = getCipher(Cipher.ENCRYPT_MODE, password, compatibilityMode);
+		OutputStream encrypter = new CipherOutputStream(new UnclosableOutputStream(out), cipher);
+		return new DeflaterOutputStream(encrypter, new Deflater(), FilterTask.BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					def.end();
+				}
+			}
+		};
+	}
+
+	/** Gets a stream that decrypts and uncompresses the data read from another stream.
+	 * <br>This method immediately reads and verifies the password digest from <b>in</b>.
+	 * <br>Closing the returned stream closes <b>in</b>.
+	 * @param in The input stream that contains the password digest, then the encrypted data
+	 * @param password The password of the data
+	 * @param compatibilityMode true to activate the compatibility (with old encoded files) mode
+	 * @return a new input stream
+	 * @throws IOException if the password digest can't be read from <b>in</b>
+	 * @throws AccessControlException if the password is wrong
+	 */
+	public static InputStream getInputStream(InputStream in, String password, boolean compatibilityMode) throws IOException, AccessControlException {
+		DecrypterTask.verifyPassword(in, password);
+		Cipher cipher = getCipher(Cipher.DECRYPT_MODE, password, compatibilityMode);
+		InputStream inflater = new InflaterInputStream(new CipherInputStream(in, cipher), new Inflater(), FilterTask.BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					inf.end();
+				}
+			}
+		};
+		// Xml parsers may read small chunks of data, each one would result in a call to the inflater without this buffer
+		return new BufferedInputStream(inflater, FilterTask.BUFFER_SIZE);
+	}
+
+	private static Cipher getCipher(int mode, String password, boolean compatibilityMode) {
+		try {
+			return EncrypterTask.getCipher(mode, password, compatibilityMode);
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** An output stream that does not close its underlying stream, but flushes it. */
+	private static final class UnclosableOutputStream extends FilterOutputStream {
+		private UnclosableOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package net.yapbam.date.helpers;
 
 import java.util.Date;
 
+import net.yapbam.util.DateUtils;
+
 /** This abstract class is able to perform a time increment over a date.
  * It could be used, for instance, to convert a transaction date in a value date, or to compute
  * the next date of a periodical transaction
@@ -15,6 +17,11 @@ public abstract class DateStepper {
 			return date;
 		}
 
+		@Override
+		public int getNextStep(int date) {
+			return date;
+		}
+
 		@Override
 		public Date getLastDate() {
 			return null;
@@ -27,6 +34,17 @@ public abstract class DateStepper {
 	 */
 	public abstract Date getNextStep (Date date);
 	
+	/** Compute the next date of a date in its integer format.
+	 * <br>This default implementation converts the integer to a Date and calls {@link #getNextStep(Date)}.
+	 * Subclasses should override it with an implementation that doesn't allocate any Date or Calendar.
+	 * @param date date for which we want a successor, in the DateUtils.dateToInteger format
+	 * @return the next date in the DateUtils.dateToInteger format or a negative integer if the cycle has to stop
+	 * @see DateUtils#dateToInteger(Date)
+	 */
+	public int getNextStep(int date) {
+		return DateUtils.dateToInteger(getNextStep(DateUtils.integerToDate(date)));
+	}
+	
 	/** returns the end date of this stepper.
 	 * @return the last date, or null if the stepper has no time limit.
 	 */
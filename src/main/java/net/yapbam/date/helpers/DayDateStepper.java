@@ -47,6 +47,12 @@ public class DayDateStepper extends DateStepper {
 		return result;
 	}
 
+	@Override
+	public int getNextStep(int date) {
+		int result = DateUtils.addDays(date, this.nbDays);
+		return result>this.lastDate?-1:result;
+	}
+
 	public int getStep() {
 		return this.nbDays;
 	}
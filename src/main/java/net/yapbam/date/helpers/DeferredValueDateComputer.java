@@ -3,6 +3,8 @@ package net.yapbam.date.helpers;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
+import net.yapbam.util.DateUtils;
+
 /** This class allows to compute value date for a deferred operation */ 
 public class DeferredValueDateComputer extends DateStepper {
 	private int stopDay;
@@ -52,6 +54,18 @@ public class DeferredValueDateComputer extends DateStepper {
 		return gc.getTime();
 	}
 
+	@Override
+	public int getNextStep(int date) {
+		int nbMonths = 0;
+		if (DateUtils.getDay(date)>this.stopDay) {
+			nbMonths++;
+		}
+		if (this.stopDay>this.debtDay) {
+			nbMonths++;
+		}
+		return DateUtils.getMonthDate(date, nbMonths, this.debtDay);
+	}
+
 	@Override
 	public Date getLastDate() {
 		return null;
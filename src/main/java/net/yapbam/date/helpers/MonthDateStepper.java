@@ -69,6 +69,12 @@ public class MonthDateStepper extends  DateStepper {
 		return result;
 	}
 
+	@Override
+	public int getNextStep(int date) {
+		int result = DateUtils.getMonthDate(date, this.period, this.day);
+		return result>this.lastDate?-1:result;
+	}
+
 	public int getPeriod() {
 		return period;
 	}
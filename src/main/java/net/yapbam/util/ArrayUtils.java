@@ -4,6 +4,8 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.StringTokenizer;
 
 /** Utility to work with arrays.
@@ -151,4 +153,63 @@ public final class ArrayUtils {
 		}
 		return true;
 	}
+
+	/** Merges a sorted array into a sorted list.
+	 * <br>The merge is done in place, in one linear pass, so merging a batch of elements is far faster
+	 * than inserting them one by one at their position.
+	 * @param list A sorted list. It should support fast random access (for instance an ArrayList).
+	 * @param elements The elements to merge, sorted according to the comparator.
+	 * @param comparator The comparator that defines the order of the list.
+	 * @param <T> The type of list's elements.
+	 */
+	public static <T> void merge(List<T> list, T[] elements, Comparator<? super T> comparator) {
+		if (elements.length==0) {
+			return;
+		}
+		int i = list.size()-1;
+		if (i<0 || comparator.compare(list.get(i), elements[0])<=0) {
+			// All elements are after the list ones
+			list.addAll(Arrays.asList(elements));
+			return;
+		}
+		list.addAll(Arrays.asList(elements));
+		int j = elements.length-1;
+		for (int k = list.size()-1; j>=0; k--) {
+			if (i>=0 && comparator.compare(list.get(i), elements[j])>0) {
+				list.set(k, list.get(i--));
+			} else {
+				list.set(k, elements[j--]);
+			}
+		}
+	}
+
+	/** Removes sorted elements from a sorted list.
+	 * <br>The removal is done in place, in one linear pass, so removing a batch of elements is far faster
+	 * than removing them one by one.
+	 * <br>Elements that are not in the list are ignored.
+	 * @param list A sorted list. It should support fast random access (for instance an ArrayList).
+	 * @param elements The elements to remove, sorted according to the comparator.
+	 * @param comparator The comparator that defines the order of the list. Two elements are considered as equals
+	 * if the comparator returns 0.
+	 * @param <T> The type of list's elements.
+	 * @return the number of removed elements
+	 */
+	public static <T> int removeAll(List<T> list, List<? extends T> elements, Comparator<? super T> comparator) {
+		int kept = 0;
+		int j = 0;
+		for (int i = 0; i < list.size(); i++) {
+			T element = list.get(i);
+			while ((j<elements.size()) && (comparator.compare(elements.get(j), element)<0)) {
+				j++;
+			}
+			if ((j<elements.size()) && (comparator.compare(elements.get(j), element)==0)) {
+				j++;
+			} else {
+				list.set(kept++, element);
+			}
+		}
+		int removed = list.size()-kept;
+		list.subList(kept, list.size()).clear();
+		return removed;
+	}
 }
@@ -9,6 +9,9 @@ import java.util.GregorianCalendar;
  * <BR>License : GPL v3
  */
 public final class DateUtils {
+	/** The first day of the gregorian calendar (as adopted by java.util.GregorianCalendar by default). */
+	private static final int GREGORIAN_START = 15821015;
+
 	// Be sure nobody will instantiate this class
 	private DateUtils(){
 		// Nothing to do
@@ -73,6 +76,116 @@ public final class DateUtils {
 		return year*10000+month*100+day;
 	}
 
+	/** Gets the month corresponding to an integer that represents a date.
+	 * @param date A integer that represents a date (typically returned by dateToInteger).
+	 * @return The month between 1 and 12. Please note that this is the usual month and not, as in Calendar.MONTH, the month minus 1.
+	 */
+	public static int getMonth(int date) {
+		return (date/100)%100;
+	}
+
+	/** Gets the day of month corresponding to an integer that represents a date.
+	 * @param date A integer that represents a date (typically returned by dateToInteger).
+	 * @return The day of month between 1 and 31.
+	 */
+	public static int getDay(int date) {
+		return date%100;
+	}
+
+	/** Gets the number of days of a month.
+	 * @param year the year.
+	 * @param month the month between 1 and 12
+	 * @return the number of days of the month
+	 */
+	public static int getDaysInMonth(int year, int month) {
+		if (month==2) {
+			return isLeapYear(year)?29:28;
+		}
+		return ((month==4) || (month==6) || (month==9) || (month==11))?30:31;
+	}
+
+	private static boolean isLeapYear(int year) {
+		return ((year%4)==0) && (((year%100)!=0) || ((year%400)==0));
+	}
+
+	/** Adds a number of months to an integer that represents a date.
+	 * <br>If the day of month doesn't exist in the resulting month (for instance 31 in February),
+	 * it is set to the last day of the month.
+	 * @param date A integer that represents a date (typically returned by dateToInteger).
+	 * @param nbMonths The number of months to add (may be negative).
+	 * @return the integer representation of the resulting date.
+	 */
+	public static int addMonths(int date, int nbMonths) {
+		return getMonthDate(date, nbMonths, getDay(date));
+	}
+
+	/** Gets a day in a month relative to the month of an integer that represents a date.
+	 * @param date A integer that represents a date (typically returned by dateToInteger).
+	 * @param nbMonths The number of months to add to the date's month (may be negative).
+	 * @param day the day of month. If the resulting month has less days, the last day of the month is returned.
+	 * @return the integer representation of the resulting date.
+	 */
+	public static int getMonthDate(int date, int nbMonths, int day) {
+		int months = getYear(date)*12+getMonth(date)-1+nbMonths;
+		int year = months/12;
+		int month = months%12+1;
+		return dateToInteger(year, month, Math.min(day, getDaysInMonth(year, month)));
+	}
+
+	/** Adds a number of days to an integer that represents a date.
+	 * @param date A integer that represents a date (typically returned by dateToInteger).
+	 * @param nbDays The number of days to add (may be negative).
+	 * @return the integer representation of the resulting date.
+	 */
+	public static int addDays(int date, int nbDays) {
+		int result = fromEpochDay(toEpochDay(date)+nbDays);
+		if ((date<GREGORIAN_START) || (result<GREGORIAN_START)) {
+			// The Julian/Gregorian calendar switch is not handled by the day arithmetic, let the calendar do the job.
+			GregorianCalendar gc = new GregorianCalendar(getYear(date), getMonth(date)-1, getDay(date));
+			gc.add(GregorianCalendar.DAY_OF_MONTH, nbDays);
+			result = dateToInteger(gc.getTime());
+		}
+		return result;
+	}
+
+	/** Converts a date integer to a number of days since 1970/01/01.
+	 * <br>The proleptic gregorian calendar is used, even before the Julian/Gregorian calendar switch.
+	 * @param date a date in the dateToInteger format
+	 * @return a number of days (negative for the dates before 1970/01/01)
+	 * @see #fromEpochDay(long)
+	 */
+	public static long toEpochDay(int date) {
+		long year = getYear(date);
+		int month = getMonth(date);
+		if (month<=2) {
+			year--;
+		}
+		long era = (year>=0 ? year : year-399)/400;
+		long yearOfEra = year-era*400;
+		long dayOfYear = (153*(month+(month>2 ? -3 : 9))+2)/5+getDay(date)-1;
+		long dayOfEra = yearOfEra*365+yearOfEra/4-yearOfEra/100+dayOfYear;
+		return era*146097+dayOfEra-719468;
+	}
+
+	/** Converts a number of days since 1970/01/01 to a date integer.
+	 * <br>The proleptic gregorian calendar is used, even before the Julian/Gregorian calendar switch.
+	 * @param epochDay a number of days
+	 * @return a date in the dateToInteger format
+	 * @see #toEpochDay(int)
+	 */
+	public static int fromEpochDay(long epochDay) {
+		long days = epochDay+719468;
+		long era = (days>=0 ? days : days-146096)/146097;
+		long dayOfEra = days-era*146097;
+		long yearOfEra = (dayOfEra-dayOfEra/1460+dayOfEra/36524-dayOfEra/146096)/365;
+		long dayOfYear = dayOfEra-(365*yearOfEra+yearOfEra/4-yearOfEra/100);
+		long mp = (5*dayOfYear+2)/153;
+		int day = (int)(dayOfYear-(153*mp+2)/5+1);
+		int month = (int)(mp<10 ? mp+3 : mp-9);
+		int year = (int)(yearOfEra+era*400+(month<=2 ? 1 : 0));
+		return dateToInteger(year, month, day);
+	}
+
 	/** Gets the date with the hour, minutes and seconds fields set to zero.
 	 * @param date a Date
 	 * @return a new Date
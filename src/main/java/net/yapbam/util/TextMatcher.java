@@ -30,6 +30,8 @@ public class TextMatcher {
 		CONTAINS
 	}
 	
+	private static final Pattern DIACRITICAL_MARKS = Pattern.compile("\\p{InCombiningDiacriticalMarks}+"); //$NON-NLS-1$
+
 	private Kind kind;
 	private String filter;
 	private boolean caseSensitive;
@@ -76,7 +78,20 @@ public class TextMatcher {
 	 * @return a new String with no diacritical marks
 	 */
 	public static String removeDiacriticals(String string) {
-		return Normalizer.normalize(string, Normalizer.Form.NFD).replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+		if (isAscii(string)) {
+			// There's no diacritical mark in an ascii string, no need to normalize it
+			return string;
+		}
+		return DIACRITICAL_MARKS.matcher(Normalizer.normalize(string, Normalizer.Form.NFD)).replaceAll(""); //$NON-NLS-1$
+	}
+
+	private static boolean isAscii(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i)>=128) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/** Gets the kind of comparison.
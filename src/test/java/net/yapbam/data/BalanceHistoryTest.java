@@ -2,8 +2,10 @@ package net.yapbam.data;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 import net.yapbam.data.BalanceHistory;
 import net.yapbam.data.BalanceHistoryElement;
@@ -122,6 +124,102 @@ public class BalanceHistoryTest {
 		assertEquals(bh.getTransactionsNumber(), total);
 	}
 	
+	@Test
+	public void testRandomInsertsAndRemoves() {
+		Account account = new Account("test",0);
+		AlertThreshold alert = new AlertThreshold(-100, 100);
+		Random rnd = new Random(0);
+		BalanceHistory bh = new BalanceHistory(0);
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		Date ref = new Date(110,0,1);
+		for (int i = 0; i < 2000; i++) {
+			if (transactions.isEmpty() || rnd.nextInt(3)!=0) {
+				int date = getDate(ref, rnd.nextInt(200));
+				Transaction t = new Transaction(date, null, "t", null, rnd.nextInt(41)-20, account, Mode.UNDEFINED, Category.UNDEFINED, date, null, null);
+				transactions.add(t);
+				bh.add(t);
+			} else {
+				bh.remove(transactions.remove(rnd.nextInt(transactions.size())));
+			}
+		}
+		assertEquals(transactions.size(), bh.getTransactionsNumber());
+		// Compute the expected balance day by day
+		double balance = 0;
+		double min = 0;
+		double max = 0;
+		long firstAlert = -1;
+		int elements = 1;
+		for (int day = 0; day < 200; day++) {
+			Date date = DateUtils.integerToDate(getDate(ref, day));
+			double amount = 0;
+			for (Transaction t : transactions) {
+				if (t.getValueDateAsInteger()==DateUtils.dateToInteger(date)) {
+					amount += t.getAmount();
+				}
+			}
+			if (amount!=0) {
+				elements++;
+				balance += amount;
+				min = Math.min(min, balance);
+				max = Math.max(max, balance);
+				if (firstAlert<0 && alert.getTrigger(balance)!=0) {
+					firstAlert = date.getTime();
+				}
+				assertEquals(date, bh.get(bh.find(date)).getFrom());
+			}
+			assertEquals(balance, bh.getBalance(date), 0.001);
+		}
+		assertEquals(elements, bh.size());
+		assertEquals(min, bh.getMinBalance(), 0.001);
+		assertEquals(max, bh.getMaxBalance(), 0.001);
+		assertEquals(firstAlert, bh.getFirstAlertDate(null, null, alert));
+		int total = 0;
+		for (int i = 0; i < bh.size(); i++) {
+			for (Transaction t : bh.getTransactions(i)) {
+				assertEquals(total, bh.find(t));
+				assertSame(t, bh.getTransaction(total));
+				total++;
+			}
+		}
+		assertEquals(transactions.size(), total);
+	}
+
+	@Test
+	public void testBulkRemove() {
+		Account account = new Account("test",0);
+		Random rnd = new Random(1);
+		Date ref = new Date(110,0,1);
+		Transaction[] transactions = new Transaction[500];
+		for (int i = 0; i < transactions.length; i++) {
+			int date = getDate(ref, rnd.nextInt(100));
+			transactions[i] = new Transaction(date, null, "t", null, rnd.nextInt(41)-20, account, Mode.UNDEFINED, Category.UNDEFINED, date, null, null);
+		}
+		BalanceHistory bh = new BalanceHistory(0);
+		bh.add(transactions);
+		List<Transaction> kept = new ArrayList<Transaction>();
+		List<Transaction> removed = new ArrayList<Transaction>();
+		for (Transaction transaction : transactions) {
+			(rnd.nextBoolean() ? kept : removed).add(transaction);
+		}
+		// A big batch (the tree is rebuilt), then a small one (transactions are removed one by one)
+		bh.remove(removed.toArray(new Transaction[removed.size()]));
+		Transaction last = kept.remove(kept.size()-1);
+		bh.remove(new Transaction[]{last});
+		BalanceHistory expected = new BalanceHistory(0);
+		expected.add(kept.toArray(new Transaction[kept.size()]));
+		assertEquals(expected.size(), bh.size());
+		assertEquals(expected.getTransactionsNumber(), bh.getTransactionsNumber());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getFrom(), bh.get(i).getFrom());
+			assertEquals(expected.get(i).getBalance(), bh.get(i).getBalance(), 0.001);
+		}
+		for (int i = 0; i < expected.getTransactionsNumber(); i++) {
+			assertSame(expected.getTransaction(i), bh.getTransaction(i));
+		}
+		assertEquals(expected.getMinBalance(), bh.getMinBalance(), 0.001);
+		assertEquals(expected.getMaxBalance(), bh.getMaxBalance(), 0.001);
+	}
+
 	private void display(BalanceHistory bh) {
 		for (int i=0; i<bh.size() ; i++) {
 			System.out.println (bh.get(i));
@@ -0,0 +1,140 @@
+package net.yapbam.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import net.yapbam.data.GlobalDataTest.TestData;
+import net.yapbam.util.DateUtils;
+
+import org.junit.Test;
+
+/** Test of BudgetView.*/
+public class BudgetViewTest {
+	@Test
+	public void testIncrementalUpdates() {
+		TestData data = new TestData();
+		GlobalData gData = data.fData.getGlobalData();
+		gData.add(new Category("cat0.sub"));
+		data.fData.getFilter().setAmountFilter(Filter.EXPENSES+Filter.RECEIPTS, 1.0, Double.POSITIVE_INFINITY);
+		BudgetView[] views = new BudgetView[]{new BudgetView(data.fData, false), new BudgetView(data.fData, true), new BudgetView(data.fData, false)};
+		views[2].setValueDate(true);
+		views[2].setGroupedSubCategories(true);
+		Account account = gData.getAccount(0);
+		Random rnd = new Random(3);
+		List<Transaction> added = new ArrayList<Transaction>();
+		for (int i = 0; i < 300; i++) {
+			Transaction transaction = buildTransaction(rnd, gData, account, i);
+			gData.add(transaction);
+			added.add(transaction);
+			if (rnd.nextInt(3)==0) {
+				gData.remove(added.remove(rnd.nextInt(added.size())));
+			}
+		}
+		// Removing all the transactions of the first month and category should shrink the budget
+		List<Transaction> toRemove = new ArrayList<Transaction>();
+		for (Transaction transaction : added) {
+			if ((transaction.getDateAsInteger()<20100201) || (transaction.getCategory().equals(gData.getCategory(1)))) {
+				toRemove.add(transaction);
+			}
+		}
+		gData.remove(toRemove.toArray(new Transaction[toRemove.size()]));
+		// Moving the transactions of a category to another one modifies them in place
+		final Category from = gData.getCategory(2);
+		final Category to = gData.getCategory(3);
+		new AbstractTransactionUpdater(gData) {
+			@Override
+			protected Transaction change(Transaction transaction) {
+				return transaction.change(from, to);
+			}
+		}.doIt();
+		// A batch of changes is also applied incrementally
+		gData.beginBatch();
+		try {
+			for (int i = 300; i < 350; i++) {
+				gData.add(buildTransaction(rnd, gData, account, i));
+			}
+			new AbstractTransactionUpdater(gData) {
+				@Override
+				protected Transaction change(Transaction transaction) {
+					return transaction.change(to, from);
+				}
+			}.doIt();
+			for (int i = 0; i < 30; i++) {
+				gData.remove(gData.getTransaction(rnd.nextInt(gData.getTransactionsNumber())));
+			}
+		} finally {
+			gData.commit();
+		}
+
+		BudgetView[] expectedViews = new BudgetView[]{new BudgetView(data.fData, false), new BudgetView(data.fData, true), new BudgetView(data.fData, false)};
+		expectedViews[2].setValueDate(true);
+		expectedViews[2].setGroupedSubCategories(true);
+		for (int i = 0; i < views.length; i++) {
+			assertSameBudget(expectedViews[i], views[i]);
+		}
+	}
+
+	private static Transaction buildTransaction(Random rnd, GlobalData gData, Account account, int i) {
+		int date = 20100101+rnd.nextInt(3)*10000+rnd.nextInt(12)*100+rnd.nextInt(28);
+		List<SubTransaction> subTransactions = new ArrayList<SubTransaction>();
+		if (rnd.nextInt(4)==0) {
+			subTransactions.add(new SubTransaction(rnd.nextInt(10000)/100.0, "sub", gData.getCategory(rnd.nextInt(gData.getCategoriesNumber()))));
+		}
+		return new Transaction(date, null, "t"+i, null, (rnd.nextInt(20000)-10000)/100.0, account, Mode.UNDEFINED,
+				gData.getCategory(rnd.nextInt(gData.getCategoriesNumber())), date+rnd.nextInt(40), null, subTransactions);
+	}
+
+	private static void assertSameBudget(BudgetView expected, BudgetView actual) {
+		assertEquals(expected.getDatesSize(), actual.getDatesSize());
+		assertEquals(expected.getCategoriesSize(), actual.getCategoriesSize());
+		assertEquals(expected.getSum(), actual.getSum(), 1E-6);
+		for (int i = 0; i < expected.getCategoriesSize(); i++) {
+			Category category = expected.getCategory(i);
+			assertEquals(category, actual.getCategory(i));
+			assertEquals(expected.getSum(category), actual.getSum(category), 1E-6);
+		}
+		for (int i = 0; i < expected.getDatesSize(); i++) {
+			Date date = expected.getDate(i);
+			assertEquals(date, actual.getDate(i));
+			assertEquals(expected.getLastDate(i), actual.getLastDate(i));
+			assertEquals(expected.getSum(date), actual.getSum(date), 1E-6);
+			for (int j = 0; j < expected.getCategoriesSize(); j++) {
+				Double amount = expected.getAmount(date, expected.getCategory(j));
+				Double actualAmount = actual.getAmount(date, expected.getCategory(j));
+				if (amount==null) {
+					assertNull(actualAmount);
+				} else {
+					assertEquals(amount, actualAmount, 1E-6);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDates() {
+		TestData data = new TestData();
+		GlobalData gData = data.fData.getGlobalData();
+		Account account = gData.getAccount(0);
+		BudgetView view = new BudgetView(data.fData, false);
+		assertEquals(0, view.getDatesSize());
+		Transaction t1 = new Transaction(20111215, null, "t1", null, -10.0, account, Mode.UNDEFINED, data.categories[0], 20111215, null, null);
+		Transaction t2 = new Transaction(20120229, null, "t2", null, 20.0, account, Mode.UNDEFINED, data.categories[1], 20120229, null, null);
+		gData.add(new Transaction[]{t1, t2});
+		assertEquals(3, view.getDatesSize());
+		assertEquals(20111201, DateUtils.dateToInteger(view.getDate(0)));
+		assertEquals(20120229, DateUtils.dateToInteger(view.getLastDate(2)));
+		assertNull(view.getAmount(view.getDate(1), data.categories[0]));
+		assertEquals(-10.0, view.getAmount(view.getDate(0), data.categories[0]), 0.0);
+		assertEquals(Arrays.asList(data.categories[0], data.categories[1]), Arrays.asList(view.getCategory(0), view.getCategory(1)));
+		gData.remove(t1);
+		assertEquals(1, view.getDatesSize());
+		assertEquals(1, view.getCategoriesSize());
+		assertEquals(20.0, view.getSum(view.getDate(0)), 0.0);
+		assertEquals(0.0, view.getSum(data.categories[0]), 0.0);
+	}
+}
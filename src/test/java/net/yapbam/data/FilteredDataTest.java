@@ -1,6 +1,8 @@
 package net.yapbam.data;
 
 import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.Random;
 
 import net.yapbam.data.GlobalDataTest.TestData;
 
@@ -76,4 +78,81 @@ public class FilteredDataTest {
 		data.fData.getGlobalData().remove(data.categories[1]);
 		assertNotNull(data.fData.getFilter().getValidCategories());
 	}
+
+	@Test
+	public void testFilterChanges() {
+		TestData data = new TestData();
+		GlobalData gData = data.fData.getGlobalData();
+		Account account = gData.getAccount(0);
+		Mode mode = account.getMode(data.modes[0].getName());
+		for (int i = 1; i <= 10; i++) {
+			gData.add(new Transaction(new GregorianCalendar(2012, 0, i).getTime(), null, "t"+i, null, i%2==0?i:-i, account, mode,
+					data.categories[i%3], new GregorianCalendar(2012, 1, i).getTime(), null, null));
+		}
+		Filter filter = data.fData.getFilter();
+		assertEquals(10, data.fData.getTransactionsNumber());
+		filter.setValidCategories(Arrays.asList(data.categories[0]));
+		assertEquals(3, data.fData.getTransactionsNumber());
+		filter.setValidCategories(null);
+		filter.setAmountFilter(Filter.RECEIPTS, 4.0, Double.POSITIVE_INFINITY);
+		assertEquals(4, data.fData.getTransactionsNumber());
+		// The filter state is taken into account even while the filter is suspended
+		filter.setSuspended(true);
+		filter.setValueDateFilter(new GregorianCalendar(2012, 1, 6).getTime(), null);
+		assertFalse(filter.isOk(gData.getTransaction(3)));
+		assertTrue(filter.isOk(gData.getTransaction(5)));
+		filter.setSuspended(false);
+		assertEquals(3, data.fData.getTransactionsNumber());
+		filter.setDateFilter(null, new GregorianCalendar(2012, 0, 8).getTime());
+		assertEquals(2, data.fData.getTransactionsNumber());
+		filter.clear();
+		assertEquals(10, data.fData.getTransactionsNumber());
+	}
+
+	@Test
+	public void testParallelFilter() {
+		TestData data = new TestData();
+		GlobalData gData = data.fData.getGlobalData();
+		Random rnd = new Random(12);
+		Transaction[] ts = new Transaction[5000];
+		for (int i = 0; i < ts.length; i++) {
+			Account account = data.accounts[rnd.nextInt(2)];
+			Mode mode = account.getMode(rnd.nextInt(account.getModesNumber()));
+			int date = 20100101+rnd.nextInt(3)*10000+rnd.nextInt(12)*100+rnd.nextInt(28);
+			ts[i] = new Transaction(date, null, "t"+i, null, (rnd.nextInt(20000)-10000)/100.0, account, mode,
+					data.categories[rnd.nextInt(3)], date+rnd.nextInt(3), null, null);
+		}
+		gData.add(ts);
+		FilteredData sequential = data.fData;
+		sequential.setParallelThreshold(Integer.MAX_VALUE);
+		FilteredData parallel = new FilteredData(gData);
+		parallel.setParallelThreshold(0);
+		// Force the concurrent filtering, even on a single processor computer
+		parallel.setParallelism(4);
+		for (FilteredData fData : new FilteredData[]{sequential, parallel}) {
+			fData.getFilter().setSuspended(true);
+			fData.getFilter().setValidAccounts(Arrays.asList(data.accounts[0], data.accounts[1]));
+			fData.getFilter().setValueDateFilter(new GregorianCalendar(2011, 0, 1).getTime(), null);
+			fData.getFilter().setAmountFilter(Filter.EXPENSES, 10.0, Double.POSITIVE_INFINITY);
+			fData.getFilter().setSuspended(false);
+		}
+		assertTrue(sequential.getTransactionsNumber()>0);
+		assertTrue(isFilteringThreadStarted());
+		assertEquals(sequential.getTransactions(), parallel.getTransactions());
+		BalanceHistory expected = sequential.getBalanceData().getBalanceHistory();
+		BalanceHistory actual = parallel.getBalanceData().getBalanceHistory();
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getBalance(), actual.get(i).getBalance(), 0.0);
+		}
+	}
+
+	private static boolean isFilteringThreadStarted() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("FilteredData-")) {
+				return true;
+			}
+		}
+		return false;
+	}
 }
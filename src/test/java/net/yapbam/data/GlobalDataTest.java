@@ -1,12 +1,27 @@
 package net.yapbam.data;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
 
 import org.junit.Test;
 
+import net.yapbam.data.event.AccountPropertyChangedEvent;
+import net.yapbam.data.event.BatchCommittedEvent;
+import net.yapbam.data.event.DataEvent;
+import net.yapbam.data.event.DataListener;
+import net.yapbam.data.event.EverythingChangedEvent;
+import net.yapbam.data.event.TransactionsAddedEvent;
+import net.yapbam.data.event.TransactionsModifiedEvent;
+import net.yapbam.data.event.TransactionsRemovedEvent;
 import net.yapbam.date.helpers.DateStepper;
 
 public class GlobalDataTest {
@@ -85,6 +100,478 @@ public class GlobalDataTest {
 		}
 	}
 	
+	@Test
+	public void testBulkAdd() {
+		GlobalData data = new GlobalData();
+		Account account = new Account("test",0.0);
+		data.add(account);
+		Date date = new Date();
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		double total = 0;
+		for (int i = 0; i < 1000; i++) {
+			transactions.add(new Transaction(date, null, "test"+i, null, i, account, Mode.UNDEFINED, Category.UNDEFINED, date, null, null));
+			total += i;
+		}
+		// Add the transactions in random order and in interleaved batches
+		Collections.shuffle(transactions, new Random(0));
+		data.add(transactions.subList(0, 400).toArray(new Transaction[400]));
+		data.add(transactions.get(400));
+		data.add(transactions.subList(401, 1000).toArray(new Transaction[599]));
+		assertEquals(1000, data.getTransactionsNumber());
+		for (int i = 1; i < data.getTransactionsNumber(); i++) {
+			assertTrue(data.getTransaction(i-1).getId()<data.getTransaction(i).getId());
+		}
+		assertEquals(1000, account.getBalanceData().getBalanceHistory().getTransactionsNumber());
+		assertEquals(total, account.getBalanceData().getFinalBalance(), 0.001);
+		assertEquals(total, account.getBalanceData().getBalanceHistory().getBalance(date), 0.001);
+	}
+
+	@Test
+	public void testLookupsByName() {
+		TestData data = new TestData();
+		GlobalData gData = data.fData.getGlobalData();
+		assertSame(data.accounts[1], gData.getAccount("TITI"));
+		gData.setName(data.accounts[1], "Other");
+		assertNull(gData.getAccount("titi"));
+		assertSame(data.accounts[1], gData.getAccount("other"));
+		gData.remove(data.accounts[1]);
+		assertNull(gData.getAccount("Other"));
+		try {
+			gData.add(new Account("TOTO", 0.0));
+			fail("Duplicated account name should be refused");
+		} catch (IllegalArgumentException e) {
+			// Ok
+		}
+
+		Account account = data.accounts[0];
+		assertSame(Mode.UNDEFINED, account.getMode(""));
+		assertSame(data.modes[0], account.getMode("MODE0"));
+		gData.setMode(account, data.modes[0], new Mode("new mode", DateStepper.IMMEDIATE, null, false));
+		assertNull(account.getMode("mode0"));
+		assertSame(data.modes[0], account.getMode("New Mode"));
+		gData.remove(account, data.modes[0]);
+		assertNull(account.getMode("new mode"));
+		assertSame(data.modes[1], account.getMode("mode1"));
+
+		assertSame(data.filters[0], gData.getFilter("filter 0"));
+		data.filters[0].setName("renamed");
+		assertNull(gData.getFilter("filter 0"));
+		assertSame(data.filters[0], gData.getFilter("renamed"));
+		gData.remove(data.filters[0]);
+		assertNull(gData.getFilter("renamed"));
+	}
+
+	@Test
+	public void testReverseIndexes() {
+		GlobalData data = new GlobalData();
+		Category food = new Category("food");
+		Category car = new Category("car");
+		data.add(food);
+		data.add(car);
+		Account account1 = new Account("account1", 0.0);
+		Account account2 = new Account("account2", 0.0);
+		data.add(account1);
+		data.add(account2);
+		Mode card1 = new Mode("card", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false);
+		Mode card2 = new Mode("card", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false);
+		data.add(account1, card1);
+		data.add(account2, card2);
+		Random rnd = new Random(0);
+		Category[] categories = new Category[]{Category.UNDEFINED, food, car};
+		Account[] accounts = new Account[]{account1, account2};
+		Transaction[] transactions = new Transaction[200];
+		for (int i = 0; i < transactions.length; i++) {
+			Account account = accounts[rnd.nextInt(2)];
+			Mode mode = rnd.nextBoolean() ? Mode.UNDEFINED : (account==account1 ? card1 : card2);
+			List<SubTransaction> subTransactions = null;
+			if (rnd.nextInt(4)==0) {
+				subTransactions = Collections.singletonList(new SubTransaction(-1.0, "sub", categories[rnd.nextInt(3)]));
+			}
+			transactions[i] = new Transaction(20150101, null, "t"+i, null, -10.0, account, mode, categories[rnd.nextInt(3)], 20150101, null, subTransactions);
+		}
+		// Add the transactions in a random order, some in bulk, some one by one
+		List<Transaction> shuffled = new ArrayList<Transaction>(Arrays.asList(transactions));
+		Collections.shuffle(shuffled, rnd);
+		data.add(shuffled.subList(0, 150).toArray(new Transaction[150]));
+		for (Transaction transaction : shuffled.subList(150, 200)) {
+			data.add(transaction);
+		}
+		checkIndexes(data, accounts);
+
+		data.remove(shuffled.subList(0, 30).toArray(new Transaction[30]));
+		checkIndexes(data, accounts);
+		assertTrue(data.getTransactions(account1, card1).size()>0);
+
+		data.setName(food, "meal");
+		checkIndexes(data, accounts);
+		data.setMode(account1, card1, new Mode("credit card", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false));
+		checkIndexes(data, accounts);
+		assertEquals(0, data.getTransactions(account1, new Mode("card", null, null, false)).size());
+
+		data.remove(car);
+		checkIndexes(data, accounts);
+		assertEquals(0, data.getTransactions(car).size());
+		data.remove(account1, card1);
+		checkIndexes(data, accounts);
+		assertEquals(0, data.getTransactions(account1, card1).size());
+
+		data.remove(account2);
+		checkIndexes(data, new Account[]{account1});
+		assertEquals(0, data.getTransactions(account2).size());
+	}
+
+	@Test
+	public void testInPlaceUpdate() {
+		GlobalData data = new GlobalData();
+		Category food = new Category("food");
+		Category car = new Category("car");
+		data.add(food);
+		data.add(car);
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		Mode card = new Mode("card", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false);
+		data.add(account, card);
+		Transaction[] transactions = new Transaction[20];
+		for (int i = 0; i < transactions.length; i++) {
+			List<SubTransaction> subTransactions = i%5==0 ? Collections.singletonList(new SubTransaction(-1.0, "sub", food)) : null;
+			transactions[i] = new Transaction(20150101+i, null, "t"+i, null, -10.0-i, account, card, i%2==0 ? food : car, 20150101+i, null, subTransactions);
+		}
+		data.add(transactions);
+		FilteredData filtered = new FilteredData(data);
+		filtered.getFilter().setValidCategories(Collections.singletonList(food));
+		assertEquals(12, filtered.getTransactionsNumber());
+		final List<DataEvent> events = new ArrayList<DataEvent>();
+		final List<DataEvent> filteredEvents = new ArrayList<DataEvent>();
+		data.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				events.add(event);
+			}
+		});
+		filtered.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				filteredEvents.add(event);
+			}
+		});
+
+		data.remove(food);
+		// Transactions were modified in place, with only one event
+		assertEquals(transactions.length, data.getTransactionsNumber());
+		List<TransactionsModifiedEvent> modified = getEvents(events, TransactionsModifiedEvent.class);
+		assertEquals(1, modified.size());
+		assertEquals(12, modified.get(0).getOldTransactions().length);
+		assertTrue(getEvents(events, TransactionsAddedEvent.class).isEmpty());
+		assertTrue(getEvents(events, TransactionsRemovedEvent.class).isEmpty());
+		BalanceHistory history = account.getBalanceData().getBalanceHistory();
+		for (int i = 0; i < transactions.length; i++) {
+			Transaction transaction = data.getTransaction(i);
+			assertEquals(transactions[i].getId(), transaction.getId());
+			assertFalse(transaction.hasCategory(food));
+			assertSame(transaction, history.getTransaction(history.find(transaction)));
+		}
+		assertEquals(-10.0*20-190, history.getBalance(20160101), 1E-6);
+		// The filtered data lost the transactions that are no more in the food category (before its filter was reset)
+		assertEquals(12, getEvents(filteredEvents, TransactionsRemovedEvent.class).get(0).getTransactions().length);
+		assertSame(modified.get(0).getNewTransactions()[0], data.getTransactions(Category.UNDEFINED).get(0));
+
+		// A mode removal is also made in place
+		events.clear();
+		data.remove(account, card);
+		assertEquals(1, getEvents(events, TransactionsModifiedEvent.class).size());
+		assertEquals(transactions.length, data.getTransactions(account, Mode.UNDEFINED).size());
+	}
+
+	@Test
+	public void testBatch() {
+		GlobalData data = new GlobalData();
+		Category food = new Category("food");
+		Category car = new Category("car");
+		data.add(food);
+		data.add(car);
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		Transaction[] transactions = new Transaction[10];
+		for (int i = 0; i < transactions.length; i++) {
+			transactions[i] = new Transaction(20150101+i, null, "t"+i, null, -10.0-i, account, Mode.UNDEFINED, i%2==0 ? food : car, 20150101+i, null, null);
+		}
+		data.add(transactions);
+		FilteredData filtered = new FilteredData(data);
+		StatData stats = new StatData(filtered);
+		filtered.getFilter().setValidCategories(Collections.singletonList(food));
+		assertEquals(5, stats.getNbExpenses());
+		final List<DataEvent> events = new ArrayList<DataEvent>();
+		final List<DataEvent> filteredEvents = new ArrayList<DataEvent>();
+		data.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				events.add(event);
+			}
+		});
+		filtered.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				filteredEvents.add(event);
+			}
+		});
+
+		Transaction added = new Transaction(20150201, null, "added", null, -5.0, account, Mode.UNDEFINED, food, 20150201, null, null);
+		Transaction cancelled = new Transaction(20150202, null, "cancelled", null, -6.0, account, Mode.UNDEFINED, food, 20150202, null, null);
+		Transaction modified = transactions[3].change(car, food);
+		data.beginBatch();
+		data.add(added);
+		data.beginBatch();
+		data.add(cancelled);
+		data.remove(new Transaction[]{transactions[0], transactions[1]});
+		data.commit();
+		assertTrue(events.isEmpty());
+		data.replace(new Transaction[]{transactions[3]}, new Transaction[]{modified});
+		data.remove(cancelled);
+		data.setInitialBalance(account, 100.0);
+		data.commit();
+
+		// Only one coalesced event is sent
+		assertEquals(1, events.size());
+		BatchCommittedEvent batch = (BatchCommittedEvent) events.get(0);
+		assertArrayEquals(new Transaction[]{added}, batch.getAddedTransactions());
+		assertArrayEquals(new Transaction[]{transactions[0], transactions[1]}, batch.getRemovedTransactions());
+		assertArrayEquals(new Transaction[]{transactions[3]}, batch.getOldTransactions());
+		assertArrayEquals(new Transaction[]{modified}, batch.getNewTransactions());
+		assertEquals(1, batch.getEvents().size());
+		// The filtered data was updated incrementally, without filtering all the transactions again
+		assertEquals(1, filteredEvents.size());
+		batch = (BatchCommittedEvent) filteredEvents.get(0);
+		assertTrue(getEvents(batch.getEvents(), EverythingChangedEvent.class).isEmpty());
+		// The modified transaction now matches the filter
+		assertArrayEquals(new Transaction[]{modified, added}, batch.getAddedTransactions());
+		assertArrayEquals(new Transaction[]{transactions[0]}, batch.getRemovedTransactions());
+		FilteredData expected = new FilteredData(data);
+		StatData expectedStats = new StatData(expected);
+		expected.getFilter().setValidCategories(Collections.singletonList(food));
+		assertEquals(expected.getTransactions(), filtered.getTransactions());
+		assertEquals(expected.getBalanceData().getFinalBalance(), filtered.getBalanceData().getFinalBalance(), 1E-6);
+		assertEquals(expectedStats.getExpenses(), stats.getExpenses(), 1E-6);
+
+		// A batch without changes sends no event
+		events.clear();
+		data.beginBatch();
+		data.add(cancelled);
+		data.remove(cancelled);
+		data.commit();
+		assertTrue(events.isEmpty());
+	}
+
+	@Test
+	public void testTypedListeners() {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		final List<DataEvent> transactionEvents = new ArrayList<DataEvent>();
+		final List<DataEvent> allEvents = new ArrayList<DataEvent>();
+		data.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				transactionEvents.add(event);
+			}
+		}, TransactionsAddedEvent.class, TransactionsRemovedEvent.class);
+		data.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				allEvents.add(event);
+			}
+		});
+		Transaction transaction = new Transaction(20150101, null, "t", null, -10.0, account, Mode.UNDEFINED, Category.UNDEFINED, 20150101, null, null);
+		data.add(transaction);
+		data.setInitialBalance(account, 10.0);
+		data.remove(transaction);
+		assertEquals(2, transactionEvents.size());
+		assertTrue(transactionEvents.get(0) instanceof TransactionsAddedEvent);
+		assertTrue(transactionEvents.get(1) instanceof TransactionsRemovedEvent);
+		assertEquals(allEvents.size()+transactionEvents.size(), data.getDeliveredCount(DataEvent.class));
+		assertEquals(1, data.getFiredCount(AccountPropertyChangedEvent.class));
+		assertEquals(1, data.getDeliveredCount(AccountPropertyChangedEvent.class));
+		assertEquals(2, data.getDeliveredCount(TransactionsAddedEvent.class));
+
+		// A listener added later is invoked with the events already fired before
+		final List<DataEvent> propertyEvents = new ArrayList<DataEvent>();
+		data.addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				propertyEvents.add(event);
+			}
+		}, AccountPropertyChangedEvent.class);
+		data.setInitialBalance(account, 20.0);
+		assertEquals(1, propertyEvents.size());
+		assertEquals(2, data.getFiredCount(AccountPropertyChangedEvent.class));
+		assertEquals(3, data.getDeliveredCount(AccountPropertyChangedEvent.class));
+		assertEquals(2, transactionEvents.size());
+	}
+
+	@Test
+	public void testListenersRemoval() throws InterruptedException {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		FilteredData filtered = new FilteredData(data);
+		BudgetView budget = new BudgetView(filtered, false);
+		StatData stats = new StatData(filtered);
+		PeriodicalTransactionSimulationData simulation = new PeriodicalTransactionSimulationData(filtered);
+		assertEquals(2, data.getNumberOfListeners());
+		assertEquals(3, filtered.getNumberOfListeners());
+		// The filter only references the filtered data, a forgotten simulation would not be retained by it
+		assertEquals(1, filtered.getFilter().countObservers());
+		budget.dispose();
+		stats.dispose();
+		assertEquals(1, filtered.getNumberOfListeners());
+		simulation.dispose();
+		assertEquals(0, filtered.getNumberOfListeners());
+		filtered.dispose();
+		assertEquals(0, data.getNumberOfListeners());
+		data.add(new Transaction(20150101, null, "t", null, -10.0, account, Mode.UNDEFINED, Category.UNDEFINED, 20150101, null, null));
+		assertEquals(0, filtered.getTransactionsNumber());
+		assertFalse(data.removeListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+			}
+		}));
+
+		// The views that are not used anymore are garbage collected, even if they were not disposed
+		DataListener strong = new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+			}
+		};
+		data.addListener(strong);
+		WeakReference<FilteredData> forgotten = addForgottenView(data);
+		assertEquals(2, data.getNumberOfListeners());
+		// System.gc() is only a hint, wait for the view to be collected, but not forever
+		long deadline = System.currentTimeMillis()+5000;
+		while ((forgotten.get()!=null) && (System.currentTimeMillis()<deadline)) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assumeTrue("The JVM did not collect the forgotten view", forgotten.get()==null);
+		// The view's listener was cleared with the view, so it is purged whatever the gc did meanwhile
+		assertEquals(1, data.purgeListeners());
+		assertEquals(1, data.getNumberOfListeners());
+		List<String> report = data.getListenersReport();
+		assertEquals(2, report.size());
+		assertTrue(report.get(1).startsWith("strong"));
+		assertTrue(data.removeListener(strong));
+		assertEquals(0, data.getNumberOfListeners());
+	}
+
+	@Test
+	public void testAsyncListener() {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+		final List<DataEvent> events = new ArrayList<DataEvent>();
+		DataListener listener = new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+				events.add(event);
+			}
+		};
+		data.addAsyncListener(listener, executor, TransactionsAddedEvent.class, TransactionsRemovedEvent.class);
+		Transaction[] transactions = new Transaction[3];
+		for (int i = 0; i < transactions.length; i++) {
+			transactions[i] = new Transaction(20150101+i, null, "t"+i, null, -10.0, account, Mode.UNDEFINED, Category.UNDEFINED, 20150101+i, null, null);
+			data.add(transactions[i]);
+		}
+		// Nothing is processed until the executor runs the task, then the consecutive added events are merged
+		assertTrue(events.isEmpty());
+		assertEquals(1, tasks.size());
+		tasks.remove(0).run();
+		assertEquals(1, events.size());
+		assertArrayEquals(transactions, ((TransactionsAddedEvent)events.get(0)).getTransactions());
+
+		events.clear();
+		data.remove(transactions[0]);
+		data.remove(transactions[1]);
+		data.add(transactions[0]);
+		tasks.remove(0).run();
+		assertTrue(tasks.isEmpty());
+		assertEquals(2, events.size());
+		assertEquals(2, ((TransactionsRemovedEvent)events.get(0)).getTransactions().length);
+		assertTrue(events.get(1) instanceof TransactionsAddedEvent);
+
+		// The pending events of a removed listener are discarded
+		events.clear();
+		data.remove(transactions[0]);
+		assertTrue(data.removeListener(listener));
+		tasks.remove(0).run();
+		assertTrue(events.isEmpty());
+	}
+
+	private static WeakReference<FilteredData> addForgottenView(GlobalData data) {
+		return new WeakReference<FilteredData>(new FilteredData(data));
+	}
+
+	@Test (expected=IllegalArgumentException.class)
+	public void testWrongListenerClass() {
+		new GlobalData().addListener(new DataListener() {
+			@Override
+			public void processEvent(DataEvent event) {
+			}
+		}, String.class);
+	}
+
+	@Test (expected=IllegalStateException.class)
+	public void testCommitWithoutBatch() {
+		new GlobalData().commit();
+	}
+
+	private static <T extends DataEvent> List<T> getEvents(List<DataEvent> events, Class<T> eventClass) {
+		List<T> result = new ArrayList<T>();
+		for (DataEvent event : events) {
+			if (eventClass.isInstance(event)) {
+				result.add(eventClass.cast(event));
+			}
+		}
+		return result;
+	}
+
+	private static void checkIndexes(GlobalData data, Account[] accounts) {
+		for (int i = 0; i < data.getCategoriesNumber(); i++) {
+			Category category = data.getCategory(i);
+			List<Transaction> expected = new ArrayList<Transaction>();
+			for (int j = 0; j < data.getTransactionsNumber(); j++) {
+				if (data.getTransaction(j).hasCategory(category)) {
+					expected.add(data.getTransaction(j));
+				}
+			}
+			assertEquals(expected, data.getTransactions(category));
+		}
+		for (Account account : accounts) {
+			List<Transaction> expected = new ArrayList<Transaction>();
+			for (int j = 0; j < data.getTransactionsNumber(); j++) {
+				if (data.getTransaction(j).getAccount()==account) {
+					expected.add(data.getTransaction(j));
+				}
+			}
+			assertEquals(expected, data.getTransactions(account));
+			for (int i = 0; i < account.getModesNumber(); i++) {
+				Mode mode = account.getMode(i);
+				expected = new ArrayList<Transaction>();
+				for (int j = 0; j < data.getTransactionsNumber(); j++) {
+					Transaction transaction = data.getTransaction(j);
+					if ((transaction.getAccount()==account) && transaction.getMode().equals(mode)) {
+						expected.add(transaction);
+					}
+				}
+				assertEquals(expected, data.getTransactions(account, mode));
+			}
+		}
+	}
+
 	@Test (expected=IllegalArgumentException.class)
 	public void testNullCategoryName() {
 		GlobalData data = new GlobalData();
@@ -0,0 +1,43 @@
+package net.yapbam.data;
+
+import static org.junit.Assert.*;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class NameIndexTest {
+	@Test
+	public void testKeys() {
+		String[] names = new String[]{"Compte courant", "COMPTE COURANT", "compte courant", "\u00c9pargne", "\u00e9PARGNE", "epargne",
+				"STRASSE", "stra\u00dfe", "\u03a3\u039f\u03a6\u039f\u03a3", "\u03c3\u03bf\u03c6\u03bf\u03c2", "\u03c3\u03bf\u03c6\u03bf\u03c3", "\u0130stanbul", "istanbul", "\u0131stanbul", "Istanbul", "\u01c5", "\u01c6", "\u01c4", ""};
+		Locale locale = Locale.getDefault();
+		try {
+			// The turkish locale has special case rules for i
+			Locale.setDefault(new Locale("tr", "TR"));
+			for (String name1 : names) {
+				for (String name2 : names) {
+					assertEquals(name1+"/"+name2, name1.equalsIgnoreCase(name2), NameIndex.getKey(name1).equals(NameIndex.getKey(name2)));
+				}
+			}
+		} finally {
+			Locale.setDefault(locale);
+		}
+		String name = "already folded";
+		assertSame(name, NameIndex.getKey(name));
+	}
+
+	@Test
+	public void testIndex() {
+		NameIndex<Account> index = new NameIndex<Account>();
+		Account account = new Account("Compte", 0.0);
+		index.put(account.getName(), account);
+		assertSame(account, index.get("COMPTE"));
+		assertNull(index.get(null));
+		assertNull(index.get("Compt"));
+		index.remove("compte", new Account("compte", 0.0));
+		assertSame(account, index.get("compte"));
+		index.remove("compte", account);
+		assertNull(index.get("Compte"));
+	}
+}
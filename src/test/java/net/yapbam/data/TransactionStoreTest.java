@@ -0,0 +1,132 @@
+package net.yapbam.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TransactionStoreTest {
+	@Test
+	public void testAddRemove() {
+		Account[] accounts = new Account[]{new Account("a1", 0.0), new Account("a2", 0.0)};
+		Random rnd = new Random(5);
+		TransactionStore store = new TransactionStore();
+		List<Transaction> expected = new ArrayList<Transaction>();
+		for (int i = 0; i < 500; i++) {
+			int date = 20120101+rnd.nextInt(12)*100+rnd.nextInt(28);
+			Transaction transaction = new Transaction(date, null, "t"+i, null, rnd.nextInt(1000)-500, accounts[rnd.nextInt(2)],
+					Mode.UNDEFINED, Category.UNDEFINED, date+1, null, null);
+			int index = rnd.nextInt(expected.size()+1);
+			expected.add(index, transaction);
+			store.add(index, transaction);
+			if (rnd.nextInt(4)==0) {
+				index = rnd.nextInt(expected.size());
+				assertSame(expected.remove(index), store.remove(index));
+			}
+		}
+		assertEquals(expected, store);
+		assertSame(expected.get(0), store.set(0, expected.get(1)));
+		assertSame(expected.get(1), store.get(0));
+		store.clear();
+		assertTrue(store.isEmpty());
+	}
+
+	@Test
+	public void testIndexOf() {
+		Account account = new Account("a1", 0.0);
+		TransactionStore store = new TransactionStore();
+		for (int i = 0; i < 10; i++) {
+			store.add(new Transaction(20120101, null, "t"+i, null, i, account, Mode.UNDEFINED, Category.UNDEFINED, 20120101, null, null));
+		}
+		for (int i = 0; i < store.size(); i++) {
+			assertEquals(i, store.indexOf(store.get(i).getId()));
+		}
+		assertEquals(-store.size()-1, store.indexOf(store.get(store.size()-1).getId()+1));
+		assertEquals(-1, store.indexOf(store.get(0).getId()-1));
+		store.remove(5);
+		assertEquals(-6, store.indexOf(store.get(4).getId()+1));
+	}
+
+	@Test
+	public void testBulkRemove() {
+		Account account = new Account("a1", 0.0);
+		TransactionStore store = new TransactionStore();
+		List<Transaction> expected = new ArrayList<Transaction>();
+		for (int i = 0; i < 10; i++) {
+			Transaction transaction = new Transaction(20120101+i, null, "t"+i, null, i, account, Mode.UNDEFINED, Category.UNDEFINED, 20120101, null, null);
+			store.add(transaction);
+			expected.add(transaction);
+		}
+		store.remove(new int[]{0, 3, 4, 9});
+		expected.remove(9);
+		expected.remove(4);
+		expected.remove(3);
+		expected.remove(0);
+		assertEquals(expected, store);
+		store.remove(new int[0]);
+		assertEquals(6, store.size());
+		try {
+			store.remove(new int[]{2, 6});
+			fail("Index out of bounds should be refused");
+		} catch (IndexOutOfBoundsException e) {
+			// Ok
+		}
+		assertEquals(expected, store);
+	}
+
+	@Test
+	public void testSnapshot() {
+		Account account = new Account("a1", 0.0);
+		Random rnd = new Random(7);
+		TransactionStore store = new TransactionStore();
+		assertTrue(store.snapshot().isEmpty());
+		List<Transaction> expected = new ArrayList<Transaction>();
+		List<List<Transaction>> snapshots = new ArrayList<List<Transaction>>();
+		List<List<Transaction>> contents = new ArrayList<List<Transaction>>();
+		for (int step = 0; step < 10; step++) {
+			// Add a lot of transactions at the end, then add, replace and remove a few ones anywhere
+			for (int i = 0; i < 1000; i++) {
+				Transaction transaction = new Transaction(20120101, null, "t"+i, null, i, account, Mode.UNDEFINED, Category.UNDEFINED, 20120101, null, null);
+				expected.add(transaction);
+				store.add(transaction);
+			}
+			for (int i = 0; i < 3; i++) {
+				int index = rnd.nextInt(expected.size());
+				Transaction transaction = new Transaction(20120101, null, "r"+i, null, i, account, Mode.UNDEFINED, Category.UNDEFINED, 20120101, null, null);
+				expected.set(index, transaction);
+				store.set(index, transaction);
+				index = rnd.nextInt(expected.size());
+				assertSame(expected.remove(index), store.remove(index));
+			}
+			if (step==5) {
+				store.remove(new int[]{0, 1, 1500});
+				expected.remove(1500);
+				expected.remove(1);
+				expected.remove(0);
+			}
+			snapshots.add(store.snapshot());
+			contents.add(new ArrayList<Transaction>(expected));
+		}
+		// Modifications made after a snapshot should not be visible in it
+		for (int i = 0; i < snapshots.size(); i++) {
+			assertEquals(contents.get(i), snapshots.get(i));
+		}
+		try {
+			snapshots.get(0).remove(0);
+			fail("A snapshot should not be modifiable");
+		} catch (UnsupportedOperationException e) {
+			// Ok
+		}
+		store.clear();
+		assertTrue(store.snapshot().isEmpty());
+		assertEquals(contents.get(9), snapshots.get(9));
+	}
+
+	@Test (expected=IndexOutOfBoundsException.class)
+	public void testOutOfBounds() {
+		new TransactionStore().get(0);
+	}
+}
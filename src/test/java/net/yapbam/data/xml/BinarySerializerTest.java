@@ -0,0 +1,99 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipOutputStream;
+
+import net.yapbam.data.GlobalData;
+import net.yapbam.util.DateUtils;
+
+import org.junit.Test;
+
+public class BinarySerializerTest {
+	private static byte[] write(Serializer serializer, GlobalData data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.write(data, out, null);
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		GlobalData data = TestData.buildData();
+		byte[] binary = write(new BinarySerializer(), data);
+		assertTrue(binary.length<write(new Serializer(), data).length);
+		// Serializer recognizes the binary format
+		GlobalData read = new Serializer().read(null, new ByteArrayInputStream(binary), null);
+		TestData.assertSameTransactions(data, read);
+		assertEquals(data.getAccount(0).getInitialBalance(), read.getAccount(0).getInitialBalance(), 0.0);
+		assertEquals(data.getCategoriesNumber(), read.getCategoriesNumber());
+	}
+
+	@Test
+	public void testPasswordAndZip() throws IOException {
+		GlobalData data = TestData.buildData();
+		data.setPassword("password");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ZipOutputStream out = new ZipOutputStream(bytes);
+		new BinarySerializer().writeToZip(data, out, "data", null);
+		out.close();
+		assertFalse(new Serializer().isPasswordOk(new ByteArrayInputStream(bytes.toByteArray()), null));
+		GlobalData read = new Serializer().read("password", new ByteArrayInputStream(bytes.toByteArray()), null);
+		TestData.assertSameTransactions(data, read);
+		assertEquals("password", read.getPassword());
+	}
+
+	@Test
+	public void testCorruptedXmlLength() throws IOException {
+		byte[] binary = write(new BinarySerializer(), TestData.buildData());
+		// The xml length follows the magic bytes and the version, replace it by a huge one
+		binary[5] = (byte)0xFF;
+		binary[6] = (byte)0xFF;
+		binary[7] = (byte)0xFF;
+		binary[8] = (byte)0xFF;
+		binary[9] = 0x07;
+		try {
+			new Serializer().read(null, new ByteArrayInputStream(binary), null);
+			fail();
+		} catch (IOException e) {
+			// The stream ends before the xml
+		}
+	}
+
+	@Test
+	public void testCorruptedTransactions() throws IOException {
+		GlobalData data = TestData.buildData();
+		byte[] binary = write(new BinarySerializer(), data);
+		// Skip the magic bytes, the version and the xml, corrupt the names and the transactions
+		int start = 5;
+		int xmlLength = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = binary[start++];
+			xmlLength |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80)!=0);
+		start += xmlLength;
+		for (int i = start; i < binary.length; i++) {
+			byte[] corrupted = binary.clone();
+			corrupted[i] ^= 0xFF;
+			try {
+				new Serializer().read(null, new ByteArrayInputStream(corrupted), null);
+			} catch (IOException e) {
+				// A corruption should result in an IOException (or in wrong transactions), never in a runtime exception
+			}
+		}
+	}
+
+	@Test
+	public void testDates() {
+		for (int date = 18991225; date < 21000000; date = DateUtils.addDays(date, 13)) {
+			assertEquals(date, DateUtils.fromEpochDay(DateUtils.toEpochDay(date)));
+		}
+		assertEquals(0, DateUtils.toEpochDay(19700101));
+		assertEquals(1, DateUtils.toEpochDay(20000301)-DateUtils.toEpochDay(20000229));
+	}
+}
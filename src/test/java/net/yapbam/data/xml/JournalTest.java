@@ -0,0 +1,288 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Transaction buildTransaction(GlobalData data, String description, double amount) {
+		Category category = data.getCategory("category");
+		List<SubTransaction> subTransactions = Collections.singletonList(new SubTransaction(amount/2, "sub", category));
+		return new Transaction(20140101, null, description, null, amount, data.getAccount(0), Mode.UNDEFINED, category, 20140102,
+				null, subTransactions);
+	}
+
+	private static GlobalData buildData() {
+		GlobalData data = new GlobalData();
+		data.add(new Account("account", 10.0));
+		data.add(new Category("category"));
+		for (int i = 0; i < 10; i++) {
+			data.add(buildTransaction(data, "t"+i, i));
+		}
+		return data;
+	}
+
+	private static List<String> getDescriptions(GlobalData data) {
+		List<String> result = new ArrayList<String>();
+		for (int i = 0; i < data.getTransactionsNumber(); i++) {
+			Transaction transaction = data.getTransaction(i);
+			assertEquals(1, transaction.getSubTransactionSize());
+			result.add(transaction.getDescription()+":"+transaction.getAmount());
+		}
+		Collections.sort(result);
+		return result;
+	}
+
+	@Test
+	public void testIncrementalSave() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		assertFalse(journal.getFile().exists());
+		long length = file.length();
+
+		// Transactions changes are appended to the journal
+		data.remove(data.getTransaction(3));
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		data.remove(data.getTransaction(data.getTransactionsNumber()-1));
+		data.add(buildTransaction(data, "other", -5.0));
+		journal.save(data, null);
+		assertTrue(journal.getFile().exists());
+		assertEquals(length, file.length());
+
+		Journal other = new Journal(file, null);
+		GlobalData read = other.read(null, null);
+		assertEquals(getDescriptions(data), getDescriptions(read));
+		assertFalse(read.somethingHasChanged());
+
+		// The journal goes on after being replayed
+		read.remove(read.getTransaction(0));
+		other.save(read, null);
+		assertEquals(getDescriptions(read), getDescriptions(new Journal(file, null).read(null, null)));
+
+		// Other changes result in a full save
+		read.add(new Category("other"));
+		other.save(read, null);
+		assertFalse(other.getFile().exists());
+		assertEquals(getDescriptions(read), getDescriptions(new Journal(file, null).read(null, null)));
+	}
+
+	@Test
+	public void testPassword() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		data.setPassword("password");
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		assertTrue(journal.getFile().exists());
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read("password", null)));
+	}
+
+	@Test
+	public void testStaleJournal() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		// The file is saved without the journal, the journal should be ignored
+		data.add(buildTransaction(data, "ignored", 100.0));
+		GlobalData other = buildData();
+		other.add(buildTransaction(other, "other", 1.0));
+		OutputStream out = new FileOutputStream(file);
+		try {
+			new Serializer().write(other, out, null);
+		} finally {
+			out.close();
+		}
+		assertEquals(getDescriptions(other), getDescriptions(new Journal(file, null).read(null, null)));
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Journal journal = new Journal(file, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		});
+		journal.setCompactionThreshold(0);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		assertEquals(1, tasks.size());
+		// The changes saved while the compaction is running are kept
+		data.remove(data.getTransaction(0));
+		data.add(buildTransaction(data, "during compaction", 1.0));
+		journal.save(data, null);
+		assertEquals(1, tasks.size());
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read(null, null)));
+
+		tasks.remove(0).run();
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read(null, null)));
+		data.add(buildTransaction(data, "after compaction", 1.0));
+		journal.save(data, null);
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read(null, null)));
+	}
+
+	@Test
+	public void testInterruptedCompaction() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Journal journal = new Journal(file, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		});
+		journal.setCompactionThreshold(0);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		data.add(buildTransaction(data, "during compaction", 1.0));
+		journal.save(data, null);
+		byte[] previousJournal = read(journal.getFile());
+		tasks.remove(0).run();
+
+		// Simulate a crash after the data file was replaced, but before the next journal was promoted
+		File nextJournal = new File(file.getPath()+".journal.next");
+		assertTrue(journal.getFile().renameTo(nextJournal));
+		write(journal.getFile(), previousJournal);
+		Journal other = new Journal(file, null);
+		GlobalData read = other.read(null, null);
+		assertEquals(getDescriptions(data), getDescriptions(read));
+		assertFalse(nextJournal.exists());
+		// The promoted journal goes on
+		read.add(buildTransaction(read, "after recovery", 1.0));
+		other.save(read, null);
+		assertEquals(getDescriptions(read), getDescriptions(new Journal(file, null).read(null, null)));
+	}
+
+	@Test
+	public void testInterruptedReplace() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		File dataBackup = new File(file.getPath()+".bak");
+		File journalBackup = new File(journal.getFile().getPath()+".bak");
+
+		// Simulate a crash after the files were renamed to their backups, but before the new files were renamed
+		assertTrue(file.renameTo(dataBackup));
+		assertTrue(journal.getFile().renameTo(journalBackup));
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read(null, null)));
+		assertFalse(dataBackup.exists());
+		assertFalse(journalBackup.exists());
+
+		// Simulate a crash after the new file was renamed, but before the backup was deleted
+		write(dataBackup, new byte[]{1, 2, 3});
+		assertEquals(getDescriptions(data), getDescriptions(new Journal(file, null).read(null, null)));
+		assertFalse(dataBackup.exists());
+	}
+
+	@Test
+	public void testInterruptedAppend() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		List<String> expected = getDescriptions(data);
+		data.add(buildTransaction(data, "lost", 1.0));
+		journal.save(data, null);
+
+		// Simulate a crash in the middle of the last block write
+		byte[] content = read(journal.getFile());
+		write(journal.getFile(), Arrays.copyOf(content, content.length-5));
+		assertRecovered(file, expected);
+	}
+
+	@Test
+	public void testCorruptedBlock() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = buildData();
+		Journal journal = new Journal(file, null);
+		journal.save(data, null);
+		data.add(buildTransaction(data, "new", 100.0));
+		journal.save(data, null);
+		List<String> expected = getDescriptions(data);
+		int length = (int) journal.getFile().length();
+		data.add(buildTransaction(data, "lost", 1.0));
+		journal.save(data, null);
+
+		// Simulate a crash that left the last block with the right length, but a content filled with zeros
+		byte[] content = read(journal.getFile());
+		Arrays.fill(content, length+4, content.length, (byte)0);
+		write(journal.getFile(), content);
+		assertRecovered(file, expected);
+	}
+
+	private static void assertRecovered(File file, List<String> expected) throws IOException {
+		Journal journal = new Journal(file, null);
+		GlobalData read = journal.read(null, null);
+		assertEquals(expected, getDescriptions(read));
+		// The next saves are not lost behind the invalid block
+		read.add(buildTransaction(read, "after crash", 1.0));
+		journal.save(read, null);
+		assertEquals(getDescriptions(read), getDescriptions(new Journal(file, null).read(null, null)));
+		read.add(buildTransaction(read, "other", 2.0));
+		journal.save(read, null);
+		assertEquals(getDescriptions(read), getDescriptions(new Journal(file, null).read(null, null)));
+	}
+
+	private static byte[] read(File file) throws IOException {
+		byte[] result = new byte[(int) file.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			in.readFully(result);
+		} finally {
+			in.close();
+		}
+		return result;
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Random;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.util.DateUtils;
+
+import org.junit.Test;
+
+public class ReadAllocationTest {
+	private static final int SMALL = 2000;
+	private static final int LARGE = 20000;
+	// The remaining allocations are the attributes values (SAX builds a string each time a value is read), the transactions
+	// and the data structures of GlobalData (about 900 bytes with a 64 bits JVM).
+	private static final long MAX_BYTES_PER_TRANSACTION = 1200;
+	private static final String[] DESCRIPTIONS = new String[] {"Supermarket", "Rent", "Salary", "Gas station", "Restaurant"};
+
+	private static byte[] generate(int size) throws IOException {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		Mode mode = new Mode("mode", null, null, false);
+		data.add(account, mode);
+		Category category = new Category("category");
+		data.add(category);
+		Transaction[] transactions = new Transaction[size];
+		for (int i = 0; i < size; i++) {
+			int date = DateUtils.addDays(20000101, i/10);
+			transactions[i] = new Transaction(date, null, DESCRIPTIONS[i%DESCRIPTIONS.length], null, -(i%10000)/100.0, account,
+					i%2==0 ? mode : Mode.UNDEFINED, category, date, i%3==0 ? "statement" : null,
+					i%10==0 ? Collections.singletonList(new SubTransaction(1.5, "sub", category)) : null);
+		}
+		data.add(transactions);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLSerializer serializer = new XMLSerializer(out);
+		serializer.serialize(data, null);
+		serializer.closeDocument();
+		return out.toByteArray();
+	}
+
+	private static long getAllocatedBytes(ThreadMXBean bean, byte[] file) throws IOException {
+		long id = Thread.currentThread().getId();
+		// Only the allocations of the current thread are measured, so the transactions should be built by this thread
+		long start = ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(id);
+		GlobalData data = XMLSerializer.read(new ByteArrayInputStream(file), null, 0);
+		long result = ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(id)-start;
+		assertNotNull(data);
+		return result;
+	}
+
+	@Test
+	public void test() throws IOException {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		assumeTrue(((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported());
+		byte[] small = generate(SMALL);
+		byte[] large = generate(LARGE);
+		// Warm up
+		for (int i = 0; i < 5; i++) {
+			getAllocatedBytes(bean, large);
+		}
+		// The fixed costs (parser initialization, etc...) are eliminated by the difference between the two loads
+		long perTransaction = (getAllocatedBytes(bean, large)-getAllocatedBytes(bean, small))/(LARGE-SMALL);
+		assertTrue(perTransaction+" bytes allocated per transaction", perTransaction<MAX_BYTES_PER_TRANSACTION);
+	}
+
+	@Test
+	public void testParsers() {
+		Random rnd = new Random(0);
+		for (int i = 0; i < 100000; i++) {
+			String value = Double.toString(rnd.nextInt(2000000)/100.0-10000);
+			assertEquals(Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(XMLSerializer.toDouble(value)));
+			value = Double.toString(rnd.nextDouble()*Math.pow(10, rnd.nextInt(40)-20));
+			assertEquals(Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(XMLSerializer.toDouble(value)));
+		}
+		for (String value : new String[]{"-0.0", "0.1", "12", "1.", ".5", "0.000123456789012345678", "123456789012345678.5", "Infinity", "1E5"}) {
+			assertEquals(Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(XMLSerializer.toDouble(value)));
+		}
+		for (String value : new String[]{"", "-", ".", "1.2.3", "1a"}) {
+			try {
+				XMLSerializer.toDouble(value);
+				fail(value);
+			} catch (NumberFormatException e) {
+				// Ok
+			}
+		}
+		assertEquals(20140105, XMLSerializer.toDate("2014/1/5"));
+		assertEquals(20141231, XMLSerializer.toDate("2014/12/31"));
+		assertEquals(-1, XMLSerializer.toDate(null));
+		for (String value : new String[]{"2014/1", "2014/1/", "2014//1/5", "2014/1/5/2", "a/1/5"}) {
+			try {
+				XMLSerializer.toDate(value);
+				fail(value);
+			} catch (NumberFormatException e) {
+				// Ok
+			}
+		}
+	}
+}
@@ -25,11 +25,15 @@ import java.util.zip.ZipOutputStream;
 import net.yapbam.data.Account;
 import net.yapbam.data.AlertThreshold;
 import net.yapbam.data.Category;
+import net.yapbam.data.DataSnapshot;
 import net.yapbam.data.Filter;
 import net.yapbam.data.GlobalData;
 import net.yapbam.data.Mode;
 import net.yapbam.data.SubTransaction;
 import net.yapbam.data.Transaction;
+import net.yapbam.data.xml.task.DeflaterTask;
+import net.yapbam.date.helpers.DateStepper;
+import net.yapbam.data.xml.task.EncrypterTask;
 import net.yapbam.util.TextMatcher;
 import net.yapbam.util.TextMatcher.Kind;
 
@@ -115,6 +119,46 @@ public class SerializerTest {
 		testInstance(data);
 	}
 
+	@Test
+	public void testSnapshot() throws IOException {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 10.0);
+		data.add(account);
+		Mode mode = new Mode("mode", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false);
+		data.add(account, mode);
+		Category category = new Category("category");
+		data.add(category);
+		Date today = new Date();
+		data.add(new Transaction(today, null, "description", null, -5.32, account, mode, category, today, null,
+				Collections.<SubTransaction>emptyList()));
+		Filter filter = new Filter();
+		filter.setName("filter");
+		filter.setValidAccounts(Collections.singletonList(account));
+		data.add(filter);
+		byte[] expected = toBytes(data);
+
+		DataSnapshot snapshot = data.snapshot();
+		assertSame(snapshot, data.snapshot());
+		// Modifying the data should not change the snapshot
+		data.setName(account, "renamed account");
+		data.setName(category, "renamed category");
+		data.setMode(account, mode, new Mode("renamed mode", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, true));
+		filter.setName("renamed filter");
+		data.add(new Transaction(today, null, "other", null, 1.0, account, mode, category, today, null,
+				Collections.<SubTransaction>emptyList()));
+		assertNotSame(snapshot, data.snapshot());
+		assertEquals(2, data.snapshot().getTransactionsNumber());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new Serializer().write(snapshot, os, null);
+		assertArrayEquals(expected, os.toByteArray());
+	}
+
+	private static byte[] toBytes(GlobalData data) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new Serializer().write(data, os, null);
+		return os.toByteArray();
+	}
+
 	@Test
 	public void emptyTest() throws IOException {
 		GlobalData data = new GlobalData();		
@@ -208,6 +252,27 @@ public class SerializerTest {
 		}
 	}
 
+	@Test
+	public void testSharedStrings() throws IOException {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		for (int i = 0; i < 3; i++) {
+			data.add(new Transaction(20120101+i, new String("12"), new String("description"), new String("comment"), -5.32, account,
+					Mode.UNDEFINED, Category.UNDEFINED, 20120101+i, new String("statement"), Collections.<SubTransaction>emptyList()));
+		}
+		GlobalData other = reread(data);
+		assertEquals(3, other.getTransactionsNumber());
+		Transaction first = other.getTransaction(0);
+		for (int i = 1; i < other.getTransactionsNumber(); i++) {
+			Transaction transaction = other.getTransaction(i);
+			assertSame(first.getDescription(), transaction.getDescription());
+			assertSame(first.getComment(), transaction.getComment());
+			assertSame(first.getNumber(), transaction.getNumber());
+			assertSame(first.getStatement(), transaction.getStatement());
+		}
+	}
+
 	private GlobalData reread(GlobalData data) throws IOException {
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		try {
@@ -228,6 +293,35 @@ public class SerializerTest {
 		}
 	}
 
+	@Test
+	public void testEncodedFormat() throws Exception {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 10.0);
+		data.add(account);
+		for (int i = 0; i < 2000; i++) {
+			data.add(new Transaction(20120101+i%28, null, "transaction "+i, null, -i, account, Mode.UNDEFINED, Category.UNDEFINED, 20120101+i%28, null, null));
+		}
+		String password = "t";
+		data.setPassword(password);
+		Serializer serializer = new Serializer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.write(data, out, null);
+		byte[] encoded = out.toByteArray();
+
+		// Builds the same file with the compression and encryption tasks
+		out = new ByteArrayOutputStream();
+		serializer.directWrite(data, out, null);
+		ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+		new DeflaterTask(new ByteArrayInputStream(out.toByteArray()), deflated).call();
+		out = new ByteArrayOutputStream();
+		out.write("<Yapbam password encoded file 2.0>".getBytes("UTF-8"));
+		new EncrypterTask(new ByteArrayInputStream(deflated.toByteArray()), out, password, false).call();
+		assertArrayEquals(out.toByteArray(), encoded);
+
+		GlobalData other = serializer.read(password, new ByteArrayInputStream(encoded), null);
+		assertEquals(data.getTransactionsNumber(), other.getTransactionsNumber());
+	}
+
 	@Test
 	public void testInvalidXMLFile() {
 		testInvalidXMLFile(new String[]{}, UnsupportedFormatException.class); // An empty file
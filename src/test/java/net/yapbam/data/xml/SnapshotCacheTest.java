@@ -0,0 +1,123 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import net.yapbam.data.GlobalData;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SnapshotCacheTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static void save(GlobalData data, File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			new Serializer().write(data, out, null);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = TestData.buildData();
+		save(data, file);
+		SnapshotCache cache = new SnapshotCache(file);
+		assertFalse(cache.getFile().exists());
+		// The first read builds the snapshot
+		TestData.assertSameTransactions(data, cache.read(null, null));
+		assertTrue(cache.getFile().exists());
+		// The second one uses it
+		long modified = cache.getFile().lastModified();
+		GlobalData read = new SnapshotCache(file).read(null, null);
+		TestData.assertSameTransactions(data, read);
+		assertEquals(modified, cache.getFile().lastModified());
+		assertEquals(data.getAccount(0).getModesNumber(), read.getAccount(0).getModesNumber());
+		assertEquals(data.getCategoriesNumber(), read.getCategoriesNumber());
+	}
+
+	@Test
+	public void testStaleSnapshot() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = TestData.buildData();
+		save(data, file);
+		SnapshotCache cache = new SnapshotCache(file);
+		cache.read(null, null);
+		// The data file is modified without updating the snapshot
+		data.remove(data.getTransaction(0));
+		save(data, file);
+		TestData.assertSameTransactions(data, cache.read(null, null));
+		// Updating the snapshot after a save
+		data.remove(data.getTransaction(0));
+		save(data, file);
+		cache.write(data.snapshot());
+		TestData.assertSameTransactions(data, cache.read(null, null));
+	}
+
+	@Test
+	public void testPassword() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = TestData.buildData();
+		data.setPassword("password");
+		save(data, file);
+		SnapshotCache cache = new SnapshotCache(file);
+		TestData.assertSameTransactions(data, cache.read("password", null));
+		assertFalse(cache.getFile().exists());
+	}
+
+	@Test
+	public void testCorruptedSnapshot() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = TestData.buildData();
+		save(data, file);
+		SnapshotCache cache = new SnapshotCache(file);
+		cache.read(null, null);
+		// Corrupt the category of the last subtransaction, the header and the trailer remain valid
+		RandomAccessFile raf = new RandomAccessFile(cache.getFile(), "rw");
+		try {
+			raf.seek(raf.length()-8);
+			raf.writeInt(Integer.MAX_VALUE);
+		} finally {
+			raf.close();
+		}
+		TestData.assertSameTransactions(data, cache.read(null, null));
+		// The snapshot was written again
+		TestData.assertSameTransactions(data, new SnapshotCache(file).read(null, null));
+		// Corrupt the number of strings
+		long length = cache.getFile().length();
+		raf = new RandomAccessFile(cache.getFile(), "rw");
+		try {
+			raf.seek(20);
+			raf.seek(24+raf.readInt());
+			raf.writeInt(Integer.MAX_VALUE);
+		} finally {
+			raf.close();
+		}
+		TestData.assertSameTransactions(data, cache.read(null, null));
+		assertEquals(length, cache.getFile().length());
+	}
+
+	@Test
+	public void testWriteFailure() throws IOException {
+		File file = folder.newFile("data.xml");
+		GlobalData data = TestData.buildData();
+		save(data, file);
+		SnapshotCache cache = new SnapshotCache(file);
+		// A directory can't be replaced by the snapshot
+		assertTrue(cache.getFile().mkdir());
+		assertTrue(new File(cache.getFile(), "file").createNewFile());
+		TestData.assertSameTransactions(data, cache.read(null, null));
+		assertFalse(cache.write(data.snapshot()));
+		assertTrue(cache.getFile().isDirectory());
+	}
+}
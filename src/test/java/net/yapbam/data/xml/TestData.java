@@ -0,0 +1,71 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.util.DateUtils;
+
+/** The data and the assertions shared by the serialization tests. */
+final class TestData {
+	private TestData() {
+		super();
+	}
+
+	/** Builds data with two accounts, a mode, a category and transactions that use all the transaction fields.
+	 * @return a new GlobalData instance
+	 */
+	static GlobalData buildData() {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 10.0);
+		data.add(account);
+		Mode mode = new Mode("mode", null, null, false);
+		data.add(account, mode);
+		Account other = new Account("other", 0.0);
+		data.add(other);
+		Category category = new Category("category");
+		data.add(category);
+		for (int i = 0; i < 50; i++) {
+			data.add(new Transaction(DateUtils.addDays(20131225, i*7%40), i%2==0?null:"n"+i, "t"+i%7, i%3==0?"comment":null,
+					i%5==0 ? i/3.0 : -i*1.01, i%4==0 ? other : account, i%4==1 ? mode : Mode.UNDEFINED, i%2==0 ? category : Category.UNDEFINED,
+					DateUtils.addDays(20131225, i%10), i%6==0 ? "statement" : null,
+					i%2==0?null:Collections.singletonList(new SubTransaction(i/2.0, i%3==0 ? "sub" : "sub\u00e9", i%3==0 ? Category.UNDEFINED : category))));
+		}
+		return data;
+	}
+
+	/** Asserts that data contains the same transactions as other data.
+	 * <br>The amounts should be exactly the same, the accounts, modes and categories should be the ones of the actual data.
+	 * @param expected The expected data
+	 * @param actual The actual data
+	 */
+	static void assertSameTransactions(GlobalData expected, GlobalData actual) {
+		assertEquals(expected.getTransactionsNumber(), actual.getTransactionsNumber());
+		for (int i = 0; i < expected.getTransactionsNumber(); i++) {
+			Transaction e = expected.getTransaction(i);
+			Transaction a = actual.getTransaction(i);
+			assertEquals(e.getDescription(), a.getDescription());
+			assertEquals(e.getNumber(), a.getNumber());
+			assertEquals(e.getComment(), a.getComment());
+			assertEquals(e.getStatement(), a.getStatement());
+			assertEquals(Double.doubleToLongBits(e.getAmount()), Double.doubleToLongBits(a.getAmount()));
+			assertEquals(e.getDateAsInteger(), a.getDateAsInteger());
+			assertEquals(e.getValueDateAsInteger(), a.getValueDateAsInteger());
+			assertSame(actual.getAccount(e.getAccount().getName()), a.getAccount());
+			assertSame(a.getAccount().getMode(e.getMode().getName()), a.getMode());
+			assertSame(actual.getCategory(e.getCategory().getName()), a.getCategory());
+			assertEquals(e.getSubTransactionSize(), a.getSubTransactionSize());
+			for (int j = 0; j < e.getSubTransactionSize(); j++) {
+				assertEquals(e.getSubTransaction(j).getDescription(), a.getSubTransaction(j).getDescription());
+				assertEquals(Double.doubleToLongBits(e.getSubTransaction(j).getAmount()), Double.doubleToLongBits(a.getSubTransaction(j).getAmount()));
+				assertSame(actual.getCategory(e.getSubTransaction(j).getCategory().getName()), a.getSubTransaction(j).getCategory());
+			}
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.Category;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.PeriodicalTransaction;
+import net.yapbam.data.ProgressReport;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.date.helpers.MonthDateStepper;
+import net.yapbam.util.DateUtils;
+
+import org.junit.Test;
+
+public class TransactionsBuilderTest {
+	private static final int SIZE = 5000;
+
+	private static byte[] generate() throws IOException {
+		GlobalData data = new GlobalData();
+		Account account = new Account("account", 0.0);
+		data.add(account);
+		Account other = new Account("other", 10.0);
+		data.add(other);
+		Mode mode = new Mode("mode", null, null, false);
+		data.add(account, mode);
+		Category category = new Category("category");
+		data.add(category);
+		data.add(new Category("other"));
+		data.add(new PeriodicalTransaction("periodical", null, -5.0, account, mode, category,
+				Collections.singletonList(new SubTransaction(-1.0, "sub", category)), DateUtils.integerToDate(20140101), true,
+				new MonthDateStepper(1, 1)));
+		Transaction[] transactions = new Transaction[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			// Dates are not ordered, the transactions order should only depend on the document order
+			int date = DateUtils.addDays(20000101, (i*37)%1000);
+			transactions[i] = new Transaction(date, i%7==0 ? "n"+i : null, "description "+i%13, i%5==0 ? "comment" : null,
+					(i-SIZE/2)/100.0, i%3==0 ? other : account, i%3==1 ? mode : Mode.UNDEFINED, i%2==0 ? category : Category.UNDEFINED,
+					date, i%11==0 ? "statement" : null,
+					i%4==0 ? Arrays.asList(new SubTransaction(i, "sub", category), new SubTransaction(-1.0, "sub"+i, Category.UNDEFINED)) : null);
+		}
+		data.add(transactions);
+		return serialize(data);
+	}
+
+	private static byte[] serialize(GlobalData data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLSerializer serializer = new XMLSerializer(out);
+		serializer.serialize(data, null);
+		serializer.closeDocument();
+		return out.toByteArray();
+	}
+
+	private static GlobalData read(byte[] file, int nbWorkers, ProgressReport report) throws IOException {
+		return XMLSerializer.read(new ByteArrayInputStream(file), report, nbWorkers);
+	}
+
+	private static void assertWorkersStopped() throws InterruptedException {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("Transactions builder")) {
+				thread.join(5000);
+				assertFalse(thread.isAlive());
+			}
+		}
+	}
+
+	@Test
+	public void testDocumentOrder() throws Exception {
+		byte[] file = generate();
+		for (int nbWorkers = 0; nbWorkers < 4; nbWorkers++) {
+			GlobalData data = read(file, nbWorkers, null);
+			assertEquals(SIZE, data.getTransactionsNumber());
+			// The transactions are stored in the document order, so the data is written exactly as it was read
+			assertArrayEquals(file, serialize(data));
+			assertWorkersStopped();
+		}
+	}
+
+	@Test
+	public void testError() throws Exception {
+		String file = new String(generate(), XMLSerializer.UTF8);
+		int index = file.lastIndexOf("account=\"account\"");
+		file = file.substring(0, index)+"account=\"unknown\""+file.substring(index+"account=\"account\"".length());
+		try {
+			read(file.getBytes(XMLSerializer.UTF8), 2, null);
+			fail();
+		} catch (UnsupportedFormatException e) {
+			// Ok
+		}
+		assertWorkersStopped();
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		ProgressReport report = new ProgressReport() {
+			private int progress;
+			@Override
+			public void setMax(int length) {
+			}
+			@Override
+			public void reportProgress(int progress) {
+				this.progress = progress;
+			}
+			@Override
+			public boolean isCancelled() {
+				return progress>=SIZE/2;
+			}
+		};
+		assertNull(read(generate(), 2, report));
+		assertWorkersStopped();
+	}
+}
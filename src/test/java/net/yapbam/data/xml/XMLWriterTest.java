@@ -0,0 +1,226 @@
+package net.yapbam.data.xml;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+
+import net.yapbam.data.Account;
+import net.yapbam.data.AlertThreshold;
+import net.yapbam.data.Category;
+import net.yapbam.data.Checkbook;
+import net.yapbam.data.Filter;
+import net.yapbam.data.GlobalData;
+import net.yapbam.data.Mode;
+import net.yapbam.data.PeriodicalTransaction;
+import net.yapbam.data.SubTransaction;
+import net.yapbam.data.Transaction;
+import net.yapbam.date.helpers.DateStepper;
+import net.yapbam.date.helpers.DayDateStepper;
+import net.yapbam.date.helpers.DeferredValueDateComputer;
+import net.yapbam.date.helpers.MonthDateStepper;
+import net.yapbam.util.DateUtils;
+import net.yapbam.util.TextMatcher;
+
+import org.junit.Test;
+
+public class XMLWriterTest {
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
+	// Control characters (except tab, line feed and carriage return) are not allowed in xml 1.0 documents, they are tested by testEscaping
+	private static final String SPECIAL = "a\"<&>'\t\u00e9\u20ac\u0085\u2028\ud83d\ude00";
+
+	private static GlobalData buildData() {
+		GlobalData data = new GlobalData();
+		data.setArchive(true);
+		Account account = new Account("account "+SPECIAL, 10.5);
+		data.add(account);
+		// The parser would convert \r\n to \n in CDATA
+		data.setComment(account, "line1\nline2\t]]>x]]y"+SPECIAL);
+		data.setAlertThreshold(account, new AlertThreshold(-100.0, 1000.25));
+		data.setCheckNumberAlertThreshold(account, 5);
+		Mode check = new Mode("check", new DayDateStepper(2, null), new DeferredValueDateComputer(25, 5), true);
+		data.add(account, check);
+		data.add(account, new Mode("card", DateStepper.IMMEDIATE, DateStepper.IMMEDIATE, false));
+		data.add(account, new Checkbook("A", new BigInteger("1000"), 25, new BigInteger("1003")));
+		Account other = new Account("other", 0.0);
+		data.add(other);
+		Account commented = new Account("commented", -1.0);
+		data.add(commented);
+		data.setComment(commented, "comment");
+		Category category = new Category("category "+SPECIAL);
+		data.add(category);
+
+		Filter filter = new Filter();
+		filter.setName("filter");
+		filter.setDateFilter(DateUtils.integerToDate(20140101), DateUtils.integerToDate(20141231));
+		filter.setValueDateFilter(DateUtils.integerToDate(20140102), null);
+		filter.setAmountFilter(Filter.EXPENSES, 1.5, 100.0);
+		// Accounts have no hash code, the order of several valid accounts would change from one run to another
+		filter.setValidAccounts(Arrays.asList(account));
+		filter.setValidCategories(Arrays.asList(category, Category.UNDEFINED));
+		filter.setDescriptionMatcher(new TextMatcher(TextMatcher.Kind.CONTAINS, "x y&"+SPECIAL, true, false));
+		data.add(filter);
+
+		data.add(new PeriodicalTransaction("periodical "+SPECIAL, "comment", -12.3, account, check, category,
+				Collections.singletonList(new SubTransaction(-2.0, "sub", category)), DateUtils.integerToDate(20140115), true,
+				new MonthDateStepper(1, 15, DateUtils.integerToDate(20201231))));
+
+		double[] amounts = {0.0, 1.0, -1.5, 0.1, 0.25, -99.99, 1234567.89, 9999999.99, 1.0E7, 123.456, 1.0E-5, -0.0, 0.01, 1e20};
+		for (int i = 0; i < amounts.length; i++) {
+			data.add(new Transaction(DateUtils.addDays(20131225, i*7), i%2==0?null:"n"+i, i%3==0 ? SPECIAL : "t"+i,
+					i%3==0 ? "comment "+SPECIAL : null, amounts[i], i%4==0 ? other : account, i%4==1 ? check : Mode.UNDEFINED,
+					i%2==0 ? category : Category.UNDEFINED, DateUtils.addDays(20131225, i), i%5==0 ? "statement" : null,
+					i%2==0 ? null : Collections.singletonList(new SubTransaction(i/3.0, "sub"+SPECIAL, category))));
+		}
+		return data;
+	}
+
+	private static byte[] serialize(GlobalData data, boolean indent) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLSerializer serializer = new XMLSerializer(out, indent);
+		serializer.serialize(data, null);
+		serializer.closeDocument();
+		return out.toByteArray();
+	}
+
+	private byte[] readResource(String name) throws IOException {
+		InputStream in = getClass().getResource(name).openStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			for (int nb = in.read(buffer); nb>=0; nb = in.read(buffer)) {
+				out.write(buffer, 0, nb);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void testSameAsReference() throws IOException {
+		// indented.xml was written, on JDK 8 with \n as line separator, by the identity transformer XMLSerializer used before XMLWriter
+		String expected = new String(readResource("indented.xml"), XMLSerializer.UTF8);
+		String written = new String(serialize(buildData(), true), XMLSerializer.UTF8);
+		assertEquals(expected, written.replace(System.getProperty("line.separator"), "\n"));
+	}
+
+	@Test
+	public void testNoIndent() throws IOException {
+		GlobalData data = buildData();
+		data.add(new PeriodicalTransaction("daily", null, 1.0, data.getAccount(1), Mode.UNDEFINED, Category.UNDEFINED,
+				null, DateUtils.integerToDate(20140115), true, new DayDateStepper(3, null)));
+		// The reader only keeps the last part of a comment that is split in several sections (because it contains "]]>")
+		data.setComment(data.getAccount(0), "line1\nline2 \u00e9\ud83d\ude00");
+		byte[] written = serialize(data, false);
+		String xml = new String(written, XMLSerializer.UTF8);
+		assertTrue(xml.startsWith(HEADER+"<DATA "));
+		assertFalse(xml.contains(">"+System.getProperty("line.separator")+"<"));
+		// The daily date stepper has no other attributes than its own
+		assertTrue(xml.contains("<DATE_STEPPER kind=\"daily\" period=\"3\"/>"));
+		assertTrue(written.length<serialize(data, true).length);
+
+		GlobalData read = XMLSerializer.read(new ByteArrayInputStream(written), null);
+		assertEquals(data.getTransactionsNumber(), read.getTransactionsNumber());
+		assertEquals(data.getPeriodicalTransactionsNumber(), read.getPeriodicalTransactionsNumber());
+		assertEquals(data.getAccount(0).getComment(), read.getAccount(0).getComment());
+		assertEquals(data.getAccount(0).getName(), read.getAccount(0).getName());
+		for (int i = 0; i < data.getTransactionsNumber(); i++) {
+			Transaction expected = data.getTransaction(i);
+			Transaction actual = read.getTransaction(i);
+			assertEquals(Double.doubleToLongBits(expected.getAmount()), Double.doubleToLongBits(actual.getAmount()));
+			assertEquals(expected.getDescription(), actual.getDescription());
+			assertEquals(expected.getComment(), actual.getComment());
+			assertEquals(expected.getDateAsInteger(), actual.getDateAsInteger());
+		}
+		int daily = read.getPeriodicalTransaction(0).getDescription().equals("daily") ? 0 : 1;
+		assertEquals(3, ((DayDateStepper) read.getPeriodicalTransaction(daily).getNextDateBuilder()).getStep());
+	}
+
+	private static String write(String attribute, String cdata) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, false);
+		writer.startDocument();
+		writer.startElement("a");
+		if (attribute!=null) {
+			writer.attribute("v", attribute);
+		}
+		if (cdata!=null) {
+			writer.cdata(cdata);
+		}
+		writer.endElement("a");
+		writer.endDocument();
+		String result = new String(out.toByteArray(), XMLSerializer.UTF8);
+		assertTrue(result.startsWith(HEADER));
+		return result.substring(HEADER.length());
+	}
+
+	private static String write(double value) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, false);
+		writer.startElement("a");
+		writer.attribute("v", value);
+		writer.endElement("a");
+		writer.endDocument();
+		String result = new String(out.toByteArray(), XMLSerializer.UTF8);
+		return result.substring("<a v=\"".length(), result.length()-"\"/>".length());
+	}
+
+	@Test
+	public void testEscaping() throws IOException {
+		assertEquals("<a v=\"a&quot;&lt;&amp;&gt;'&#9;&#10;&#13;&#2;\u00e9&#128512;\"/>", write("a\"<&>'\t\n\r\u0002\u00e9\ud83d\ude00", null));
+		assertEquals("<a><![CDATA[a\"<&>'\t\n\r]]>&#2;<![CDATA[\u00e9\ud83d\ude00]]]]><![CDATA[>]]></a>", write(null, "a\"<&>'\t\n\r\u0002\u00e9\ud83d\ude00]]>"));
+		assertEquals("<a/>", write(null, ""));
+		assertEquals("<a v=\"\"/>", write("", null));
+	}
+
+	@Test
+	public void testInvalidSurrogate() {
+		String[] invalids = {"a\ud83d", "\ude00a", "a\ud83d\ud83d"};
+		for (String invalid : invalids) {
+			try {
+				write(invalid, null);
+				fail();
+			} catch (IOException e) {
+				// Ok
+			}
+			try {
+				write(null, invalid);
+				fail();
+			} catch (IOException e) {
+				// Ok
+			}
+		}
+	}
+
+	@Test
+	public void testDoubles() throws IOException {
+		for (long cents = -200000; cents < 200000; cents += 7) {
+			double value = cents/100.0;
+			assertEquals(Double.toString(value), write(value));
+		}
+		double[] values = {0.0, -0.0, 9999999.99, -9999999.99, 1.0E7, 0.001, 1.0E-3, 1.005, 0.1+0.2, Math.PI, Double.MAX_VALUE,
+				Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Long.MAX_VALUE, 92233720368547758.07};
+		for (double value : values) {
+			assertEquals(Double.toString(value), write(value));
+		}
+		// Big buffers are flushed
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		XMLWriter writer = new XMLWriter(out, true);
+		writer.startDocument();
+		writer.startElement("root");
+		for (int i = 0; i < 10000; i++) {
+			writer.startElement("e");
+			writer.attribute("v", i/100.0);
+			writer.endElement("e");
+		}
+		writer.endElement("root");
+		writer.endDocument();
+		assertTrue(out.size()>10000*10);
+	}
+}
@@ -11,6 +11,7 @@ import java.util.Set;
 import net.yapbam.date.helpers.DateStepper;
 import net.yapbam.date.helpers.DayDateStepper;
 import net.yapbam.date.helpers.MonthDateStepper;
+import net.yapbam.util.DateUtils;
 
 import org.junit.Test;
 
@@ -80,4 +81,21 @@ public class DateStepperTest {
 		assertFalse(set.contains(new DeferredValueDateComputer(3, 16)));
 		assertFalse(stepper.equals(DateStepper.IMMEDIATE));
 	}
+
+	@Test
+	public void integerSteps() {
+		DateStepper[] steppers = new DateStepper[] {DateStepper.IMMEDIATE, new DayDateStepper(10, null), new DayDateStepper(-3, null),
+				new DayDateStepper(45, new GregorianCalendar(2013, 5, 1).getTime()), new MonthDateStepper(1, 31),
+				new MonthDateStepper(3, 15, new GregorianCalendar(2013, 2, 15).getTime()), new MonthDateStepper(-1, 30),
+				new DeferredValueDateComputer(3, 15), new DeferredValueDateComputer(25, 5), new DeferredValueDateComputer(31, 31)};
+		GregorianCalendar c = new GregorianCalendar(2011, 11, 1);
+		GregorianCalendar end = new GregorianCalendar(2013, 11, 31);
+		while (c.before(end)) {
+			Date date = c.getTime();
+			for (DateStepper stepper : steppers) {
+				assertEquals(DateUtils.dateToInteger(stepper.getNextStep(date)), stepper.getNextStep(DateUtils.dateToInteger(date)));
+			}
+			c.add(Calendar.DATE, 1);
+		}
+	}
 }
@@ -2,6 +2,11 @@ package net.yapbam.utils;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
 import net.yapbam.util.ArrayUtils;
 
 import org.junit.Test;
@@ -41,4 +46,39 @@ public class ArrayUtilsTest {
 			assertEquals(i, result[i]);
 		}
 	}
+
+	@Test
+	public void testMerge() {
+		Comparator<Integer> comparator = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return o1.compareTo(o2);
+			}
+		};
+		List<Integer> list = new ArrayList<Integer>();
+		ArrayUtils.merge(list, new Integer[]{2, 5}, comparator);
+		assertEquals(Arrays.asList(2, 5), list);
+		ArrayUtils.merge(list, new Integer[]{6, 8}, comparator);
+		assertEquals(Arrays.asList(2, 5, 6, 8), list);
+		ArrayUtils.merge(list, new Integer[]{0, 3, 7, 9}, comparator);
+		assertEquals(Arrays.asList(0, 2, 3, 5, 6, 7, 8, 9), list);
+		ArrayUtils.merge(list, new Integer[0], comparator);
+		assertEquals(8, list.size());
+	}
+
+	@Test
+	public void testRemoveAll() {
+		Comparator<Integer> comparator = new Comparator<Integer>() {
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				return o1.compareTo(o2);
+			}
+		};
+		List<Integer> list = new ArrayList<Integer>(Arrays.asList(0, 2, 3, 5, 6, 7, 8, 9));
+		assertEquals(3, ArrayUtils.removeAll(list, Arrays.asList(0, 1, 5, 9, 10), comparator));
+		assertEquals(Arrays.asList(2, 3, 6, 7, 8), list);
+		assertEquals(0, ArrayUtils.removeAll(list, new ArrayList<Integer>(), comparator));
+		assertEquals(5, ArrayUtils.removeAll(list, Arrays.asList(2, 3, 6, 7, 8), comparator));
+		assertTrue(list.isEmpty());
+	}
 }
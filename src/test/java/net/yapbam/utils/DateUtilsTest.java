@@ -2,6 +2,7 @@ package net.yapbam.utils;
 
 import static org.junit.Assert.*;
 
+import java.util.Calendar;
 import java.util.GregorianCalendar;
 
 import net.yapbam.util.DateUtils;
@@ -21,4 +22,28 @@ public class DateUtilsTest {
 		assertEquals(original2, last);
 	}
 
+	@Test
+	public void testIntegerArithmetic() {
+		assertEquals(20120229, DateUtils.addDays(20120228, 1));
+		assertEquals(20130301, DateUtils.addDays(20130228, 1));
+		assertEquals(20111231, DateUtils.addDays(20120101, -1));
+		assertEquals(20120229, DateUtils.addMonths(20120131, 1));
+		assertEquals(20111130, DateUtils.addMonths(20120131, -2));
+		assertEquals(20130115, DateUtils.getMonthDate(20121231, 1, 15));
+		assertEquals(2, DateUtils.getMonth(20120229));
+		assertEquals(29, DateUtils.getDay(20120229));
+		// Compare with the calendar, including dates around the Julian/Gregorian switch
+		GregorianCalendar c = new GregorianCalendar(1582, 9, 1);
+		GregorianCalendar end = new GregorianCalendar(2101, 0, 1);
+		while (c.before(end)) {
+			int date = DateUtils.dateToInteger(c.getTime());
+			for (int nbDays : new int[]{-400,-31,-1,0,1,17,365}) {
+				GregorianCalendar expected = (GregorianCalendar) c.clone();
+				expected.add(Calendar.DATE, nbDays);
+				assertEquals(DateUtils.dateToInteger(expected.getTime()), DateUtils.addDays(date, nbDays));
+			}
+			c.add(Calendar.DATE, 7);
+		}
+	}
+
 }